@@ -17,26 +17,34 @@ package com.tesla.interview.application;
 import static java.lang.Math.floorMod;
 import static org.apache.logging.log4j.LogManager.getLogger;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.tesla.interview.application.WorkStealingWriterPool.PartitionedTask;
 import com.tesla.interview.io.AggregateSampleWriter;
+import com.tesla.interview.io.BlockWriter;
+import com.tesla.interview.io.DurabilityMode;
+import com.tesla.interview.io.FlushPolicy;
+import com.tesla.interview.io.FlushScheduler;
+import com.tesla.interview.io.GroupCommitter;
+import com.tesla.interview.io.OutputOptions;
 import com.tesla.interview.model.AggregateSample;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Summary;
 import java.io.Closeable;
-import java.io.File;
-import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -52,7 +60,8 @@ import org.apache.logging.log4j.Logger;
 
 /**
  * Asynchronously writes input {@link AggregateSample}s to an output file via
- * {@link AggregateSampleWriter#writeSample(AggregateSample)}.
+ * {@link AggregateSampleWriter#writeSample(AggregateSample)}. Writes are executed on a
+ * {@link WorkStealingWriterPool}, so writes to the same partition never run concurrently.
  */
 public class AsynchronousWriter implements Closeable {
 
@@ -110,6 +119,7 @@ public class AsynchronousWriter implements Closeable {
 
         if (!isClosed.get()) {
           WriteTask nextTask = bufferedWrites.remove();
+          bufferHasRoom.signal();
           Future<WriteTask> taskFuture = executor.submit(nextTask);
           nextTask.scheduledHook(taskFuture);
         }
@@ -120,37 +130,76 @@ public class AsynchronousWriter implements Closeable {
   }
 
   /**
-   * Encapsulates a request to append an {@link AggregateSample} to an output file.
+   * Encapsulates a request to append one or more {@link AggregateSample}s of a single partition to
+   * an output file.
    */
-  class WriteTask implements Callable<WriteTask> {
-    AggregateSample sample;
+  class WriteTask implements Callable<WriteTask>, PartitionedTask {
+    List<AggregateSample> samples;
+    int partitionNo;
     AtomicReference<Future<WriteTask>> scheduled;
-    Thread awaitingThread;
+    CountDownLatch isScheduled;
+    volatile Future<Void> durable;
 
     /**
      * Canonical constructor.
      * 
-     * @param sample sample to write
+     * @param samples non-empty samples to write, all of the same partition
      */
-    WriteTask(AggregateSample sample) {
-      this.sample = sample;
+    WriteTask(List<AggregateSample> samples) {
+      this.samples = samples;
+      this.partitionNo = samples.get(0).getPartitionNo();
       this.scheduled = new AtomicReference<Future<WriteTask>>(null /* initialValue */);
-      this.awaitingThread = Thread.currentThread();
+      this.isScheduled = new CountDownLatch(1 /* count */);
     }
 
     @Override
     public WriteTask call() {
-      int partitionFromZero = sample.getPartitionNo() - 1;
+      int partitionFromZero = partitionNo - 1;
       String path = partitionNumToPath.getOrDefault(partitionFromZero, null /* defaultValue */);
-      AggregateSampleWriter writer = pathToWriter.getOrDefault(path, null /* defaultValue */);
+      if (path != null && blockWriter != null) {
+        blockWriter.writeBlock(partitionNo, samples);
+        numCompletedWriteTasks.incrementAndGet();
+        return this /* success! */;
+      }
+      AggregateSampleWriter writer = path != null ? writerCache.acquire(path) : null;
       if (path != null && writer != null) {
-        writer.writeSample(sample);
+        try {
+          if (samples.size() == 1) {
+            writer.writeSample(samples.get(0));
+          } else {
+            writer.writeSamples(samples);
+          }
+          if (groupCommitter != null
+              && writer.getDurabilityMode() == DurabilityMode.GROUP_COMMIT) {
+            durable = groupCommitter.awaitDurable(writer);
+          }
+        } finally {
+          writerCache.release(path);
+        }
         numCompletedWriteTasks.incrementAndGet();
-        return null /* success! */;
+        return this /* success! */;
       } else {
         throw new IllegalArgumentException(
-            String.format("Invalid path -- sample: %s, path: %s, writerExists: %b", sample, path,
-                writer != null)); // null-safe
+            String.format("Invalid path -- partitionNo: %d, path: %s, writerExists: %b",
+                partitionNo, path, writer != null)); // null-safe
+      }
+    }
+
+    @Override
+    public int getPartitionNo() {
+      return partitionNo;
+    }
+
+    /**
+     * Block until the written samples are on stable storage, if the durability mode asks for it.
+     * Call this only after the task has completed.
+     * 
+     * @throws InterruptedException if interrupted while waiting
+     * @throws ExecutionException if the samples could not be forced to stable storage
+     */
+    void awaitDurable() throws InterruptedException, ExecutionException {
+      if (durable != null) {
+        durable.get();
       }
     }
 
@@ -162,7 +211,7 @@ public class AsynchronousWriter implements Closeable {
     Future<WriteTask> awaitScheduling() {
       while (scheduled.get() == null) {
         try {
-          Thread.sleep(pollDelay.toMillis());
+          isScheduled.await(pollDelay.toMillis(), TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
           // we have been deliberately awoken; good time to check again
         }
@@ -178,7 +227,7 @@ public class AsynchronousWriter implements Closeable {
     void scheduledHook(Future<WriteTask> taskFuture) {
       if (scheduled.compareAndSet(null, taskFuture)) {
         numScheduledWriteTasks.incrementAndGet();
-        awaitingThread.interrupt();
+        isScheduled.countDown();
       } else {
         throw new IllegalStateException("task scheduled more than once");
       }
@@ -192,7 +241,6 @@ public class AsynchronousWriter implements Closeable {
   private static final Random RANDOM = new Random();
 
   final WriteScheduler scheduler = new WriteScheduler();
-  final List<AggregateSampleWriter> writers;
   final Lock bufferLock = new ReentrantLock();
   final Queue<WriteTask> bufferedWrites;
   final Condition bufferHasRoom = bufferLock.newCondition();
@@ -205,56 +253,119 @@ public class AsynchronousWriter implements Closeable {
   final ExecutorService executor;
   final Duration maxWaitDuration;
   final Map<Integer, String> partitionNumToPath;
-  final Map<String, AggregateSampleWriter> pathToWriter;
+  final WriterCache writerCache;
+  final BlockWriter blockWriter;
   final Duration pollDelay;
   final CollectorRegistry metricsRegistry;
+  final FlushScheduler flushScheduler;
+  final GroupCommitter groupCommitter;
+  final boolean ownsFlushScheduler;
+  final boolean ownsExecutor;
   final Summary completedWriteTasks;
   final Summary scheduledWriteTasks;
 
   /**
-   * Canonical constructor.
+   * Construct a writer with default output options and a private flush scheduler.
    * 
    * @param threadPoolSize number of threads for this writer
    * @param partitionNoToPath map from partition number to file system path
+   * @param metricsRegistry registry to which writer metrics are published
    */
   public AsynchronousWriter(int threadPoolSize, Map<Integer, String> partitionNoToPath,
       CollectorRegistry metricsRegistry) {
+    this(threadPoolSize, partitionNoToPath, metricsRegistry, OutputOptions.defaults(),
+        Integer.MAX_VALUE /* maxOpenFiles */, new FlushScheduler(), null /* groupCommitter */,
+        null /* blockWriter */, true /* ownsFlushScheduler */);
+  }
+
+  /**
+   * Canonical constructor.
+   * 
+   * @param threadPoolSize number of threads for this writer
+   * @param partitionNoToPath map from partition number to file system path
+   * @param metricsRegistry registry to which writer metrics are published
+   * @param outputOptions settings for the output files
+   * @param maxOpenFiles max. number of output files this writer keeps open at a time
+   * @param flushScheduler timer shared by all writers for flushing latency-sensitive partitions
+   * @param groupCommitter committer shared by all writers if the durability mode uses one;
+   *        otherwise <code>null</code>
+   * @param blockWriter sequential output shared by all partitions, or <code>null</code> to write
+   *        one file per partition
+   */
+  public AsynchronousWriter(int threadPoolSize, Map<Integer, String> partitionNoToPath,
+      CollectorRegistry metricsRegistry, OutputOptions outputOptions, int maxOpenFiles,
+      FlushScheduler flushScheduler, GroupCommitter groupCommitter,
+      BlockWriter blockWriter) {
+    this(threadPoolSize, partitionNoToPath, metricsRegistry, outputOptions, maxOpenFiles,
+        flushScheduler, groupCommitter, blockWriter, false /* ownsFlushScheduler */);
+  }
+
+  private AsynchronousWriter(int threadPoolSize, Map<Integer, String> partitionNoToPath,
+      CollectorRegistry metricsRegistry, OutputOptions outputOptions, int maxOpenFiles,
+      FlushScheduler flushScheduler, GroupCommitter groupCommitter,
+      BlockWriter blockWriter, boolean ownsFlushScheduler) {
     if (threadPoolSize <= 0) {
       throw new IllegalArgumentException("threadPoolSize must be positive");
     }
     if (partitionNoToPath == null || partitionNoToPath.isEmpty()) {
       throw new IllegalArgumentException("partitionNoToPath cannot be empty");
     }
+    if (outputOptions == null) {
+      throw new IllegalArgumentException("outputOptions cannot be null");
+    }
+    if (maxOpenFiles <= 0) {
+      throw new IllegalArgumentException("maxOpenFiles must be positive");
+    }
+    if (flushScheduler == null) {
+      throw new IllegalArgumentException("flushScheduler cannot be null");
+    }
+    if (groupCommitter == null && outputOptions.getDurabilityMode().usesCommitter()) {
+      throw new IllegalArgumentException(String.format("groupCommitter cannot be null -- mode: %s",
+          outputOptions.getDurabilityMode()));
+    }
 
-    LOG.info(String.format("initializing thread pool -- threadPoolSize: %d", threadPoolSize));
-    this.executor = Executors.newFixedThreadPool(threadPoolSize);
-    LOG.info("thread pool initialized");
+    if (outputOptions.getWriterExecutor() != null) {
+      this.executor = outputOptions.getWriterExecutor();
+      this.ownsExecutor = false;
+    } else {
+      LOG.info(String.format("initializing thread pool -- threadPoolSize: %d", threadPoolSize));
+      this.executor = new WorkStealingWriterPool(threadPoolSize, metricsRegistry);
+      this.ownsExecutor = true;
+      LOG.info("thread pool initialized");
+    }
 
-    this.partitionNumToPath = partitionNoToPath;
-    this.writers = Lists.newArrayList();
-    this.pathToWriter = Maps.newHashMap();
+    this.partitionNumToPath = new ConcurrentHashMap<>(partitionNoToPath);
     this.bufferedWrites = new ArrayDeque<>();
     this.bufferSize = threadPoolSize;
     this.metricsRegistry = metricsRegistry;
     this.maxWaitDuration = DEFAULT_MAX_WAIT;
     this.pollDelay = DEFAULT_POLL_DELAY;
+    this.flushScheduler = flushScheduler;
+    this.groupCommitter = groupCommitter;
+    this.blockWriter = blockWriter;
+    this.ownsFlushScheduler = ownsFlushScheduler;
     this.completedWriteTasks = Summary.build().name("completedWriteTasks")
         .help("write tasks completed").register(metricsRegistry);
     this.scheduledWriteTasks = Summary.build().name("scheduledWriteTasks")
         .help("write tasks scheduled").register(metricsRegistry);
 
-    // open files and track association between partition number and output file
-    for (String path : partitionNoToPath.values()) {
-      File file = Paths.get(path).toFile();
-      if (!pathToWriter.containsKey(path)) {
-        AggregateSampleWriter writer = AggregateSampleWriter.fromFile(file);
-        writers.add(writer);
-        pathToWriter.put(path, writer);
+    // track association between partition number and output file; files open on demand
+    Map<String, FlushPolicy> pathToFlushPolicy = Maps.newHashMap();
+    for (Entry<Integer, String> entry : partitionNoToPath.entrySet()) {
+      String path = entry.getValue();
+      if (!pathToFlushPolicy.containsKey(path)) {
+        pathToFlushPolicy.put(path, outputOptions.getFlushPolicy(entry.getKey() + 1));
       } else {
         throw new IllegalArgumentException(
             "Cannot specify identical path more than once -- path: " + path);
       }
     }
+    if (blockWriter == null) {
+      this.writerCache = new WriterCache(maxOpenFiles, pathToFlushPolicy, outputOptions,
+          flushScheduler, groupCommitter, metricsRegistry);
+    } else {
+      this.writerCache = null;
+    }
   }
 
   /**
@@ -263,7 +374,6 @@ public class AsynchronousWriter implements Closeable {
    * @param executor executor service to inject
    * @param partitionNumToPath maps partition numbers to paths of files
    * @param pathToWriter maps paths of files to writers
-   * @param writers writers to inject
    * @param bufferedWrites task queue to inject
    * @param maxWaitDuration maximum time we are willing to wait for thread termination
    * @param bufferSize max. size of the queue
@@ -271,7 +381,6 @@ public class AsynchronousWriter implements Closeable {
   AsynchronousWriter(ExecutorService executor, //
       Map<Integer, String> partitionNumToPath, //
       Map<String, AggregateSampleWriter> pathToWriter, //
-      List<AggregateSampleWriter> writers, //
       Queue<WriteTask> bufferedWrites, //
       Duration maxWaitDuration, //
       Duration pollDelay, //
@@ -279,51 +388,61 @@ public class AsynchronousWriter implements Closeable {
       CollectorRegistry metricsRegistry) {
 
     this.executor = executor;
+    this.ownsExecutor = true;
     this.partitionNumToPath = partitionNumToPath;
-    this.pathToWriter = pathToWriter;
-    this.writers = writers;
     this.bufferedWrites = bufferedWrites;
     this.maxWaitDuration = maxWaitDuration;
     this.pollDelay = pollDelay;
     this.bufferSize = bufferSize;
     this.metricsRegistry = metricsRegistry;
+    this.flushScheduler = new FlushScheduler();
+    this.groupCommitter = null;
+    this.blockWriter = null;
+    this.ownsFlushScheduler = true;
     this.completedWriteTasks = Summary.build().name("completedWriteTasks")
         .help("write tasks completed").register(metricsRegistry);
     this.scheduledWriteTasks = Summary.build().name("scheduledWriteTasks")
         .help("write tasks scheduled").register(metricsRegistry);
+    this.writerCache = new WriterCache(pathToWriter, metricsRegistry);
+  }
+
+  /**
+   * Add a partition discovered after construction. Its output file is created by its first write.
+   * 
+   * @param partitionNo partition number (indexed from zero)
+   * @param path file system path of the partition's output file
+   * @param flushPolicy when the partition's output is flushed
+   */
+  public void addPartition(int partitionNo, String path, FlushPolicy flushPolicy) {
+    if (partitionNumToPath.putIfAbsent(partitionNo, path) != null) {
+      throw new IllegalArgumentException(
+          String.format("partitionNo must be new -- partitionNo: %d", partitionNo));
+    }
+    if (writerCache != null) {
+      writerCache.addPath(path, flushPolicy);
+    }
   }
 
   @Override
   public void close() {
     if (isClosed.compareAndSet(false, true)) {
-      // close requested for the first time
-      for (AggregateSampleWriter asw : pathToWriter.values()) {
-        asw.close();
-      }
-
-      executor.shutdown();
-      Supplier<Boolean> notTerminated = () -> !executor.isTerminated();
-      Function<Void, Void> executorWaitFun = (Void v) -> {
+      // close requested for the first time; a file that fails to close fails the writer, but
+      // only once everything else has been stopped
+      IllegalStateException closeFailure = null;
+      if (writerCache != null) {
         try {
-          executor.awaitTermination(maxWaitDuration.toMillis(), TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
+          writerCache.close();
+        } catch (IllegalStateException e) {
+          closeFailure = e;
         }
-        return null;
-      };
-      Duration executorWaitDuration =
-          bestEffortWait(maxWaitDuration, notTerminated, executorWaitFun);
-
-      if (notTerminated.get()) {
-        LOG.warn(
-            String.format("Could not shut down executor service within %s", executorWaitDuration));
-        List<Runnable> stragglers = executor.shutdownNow();
-        LOG.warn(String.format("Cancelled execution of scheduled tasks -- count: %d",
-            stragglers.size()));
-      } else {
-        LOG.info(
-            String.format("Shut down executor service successfully in %s", executorWaitDuration));
       }
+      if (ownsFlushScheduler) {
+        flushScheduler.close();
+      }
+
+      if (ownsExecutor) {
+        shutDownExecutor();
+      } // a shared executor outlives this writer; every task of ours has completed by now
 
       Supplier<Boolean> isAlive = () -> scheduler.isAlive();
       Function<Void, Void> waitFun = (Void v) -> {
@@ -343,6 +462,19 @@ public class AsynchronousWriter implements Closeable {
       } else {
         LOG.info(String.format("Shut down scheduler successfully in %s", schedulerWaitDuration));
       }
+      if (closeFailure != null) {
+        throw closeFailure;
+      }
+    }
+  }
+
+  /**
+   * Push the buffered samples of every open output file to the file system. Call this only while
+   * no write is in flight, e.g. before a checkpoint.
+   */
+  public void flush() {
+    if (writerCache != null) {
+      writerCache.flushAll();
     }
   }
 
@@ -353,16 +485,48 @@ public class AsynchronousWriter implements Closeable {
     scheduler.start();
   }
 
+  /**
+   * Add a batch of aggregated samples to the write queue. The batch is appended to its output file
+   * by a single task, so scheduling overhead is paid once per batch rather than once per sample.
+   * 
+   * @param samples non-empty aggregations to write, all of the same partition, in order
+   * @return a progress indicator for the whole batch
+   */
+  public Future<WriteTask> writeBatch(List<AggregateSample> samples) {
+    if (samples == null || samples.isEmpty()) {
+      throw new IllegalArgumentException("samples cannot be empty");
+    }
+    int partitionNo = samples.get(0).getPartitionNo();
+    for (AggregateSample sample : samples) {
+      if (sample.getPartitionNo() != partitionNo) {
+        throw new IllegalArgumentException(String.format(
+            "samples must share a partition -- expected: %d, actual: %d", partitionNo,
+            sample.getPartitionNo()));
+      }
+    }
+
+    return enqueue(new WriteTask(samples));
+  }
+
   /**
    * Add the aggregated sample to the write queue.
    * 
    * @param sample aggregation to write
    * @return a progress indicator for the write
    */
-  @SuppressFBWarnings("RV_RETURN_VALUE_IGNORED_BAD_PRACTICE")
   public Future<WriteTask> writeSample(AggregateSample sample) {
+    return enqueue(new WriteTask(Collections.singletonList(sample)));
+  }
+
+  /**
+   * Add the task to the write queue, then block until the scheduler has submitted it.
+   * 
+   * @param task task to enqueue
+   * @return a progress indicator for the task
+   */
+  @SuppressFBWarnings("RV_RETURN_VALUE_IGNORED_BAD_PRACTICE")
+  private Future<WriteTask> enqueue(WriteTask task) {
     bufferLock.lock();
-    WriteTask task = null;
     try {
       while (bufferedWrites.size() == bufferSize) {
         try {
@@ -372,7 +536,6 @@ public class AsynchronousWriter implements Closeable {
         }
       }
 
-      task = new WriteTask(sample);
       bufferedWrites.add(task);
       bufferHasTask.signal();
     } finally {
@@ -407,4 +570,33 @@ public class AsynchronousWriter implements Closeable {
       return actualWaitDuration;
     }
   }
+
+  /**
+   * Shut down the private thread pool, cancelling tasks that do not complete in time.
+   */
+  private void shutDownExecutor() {
+    executor.shutdown();
+    Supplier<Boolean> notTerminated = () -> !executor.isTerminated();
+    Function<Void, Void> executorWaitFun = (Void v) -> {
+      try {
+        executor.awaitTermination(maxWaitDuration.toMillis(), TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return null;
+    };
+    Duration executorWaitDuration =
+        bestEffortWait(maxWaitDuration, notTerminated, executorWaitFun);
+
+    if (notTerminated.get()) {
+      LOG.warn(
+          String.format("Could not shut down executor service within %s", executorWaitDuration));
+      List<Runnable> stragglers = executor.shutdownNow();
+      LOG.warn(String.format("Cancelled execution of scheduled tasks -- count: %d",
+          stragglers.size()));
+    } else {
+      LOG.info(
+          String.format("Shut down executor service successfully in %s", executorWaitDuration));
+    }
+  }
 }
@@ -15,13 +15,32 @@
 package com.tesla.interview.application;
 
 import static com.tesla.interview.application.ApplicationTools.logTrace;
+import static com.tesla.interview.io.Checkpoint.CHECKPOINT_FILE_NAME;
+import static com.tesla.interview.io.IncrementalState.STATE_FILE_NAME;
 import static java.lang.Math.ceil;
 import static java.lang.Math.floorMod;
 import static org.apache.logging.log4j.LogManager.getLogger;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.tesla.interview.application.AsynchronousWriter.WriteTask;
-import com.tesla.interview.io.MeasurementSampleReader;
+import com.tesla.interview.io.AggregateSampleWriter;
+import com.tesla.interview.io.BlockWriter;
+import com.tesla.interview.io.Checkpoint;
+import com.tesla.interview.io.ColumnarPartitionWriter;
+import com.tesla.interview.io.ConcurrentSampleReader;
+import com.tesla.interview.io.FlushPolicy;
+import com.tesla.interview.io.FlushScheduler;
+import com.tesla.interview.io.GroupCommitter;
+import com.tesla.interview.io.IncrementalState;
+import com.tesla.interview.io.InputOptions;
+import com.tesla.interview.io.JournalDemuxer;
+import com.tesla.interview.io.JournalWriter;
+import com.tesla.interview.io.MultiplexedSampleWriter;
+import com.tesla.interview.io.OutputOptions;
+import com.tesla.interview.io.OutputPublisher;
+import com.tesla.interview.io.ParsedInputCache;
+import com.tesla.interview.io.SampleReader;
 import com.tesla.interview.model.AggregateSample;
 import com.tesla.interview.model.MeasurementSample;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -30,10 +49,13 @@ import io.prometheus.client.exporter.PushGateway;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -41,6 +63,7 @@ import java.util.Queue;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -60,6 +83,11 @@ import org.apache.logging.log4j.Logger;
  */
 public class InterviewApplication implements Callable<Void> {
 
+  private static final String COMMITTER_THREAD_NAME = "committer";
+  private static final String DEMUXER_THREAD_NAME = "demuxer";
+  private static final String SOURCE_THREAD_NAME = "source";
+  private static final String WRITER_POOL_THREAD_NAME = "writers";
+  private static final String JOURNAL_SUFFIX = ".journal";
   private static final String THREAD_NUM = "thread_num";
   private static final String INSTANCE = "instance";
   private static final String JOB_NAME = "inteview_application_call";
@@ -69,9 +97,14 @@ public class InterviewApplication implements Callable<Void> {
    */
   class TaskConsumer implements Callable<Void> {
 
+    private ExecutionException firstFailure;
+
     @Override
     public Void call() throws Exception {
       awaitWrites();
+      if (firstFailure != null) {
+        throw firstFailure; // the run must not publish
+      }
       return null;
     }
 
@@ -146,27 +179,45 @@ public class InterviewApplication implements Callable<Void> {
     }
 
     /**
-     * Wait until the scheduled write has completed.
+     * Wait until the scheduled write has completed and, if its durability mode asks for it, has
+     * reached stable storage. A failed write is logged and remembered, so that the run fails once
+     * every write has been waited for.
      * 
      * @param write write for which to wait
      */
     private void waitForWrite(Future<WriteTask> write) {
+      WriteTask task;
       try {
         if (LOG.isEnabled(Level.DEBUG)) {
           LOG.debug("START -- write.get()");
         }
-        write.get();
+        task = write.get();
         if (LOG.isEnabled(Level.DEBUG)) {
           LOG.debug("END   -- write.get()");
         }
+      } catch (InterruptedException e) {
+        return; // no problem!
+      } catch (ExecutionException e) {
+        recordFailure("Unexpected exception while waiting for write thread", e); // big problem!
+        return;
+      }
+
+      try {
+        if (task != null) {
+          task.awaitDurable();
+        }
       } catch (InterruptedException e) {
         // no problem!
       } catch (ExecutionException e) {
-        // big problem!
-        String message = "Unexpected exception while waiting for write thread -- " + " message: "
-            + e.getMessage();
-        LOG.error(message);
-        logTrace(LOG, Level.ERROR, e);
+        recordFailure("Unable to force write to stable storage", e);
+      }
+    }
+
+    private void recordFailure(String reason, ExecutionException e) {
+      LOG.error(String.format("%s -- message: %s", reason, e.getMessage()));
+      logTrace(LOG, Level.ERROR, e);
+      if (firstFailure == null) {
+        firstFailure = e;
       }
     }
   }
@@ -176,6 +227,10 @@ public class InterviewApplication implements Callable<Void> {
    */
   class TaskProducer implements Callable<Void> {
 
+    private final List<Future<WriteTask>> unconfirmedWrites = Lists.newArrayList();
+    private final Map<Integer, Long> partitionNumToDeadline = Maps.newHashMap();
+    private long nextDeadlineNanos = Long.MAX_VALUE;
+
     @Override
     public Void call() throws Exception {
       spawnWrites();
@@ -183,13 +238,13 @@ public class InterviewApplication implements Callable<Void> {
     }
 
     /**
-     * Schedule the next write from the input file.
+     * Schedule the next batch of writes from the input file.
      * 
-     * @param aggregate write to schedule
+     * @param batch non-empty series of aggregates of a single partition to schedule
      * @param writer writer that will execute the write
      */
     @SuppressFBWarnings("RV_RETURN_VALUE_IGNORED_BAD_PRACTICE")
-    private void spawnWrite(AggregateSample aggregate, AsynchronousWriter writer) {
+    private void spawnWrite(List<AggregateSample> batch, AsynchronousWriter writer) {
       taskLock.lock();
       try {
         while (pendingTasks.size() == maxNumTasks) {
@@ -205,41 +260,197 @@ public class InterviewApplication implements Callable<Void> {
             // we were deliberately interrupted; check condition again
           }
         }
-        Future<WriteTask> future = writer.writeSample(aggregate);
+        Future<WriteTask> future = writer.writeBatch(batch);
         pendingTasks.add(future);
+        if (checkpointInterval != null) {
+          unconfirmedWrites.add(future);
+        }
         sampleAvailable.signal();
       } finally {
         taskLock.unlock();
       }
     }
 
+    /**
+     * Schedule every partially filled batch.
+     * 
+     * @param partitionNumToBatch batches indexed by partition number; emptied by this call
+     */
+    private void spawnBatches(List<List<AggregateSample>> partitionNumToBatch) {
+      for (int partitionNo = 0; partitionNo < partitionNumToBatch.size(); partitionNo++) {
+        List<AggregateSample> batch = partitionNumToBatch.get(partitionNo);
+        if (batch != null) {
+          spawnWrite(batch, router.route(partitionNo));
+          partitionNumToBatch.set(partitionNo, null);
+        }
+      }
+      partitionNumToDeadline.clear();
+      nextDeadlineNanos = Long.MAX_VALUE;
+    }
+
+    /**
+     * Schedule the batches of partitions with a max. flush delay whose first sample has waited
+     * that long, so that a sparse partition does not hold its samples back until its batch fills.
+     * 
+     * @param partitionNumToBatch batches indexed by partition number
+     */
+    private void spawnDueBatches(List<List<AggregateSample>> partitionNumToBatch) {
+      long nowNanos = System.nanoTime();
+      nextDeadlineNanos = Long.MAX_VALUE;
+      Iterator<Entry<Integer, Long>> iterator = partitionNumToDeadline.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Entry<Integer, Long> entry = iterator.next();
+        int partitionNo = entry.getKey();
+        if (nowNanos >= entry.getValue()) {
+          spawnWrite(partitionNumToBatch.get(partitionNo), router.route(partitionNo));
+          partitionNumToBatch.set(partitionNo, null);
+          iterator.remove();
+        } else {
+          nextDeadlineNanos = Math.min(nextDeadlineNanos, entry.getValue());
+        }
+      }
+    }
+
+    /**
+     * Start the deadline of a partition's new batch if the partition has a max. flush delay.
+     * 
+     * @param partitionNo partition number (indexed from zero)
+     */
+    private void startDeadline(int partitionNo) {
+      FlushPolicy flushPolicy = outputOptions.getFlushPolicy(partitionNo + 1);
+      if (flushPolicy.hasMaxDelay()) {
+        long deadlineNanos = System.nanoTime() + flushPolicy.getMaxDelay().toNanos();
+        partitionNumToDeadline.put(partitionNo, deadlineNanos);
+        nextDeadlineNanos = Math.min(nextDeadlineNanos, deadlineNanos);
+      }
+    }
+
+    /**
+     * Get the batch a partition's next sample is added to, starting a new batch if necessary.
+     * 
+     * @param partitionNumToBatch batches indexed by partition number
+     * @param partitionNo partition number (indexed from zero)
+     * @return non-<code>null</code> batch
+     */
+    private List<AggregateSample> batchOf(List<List<AggregateSample>> partitionNumToBatch,
+        int partitionNo) {
+      while (partitionNumToBatch.size() <= partitionNo) {
+        partitionNumToBatch.add(null);
+      }
+      List<AggregateSample> batch = partitionNumToBatch.get(partitionNo);
+      if (batch == null) {
+        batch = Lists.newArrayList();
+        partitionNumToBatch.set(partitionNo, batch);
+      }
+      return batch;
+    }
+
+    /**
+     * Route a partition seen for the first time to a write thread and create its output file
+     * lazily. Threads own partitions round-robin, since their number is not known up front.
+     * 
+     * @param partitionNo partition number (indexed from zero)
+     * @return writer of the partition
+     * @throws IllegalStateException if the partition number is above the max. to discover
+     */
+    private AsynchronousWriter discoverPartition(int partitionNo) {
+      if (partitionNo >= outputOptions.getMaxDiscoveredPartitionNo()) {
+        String message = String.format(
+            "Partition number above max. -- partitionNo: %d, maxPartitionNo: %d",
+            partitionNo + 1, outputOptions.getMaxDiscoveredPartitionNo());
+        LOG.fatal(message);
+        throw new IllegalStateException(message);
+      }
+      int threadNo = partitionNo % router.getNumThreads();
+      String outputPath = outputOptions.getDiscoveredFilePath(partitionNo + 1);
+      String ourPath = blockWriter != null ? outputPath : publisher.addOutput(outputPath);
+      AsynchronousWriter writer = router.getWriter(threadNo);
+      if (writer == null) {
+        Map<Integer, String> partitionNumToPath = Maps.newHashMap();
+        partitionNumToPath.put(partitionNo, ourPath);
+        writer = newWriter(threadNo, partitionNumToPath);
+        router.setWriter(threadNo, writer);
+      } else {
+        writer.addPartition(partitionNo, ourPath, outputOptions.getFlushPolicy(partitionNo + 1));
+      }
+      router.assign(partitionNo, threadNo);
+      LOG.info(String.format("discovered partition -- partitionNo: %d, threadNo: %d",
+          partitionNo + 1, threadNo));
+      return writer;
+    }
+
+    /**
+     * Write every sample read so far, wait until all of it has reached the staging files, then
+     * record the input offset along with the length of every staging file.
+     * 
+     * @param partitionNumToBatch batches by partition number; emptied by this call
+     */
+    private void checkpoint(List<List<AggregateSample>> partitionNumToBatch) {
+      spawnBatches(partitionNumToBatch);
+      try {
+        for (Future<WriteTask> write : unconfirmedWrites) {
+          write.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted while checkpointing", e);
+      } catch (ExecutionException e) {
+        // the run cannot complete; leave the last checkpoint in place to resume from
+        throw new IllegalStateException("write failed before checkpoint", e.getCause());
+      }
+      unconfirmedWrites.clear();
+      for (AsynchronousWriter writer : router.getWriters()) {
+        writer.flush();
+      }
+
+      Checkpoint checkpoint = Checkpoint.capture(instanceId, reader.getOffset(), checkpointedPaths);
+      checkpoint.write(checkpointPath);
+      LOG.info(String.format("checkpoint written -- inputOffset: %d, path: %s",
+          checkpoint.getInputOffset(), checkpointPath));
+    }
+
     /**
      * Spawn the full series of {@link WriteTask}s based on data gleaned from the input file.
+     * Aggregates are accumulated into per-partition batches; each full batch becomes a single
+     * write task, as does the batch of a partition with a max. flush delay once that delay has
+     * passed.
      */
     private void spawnWrites() {
 
       // read next sample
       LOG.info("spawning write tasks");
       Instant nextPrintTime = Instant.MIN;
+      List<List<AggregateSample>> partitionNumToBatch = Lists.newArrayList();
       int spawnCount = 0;
+      long nextCheckpointNanos = checkpointInterval != null
+          ? System.nanoTime() + checkpointInterval.toNanos() : Long.MAX_VALUE;
       while (reader.hasNext()) {
         AggregateSample aggregate = aggregateMeasurement(reader.next());
 
         // associate sample with correct writer
         int partitionNo = aggregate.getPartitionNo() - 1;
-        int threadNo = partitionNumToThreadNo.getOrDefault(partitionNo, -1 /* defaultValue */);
-        AsynchronousWriter writer =
-            threadNumToWriter.getOrDefault(threadNo, null /* defaultValue */);
+        AsynchronousWriter writer = router.route(partitionNo);
+        if (writer == null && outputOptions.isDiscoveringPartitions() && partitionNo >= 0) {
+          writer = discoverPartition(partitionNo);
+        }
         if (writer != null) {
 
-          // enqueue write
-          spawnWrite(aggregate, writer);
+          // enqueue write once the partition's batch is full
+          List<AggregateSample> batch = batchOf(partitionNumToBatch, partitionNo);
+          batch.add(aggregate);
+          if (batch.size() >= maxBatchSize) {
+            spawnWrite(batch, writer);
+            partitionNumToBatch.set(partitionNo, null);
+            partitionNumToDeadline.remove(partitionNo);
+          } else if (batch.size() == 1) {
+            startDeadline(partitionNo);
+          }
           spawnCount++;
         } else {
 
           // if this happens, InterviewApplication is bugged!
           String message = String.format("No writer found -- partitionNo: %s, threadNo: %d",
-              partitionNo, threadNo);
+              partitionNo, router.getThreadNo(partitionNo));
           LOG.fatal(message);
           throw new IllegalStateException(message);
         }
@@ -247,18 +458,38 @@ public class InterviewApplication implements Callable<Void> {
         // print status periodically
         if (Instant.now().isAfter(nextPrintTime)) {
           nextPrintTime = randomizedPrintTime();
-          LOG.info(String.format("spawning new write tasks -- numSpawned: %d", spawnCount));
+          LOG.info(String.format("spawning new write tasks -- numSamples: %d", spawnCount));
+        }
+
+        // record progress periodically
+        if (checkpointInterval != null && System.nanoTime() >= nextCheckpointNanos) {
+          checkpoint(partitionNumToBatch);
+          nextCheckpointNanos = System.nanoTime() + checkpointInterval.toNanos();
+        }
+
+        // a partition with a max. flush delay cannot wait for its batch to fill
+        if (nextDeadlineNanos != Long.MAX_VALUE && System.nanoTime() >= nextDeadlineNanos) {
+          spawnDueBatches(partitionNumToBatch);
+        }
+
+        // a streamed input may pause; write what it sent rather than hold it back until it resumes
+        if (!reader.isReady()) {
+          spawnBatches(partitionNumToBatch);
         }
       }
 
+      // flush partially filled batches
+      spawnBatches(partitionNumToBatch);
+
       // finish up
       if (!readComplete.compareAndSet(false, true)) {
         throw new IllegalStateException("read cannot complete more than once");
       }
-      LOG.info(String.format("all write tasks spawned -- numSpawned: %d", spawnCount));
+      LOG.info(String.format("all write tasks spawned -- numSamples: %d", spawnCount));
     }
   }
 
+  private static final int DEFAULT_BATCH_SIZE = 256;
   private static final Logger LOG = getLogger(InterviewApplication.class);
   private static final Duration PRINT_INTERVAL = Duration.ofSeconds(3); // TODO make configurable
   private static final Random RANDOM = new Random();
@@ -290,18 +521,35 @@ public class InterviewApplication implements Callable<Void> {
   private final ExecutorService executor = Executors.newFixedThreadPool(2 /* nThreads */);
   private final Map<String, CollectorRegistry> threadNameToRegistry;
   private final String instanceId;
+  private final FlushScheduler flushScheduler;
+  private final GroupCommitter groupCommitter;
+  private final WorkStealingWriterPool writerPool;
+  private final OutputPublisher publisher;
+  private final BlockWriter blockWriter;
+  private final JournalDemuxer demuxer;
+  private final Path checkpointPath;
+  private final Duration checkpointInterval;
+  private final List<String> checkpointedPaths;
+  private final CompletableFuture<Void> staleCleanup;
+  private final Path statePath;
+  private final IncrementalState previousState;
+  private final File inputFile;
+  private final List<String> outputFilePaths;
+  private final OutputOptions outputOptions;
+  private final int numWriteThreads;
+  private final int maxOpenFilesPerThread;
 
-  final Map<Integer, Integer> partitionNumToThreadNo; // note: partitions indexed from 0
-  final MeasurementSampleReader reader;
+  final PartitionRouter router;
+  final SampleReader reader;
   final int maxNumTasks;
-  final Map<Integer, AsynchronousWriter> threadNumToWriter;
+  final int maxBatchSize;
   final Queue<Future<WriteTask>> pendingTasks;
   final Duration pollDuration;
   final URL metricsEndpoint;
   final Supplier<CollectorRegistry> registrySupplier;
 
   /**
-   * Canonical constructor.
+   * Construct an application with default output options.
    * 
    * @param numWriteThreads max. number of {@link Thread}s to dedicate towards writing output files
    * @param maxFileHandles max. number of file handles we should have open concurrently
@@ -309,10 +557,77 @@ public class InterviewApplication implements Callable<Void> {
    * @param inputFilePath path to the input samples file
    * @param queueSize size of write queue
    * @param pollDuration max. amount of time to wait between polls
+   * @param metricsEndpoint address of Prometheus push gateway or <code>null</code> for none
+   * @param registrySupplier creates one metrics registry per write thread
    */
   public InterviewApplication(int numWriteThreads, int maxFileHandles, List<String> outputFilePaths,
       String inputFilePath, int queueSize, Duration pollDuration, URL metricsEndpoint,
       Supplier<CollectorRegistry> registrySupplier) {
+    this(numWriteThreads, maxFileHandles, outputFilePaths, inputFilePath, queueSize, pollDuration,
+        metricsEndpoint, registrySupplier, OutputOptions.defaults());
+  }
+
+  /**
+   * Construct an application with default input options.
+   * 
+   * @param numWriteThreads max. number of {@link Thread}s to dedicate towards writing output files
+   * @param maxFileHandles max. number of file handles we should have open concurrently
+   * @param outputFilePaths paths to the output samples files
+   * @param inputFilePath path to the input samples file
+   * @param queueSize size of write queue
+   * @param pollDuration max. amount of time to wait between polls
+   * @param metricsEndpoint address of Prometheus push gateway or <code>null</code> for none
+   * @param registrySupplier creates one metrics registry per write thread
+   * @param outputOptions settings for the output files
+   */
+  public InterviewApplication(int numWriteThreads, int maxFileHandles, List<String> outputFilePaths,
+      String inputFilePath, int queueSize, Duration pollDuration, URL metricsEndpoint,
+      Supplier<CollectorRegistry> registrySupplier, OutputOptions outputOptions) {
+    this(numWriteThreads, maxFileHandles, outputFilePaths, inputFilePath, queueSize, pollDuration,
+        metricsEndpoint, registrySupplier, outputOptions, InputOptions.defaults());
+  }
+
+  /**
+   * Construct an application that reads a single input file.
+   * 
+   * @param numWriteThreads max. number of {@link Thread}s to dedicate towards writing output files
+   * @param maxFileHandles max. number of file handles we should have open concurrently
+   * @param outputFilePaths paths to the output samples files
+   * @param inputFilePath path to the input samples file
+   * @param queueSize size of write queue
+   * @param pollDuration max. amount of time to wait between polls
+   * @param metricsEndpoint address of Prometheus push gateway or <code>null</code> for none
+   * @param registrySupplier creates one metrics registry per write thread
+   * @param outputOptions settings for the output files
+   * @param inputOptions settings for the input file
+   */
+  public InterviewApplication(int numWriteThreads, int maxFileHandles, List<String> outputFilePaths,
+      String inputFilePath, int queueSize, Duration pollDuration, URL metricsEndpoint,
+      Supplier<CollectorRegistry> registrySupplier, OutputOptions outputOptions,
+      InputOptions inputOptions) {
+    this(numWriteThreads, maxFileHandles, outputFilePaths, Lists.newArrayList(inputFilePath),
+        queueSize, pollDuration, metricsEndpoint, registrySupplier, outputOptions, inputOptions);
+  }
+
+  /**
+   * Canonical constructor. Several input files are read concurrently; their samples are processed
+   * in file order, then line order.
+   * 
+   * @param numWriteThreads max. number of {@link Thread}s to dedicate towards writing output files
+   * @param maxFileHandles max. number of file handles we should have open concurrently
+   * @param outputFilePaths paths to the output samples files
+   * @param inputFilePaths paths to the input samples files, in the order they are processed
+   * @param queueSize size of write queue
+   * @param pollDuration max. amount of time to wait between polls
+   * @param metricsEndpoint address of Prometheus push gateway or <code>null</code> for none
+   * @param registrySupplier creates one metrics registry per write thread
+   * @param outputOptions settings for the output files
+   * @param inputOptions settings for the input files
+   */
+  public InterviewApplication(int numWriteThreads, int maxFileHandles, List<String> outputFilePaths,
+      List<String> inputFilePaths, int queueSize, Duration pollDuration, URL metricsEndpoint,
+      Supplier<CollectorRegistry> registrySupplier, OutputOptions outputOptions,
+      InputOptions inputOptions) {
 
     /* BEGIN: validate input */
     if (numWriteThreads <= 0) {
@@ -324,15 +639,31 @@ public class InterviewApplication implements Callable<Void> {
     if (maxFileHandles < numWriteThreads) {
       throw new IllegalArgumentException("maxFileHandles must be at least numWriteThreads");
     }
-    if (outputFilePaths == null || outputFilePaths.isEmpty()) {
-      throw new IllegalArgumentException("outputFilePaths must be non-empty");
+    if (outputOptions == null) {
+      throw new IllegalArgumentException("outputOptions must be non-null");
     }
-    if (outputFilePaths.size() < numWriteThreads) {
+    if (outputOptions.isDiscoveringPartitions()) {
+      if (outputFilePaths == null || !outputFilePaths.isEmpty()) {
+        throw new IllegalArgumentException(
+            "outputFilePaths must be empty when partitions are discovered");
+      }
+    } else if (outputFilePaths == null || outputFilePaths.isEmpty()) {
+      throw new IllegalArgumentException("outputFilePaths must be non-empty");
+    } else if (outputFilePaths.size() < numWriteThreads) {
       throw new IllegalArgumentException(
           "outputFilePaths must contain at least numWriteThreads paths");
     }
-    if (inputFilePath == null || inputFilePath.isEmpty()) {
-      throw new IllegalArgumentException("inputFilePath must be non-empty");
+    if (inputOptions == null) {
+      throw new IllegalArgumentException("inputOptions must be non-null");
+    }
+    if (inputOptions.getSource() != null) {
+      if (inputFilePaths == null || !inputFilePaths.isEmpty()) {
+        throw new IllegalArgumentException(
+            "inputFilePaths must be empty when samples are read from a source");
+      }
+    } else if (inputFilePaths == null || inputFilePaths.isEmpty() || inputFilePaths.contains(null)
+        || inputFilePaths.contains("")) {
+      throw new IllegalArgumentException("inputFilePaths must be non-empty, as must each path");
     }
     if (queueSize <= 0) {
       throw new IllegalArgumentException("queueSize must be positive");
@@ -340,55 +671,253 @@ public class InterviewApplication implements Callable<Void> {
     if (pollDuration == null) {
       throw new IllegalArgumentException("pollDuration cannot be null");
     }
+    int numBlockFormats = (outputOptions.isMultiplexed() ? 1 : 0)
+        + (outputOptions.isJournaled() ? 1 : 0) + (outputOptions.isColumnar() ? 1 : 0);
+    if (numBlockFormats > 1) {
+      throw new IllegalArgumentException(
+          "outputOptions must use at most one of multiplexed, journaled and columnar output");
+    }
+    if (outputOptions.isCompressed() && numBlockFormats > 0) {
+      throw new IllegalArgumentException(
+          "outputOptions must not be compressed when multiplexed, journaled or columnar");
+    }
+    if (outputOptions.isResumed() && !outputOptions.isCheckpointed()) {
+      throw new IllegalArgumentException("outputOptions must be checkpointed to resume");
+    }
+    if (outputOptions.isCheckpointed() && (numBlockFormats > 0 || outputOptions.isMapped()
+        || outputOptions.isCompressed())) {
+      throw new IllegalArgumentException("outputOptions must not be checkpointed when "
+          + "multiplexed, journaled, columnar, mapped or compressed");
+    }
+    if (outputOptions.isCheckpointed() && inputOptions.isParseCached()) {
+      throw new IllegalArgumentException(
+          "inputOptions must not cache parsed input when checkpointed");
+    }
+    if (outputOptions.isIncremental() && (numBlockFormats > 0 || outputOptions.isMapped()
+        || outputOptions.isCompressed() || outputOptions.isCheckpointed())) {
+      throw new IllegalArgumentException("outputOptions must not be incremental when multiplexed, "
+          + "journaled, columnar, mapped, compressed or checkpointed");
+    }
+    if (outputOptions.isIncremental() && inputOptions.isParseCached()) {
+      throw new IllegalArgumentException(
+          "inputOptions must not cache parsed input when incremental");
+    }
+    if (outputOptions.isAppending() && (numBlockFormats > 0 || outputOptions.isMapped()
+        || outputOptions.isCompressed() || outputOptions.isCheckpointed()
+        || outputOptions.isIncremental() || outputOptions.isDiscoveringPartitions())) {
+      throw new IllegalArgumentException("outputOptions must not append when multiplexed, "
+          + "journaled, columnar, mapped, compressed, checkpointed, incremental or discovering");
+    }
+    if (inputFilePaths.size() > 1
+        && (outputOptions.isCheckpointed() || outputOptions.isIncremental())) {
+      throw new IllegalArgumentException(
+          "inputFilePaths must hold a single path when checkpointed or incremental");
+    }
+    if (inputOptions.getSource() != null && (outputOptions.isCheckpointed()
+        || outputOptions.isIncremental() || inputOptions.isParseCached())) {
+      throw new IllegalArgumentException("inputOptions must not read from a source when "
+          + "checkpointed, incremental or caching parsed input");
+    }
+    if (outputOptions.isDiscoveringPartitions() && (outputOptions.isJournaled()
+        || outputOptions.isColumnar() || outputOptions.isCheckpointed()
+        || outputOptions.isIncremental())) {
+      throw new IllegalArgumentException("outputOptions must not discover partitions when "
+          + "journaled, columnar, checkpointed or incremental");
+    }
     /* END: validate input */
 
-    this.reader = new MeasurementSampleReader(Paths.get(inputFilePath).toFile());
-    this.partitionNumToThreadNo = Maps.newHashMap();
-    this.threadNumToWriter = Maps.newHashMap();
+    this.inputFile =
+        inputFilePaths.isEmpty() ? null : Paths.get(inputFilePaths.get(0)).toFile();
+    this.outputFilePaths = outputFilePaths;
+    IncrementalState continueFrom = null;
+    if (outputOptions.isIncremental()) {
+      this.statePath =
+          Paths.get(outputFilePaths.get(0)).toAbsolutePath().resolveSibling(STATE_FILE_NAME);
+      IncrementalState previous = IncrementalState.read(statePath);
+      if (previous != null && previous.matches(inputFile, outputFilePaths)) {
+        continueFrom = previous;
+      } else {
+        // a full run replaces the outputs the stale state refers to
+        deleteQuietly(statePath);
+      }
+    } else {
+      this.statePath = null;
+    }
+    this.previousState = continueFrom;
+
+    Checkpoint resumeFrom = null;
+    CompletableFuture<Void> cleanup = null;
+    if (outputOptions.isCheckpointed()) {
+      this.checkpointPath =
+          Paths.get(outputFilePaths.get(0)).toAbsolutePath().resolveSibling(CHECKPOINT_FILE_NAME);
+      Checkpoint previous = Checkpoint.read(checkpointPath);
+      if (outputOptions.isResumed()) {
+        if (previous == null) {
+          throw new IllegalArgumentException(
+              String.format("no checkpoint to resume from -- path: %s", checkpointPath));
+        }
+        if (previous.getNumOutputs() != outputFilePaths.size()) {
+          throw new IllegalArgumentException(String.format(
+              "checkpoint must cover every partition -- numOutputs: %d, numPartitions: %d",
+              previous.getNumOutputs(), outputFilePaths.size()));
+        }
+        resumeFrom = previous;
+      } else if (previous != null) {
+        // starting over; discard the staging files of the interrupted run while this one starts
+        LOG.warn(String.format("discarding checkpoint of an earlier run -- runId: %s",
+            previous.getRunId()));
+        cleanup = new OutputPublisher(outputFilePaths, previous.getRunId()).abortInBackground();
+      }
+      this.checkpointInterval = outputOptions.getCheckpointInterval();
+    } else {
+      this.checkpointPath = null;
+      this.checkpointInterval = null;
+    }
+    this.staleCleanup = cleanup;
+    this.outputOptions = outputOptions;
+    this.numWriteThreads = numWriteThreads;
+    this.router = new PartitionRouter(numWriteThreads);
     this.maxNumTasks = queueSize;
+    this.maxBatchSize = DEFAULT_BATCH_SIZE;
     this.pendingTasks = new ArrayDeque<Future<WriteTask>>(maxNumTasks);
     this.pollDuration = pollDuration;
     this.metricsEndpoint = metricsEndpoint;
     this.registrySupplier = registrySupplier;
-    this.instanceId = UUID.randomUUID().toString().replace("-", "g");
+    this.instanceId = resumeFrom != null ? resumeFrom.getRunId()
+        : UUID.randomUUID().toString().replace("-", "g");
     this.threadNameToRegistry = Maps.newHashMap();
+    this.flushScheduler = new FlushScheduler();
+    if (outputOptions.isMultiplexed()) {
+      this.publisher = new OutputPublisher(
+          Lists.newArrayList(outputOptions.getMultiplexedFilePath()), instanceId);
+      this.blockWriter =
+          MultiplexedSampleWriter.fromFile(Paths.get(publisher.getStagingPath(0)).toFile());
+      this.demuxer = null;
+    } else if (outputOptions.isJournaled()) {
+      this.publisher = new OutputPublisher(outputFilePaths, instanceId);
+      List<String> stagingPaths = Lists.newArrayList();
+      for (int partitionNo = 0; partitionNo < outputFilePaths.size(); partitionNo++) {
+        stagingPaths.add(publisher.getStagingPath(partitionNo));
+      }
+      CollectorRegistry demuxerRegistry = registrySupplier.get();
+      threadNameToRegistry.put(DEMUXER_THREAD_NAME, demuxerRegistry);
+      this.demuxer = new JournalDemuxer(stagingPaths, numWriteThreads, demuxerRegistry);
+      this.blockWriter = new JournalWriter(publisher.getStagingPath(0) + JOURNAL_SUFFIX,
+          outputOptions.getJournalSegmentBytes(), demuxer);
+    } else if (outputOptions.isColumnar()) {
+      this.publisher = new OutputPublisher(outputFilePaths, instanceId);
+      List<String> stagingPaths = Lists.newArrayList();
+      for (int partitionNo = 0; partitionNo < outputFilePaths.size(); partitionNo++) {
+        stagingPaths.add(publisher.getStagingPath(partitionNo));
+      }
+      this.blockWriter = new ColumnarPartitionWriter(stagingPaths);
+      this.demuxer = null;
+    } else if (continueFrom != null) {
+      // append to the outputs in place; the next run cuts off whatever a failure leaves behind
+      this.publisher = null;
+      this.blockWriter = null;
+      this.demuxer = null;
+      continueFrom.restore(outputFilePaths);
+      LOG.info(String.format("continuing from last run -- inputOffset: %d",
+          continueFrom.getInputOffset()));
+    } else if (outputOptions.isAppending()) {
+      // append to the outputs in place; the caller cuts off whatever a failure leaves behind
+      this.publisher = null;
+      this.blockWriter = null;
+      this.demuxer = null;
+    } else if (outputOptions.isDiscoveringPartitions()) {
+      Path directory = Paths.get(outputOptions.getDiscoveredFilePath(1)).toAbsolutePath()
+          .getParent();
+      this.publisher = new OutputPublisher(directory, instanceId);
+      this.blockWriter = null;
+      this.demuxer = null;
+    } else {
+      this.publisher = new OutputPublisher(outputFilePaths, instanceId);
+      this.blockWriter = null;
+      this.demuxer = null;
+    }
+    this.checkpointedPaths = Lists.newArrayList();
+    if (outputOptions.isCheckpointed()) {
+      for (int partitionNo = 0; partitionNo < outputFilePaths.size(); partitionNo++) {
+        checkpointedPaths.add(publisher.getStagingPath(partitionNo));
+      }
+      if (resumeFrom != null) {
+        resumeFrom.restore(checkpointedPaths);
+      }
+    }
 
-    // construct the reader and list of write threads from validated input
-    int maxPartitionsPerThread =
-        (int) ceil(outputFilePaths.size() / Double.valueOf(numWriteThreads));
-    for (int threadNo = 0; threadNo < numWriteThreads; threadNo++) {
-      Map<Integer, String> partitionNumToPath = Maps.newHashMap();
-      for (int partitionNo = threadNo * maxPartitionsPerThread; partitionNo < outputFilePaths.size()
-          && partitionNo < (threadNo + 1) * maxPartitionsPerThread; partitionNo++) {
-        String ourPath = outputFilePaths.get(partitionNo);
-
-        // delete the existing files if there are conflicts
-        // TODO make this behavior configurable via parameter flag
-        File ourFile = Paths.get(ourPath).toFile();
-        if (ourFile != null && ourFile.exists()) {
-          if (!ourFile.delete()) {
-            throw new IllegalStateException(
-                String.format("Failed to delete file -- path: %s", ourFile.getPath()));
-          }
-        }
+    // only checkpointed and incremental runs track their input offset, which costs some throughput
+    if (outputOptions.isCheckpointed()) {
+      this.reader = SampleReader.fromFile(inputFile,
+          resumeFrom != null ? resumeFrom.getInputOffset() : 0 /* offset */);
+    } else if (outputOptions.isIncremental()) {
+      this.reader = SampleReader.fromFile(inputFile,
+          continueFrom != null ? continueFrom.getInputOffset() : 0 /* offset */);
+    } else if (inputOptions.getSource() != null) {
+      this.reader = inputOptions.getSource();
+      if (inputOptions.getSourceRegistry() != null) {
+        threadNameToRegistry.put(SOURCE_THREAD_NAME, inputOptions.getSourceRegistry());
+      }
+    } else if (inputFilePaths.size() > 1) {
+      List<File> inputFiles = Lists.newArrayList();
+      for (String inputFilePath : inputFilePaths) {
+        inputFiles.add(Paths.get(inputFilePath).toFile());
+      }
+      this.reader = new ConcurrentSampleReader(inputFiles, inputOptions.getNumReadThreads(),
+          inputOptions.isParseCached() ? ParsedInputCache::open : SampleReader::fromFile);
+    } else if (inputOptions.isParseCached()) {
+      this.reader = ParsedInputCache.open(inputFile);
+    } else {
+      this.reader = SampleReader.fromFile(inputFile);
+    }
+    if (outputOptions.getDurabilityMode().usesCommitter()) {
+      CollectorRegistry committerRegistry = registrySupplier.get();
+      threadNameToRegistry.put(COMMITTER_THREAD_NAME, committerRegistry);
+      this.groupCommitter = new GroupCommitter(outputOptions.getDurabilityMode(),
+          outputOptions.getSyncInterval(), committerRegistry);
+      groupCommitter.start();
+    } else {
+      this.groupCommitter = null;
+    }
 
-        // maintain maps
-        partitionNumToPath.put(partitionNo, ourPath);
-        partitionNumToThreadNo.put(partitionNo, threadNo);
+    // one pool for all writers of the run, so that an idle thread can steal from any partition
+    if (outputOptions.getWriterExecutor() == null) {
+      CollectorRegistry writerPoolRegistry = registrySupplier.get();
+      threadNameToRegistry.put(WRITER_POOL_THREAD_NAME, writerPoolRegistry);
+      this.writerPool = new WorkStealingWriterPool(numWriteThreads, writerPoolRegistry);
+      outputOptions.withWriterExecutor(writerPool);
+    } else {
+      this.writerPool = null;
+    }
+
+    // construct the list of write threads from validated input
+    // split the file handle budget evenly among write threads
+    this.maxOpenFilesPerThread = maxFileHandles / numWriteThreads;
+
+    // with partition discovery, writers are created as their first partition is discovered
+    if (!outputOptions.isDiscoveringPartitions()) {
+      int maxPartitionsPerThread =
+          (int) ceil(outputFilePaths.size() / Double.valueOf(numWriteThreads));
+      for (int threadNo = 0; threadNo < numWriteThreads; threadNo++) {
+        Map<Integer, String> partitionNumToPath = Maps.newHashMap();
+        for (int partitionNo = threadNo * maxPartitionsPerThread;
+            partitionNo < outputFilePaths.size()
+                && partitionNo < (threadNo + 1) * maxPartitionsPerThread;
+            partitionNo++) {
+
+          // write to a staging file; existing outputs are replaced only once the run completes
+          String ourPath = blockWriter != null || publisher == null
+              ? outputFilePaths.get(partitionNo) : publisher.getStagingPath(partitionNo);
+
+          // maintain routing
+          partitionNumToPath.put(partitionNo, ourPath);
+          router.assign(partitionNo, threadNo);
+        }
+        router.setWriter(threadNo, newWriter(threadNo, partitionNumToPath));
       }
-      
-      // prepare metric emission
-      CollectorRegistry metricsRegistry = registrySupplier.get();
-      threadNameToRegistry.put(String.valueOf(threadNo), metricsRegistry);
-      
-      // build writers
-      AsynchronousWriter writer =
-          new AsynchronousWriter(numWriteThreads, partitionNumToPath, metricsRegistry);
-      writer.startScheduler();
-      threadNumToWriter.put(threadNo, writer);
     }
 
-    // from construction onwards, our maps are immutable (i.e. thread-safe)!
+    // from construction onwards, only the producer changes our routing (i.e. thread-safe)!
   }
 
   /**
@@ -403,7 +932,7 @@ public class InterviewApplication implements Callable<Void> {
    */
   InterviewApplication(//
       Map<Integer, Integer> partitionNoToThreadNo, //
-      MeasurementSampleReader reader, //
+      SampleReader reader, //
       Map<Integer, AsynchronousWriter> threadNumToWriter, //
       Queue<Future<WriteTask>> taskQueue, //
       int maxQueueSize, //
@@ -411,15 +940,40 @@ public class InterviewApplication implements Callable<Void> {
       URL metricsEndpoint, //
       Supplier<CollectorRegistry> registrySupplier) {
 
-    this.partitionNumToThreadNo = partitionNoToThreadNo;
+    int numThreads = threadNumToWriter.keySet().stream().mapToInt(Integer::intValue).max()
+        .orElse(0) + 1;
+    this.router = new PartitionRouter(numThreads);
+    for (Entry<Integer, AsynchronousWriter> entry : threadNumToWriter.entrySet()) {
+      router.setWriter(entry.getKey(), entry.getValue());
+    }
+    for (Entry<Integer, Integer> entry : partitionNoToThreadNo.entrySet()) {
+      router.assign(entry.getKey(), entry.getValue());
+    }
     this.reader = reader;
-    this.threadNumToWriter = threadNumToWriter;
     this.pendingTasks = taskQueue;
     this.maxNumTasks = maxQueueSize;
+    this.maxBatchSize = DEFAULT_BATCH_SIZE;
     this.pollDuration = pollDuration;
     this.metricsEndpoint = metricsEndpoint;
     this.registrySupplier = registrySupplier;
     this.threadNameToRegistry = Maps.newHashMap();
+    this.flushScheduler = new FlushScheduler();
+    this.groupCommitter = null;
+    this.writerPool = null;
+    this.publisher = null;
+    this.blockWriter = null;
+    this.demuxer = null;
+    this.checkpointPath = null;
+    this.checkpointInterval = null;
+    this.staleCleanup = null;
+    this.checkpointedPaths = Lists.newArrayList();
+    this.statePath = null;
+    this.previousState = null;
+    this.inputFile = null;
+    this.outputFilePaths = null;
+    this.outputOptions = OutputOptions.defaults();
+    this.numWriteThreads = numThreads;
+    this.maxOpenFilesPerThread = Integer.MAX_VALUE;
     this.instanceId = "instanceId";
   }
 
@@ -431,28 +985,47 @@ public class InterviewApplication implements Callable<Void> {
     Future<Void> producerFuture = executor.submit(producer);
     Future<Void> consumerFuture = executor.submit(consumer);
 
-    // wait till we're done
-    try {
-      producerFuture.get();
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-    } catch (ExecutionException e) {
-      throw new IllegalStateException("unexpected error", e);
+    // wait till we're done; after a failed read, the consumer still waits for spawned writes
+    ExecutionException failure = awaitTask(producerFuture);
+    if (failure != null) {
+      finishRead();
     }
-    try {
-      consumerFuture.get();
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-    } catch (ExecutionException e) {
-      throw new IllegalStateException("unexpected error", e);
+    ExecutionException consumerFailure = awaitTask(consumerFuture);
+    if (failure == null) {
+      failure = consumerFailure;
     }
 
-    // tidy up
+    // tidy up, whether or not the run failed
     LOG.info("stopping application");
-    reader.close();
-    executor.shutdownNow();
-    for (AsynchronousWriter writer : threadNumToWriter.values()) {
-      writer.close();
+    long inputOffset = statePath != null && failure == null ? reader.getOffset() : 0;
+    RuntimeException shutdownFailure = shutDown();
+    if (failure != null || shutdownFailure != null) {
+      if (blockWriter != null) {
+        blockWriter.discard();
+      }
+      abortPublish();
+      if (failure == null) {
+        throw shutdownFailure;
+      }
+      IllegalStateException e = new IllegalStateException("unexpected error", failure);
+      if (shutdownFailure != null) {
+        e.addSuppressed(shutdownFailure);
+      }
+      throw e;
+    }
+    if (publisher != null) {
+      createEmptyOutputs();
+      publisher.publish();
+    }
+    if (staleCleanup != null) {
+      staleCleanup.join();
+    }
+    if (checkpointPath != null) {
+      deleteQuietly(checkpointPath);
+    }
+    if (statePath != null) {
+      IncrementalState.capture(inputFile, inputOffset, outputFilePaths, previousState)
+          .write(statePath);
     }
 
     // emit all metrics
@@ -480,6 +1053,157 @@ public class InterviewApplication implements Callable<Void> {
     return String.format("%s:%s%s", url.getHost(), url.getPort(), url.getPath());
   }
 
+  /**
+   * Run a step of the shutdown, keeping the first failure and suppressing later ones.
+   * 
+   * @param failure first failure so far, or <code>null</code>
+   * @param step step to run
+   * @return first failure, or <code>null</code>
+   */
+  private static RuntimeException attempt(RuntimeException failure, Runnable step) {
+    try {
+      step.run();
+    } catch (RuntimeException e) {
+      if (failure == null) {
+        return e;
+      }
+      failure.addSuppressed(e);
+    }
+    return failure;
+  }
+
+  /**
+   * Wait for a task of the application to complete.
+   * 
+   * @param task producer or consumer
+   * @return failure of the task, or <code>null</code>
+   */
+  private static ExecutionException awaitTask(Future<Void> task) {
+    try {
+      task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      return e;
+    }
+    return null;
+  }
+
+  /**
+   * Mark the read phase as complete, so that the consumer stops waiting for new writes.
+   */
+  private void finishRead() {
+    taskLock.lock();
+    try {
+      readComplete.set(true);
+      sampleAvailable.signalAll();
+    } finally {
+      taskLock.unlock();
+    }
+  }
+
+  /**
+   * Stop every thread of the run and close every file it holds open. The writers complete their
+   * in-flight writes first, so that nothing touches the staging files afterwards. Every step is
+   * attempted, even if an earlier one fails.
+   * 
+   * @return first failure, e.g. of demultiplexing the journal, or <code>null</code>
+   */
+  private RuntimeException shutDown() {
+    RuntimeException failure = attempt(null, reader::close);
+    failure = attempt(failure, () -> {
+      executor.shutdownNow();
+      try {
+        executor.awaitTermination(pollDuration.toMillis(), TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    for (AsynchronousWriter writer : router.getWriters()) {
+      failure = attempt(failure, writer::close);
+    }
+    if (writerPool != null) {
+      failure = attempt(failure, () -> {
+        writerPool.shutdown();
+        try {
+          writerPool.awaitTermination(pollDuration.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+    }
+    if (groupCommitter != null) {
+      failure = attempt(failure, groupCommitter::close);
+    }
+    failure = attempt(failure, flushScheduler::close);
+    if (blockWriter != null) {
+      failure = attempt(failure, blockWriter::close);
+    }
+    if (demuxer != null) {
+      failure = attempt(failure, demuxer::close); // waits for the last journal segment
+    }
+    return failure;
+  }
+
+  /**
+   * Open and close a writer for each partition that received no samples, so that its output is
+   * valid in the output format, e.g. an empty gzip member when compressed, rather than a 0-byte
+   * file. Block writers and discovered partitions create their own files.
+   */
+  private void createEmptyOutputs() {
+    if (blockWriter != null || outputOptions.isDiscoveringPartitions()) {
+      return;
+    }
+    for (int partitionNo = 0; partitionNo < outputFilePaths.size(); partitionNo++) {
+      File stagingFile = Paths.get(publisher.getStagingPath(partitionNo)).toFile();
+      if (!stagingFile.exists()) {
+        AggregateSampleWriter.fromFile(stagingFile, FlushPolicy.DEFAULT, outputOptions).close();
+      }
+    }
+  }
+
+  /**
+   * Discard the staging files of a failed run; the previous outputs remain in place.
+   */
+  private void abortPublish() {
+    if (checkpointPath != null) {
+      LOG.warn(String.format("keeping staging files to resume from -- checkpoint: %s",
+          checkpointPath));
+    } else if (publisher != null) {
+      publisher.abort();
+    }
+  }
+
+  private static void deleteQuietly(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      LOG.warn(String.format("Unable to delete file -- path: %s, message: %s", path,
+          e.getMessage()));
+    }
+  }
+
+  /**
+   * Build and start the writer of a write thread.
+   * 
+   * @param threadNo thread number (indexed from zero)
+   * @param partitionNumToPath paths of the partitions the thread owns
+   * @return started writer
+   */
+  private AsynchronousWriter newWriter(int threadNo, Map<Integer, String> partitionNumToPath) {
+
+    // prepare metric emission
+    CollectorRegistry metricsRegistry = registrySupplier.get();
+    threadNameToRegistry.put(String.valueOf(threadNo), metricsRegistry);
+
+    // build writer
+    AsynchronousWriter writer = new AsynchronousWriter(numWriteThreads, partitionNumToPath,
+        metricsRegistry, outputOptions, maxOpenFilesPerThread, flushScheduler, groupCommitter,
+        blockWriter);
+    writer.startScheduler();
+    return writer;
+  }
+
   private Instant randomizedPrintTime() {
     Instant nextPrintTime;
     Duration randomizedDuration =
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.tesla.interview.application.SharedWriterPool.Lane;
+import com.tesla.interview.io.OutputOptions;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Gauge;
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs many jobs at once on a fixed budget of writer threads and file handles.
+ * <p/>
+ * At most a fixed number of jobs run at a time; further jobs wait, highest priority first, then in
+ * submission order. Every running job writes through its own lane of one {@link SharedWriterPool},
+ * whose threads are shared in proportion to job priorities, so a large job cannot starve small
+ * ones and the number of writer threads never grows with the number of jobs. Each lane bounds the
+ * writes a job has in flight, which pushes back on that job's reader alone. The file handle budget
+ * is split evenly between the job slots.
+ */
+public class JobScheduler implements Closeable {
+
+  /**
+   * A job that runs on the resources granted by the scheduler.
+   */
+  public interface Job {
+
+    /**
+     * Run the job to completion.
+     * 
+     * @param writerExecutor executor for the job's writes; see
+     *        {@link OutputOptions#withWriterExecutor(ExecutorService)}
+     * @param maxFileHandles max. number of output files the job may keep open at a time
+     */
+    void run(ExecutorService writerExecutor, int maxFileHandles);
+  }
+
+  /**
+   * A job waiting for, or holding, a job slot.
+   */
+  private class ScheduledJob implements Runnable, Comparable<ScheduledJob> {
+    final CompletableFuture<Void> completion = new CompletableFuture<>();
+    final String name;
+    final int priority;
+    final long sequenceNo;
+    final Job job;
+
+    ScheduledJob(String name, int priority, Job job) {
+      this.name = name;
+      this.priority = priority;
+      this.sequenceNo = nextSequenceNo.getAndIncrement();
+      this.job = job;
+    }
+
+    @Override
+    public int compareTo(ScheduledJob other) {
+      if (priority != other.priority) {
+        return Integer.compare(other.priority, priority); // highest priority first
+      }
+      return Long.compare(sequenceNo, other.sequenceNo);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return this == other;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(this);
+    }
+
+    @Override
+    public void run() {
+      Lane lane = writerPool.newLane(name, priority, maxUnfinishedWritesPerJob);
+      runningJobs.inc();
+      LOG.info(String.format("starting job -- name: %s, priority: %d", name, priority));
+      try {
+        job.run(lane, fileHandlesPerJob);
+        lane.shutdown();
+        completion.complete(null);
+      } catch (Throwable e) {
+        // an error must not leave the job's caller waiting forever or its lane running
+        lane.shutdownNow();
+        completion.completeExceptionally(e);
+        if (e instanceof Error) {
+          throw (Error) e;
+        }
+      } finally {
+        runningJobs.dec();
+      }
+    }
+  }
+
+  private static final Logger LOG = getLogger(JobScheduler.class);
+
+  private final AtomicLong nextSequenceNo = new AtomicLong(0 /* initialValue */);
+  private final SharedWriterPool writerPool;
+  private final ThreadPoolExecutor runners;
+
+  final int fileHandlesPerJob;
+  final int maxUnfinishedWritesPerJob;
+  final Gauge runningJobs;
+
+  /**
+   * Canonical constructor.
+   * 
+   * @param numWriteThreads number of writer threads shared by all jobs
+   * @param maxFileHandles max. number of output files open at a time across all jobs
+   * @param maxConcurrentJobs max. number of jobs running at a time
+   * @param maxUnfinishedWritesPerJob max. number of writes a job has in flight before it blocks
+   * @param metricsRegistry registry to which scheduler metrics are published
+   */
+  public JobScheduler(int numWriteThreads, int maxFileHandles, int maxConcurrentJobs,
+      int maxUnfinishedWritesPerJob, CollectorRegistry metricsRegistry) {
+    if (numWriteThreads <= 0) {
+      throw new IllegalArgumentException("numWriteThreads must be positive");
+    }
+    if (maxConcurrentJobs <= 0) {
+      throw new IllegalArgumentException("maxConcurrentJobs must be positive");
+    }
+    if (maxFileHandles < maxConcurrentJobs) {
+      throw new IllegalArgumentException("maxFileHandles must be at least maxConcurrentJobs");
+    }
+    if (maxUnfinishedWritesPerJob <= 0) {
+      throw new IllegalArgumentException("maxUnfinishedWritesPerJob must be positive");
+    }
+
+    this.fileHandlesPerJob = maxFileHandles / maxConcurrentJobs;
+    this.maxUnfinishedWritesPerJob = maxUnfinishedWritesPerJob;
+    this.runningJobs = Gauge.build().name("runningJobs").help("jobs holding a job slot")
+        .register(metricsRegistry);
+    this.writerPool = new SharedWriterPool(numWriteThreads, metricsRegistry);
+    AtomicInteger runnerNo = new AtomicInteger(0 /* initialValue */);
+    this.runners = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs,
+        0L /* keepAliveTime */, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+        (Runnable r) -> {
+          Thread thread = new Thread(r, "job-runner-" + runnerNo.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /**
+   * Stop accepting jobs, then wait for queued and running jobs to complete.
+   */
+  @Override
+  public void close() {
+    runners.shutdown();
+    try {
+      while (!runners.awaitTermination(1, TimeUnit.SECONDS)) {
+        LOG.info("waiting for jobs to complete");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      writerPool.close();
+    }
+  }
+
+  public int getFileHandlesPerJob() {
+    return fileHandlesPerJob;
+  }
+
+  /**
+   * Queue a job. It starts once a job slot is free and no queued job has a higher priority or was
+   * submitted earlier with the same priority.
+   * 
+   * @param name name of the job, for logs and metrics
+   * @param priority priority of the job, which is also its share of the writer threads
+   * @param job job to run
+   * @return completes once the job has run, exceptionally if it failed
+   * @throws IllegalStateException if the scheduler is closed
+   */
+  public CompletableFuture<Void> submit(String name, int priority, Job job) {
+    if (name == null || name.isEmpty()) {
+      throw new IllegalArgumentException("name must be non-empty");
+    }
+    if (priority <= 0) {
+      throw new IllegalArgumentException("priority must be positive");
+    }
+    if (job == null) {
+      throw new IllegalArgumentException("job cannot be null");
+    }
+
+    ScheduledJob scheduled = new ScheduledJob(name, priority, job);
+    try {
+      runners.execute(scheduled);
+    } catch (RejectedExecutionException e) {
+      throw new IllegalStateException("scheduler is closed", e);
+    }
+    return scheduled.completion;
+  }
+}
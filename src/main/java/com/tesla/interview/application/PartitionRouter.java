@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application;
+
+import com.google.common.collect.Lists;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Routes each partition to the write thread, and thus the {@link AsynchronousWriter}, that owns
+ * it.
+ * <p/>
+ * Partitions are looked up by index in a primitive array that grows as partitions are discovered,
+ * so routing a sample neither boxes nor hashes its partition number. Not thread-safe: partitions
+ * are assigned and routed only by the thread reading the input.
+ */
+class PartitionRouter {
+
+  private static final int UNASSIGNED = -1;
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final AsynchronousWriter[] threadNumToWriter;
+  private int[] partitionNumToThreadNo; // note: partitions indexed from 0
+  private int numPartitions;
+
+  /**
+   * Canonical constructor.
+   * 
+   * @param numThreads number of write threads
+   */
+  PartitionRouter(int numThreads) {
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException("numThreads must be positive");
+    }
+
+    this.threadNumToWriter = new AsynchronousWriter[numThreads];
+    this.partitionNumToThreadNo = new int[INITIAL_CAPACITY];
+    Arrays.fill(partitionNumToThreadNo, UNASSIGNED);
+  }
+
+  /**
+   * Route a partition to a write thread.
+   * 
+   * @param partitionNo partition number (indexed from zero)
+   * @param threadNo thread number (indexed from zero)
+   */
+  void assign(int partitionNo, int threadNo) {
+    if (partitionNo < 0) {
+      throw new IllegalArgumentException("partitionNo must be non-negative");
+    }
+    if (threadNo < 0 || threadNo >= threadNumToWriter.length) {
+      throw new IllegalArgumentException(
+          String.format("threadNo must be less than numThreads -- threadNo: %d", threadNo));
+    }
+
+    if (partitionNo >= partitionNumToThreadNo.length) {
+      int oldCapacity = partitionNumToThreadNo.length;
+      int newCapacity = Math.max(partitionNo + 1, oldCapacity * 2);
+      partitionNumToThreadNo = Arrays.copyOf(partitionNumToThreadNo, newCapacity);
+      Arrays.fill(partitionNumToThreadNo, oldCapacity, newCapacity, UNASSIGNED);
+    }
+    if (partitionNumToThreadNo[partitionNo] == UNASSIGNED) {
+      numPartitions++;
+    }
+    partitionNumToThreadNo[partitionNo] = threadNo;
+  }
+
+  int getNumPartitions() {
+    return numPartitions;
+  }
+
+  int getNumThreads() {
+    return threadNumToWriter.length;
+  }
+
+  /**
+   * Get the thread that owns a partition.
+   * 
+   * @param partitionNo partition number (indexed from zero)
+   * @return thread number or <code>-1</code> if the partition is not assigned
+   */
+  int getThreadNo(int partitionNo) {
+    return partitionNo >= 0 && partitionNo < partitionNumToThreadNo.length
+        ? partitionNumToThreadNo[partitionNo] : UNASSIGNED;
+  }
+
+  /**
+   * Get the writer of a thread.
+   * 
+   * @param threadNo thread number (indexed from zero)
+   * @return writer or <code>null</code> if the thread has none yet
+   */
+  AsynchronousWriter getWriter(int threadNo) {
+    return threadNo >= 0 && threadNo < threadNumToWriter.length ? threadNumToWriter[threadNo]
+        : null;
+  }
+
+  /**
+   * Get the writers of all threads that have one.
+   * 
+   * @return writers in thread order
+   */
+  List<AsynchronousWriter> getWriters() {
+    List<AsynchronousWriter> writers = Lists.newArrayList();
+    for (AsynchronousWriter writer : threadNumToWriter) {
+      if (writer != null) {
+        writers.add(writer);
+      }
+    }
+    return writers;
+  }
+
+  /**
+   * Get the writer of the thread that owns a partition.
+   * 
+   * @param partitionNo partition number (indexed from zero)
+   * @return writer or <code>null</code> if the partition is not assigned
+   */
+  AsynchronousWriter route(int partitionNo) {
+    return getWriter(getThreadNo(partitionNo));
+  }
+
+  /**
+   * Set the writer of a thread.
+   * 
+   * @param threadNo thread number (indexed from zero)
+   * @param writer writer that executes the thread's writes
+   */
+  void setWriter(int threadNo, AsynchronousWriter writer) {
+    threadNumToWriter[threadNo] = writer;
+  }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.tesla.interview.application.WorkStealingWriterPool.PartitionedFutureTask;
+import com.tesla.interview.application.WorkStealingWriterPool.PartitionedTask;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A fixed-size pool of writer threads shared by several jobs.
+ * <p/>
+ * Each job writes through its own {@link Lane}, an executor that, like
+ * {@link WorkStealingWriterPool}, never runs two tasks of the same partition concurrently and runs
+ * them in submission order. Threads pick the next lane by stride scheduling: every task a lane
+ * runs advances its pass by the inverse of its weight, and the lane with the lowest pass goes
+ * next. Busy lanes thus share the threads in proportion to their weights, however many tasks each
+ * has queued, and an idle lane does not bank credit. Each lane admits a bounded number of
+ * unfinished tasks; submitting more blocks the job until one of its tasks completes.
+ */
+public class SharedWriterPool implements Closeable {
+
+  /**
+   * The pending tasks of one partition of a lane.
+   */
+  private static class PartitionWork {
+    final Queue<Runnable> pending = new ArrayDeque<>();
+    boolean isReady;
+    boolean isHeld;
+  }
+
+  /**
+   * The executor through which one job submits its writes.
+   */
+  public class Lane extends AbstractExecutorService {
+    private final Map<Integer, PartitionWork> partitionNumToWork = Maps.newHashMap();
+    private final Queue<PartitionWork> ready = new ArrayDeque<>();
+    private final Semaphore room;
+    private final long stride;
+    private long pass;
+    private int numUnfinished;
+    private boolean isShutdown;
+
+    final String name;
+    final int weight;
+
+    private Lane(String name, int weight, int maxUnfinishedTasks) {
+      this.name = name;
+      this.weight = weight;
+      this.stride = STRIDE / weight;
+      this.room = new Semaphore(maxUnfinishedTasks);
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      long remainingNanos = unit.toNanos(timeout);
+      lock.lock();
+      try {
+        while (!isTerminated()) {
+          if (remainingNanos <= 0) {
+            return false;
+          }
+          remainingNanos = laneDrained.awaitNanos(remainingNanos);
+        }
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Queue a task, blocking while the lane has its maximum number of unfinished tasks.
+     * 
+     * @param command task to run
+     * @throws RejectedExecutionException if the lane is shut down or the caller is interrupted
+     */
+    @Override
+    public void execute(Runnable command) {
+      if (command == null) {
+        throw new IllegalArgumentException("command cannot be null");
+      }
+      try {
+        room.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RejectedExecutionException("interrupted while waiting for room", e);
+      }
+
+      lock.lock();
+      try {
+        if (isShutdown || isClosed) {
+          room.release();
+          throw new RejectedExecutionException(
+              String.format("lane has been shut down -- name: %s", name));
+        }
+
+        PartitionWork work;
+        if (command instanceof PartitionedTask) {
+          work = partitionNumToWork.computeIfAbsent(((PartitionedTask) command).getPartitionNo(),
+              (Integer p) -> new PartitionWork());
+        } else {
+          work = new PartitionWork(); // unordered task: a partition of its own
+        }
+        work.pending.add(command);
+        numUnfinished++;
+        if (!work.isReady && !work.isHeld) {
+          markReady(work);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public boolean isShutdown() {
+      lock.lock();
+      try {
+        return isShutdown;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public boolean isTerminated() {
+      lock.lock();
+      try {
+        return isShutdown && numUnfinished == 0;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Stop accepting tasks. Queued tasks still run; the lane leaves the pool once they are done.
+     */
+    @Override
+    public void shutdown() {
+      lock.lock();
+      try {
+        isShutdown = true;
+        retireIfDrained(this);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      List<Runnable> stragglers = Lists.newArrayList();
+      lock.lock();
+      try {
+        isShutdown = true;
+        for (PartitionWork work : ready) {
+          stragglers.addAll(work.pending);
+          work.pending.clear();
+          work.isReady = false;
+        }
+        ready.clear();
+        for (PartitionWork work : partitionNumToWork.values()) {
+          stragglers.addAll(work.pending); // of partitions held by a thread
+          work.pending.clear();
+        }
+        numUnfinished -= stragglers.size();
+        room.release(stragglers.size());
+        retireIfDrained(this);
+      } finally {
+        lock.unlock();
+      }
+      return stragglers;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+      if (callable instanceof PartitionedTask) {
+        return new PartitionedFutureTask<T>(callable,
+            ((PartitionedTask) callable).getPartitionNo());
+      } else {
+        return super.newTaskFor(callable);
+      }
+    }
+
+    /**
+     * Queue a partition that has tasks and is not held by a thread. Requires the pool lock.
+     * 
+     * @param work partition to queue
+     */
+    private void markReady(PartitionWork work) {
+      if (ready.isEmpty()) {
+        pass = Math.max(pass, virtualTime); // an idle lane does not bank credit
+      }
+      work.isReady = true;
+      ready.add(work);
+      hasWork.signal();
+    }
+  }
+
+  private static final long STRIDE = 1L << 20;
+  private static final Logger LOG = getLogger(SharedWriterPool.class);
+
+  private final Lock lock = new ReentrantLock();
+  private final Condition hasWork = lock.newCondition();
+  private final Condition laneDrained = lock.newCondition();
+  private final List<Lane> lanes = Lists.newArrayList();
+  private final List<Thread> workers = Lists.newArrayList();
+  private long virtualTime;
+  private boolean isClosed;
+
+  final Counter completedTasks;
+
+  /**
+   * Canonical constructor. Starts the writer threads.
+   * 
+   * @param numThreads number of writer threads shared by all lanes
+   * @param metricsRegistry registry to which pool metrics are published
+   */
+  @SuppressFBWarnings("SC_START_IN_CTOR")
+  public SharedWriterPool(int numThreads, CollectorRegistry metricsRegistry) {
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException("numThreads must be positive");
+    }
+
+    this.completedTasks = Counter.build().name("sharedWriterTasks")
+        .help("tasks run by the shared writer pool").register(metricsRegistry);
+    for (int workerNo = 0; workerNo < numThreads; workerNo++) {
+      Thread worker = new Thread(this::work, String.format("shared-writer-%d", workerNo));
+      worker.setDaemon(true);
+      workers.add(worker);
+    }
+    for (Thread worker : workers) {
+      worker.start();
+    }
+  }
+
+  /**
+   * Stop the writer threads once they finish their current task. Tasks still queued are dropped;
+   * shut down and await every lane first.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      isClosed = true;
+      hasWork.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getNumThreads() {
+    return workers.size();
+  }
+
+  /**
+   * Open a lane for a job.
+   * 
+   * @param name name of the job, for logs and metrics
+   * @param weight share of the threads relative to other lanes with work
+   * @param maxUnfinishedTasks max. number of tasks queued or running before submitting blocks
+   * @return new lane
+   */
+  public Lane newLane(String name, int weight, int maxUnfinishedTasks) {
+    if (name == null || name.isEmpty()) {
+      throw new IllegalArgumentException("name must be non-empty");
+    }
+    if (weight <= 0) {
+      throw new IllegalArgumentException("weight must be positive");
+    }
+    if (maxUnfinishedTasks <= 0) {
+      throw new IllegalArgumentException("maxUnfinishedTasks must be positive");
+    }
+
+    Lane lane = new Lane(name, weight, maxUnfinishedTasks);
+    lock.lock();
+    try {
+      if (isClosed) {
+        throw new IllegalStateException("pool is closed");
+      }
+      lanes.add(lane);
+    } finally {
+      lock.unlock();
+    }
+    return lane;
+  }
+
+  int numLanes() {
+    lock.lock();
+    try {
+      return lanes.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Pick the ready lane with the lowest pass. Requires the pool lock.
+   * 
+   * @return lane or <code>null</code> if no lane has a ready partition
+   */
+  private Lane nextLane() {
+    Lane next = null;
+    for (Lane lane : lanes) {
+      if (!lane.ready.isEmpty() && (next == null || lane.pass < next.pass)) {
+        next = lane;
+      }
+    }
+    return next;
+  }
+
+  /**
+   * Remove a shut down lane without unfinished tasks. Requires the pool lock.
+   * 
+   * @param lane lane to check
+   */
+  private void retireIfDrained(Lane lane) {
+    if (lane.isShutdown && lane.numUnfinished == 0) {
+      lanes.remove(lane);
+      laneDrained.signalAll();
+    }
+  }
+
+  /**
+   * Body of a writer thread: run one task of the lane that is furthest behind its share, then
+   * pick again.
+   */
+  private void work() {
+    while (true) {
+      Lane lane;
+      PartitionWork work;
+      Runnable task;
+      lock.lock();
+      try {
+        lane = null;
+        while (!isClosed && (lane = nextLane()) == null) {
+          hasWork.awaitUninterruptibly();
+        }
+        if (lane == null) {
+          return; // closed
+        }
+        work = lane.ready.remove();
+        work.isReady = false;
+        work.isHeld = true;
+        task = work.pending.remove();
+        virtualTime = lane.pass;
+        lane.pass += lane.stride;
+      } finally {
+        lock.unlock();
+      }
+
+      try {
+        task.run(); // FutureTask captures any exception for the caller
+      } catch (RuntimeException e) {
+        LOG.error(String.format("Unexpected error in writer task -- lane: %s, message: %s",
+            lane.name, e.getMessage()));
+      }
+      completedTasks.inc();
+
+      lock.lock();
+      try {
+        work.isHeld = false;
+        if (!work.pending.isEmpty()) {
+          lane.markReady(work); // behind the lane's other partitions
+        }
+        lane.numUnfinished--;
+        lane.room.release();
+        retireIfDrained(lane);
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
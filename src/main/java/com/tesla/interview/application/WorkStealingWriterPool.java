@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application;
+
+import static java.lang.Math.floorMod;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.google.common.collect.Lists;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import java.time.Duration;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A fixed-size pool of writer threads that executes tasks partition by partition.
+ * <p/>
+ * Each worker thread owns a deque of partitions with pending work. A partition is placed on the
+ * deque of its home worker when its first task arrives. Workers take partitions from the head of
+ * their own deque; an idle worker steals a partition from the tail of a busy worker's deque,
+ * thereby taking over that partition's entire pending batch. A partition is held by at most one
+ * worker at a time, so tasks for the same partition never run concurrently and always run in
+ * submission order.
+ */
+public class WorkStealingWriterPool extends AbstractExecutorService {
+
+  /**
+   * A task whose execution must be ordered with respect to other tasks of the same partition.
+   */
+  interface PartitionedTask {
+
+    /**
+     * Get the partition to which this task belongs.
+     * 
+     * @return partition number
+     */
+    int getPartitionNo();
+  }
+
+  /**
+   * A {@link FutureTask} that remembers the partition of the task it wraps.
+   */
+  static class PartitionedFutureTask<T> extends FutureTask<T> implements PartitionedTask {
+    private final int partitionNo;
+
+    PartitionedFutureTask(Callable<T> callable, int partitionNo) {
+      super(callable);
+      this.partitionNo = partitionNo;
+    }
+
+    @Override
+    public int getPartitionNo() {
+      return partitionNo;
+    }
+  }
+
+  /**
+   * All pending work for a single partition.
+   */
+  static class PartitionWork {
+    final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    final AtomicBoolean isQueued = new AtomicBoolean(false /* initialValue */);
+    final int homeWorkerNo;
+
+    PartitionWork(int homeWorkerNo) {
+      this.homeWorkerNo = homeWorkerNo;
+    }
+  }
+
+  /**
+   * A thread that drains partitions from its own deque and steals from others when idle.
+   */
+  class Worker extends Thread {
+    final Deque<PartitionWork> deque = new ConcurrentLinkedDeque<>();
+    final int workerNo;
+
+    Worker(int workerNo) {
+      super(String.format("writer-%d", workerNo));
+      this.workerNo = workerNo;
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (!isStopped.get()) {
+        // every task accepted before the shutdown is enqueued by now, so this look finds it
+        boolean isLastLook = isShutdown.get();
+        PartitionWork work = deque.pollFirst();
+        if (work == null) {
+          work = steal(workerNo);
+        }
+
+        if (work != null) {
+          drain(work, this);
+        } else if (isLastLook) {
+          break; // nothing left anywhere
+        } else {
+          awaitWork();
+        }
+      }
+    }
+  }
+
+  private static final Duration DEFAULT_IDLE_DELAY = Duration.ofMillis(100);
+  private static final int DEFAULT_MAX_DRAIN = 1024;
+  private static final Logger LOG = getLogger(WorkStealingWriterPool.class);
+
+  private final ReadWriteLock submitLock = new ReentrantReadWriteLock();
+  private final Lock idleLock = new ReentrantLock();
+  private final Condition workAvailable = idleLock.newCondition();
+  private final AtomicBoolean isShutdown = new AtomicBoolean(false /* initialValue */);
+  private final AtomicBoolean isStopped = new AtomicBoolean(false /* initialValue */);
+  private final AtomicInteger nextAnonymousWorker = new AtomicInteger(0 /* initialValue */);
+  private final Map<Integer, PartitionWork> partitionNumToWork = new ConcurrentHashMap<>();
+
+  final Worker[] workers;
+  final Duration idleDelay;
+  final int maxDrain;
+  final Counter stolenPartitions;
+
+  /**
+   * Canonical constructor.
+   * 
+   * @param numThreads number of worker threads
+   * @param metricsRegistry registry to which pool metrics are published
+   */
+  public WorkStealingWriterPool(int numThreads, CollectorRegistry metricsRegistry) {
+    this(numThreads, DEFAULT_IDLE_DELAY, DEFAULT_MAX_DRAIN, metricsRegistry);
+  }
+
+  /**
+   * Injection constructor for unit tests.
+   * 
+   * @param numThreads number of worker threads
+   * @param idleDelay max. time an idle worker sleeps before looking for work again
+   * @param maxDrain max. number of tasks a worker runs for one partition before yielding it
+   * @param metricsRegistry registry to which pool metrics are published
+   */
+  @SuppressFBWarnings("SC_START_IN_CTOR")
+  WorkStealingWriterPool(int numThreads, Duration idleDelay, int maxDrain,
+      CollectorRegistry metricsRegistry) {
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException("numThreads must be positive");
+    }
+    if (maxDrain <= 0) {
+      throw new IllegalArgumentException("maxDrain must be positive");
+    }
+
+    this.idleDelay = idleDelay;
+    this.maxDrain = maxDrain;
+    this.stolenPartitions = Counter.build().name("stolenPartitions")
+        .help("partition batches stolen by idle writer threads").register(metricsRegistry);
+    this.workers = new Worker[numThreads];
+    for (int workerNo = 0; workerNo < numThreads; workerNo++) {
+      workers[workerNo] = new Worker(workerNo);
+    }
+    for (Worker worker : workers) {
+      worker.start();
+    }
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (Worker worker : workers) {
+      long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+      if (remainingMillis <= 0) {
+        break;
+      }
+      worker.join(remainingMillis);
+    }
+    return isTerminated();
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    if (command == null) {
+      throw new IllegalArgumentException("command cannot be null");
+    }
+
+    // submitters share the lock, so a shutdown waits until every accepted task is enqueued
+    submitLock.readLock().lock();
+    try {
+      if (isShutdown.get()) {
+        throw new RejectedExecutionException("pool has been shut down");
+      }
+
+      final PartitionWork work;
+      if (command instanceof PartitionedTask) {
+        int partitionNo = ((PartitionedTask) command).getPartitionNo();
+        work = partitionNumToWork.computeIfAbsent(partitionNo,
+            (Integer p) -> new PartitionWork(floorMod(p, workers.length)));
+      } else {
+        // unordered task: give it a partition of its own
+        work = new PartitionWork(floorMod(nextAnonymousWorker.getAndIncrement(), workers.length));
+      }
+
+      work.pending.add(command);
+      if (work.isQueued.compareAndSet(false, true)) {
+        workers[work.homeWorkerNo].deque.addLast(work);
+        signalWork();
+      }
+    } finally {
+      submitLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return isShutdown.get();
+  }
+
+  @Override
+  public boolean isTerminated() {
+    for (Worker worker : workers) {
+      if (worker.isAlive()) {
+        return false;
+      }
+    }
+    return isShutdown.get();
+  }
+
+  @Override
+  public void shutdown() {
+    markShutdown();
+    signalAllWorkers();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    markShutdown();
+    isStopped.set(true);
+    for (Worker worker : workers) {
+      worker.interrupt();
+    }
+
+    List<Runnable> stragglers = Lists.newArrayList();
+    for (Worker worker : workers) {
+      PartitionWork work;
+      while ((work = worker.deque.pollFirst()) != null) {
+        Runnable next;
+        while ((next = work.pending.poll()) != null) {
+          stragglers.add(next);
+        }
+      }
+    }
+    return stragglers;
+  }
+
+  @Override
+  protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+    if (callable instanceof PartitionedTask) {
+      return new PartitionedFutureTask<T>(callable, ((PartitionedTask) callable).getPartitionNo());
+    } else {
+      return super.newTaskFor(callable);
+    }
+  }
+
+  /**
+   * Suspend an idle worker until new work may be available.
+   */
+  @SuppressFBWarnings("RV_RETURN_VALUE_IGNORED_BAD_PRACTICE")
+  private void awaitWork() {
+    idleLock.lock();
+    try {
+      workAvailable.await(idleDelay.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      // we were deliberately interrupted; good time to check again
+    } finally {
+      idleLock.unlock();
+    }
+  }
+
+  /**
+   * Run a bounded batch of tasks for the partition, then release it. If more tasks arrived in the
+   * meantime, the partition goes back to the tail of the draining worker's deque.
+   * 
+   * @param work partition whose tasks to run
+   * @param worker worker that holds the partition
+   */
+  private void drain(PartitionWork work, Worker worker) {
+    Runnable next;
+    int numDrained = 0;
+    while (numDrained < maxDrain && !isStopped.get() && (next = work.pending.poll()) != null) {
+      next.run(); // FutureTask captures any exception for the caller
+      numDrained++;
+    }
+
+    work.isQueued.set(false);
+    if (!work.pending.isEmpty() && work.isQueued.compareAndSet(false, true)) {
+      worker.deque.addLast(work);
+    }
+  }
+
+  /**
+   * Reject further tasks. Returns once every task accepted so far has been enqueued, so that
+   * workers looking for work afterwards find all of it.
+   */
+  private void markShutdown() {
+    submitLock.writeLock().lock();
+    try {
+      isShutdown.set(true);
+    } finally {
+      submitLock.writeLock().unlock();
+    }
+  }
+
+  private void signalAllWorkers() {
+    idleLock.lock();
+    try {
+      workAvailable.signalAll();
+    } finally {
+      idleLock.unlock();
+    }
+  }
+
+  private void signalWork() {
+    idleLock.lock();
+    try {
+      workAvailable.signal();
+    } finally {
+      idleLock.unlock();
+    }
+  }
+
+  /**
+   * Take a whole partition from the tail of another worker's deque.
+   * 
+   * @param thiefNo number of the idle worker
+   * @return stolen partition or <code>null</code> if no other worker has pending partitions
+   */
+  private PartitionWork steal(int thiefNo) {
+    for (int i = 1; i < workers.length; i++) {
+      Worker victim = workers[(thiefNo + i) % workers.length];
+      PartitionWork stolen = victim.deque.pollLast();
+      if (stolen != null) {
+        stolenPartitions.inc();
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(String.format("stole partition -- thief: %d, victim: %d", thiefNo,
+              victim.workerNo));
+        }
+        return stolen;
+      }
+    }
+    return null;
+  }
+}
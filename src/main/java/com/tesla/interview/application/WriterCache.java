@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.tesla.interview.io.AggregateSampleWriter;
+import com.tesla.interview.io.FlushPolicy;
+import com.tesla.interview.io.FlushScheduler;
+import com.tesla.interview.io.GroupCommitter;
+import com.tesla.interview.io.OutputOptions;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import java.io.Closeable;
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps at most a fixed number of {@link AggregateSampleWriter}s open at a time.
+ * <p/>
+ * Writers are kept in least-recently-used order. When a writer must be opened and the budget is
+ * exhausted, the least recently used writer that is not in use is closed; its file is reopened in
+ * append mode the next time its partition is written. A writer is in use between
+ * {@link #acquire(String)} and {@link #release(String)} and is never closed in between. If every
+ * open writer is in use, the budget is exceeded temporarily rather than blocking the caller.
+ */
+public class WriterCache implements Closeable {
+
+  /**
+   * An open writer and the number of callers currently using it.
+   */
+  private static class CachedWriter {
+    final AggregateSampleWriter writer;
+    int numUsers;
+
+    CachedWriter(AggregateSampleWriter writer) {
+      this.writer = writer;
+    }
+  }
+
+  private static final Logger LOG = getLogger(WriterCache.class);
+
+  private final LinkedHashMap<String, CachedWriter> openWriters =
+      new LinkedHashMap<>(16 /* initialCapacity */, 0.75f /* loadFactor */, true /* accessOrder */);
+  private final Set<String> createdPaths = Sets.newHashSet();
+  private final Map<String, FlushPolicy> pathToFlushPolicy;
+  private final OutputOptions outputOptions;
+  private final FlushScheduler flushScheduler;
+  private final GroupCommitter groupCommitter;
+  private boolean isClosed;
+
+  final int maxOpenWriters;
+  final Counter hits;
+  final Counter misses;
+  final Counter evictions;
+  final Gauge openFiles;
+
+  /**
+   * Canonical constructor. No file is opened up front; each file is created on first use, so
+   * partitions without samples never get a file handle and startup does not scale with the number
+   * of partitions.
+   * 
+   * @param maxOpenWriters max. number of files open at a time
+   * @param pathToFlushPolicy flush policy of each file this cache may open
+   * @param outputOptions decide how files are written and when they are forced to stable storage
+   * @param flushScheduler timer that flushes latency-sensitive writers while they are open
+   * @param groupCommitter committer that forces writers while they are open, or <code>null</code>
+   * @param metricsRegistry registry to which cache metrics are published
+   */
+  public WriterCache(int maxOpenWriters, Map<String, FlushPolicy> pathToFlushPolicy,
+      OutputOptions outputOptions, FlushScheduler flushScheduler, GroupCommitter groupCommitter,
+      CollectorRegistry metricsRegistry) {
+    if (maxOpenWriters <= 0) {
+      throw new IllegalArgumentException("maxOpenWriters must be positive");
+    }
+    if (pathToFlushPolicy == null) {
+      throw new IllegalArgumentException("pathToFlushPolicy cannot be null");
+    }
+    if (outputOptions == null) {
+      throw new IllegalArgumentException("outputOptions cannot be null");
+    }
+    if (flushScheduler == null) {
+      throw new IllegalArgumentException("flushScheduler cannot be null");
+    }
+
+    this.maxOpenWriters = maxOpenWriters;
+    this.pathToFlushPolicy = pathToFlushPolicy;
+    this.outputOptions = outputOptions;
+    this.flushScheduler = flushScheduler;
+    this.groupCommitter = groupCommitter;
+    this.hits = Counter.build().name("writerCacheHits")
+        .help("writes to a file that was already open").register(metricsRegistry);
+    this.misses = Counter.build().name("writerCacheMisses")
+        .help("writes that had to open or reopen a file").register(metricsRegistry);
+    this.evictions = Counter.build().name("writerCacheEvictions")
+        .help("files closed to stay within the file handle budget").register(metricsRegistry);
+    this.openFiles = Gauge.build().name("openFiles").help("output files currently open")
+        .register(metricsRegistry);
+  }
+
+  /**
+   * Injection constructor for unit tests. The injected writers are never evicted.
+   * 
+   * @param pathToWriter open writers to inject
+   * @param metricsRegistry registry to which cache metrics are published
+   */
+  WriterCache(Map<String, AggregateSampleWriter> pathToWriter, CollectorRegistry metricsRegistry) {
+    this(Integer.MAX_VALUE /* maxOpenWriters */, Maps.newHashMap(),
+        OutputOptions.defaults(), new FlushScheduler(), null /* groupCommitter */, metricsRegistry);
+    for (Entry<String, AggregateSampleWriter> entry : pathToWriter.entrySet()) {
+      openWriters.put(entry.getKey(), new CachedWriter(entry.getValue()));
+      createdPaths.add(entry.getKey());
+    }
+    openFiles.set(openWriters.size());
+  }
+
+  /**
+   * Get the writer of a file, opening the file if necessary. The writer stays open until it is
+   * released.
+   * 
+   * @param path path of the file to write
+   * @return open writer or <code>null</code> if this cache does not know the path
+   */
+  public synchronized AggregateSampleWriter acquire(String path) {
+    if (isClosed) {
+      throw new IllegalStateException("cache is closed");
+    }
+
+    CachedWriter cached = openWriters.get(path);
+    if (cached != null) {
+      hits.inc();
+    } else if (pathToFlushPolicy.containsKey(path)) {
+      misses.inc();
+      evictColdest();
+      cached = open(path);
+    } else {
+      return null;
+    }
+    cached.numUsers++;
+    return cached.writer;
+  }
+
+  /**
+   * Allow this cache to open a file it did not know at construction, e.g. the output of a newly
+   * discovered partition. The file is created on first use.
+   * 
+   * @param path path of the file
+   * @param flushPolicy flush policy of the file
+   */
+  public synchronized void addPath(String path, FlushPolicy flushPolicy) {
+    if (pathToFlushPolicy.putIfAbsent(path, flushPolicy) != null) {
+      throw new IllegalArgumentException(
+          "Cannot specify identical path more than once -- path: " + path);
+    }
+  }
+
+  /**
+   * Close every open writer, even if closing an earlier one fails.
+   * 
+   * @throws IllegalStateException if a writer failed to close, with any further failures
+   *         suppressed
+   */
+  @Override
+  public synchronized void close() {
+    isClosed = true;
+    IllegalStateException failure = null;
+    for (CachedWriter cached : openWriters.values()) {
+      try {
+        closeWriter(cached.writer);
+      } catch (IllegalStateException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    openWriters.clear();
+    openFiles.set(0);
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Push the buffered samples of every open writer to the file system.
+   */
+  public synchronized void flushAll() {
+    for (CachedWriter cached : openWriters.values()) {
+      cached.writer.flush();
+    }
+  }
+
+  /**
+   * Allow the writer of a file to be closed again once it becomes cold.
+   * 
+   * @param path path passed to {@link #acquire(String)}
+   */
+  public synchronized void release(String path) {
+    CachedWriter cached = openWriters.get(path);
+    if (cached != null && cached.numUsers > 0) {
+      cached.numUsers--;
+    }
+  }
+
+  synchronized int numOpen() {
+    return openWriters.size();
+  }
+
+  private void closeWriter(AggregateSampleWriter writer) {
+    flushScheduler.unregister(writer);
+    if (groupCommitter != null) {
+      groupCommitter.unregister(writer);
+    }
+    writer.close();
+  }
+
+  /**
+   * Close the least recently used writers that are not in use until there is room for one more.
+   */
+  private void evictColdest() {
+    Iterator<CachedWriter> coldestFirst = openWriters.values().iterator();
+    while (openWriters.size() >= maxOpenWriters && coldestFirst.hasNext()) {
+      CachedWriter cached = coldestFirst.next();
+      if (cached.numUsers == 0) {
+        coldestFirst.remove();
+        closeWriter(cached.writer);
+        evictions.inc();
+      }
+    }
+    if (openWriters.size() >= maxOpenWriters) {
+      LOG.warn(String.format("all open files are in use; exceeding budget -- maxOpenWriters: %d",
+          maxOpenWriters));
+    }
+  }
+
+  private CachedWriter open(String path) {
+    File file = Paths.get(path).toFile();
+    FlushPolicy flushPolicy = pathToFlushPolicy.get(path);
+    AggregateSampleWriter writer;
+    if (createdPaths.contains(path) || ((outputOptions.isResumed()
+        || outputOptions.isIncremental() || outputOptions.isAppending()) && file.isFile())) {
+      // resumed, incremental and appending runs continue the files left by earlier runs
+      writer = AggregateSampleWriter.appendTo(file, flushPolicy, outputOptions);
+    } else {
+      writer = AggregateSampleWriter.fromFile(file, flushPolicy, outputOptions);
+      createdPaths.add(path);
+    }
+    flushScheduler.register(writer);
+    if (groupCommitter != null) {
+      groupCommitter.register(writer);
+    }
+
+    CachedWriter cached = new CachedWriter(writer);
+    openWriters.put(path, cached);
+    openFiles.set(openWriters.size());
+    return cached;
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application.cli;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.tesla.interview.application.cli.validators.ExistingReadableFile;
+import com.tesla.interview.io.BinarySampleWriter;
+import java.nio.file.Paths;
+
+/**
+ * Command line tool that converts a text input file into the binary input format, which the
+ * application reads much faster. See {@link BinarySampleWriter}.
+ */
+public class BinaryInputConverter {
+
+  /**
+   * Command line arguments of the converter.
+   */
+  @Parameters(separators = " =")
+  static class ConverterArgs {
+    @Parameter(names = {"--inputFile", "-i"}, required = true,
+        description = "File system path to the text input file",
+        validateValueWith = ExistingReadableFile.class)
+    String inputFile;
+
+    @Parameter(names = {"--outputFile", "-o"}, required = true,
+        description = "File system path of the new binary input file")
+    String outputFile;
+
+    @Parameter(names = {"--help", "-h"}, description = "Display usage")
+    boolean isHelpCommand = false;
+  }
+
+  /**
+   * Convert a text input file from the command line.
+   * 
+   * @param args command-line arguments
+   */
+  public static void main(String[] args) {
+    ConverterArgs parsedArguments = new ConverterArgs();
+    JCommander commander = JCommander.newBuilder().addObject(parsedArguments).build();
+    try {
+      commander.parse(args);
+      if (parsedArguments.isHelpCommand) {
+        commander.usage();
+        return;
+      }
+      long numSamples = BinarySampleWriter.convert(Paths.get(parsedArguments.inputFile).toFile(),
+          Paths.get(parsedArguments.outputFile).toFile());
+      commander.getConsole().println(String.format("converted samples -- numSamples: %d",
+          numSamples));
+    } catch (ParameterException | IllegalArgumentException e) {
+      // validation failed; print usage and exception to console
+      commander.usage();
+      commander.getConsole().println(e.getMessage());
+    }
+  }
+}
@@ -17,10 +17,15 @@ package com.tesla.interview.application.cli;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 import com.beust.jcommander.converters.URLConverter;
+import com.google.common.collect.Lists;
 import com.tesla.interview.application.cli.validators.ExistingReadableDirectory;
-import com.tesla.interview.application.cli.validators.ExistingReadableFile;
+import com.tesla.interview.application.cli.validators.ExistingReadableFiles;
 import com.tesla.interview.application.cli.validators.RequiredPositiveInteger;
+import com.tesla.interview.io.DurabilityMode;
+import com.tesla.interview.io.FlushPolicy;
+import com.tesla.interview.io.OutputOptions;
 import java.net.URL;
+import java.util.List;
 
 /**
  * Command line arguments for CLI interface of the application.
@@ -29,7 +34,7 @@ import java.net.URL;
 public class CommandLineArgs {
 
   @Parameter(names = {"--numPartitions", "-p"},
-      description = "Number of partitions in the input file", required = true,
+      description = "Number of partitions in the input file; discovered while reading if omitted",
       validateValueWith = RequiredPositiveInteger.class)
   Integer numPartitions;
 
@@ -38,20 +43,104 @@ public class CommandLineArgs {
   Integer numWriteThreads = 1;
 
   @Parameter(names = {"--inputFile", "-i"}, required = true,
-      description = "File system path to the input file",
-      validateValueWith = ExistingReadableFile.class)
+      description = "Comma-separated paths or file name globs of the input files, read in order",
+      validateValueWith = ExistingReadableFiles.class)
   String inputFile;
 
+  @Parameter(names = {"--numReadThreads", "-r"}, validateValueWith = RequiredPositiveInteger.class,
+      description = "Max. number of input files read and parsed at a time")
+  Integer numReadThreads = Runtime.getRuntime().availableProcessors();
+
   @Parameter(names = {"--outputDirectory", "-o"}, required = true,
       description = "Path to the directory in which output files shall be placed",
       validateValueWith = ExistingReadableDirectory.class)
   String outputDirectory;
 
+  @Parameter(names = {"--maxFileHandles", "-f"}, validateValueWith = RequiredPositiveInteger.class,
+      description = "Max. number of output files open at a time; others are reopened on demand")
+  Integer maxFileHandles = 1024;
+
+  @Parameter(names = {"--maxPartitionNo"}, validateValueWith = RequiredPositiveInteger.class,
+      description = "Highest partition number accepted when partitions are discovered")
+  Integer maxPartitionNo = OutputOptions.DEFAULT_MAX_DISCOVERED_PARTITION_NO;
+
   @Parameter(names = {"--metrics-endpoint", "-m"}, required = false,
       description = "Address of Prometheus metrics gateway (format: Hostname:Port)",
       converter = URLConverter.class)
   URL metricsEndpoint;
 
+  @Parameter(names = {"--latencyPartitions", "-l"},
+      description = "Comma-separated partitions whose output is flushed within maxFlushDelay")
+  List<Integer> latencyPartitions = Lists.newArrayList();
+
+  @Parameter(names = {"--maxFlushDelay"}, validateValueWith = RequiredPositiveInteger.class,
+      description = "Max. time in milliseconds that output of a latency partition stays buffered")
+  Integer maxFlushDelay = 500;
+
+  @Parameter(names = {"--bufferSize", "-b"}, validateValueWith = RequiredPositiveInteger.class,
+      description = "Output buffer size in bytes of all partitions not flushed for latency")
+  Integer bufferSize = FlushPolicy.DEFAULT_BUFFER_SIZE;
+
+  @Parameter(names = {"--durability", "-d"},
+      description = "When output files are forced to stable storage")
+  DurabilityMode durabilityMode = DurabilityMode.NONE;
+
+  @Parameter(names = {"--syncInterval"}, validateValueWith = RequiredPositiveInteger.class,
+      description = "Max. time in milliseconds between forces in PERIODIC and GROUP_COMMIT modes")
+  Integer syncInterval = 1000;
+
+  @Parameter(names = {"--multiplexed", "-x"},
+      description = "Write all partitions to a single indexed file instead of one file each")
+  boolean isMultiplexed = false;
+
+  @Parameter(names = {"--journal", "-j"},
+      description = "Write all partitions to a sequential journal, split into files in background")
+  boolean isJournaled = false;
+
+  @Parameter(names = {"--segmentSize"}, validateValueWith = RequiredPositiveInteger.class,
+      description = "Size in MiB at which a journal segment is split into the partition files")
+  Integer segmentSize = 64;
+
+  @Parameter(names = {"--mapped"},
+      description = "Write partition files through memory-mapped windows instead of write calls")
+  boolean isMapped = false;
+
+  @Parameter(names = {"--extentSize"}, validateValueWith = RequiredPositiveInteger.class,
+      description = "Size in MiB by which memory-mapped partition files grow at a time")
+  Integer extentSize = 64;
+
+  @Parameter(names = {"--gathering", "-g"},
+      description = "Encode partition output into pooled direct buffers written with one call")
+  boolean isGathering = false;
+
+  @Parameter(names = {"--compress", "-z"},
+      description = "Gzip partition files, compressing blocks in parallel")
+  boolean isCompressed = false;
+
+  @Parameter(names = {"--columnar", "-c"},
+      description = "Write partition files in a binary columnar format instead of text")
+  boolean isColumnar = false;
+
+  @Parameter(names = {"--parseCache"},
+      description = "Cache parsed text input in a sidecar file, reused until the input changes")
+  boolean isParseCached = false;
+
+  @Parameter(names = {"--checkpoint", "-k"},
+      description = "Periodically record progress, so that a failed run can be resumed")
+  boolean isCheckpointed = false;
+
+  @Parameter(names = {"--checkpointInterval"}, validateValueWith = RequiredPositiveInteger.class,
+      description = "Time in seconds between checkpoints")
+  Integer checkpointInterval = 60;
+
+  @Parameter(names = {"--resume"},
+      description = "Continue the run recorded by the last checkpoint instead of starting over")
+  boolean isResumed = false;
+
+  @Parameter(names = {"--incremental"},
+      description = "Process only input appended since the last run, appending to its outputs")
+  boolean isIncremental = false;
+
   @Parameter(names = {"--help", "-h"}, description = "Display usage")
   boolean isHelpCommand = false;
   
@@ -21,11 +21,16 @@ import com.beust.jcommander.ParameterException;
 import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
 import com.tesla.interview.application.InterviewApplication;
+import com.tesla.interview.application.cli.validators.ExistingReadableFiles;
+import com.tesla.interview.io.FlushPolicy;
+import com.tesla.interview.io.InputOptions;
+import com.tesla.interview.io.OutputOptions;
 import io.prometheus.client.CollectorRegistry;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Command line wrapper for {@link InterviewApplication}.
@@ -40,21 +45,79 @@ public class CommandLineInterviewApplication {
     @Override
     public InterviewApplication get() {
       Path outputDirectory = Paths.get(parsedArguments.outputDirectory);
-      List<String> outputFilePaths = getOutputFiles(parsedArguments.numPartitions, outputDirectory);
+      OutputOptions outputOptions = getOutputOptions(parsedArguments);
+      if (parsedArguments.isMultiplexed) {
+        outputOptions.withMultiplexedFile(outputDirectory.resolve(MULTIPLEXED_FILE).toString());
+      }
+      if (parsedArguments.isJournaled) {
+        outputOptions.withJournal(parsedArguments.segmentSize * 1024L * 1024L);
+      }
+      if (parsedArguments.isMapped) {
+        outputOptions.withMappedOutput(parsedArguments.extentSize * 1024L * 1024L);
+      }
+      if (parsedArguments.isGathering) {
+        outputOptions.withGatheringWrites();
+      }
+      if (parsedArguments.isCompressed) {
+        outputOptions.withGzipCompression();
+      }
+      if (parsedArguments.isColumnar) {
+        outputOptions.withColumnarOutput();
+      }
+      if (parsedArguments.isCheckpointed || parsedArguments.isResumed) {
+        outputOptions.withCheckpoints(Duration.ofSeconds(parsedArguments.checkpointInterval));
+      }
+      if (parsedArguments.isResumed) {
+        outputOptions.withResume();
+      }
+      if (parsedArguments.isIncremental) {
+        outputOptions.withIncrementalRuns();
+      }
+      if (writerExecutor != null) {
+        outputOptions.withWriterExecutor(writerExecutor);
+      }
+      List<String> outputFilePaths;
+      if (parsedArguments.numPartitions != null) {
+        outputFilePaths =
+            getOutputFiles(parsedArguments.numPartitions, outputDirectory, outputOptions);
+      } else {
+        // escape the directory, since the file format goes through String.format
+        String escapedDirectory = outputDirectory.toString().replace("%", "%%");
+        outputOptions.withPartitionDiscovery(
+            Paths.get(escapedDirectory, getOutputFileFormat(outputOptions)).toString(),
+            parsedArguments.maxPartitionNo);
+        outputFilePaths = Lists.newArrayList();
+      }
+      InputOptions inputOptions =
+          InputOptions.defaults().withNumReadThreads(parsedArguments.numReadThreads);
+      if (parsedArguments.isParseCached) {
+        inputOptions.withParseCache();
+      }
+      List<String> inputFilePaths = Lists.newArrayList();
+      for (Path inputFile : ExistingReadableFiles.expand("inputFile", parsedArguments.inputFile)) {
+        inputFilePaths.add(inputFile.toString());
+      }
       return new InterviewApplication(parsedArguments.numWriteThreads,
-          Integer.MAX_VALUE /* TODO: maxFileHandles */, outputFilePaths, parsedArguments.inputFile,
-          queueSize, DEFAULT_POLL_DURATION, parsedArguments.metricsEndpoint,
-          DEFAULT_REGISTRY_SUPPLIER);
+          Math.min(parsedArguments.maxFileHandles, maxFileHandleGrant), outputFilePaths,
+          inputFilePaths, queueSize, DEFAULT_POLL_DURATION, parsedArguments.metricsEndpoint,
+          DEFAULT_REGISTRY_SUPPLIER, outputOptions, inputOptions);
     }
   }
 
+  static final int DEFAULT_QUEUE_SIZE;
+
   private static final String OUTPUT_FILE_FORMAT;
-  private static final int DEFAULT_QUEUE_SIZE;
+  private static final String COMPRESSED_SUFFIX;
+  private static final String COLUMNAR_FILE_FORMAT;
+  private static final String MULTIPLEXED_FILE;
   private static final Duration DEFAULT_POLL_DURATION;
   private static final Supplier<CollectorRegistry> DEFAULT_REGISTRY_SUPPLIER;
 
   static {
     OUTPUT_FILE_FORMAT = "output-file-%d.csv";
+    COMPRESSED_SUFFIX = ".gz";
+    COLUMNAR_FILE_FORMAT = "output-file-%d.col";
+    MULTIPLEXED_FILE = "output.mux";
     DEFAULT_QUEUE_SIZE = 100;
     DEFAULT_POLL_DURATION = Duration.ofSeconds(1);
     DEFAULT_REGISTRY_SUPPLIER = () -> new CollectorRegistry();
@@ -120,6 +183,42 @@ public class CommandLineInterviewApplication {
     }
   }
 
+  /**
+   * Build the output options corresponding to the CLI input parameters.
+   * <p>
+   * Package-visible for unit tests.
+   * </p>
+   * 
+   * @param args parsed arguments
+   * @return options for the output files
+   */
+  static OutputOptions getOutputOptions(CommandLineArgs args) {
+    OutputOptions options = OutputOptions.defaults()
+        .withDefaultFlushPolicy(FlushPolicy.throughput(args.bufferSize))
+        .withDurability(args.durabilityMode, Duration.ofMillis(args.syncInterval));
+    FlushPolicy latencyPolicy = FlushPolicy.latency(Duration.ofMillis(args.maxFlushDelay));
+    for (int partitionNo : args.latencyPartitions) {
+      options.withFlushPolicy(partitionNo, latencyPolicy);
+    }
+    return options;
+  }
+
+  /**
+   * Get the format of output file names, whose extension depends on the output format.
+   * 
+   * @param outputOptions options that decide the format of the output files
+   * @return file name format with a <code>%d</code> for the partition number
+   */
+  static String getOutputFileFormat(OutputOptions outputOptions) {
+    if (outputOptions.isColumnar()) {
+      return COLUMNAR_FILE_FORMAT;
+    } else if (outputOptions.isCompressed()) {
+      return OUTPUT_FILE_FORMAT + COMPRESSED_SUFFIX;
+    } else {
+      return OUTPUT_FILE_FORMAT;
+    }
+  }
+
   /**
    * Build a list of paths to output files.
    * <p>
@@ -131,9 +230,26 @@ public class CommandLineInterviewApplication {
    * @return list of output files within the output directory
    */
   static List<String> getOutputFiles(int numPartitions, Path outputDirectory) {
+    return getOutputFiles(numPartitions, outputDirectory, OutputOptions.defaults());
+  }
+
+  /**
+   * Build a list of paths to output files, whose extension depends on the output format.
+   * <p>
+   * Package-visible for unit tests.
+   * </p>
+   * 
+   * @param numPartitions number of partitions
+   * @param outputDirectory non-null path to output directory
+   * @param outputOptions options that decide the format of the output files
+   * @return list of output files within the output directory
+   */
+  static List<String> getOutputFiles(int numPartitions, Path outputDirectory,
+      OutputOptions outputOptions) {
+    String outputFileFormat = getOutputFileFormat(outputOptions);
     List<String> outputFilePaths = Lists.newArrayList();
     for (int i = 1; i <= numPartitions; i++) {
-      String outputFileName = String.format(OUTPUT_FILE_FORMAT, i);
+      String outputFileName = String.format(outputFileFormat, i);
       Path outputFilePath = outputDirectory.resolve(outputFileName);
       outputFilePaths.add(outputFilePath.toString());
     }
@@ -142,6 +258,8 @@ public class CommandLineInterviewApplication {
 
   AppFactory appFactory = new AppFactory();
   CommandLineArgs parsedArguments;
+  ExecutorService writerExecutor;
+  int maxFileHandleGrant = Integer.MAX_VALUE;
 
   final int queueSize;
   final JCommander commander;
@@ -210,6 +328,20 @@ public class CommandLineInterviewApplication {
     }
   }
 
+  /**
+   * Execute this application on the resources granted by a
+   * {@link com.tesla.interview.application.JobScheduler}.
+   * 
+   * @param writerExecutor executor shared by the application's writers
+   * @param maxFileHandles max. number of output files open at a time, overriding a larger
+   *        <code>--maxFileHandles</code>
+   */
+  void execute(ExecutorService writerExecutor, int maxFileHandles) {
+    this.writerExecutor = writerExecutor;
+    this.maxFileHandleGrant = maxFileHandles;
+    execute();
+  }
+
   /**
    * Parse the input args.
    * 
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application.cli;
+
+import static com.tesla.interview.application.cli.CommandLineInterviewApplication.DEFAULT_QUEUE_SIZE;
+import static com.tesla.interview.application.cli.CommandLineInterviewApplication.getOutputFiles;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.converters.URLConverter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.tesla.interview.application.InterviewApplication;
+import com.tesla.interview.application.cli.validators.ExistingReadableDirectory;
+import com.tesla.interview.application.cli.validators.RequiredPositiveInteger;
+import com.tesla.interview.io.HttpSampleReader;
+import com.tesla.interview.io.InputOptions;
+import com.tesla.interview.io.NetworkSampleReader;
+import com.tesla.interview.io.OutputOptions;
+import com.tesla.interview.io.TcpSampleReader;
+import com.tesla.interview.io.UdpSampleReader;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.exporter.PushGateway;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Receives samples over the network and runs them through the {@link InterviewApplication}
+ * pipeline as they arrive, appending the results to the per-partition output files. Senders
+ * connect over TCP and write samples in the text format of the input files, one per line, send
+ * UDP datagrams of one or more such lines, or POST such lines over HTTP.
+ * <p/>
+ * The output files are appended to, so a restarted server continues them. When the writers fall
+ * behind, the server stops receiving, or turns HTTP requests away, until they catch up; see
+ * {@link TcpSampleReader}, {@link UdpSampleReader} and {@link HttpSampleReader}.
+ * <p/>
+ * The server runs until it is stopped, so the metrics of the receiving side are pushed to the
+ * metrics gateway periodically while it runs, and once more when it stops.
+ */
+public class IngestServer implements Closeable {
+
+  /**
+   * Transport over which samples are received.
+   */
+  public enum Protocol {
+    TCP, // connections of newline-delimited samples
+    UDP, // datagrams of whole lines
+    HTTP, // POST requests of newline-delimited samples
+    ;
+  }
+
+  /**
+   * Command line arguments of the server.
+   */
+  @Parameters(separators = " =")
+  static class IngestArgs {
+    @Parameter(names = {"--host"},
+        description = "Address to listen on; defaults to the loopback address")
+    String host = "127.0.0.1";
+
+    @Parameter(names = {"--port"}, validateValueWith = RequiredPositiveInteger.class,
+        description = "TCP or UDP port to listen on")
+    Integer port = DEFAULT_PORT;
+
+    @Parameter(names = {"--protocol"}, description = "Transport over which samples are received")
+    Protocol protocol = Protocol.TCP;
+
+    @Parameter(names = {"--outputDirectory", "-o"}, required = true,
+        description = "Path to the directory in which output files shall be placed",
+        validateValueWith = ExistingReadableDirectory.class)
+    String outputDirectory;
+
+    @Parameter(names = {"--numPartitions", "-p"}, required = true,
+        description = "Number of partitions in the received samples",
+        validateValueWith = RequiredPositiveInteger.class)
+    Integer numPartitions;
+
+    @Parameter(names = {"--numWriteThreads", "-w"},
+        description = "Number of threads to use for writing output files",
+        validateValueWith = RequiredPositiveInteger.class)
+    Integer numWriteThreads = 1;
+
+    @Parameter(names = {"--metrics-endpoint", "-m"}, required = false,
+        description = "Address of Prometheus metrics gateway (format: Hostname:Port)",
+        converter = URLConverter.class)
+    URL metricsEndpoint;
+
+    @Parameter(names = {"--help", "-h"}, description = "Display usage")
+    boolean isHelpCommand = false;
+  }
+
+  private static final int DEFAULT_PORT = 7448;
+  private static final int NUM_HTTP_THREADS = 4;
+  private static final int MAX_FILE_HANDLES = 1024;
+  private static final Duration POLL_DURATION = Duration.ofSeconds(1);
+  private static final Duration METRICS_PUSH_INTERVAL = Duration.ofSeconds(10);
+  private static final String METRICS_JOB_NAME = "ingest_server";
+  private static final String INSTANCE = "instance";
+  private static final Logger LOG = getLogger(IngestServer.class);
+
+  /**
+   * Receive samples from the command line until the process is terminated.
+   * 
+   * @param args command-line arguments
+   */
+  public static void main(String[] args) {
+    IngestArgs parsedArguments = new IngestArgs();
+    JCommander commander = JCommander.newBuilder().addObject(parsedArguments).build();
+    try {
+      commander.parse(args);
+      if (parsedArguments.isHelpCommand) {
+        commander.usage();
+        return;
+      }
+    } catch (ParameterException e) {
+      // validation failed; print usage and exception to console
+      commander.usage();
+      commander.getConsole().println(e.getMessage());
+      return;
+    }
+
+    IngestServer server = new IngestServer(parsedArguments.protocol,
+        new InetSocketAddress(parsedArguments.host, parsedArguments.port),
+        getOutputFiles(parsedArguments.numPartitions, Paths.get(parsedArguments.outputDirectory)),
+        parsedArguments.numWriteThreads, parsedArguments.metricsEndpoint);
+    Runtime.getRuntime().addShutdownHook(new Thread(server::close, "ingest-shutdown"));
+    server.run();
+  }
+
+  private final NetworkSampleReader source;
+  private final CollectorRegistry sourceRegistry;
+  private final List<String> outputFilePaths;
+  private final int numWriteThreads;
+  private final URL metricsEndpoint;
+  private final Duration metricsPushInterval;
+  private final AtomicBoolean isRunning = new AtomicBoolean(false /* initialValue */);
+  private final CountDownLatch isDone = new CountDownLatch(1 /* count */);
+
+  /**
+   * Construct a server that receives samples over TCP and pushes no metrics.
+   * 
+   * @param bindAddress address to listen on; port zero picks a free port
+   * @param outputFilePaths paths of the per-partition output files, in partition order
+   * @param numWriteThreads number of threads to use for writing output files
+   */
+  public IngestServer(InetSocketAddress bindAddress, List<String> outputFilePaths,
+      int numWriteThreads) {
+    this(Protocol.TCP, bindAddress, outputFilePaths, numWriteThreads,
+        null /* metricsEndpoint */);
+  }
+
+  /**
+   * Construct a server that pushes the metrics of the receiving side at a default interval.
+   * Starts receiving; samples are processed once {@link #run()} is called.
+   * 
+   * @param protocol transport over which samples are received
+   * @param bindAddress address to listen on; port zero picks a free port
+   * @param outputFilePaths paths of the per-partition output files, in partition order
+   * @param numWriteThreads number of threads to use for writing output files
+   * @param metricsEndpoint address of Prometheus push gateway or <code>null</code> for none
+   */
+  public IngestServer(Protocol protocol, InetSocketAddress bindAddress,
+      List<String> outputFilePaths, int numWriteThreads, URL metricsEndpoint) {
+    this(protocol, bindAddress, outputFilePaths, numWriteThreads, metricsEndpoint,
+        METRICS_PUSH_INTERVAL);
+  }
+
+  /**
+   * Canonical constructor. Starts receiving; samples are processed once {@link #run()} is called.
+   * <p/>
+   * Package-visible for unit tests.
+   * 
+   * @param protocol transport over which samples are received
+   * @param bindAddress address to listen on; port zero picks a free port
+   * @param outputFilePaths paths of the per-partition output files, in partition order
+   * @param numWriteThreads number of threads to use for writing output files
+   * @param metricsEndpoint address of Prometheus push gateway or <code>null</code> for none
+   * @param metricsPushInterval time between pushes of the receiving side's metrics
+   */
+  IngestServer(Protocol protocol, InetSocketAddress bindAddress, List<String> outputFilePaths,
+      int numWriteThreads, URL metricsEndpoint, Duration metricsPushInterval) {
+    if (protocol == null) {
+      throw new IllegalArgumentException("protocol cannot be null");
+    }
+    if (outputFilePaths == null || outputFilePaths.isEmpty()) {
+      throw new IllegalArgumentException("outputFilePaths must be non-empty");
+    }
+    if (numWriteThreads <= 0) {
+      throw new IllegalArgumentException("numWriteThreads must be positive");
+    }
+    if (metricsPushInterval == null || metricsPushInterval.isNegative()
+        || metricsPushInterval.isZero()) {
+      throw new IllegalArgumentException("metricsPushInterval must be positive");
+    }
+
+    this.outputFilePaths = outputFilePaths;
+    this.numWriteThreads = numWriteThreads;
+    this.metricsEndpoint = metricsEndpoint;
+    this.metricsPushInterval = metricsPushInterval;
+    this.sourceRegistry = new CollectorRegistry();
+    if (protocol == Protocol.UDP) {
+      this.source = new UdpSampleReader(bindAddress, outputFilePaths.size(), sourceRegistry);
+    } else if (protocol == Protocol.HTTP) {
+      this.source = new HttpSampleReader(bindAddress, NUM_HTTP_THREADS, outputFilePaths.size());
+    } else {
+      this.source = new TcpSampleReader(bindAddress, outputFilePaths.size());
+    }
+  }
+
+  /**
+   * Stop accepting samples. If {@link #run()} was called, wait until the samples received so far
+   * are written; else they are written once it is called.
+   */
+  @Override
+  public void close() {
+    source.stop();
+    if (isRunning.get()) {
+      try {
+        isDone.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  public InetSocketAddress getAddress() {
+    return source.getAddress();
+  }
+
+  /**
+   * Process received samples until this server is closed.
+   * 
+   * @throws IllegalStateException if called more than once
+   */
+  public void run() {
+    if (!isRunning.compareAndSet(false, true)) {
+      throw new IllegalStateException("server is already running");
+    }
+
+    // the application pushes its own metrics when it stops; ours are pushed while it runs
+    ScheduledExecutorService metricsPusher = null;
+    if (metricsEndpoint != null) {
+      metricsPusher = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+        Thread thread = new Thread(r, "metrics-push");
+        thread.setDaemon(true);
+        return thread;
+      });
+      metricsPusher.scheduleAtFixedRate(this::pushMetrics, metricsPushInterval.toMillis(),
+          metricsPushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    try {
+      new InterviewApplication(numWriteThreads, Math.max(numWriteThreads, MAX_FILE_HANDLES),
+          outputFilePaths, Lists.newArrayList() /* inputFilePaths */, DEFAULT_QUEUE_SIZE,
+          POLL_DURATION, metricsEndpoint, () -> new CollectorRegistry(),
+          OutputOptions.defaults().withAppend(), InputOptions.defaults().withSource(source))
+              .call();
+    } finally {
+      source.close();
+      if (metricsPusher != null) {
+        metricsPusher.shutdownNow();
+        pushMetrics();
+      }
+      isDone.countDown();
+      LOG.info(String.format("ingest server stopped -- address: %s", source.getAddress()));
+    }
+  }
+
+  /**
+   * Push the metrics of the receiving side. A failed push is logged; the next one may succeed.
+   */
+  private void pushMetrics() {
+    String address = String.format("%s:%s%s", metricsEndpoint.getHost(),
+        metricsEndpoint.getPort(), metricsEndpoint.getPath());
+    Map<String, String> groupingKey = Maps.newHashMap();
+    groupingKey.put(INSTANCE, String.format("%s:%d", source.getAddress().getHostString(),
+        source.getAddress().getPort()));
+    try {
+      new PushGateway(address).pushAdd(sourceRegistry, METRICS_JOB_NAME, groupingKey);
+    } catch (IOException e) {
+      LOG.warn(String.format("Unable to push metrics -- endpoint: %s, message: %s", address,
+          e.getMessage()));
+    }
+  }
+}
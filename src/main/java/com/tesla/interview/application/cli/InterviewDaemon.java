@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application.cli;
+
+import static com.tesla.interview.application.ApplicationTools.logTrace;
+import static com.tesla.interview.application.cli.CommandLineInterviewApplication.DEFAULT_QUEUE_SIZE;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+import com.tesla.interview.application.JobScheduler;
+import com.tesla.interview.application.cli.validators.RequiredPositiveInteger;
+import io.prometheus.client.CollectorRegistry;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Long-running server that executes jobs in one warm JVM, so that a job does not pay for JVM
+ * startup, class loading, logging initialization and a cold JIT. Process-wide resources such as
+ * the direct buffer pool are reused by every job.
+ * <p/>
+ * Clients connect over the loopback interface and send one job per line. A job line holds the
+ * same arguments as {@link CommandLineInterviewApplication}, separated by whitespace. The loopback
+ * interface is open to every local user, so the first line of each connection must be the
+ * daemon's token: a random secret written at startup to a file only the daemon's owner can read.
+ * A connection without the token is answered <code>ERROR unauthorized</code> and closed. For each
+ * job, the daemon answers with a single line: <code>OK &lt;elapsed millis&gt;</code> once the
+ * job's outputs are published, or <code>ERROR &lt;message&gt;</code>. A line may start with
+ * <code>--priority &lt;n&gt;</code> to raise the job's priority above the default of one.
+ * <p/>
+ * Jobs of different connections run concurrently on a {@link JobScheduler}, which shares a fixed
+ * number of writer threads and file handles between them. A job's <code>--numWriteThreads</code>
+ * is capped at the shared writer threads and its <code>--numReadThreads</code> at its job slot's
+ * share of the processors. At most a fixed number of connections are served at a time; further
+ * connections are answered <code>ERROR too many connections</code> and closed. The line
+ * <code>shutdown</code> stops the daemon.
+ */
+public class InterviewDaemon implements Closeable {
+
+  /**
+   * Command line arguments of the daemon.
+   */
+  @Parameters(separators = " =")
+  static class DaemonArgs {
+    @Parameter(names = {"--port", "-p"}, validateValueWith = RequiredPositiveInteger.class,
+        description = "Loopback port on which job requests are accepted")
+    Integer port = DEFAULT_PORT;
+
+    @Parameter(names = {"--numWriteThreads", "-w"},
+        description = "Number of writer threads shared by all jobs",
+        validateValueWith = RequiredPositiveInteger.class)
+    Integer numWriteThreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"--maxFileHandles", "-f"},
+        description = "Max. number of output files open at a time across all jobs",
+        validateValueWith = RequiredPositiveInteger.class)
+    Integer maxFileHandles = DEFAULT_MAX_FILE_HANDLES;
+
+    @Parameter(names = {"--maxJobs", "-j"}, validateValueWith = RequiredPositiveInteger.class,
+        description = "Max. number of jobs running at a time; others wait by priority")
+    Integer maxJobs = DEFAULT_MAX_JOBS;
+
+    @Parameter(names = {"--tokenFile", "-t"},
+        description = "File to which the secret that clients must send first is written")
+    String tokenFile = DEFAULT_TOKEN_FILE;
+
+    @Parameter(names = {"--help", "-h"}, description = "Display usage")
+    boolean isHelpCommand = false;
+  }
+
+  static final String SHUTDOWN_COMMAND = "shutdown";
+  static final String PRIORITY_OPTION = "--priority";
+
+  private static final int DEFAULT_PORT = 7447;
+  private static final int DEFAULT_MAX_FILE_HANDLES = 1024;
+  private static final int DEFAULT_MAX_JOBS = 4;
+  private static final int DEFAULT_MAX_CONNECTIONS = 64;
+  private static final int DEFAULT_PRIORITY = 1;
+  private static final int TOKEN_BYTES = 32;
+  private static final String DEFAULT_TOKEN_FILE =
+      Paths.get(System.getProperty("user.home"), ".interview-daemon-token").toString();
+  private static final Logger LOG = getLogger(InterviewDaemon.class);
+
+  /**
+   * Run the daemon from the command line until it is shut down.
+   * 
+   * @param args command-line arguments
+   */
+  public static void main(String[] args) {
+    DaemonArgs parsedArguments = new DaemonArgs();
+    JCommander commander = JCommander.newBuilder().addObject(parsedArguments).build();
+    try {
+      commander.parse(args);
+      if (parsedArguments.isHelpCommand) {
+        commander.usage();
+        return;
+      }
+    } catch (ParameterException e) {
+      // validation failed; print usage and exception to console
+      commander.usage();
+      commander.getConsole().println(e.getMessage());
+      return;
+    }
+
+    InterviewDaemon daemon = new InterviewDaemon(parsedArguments.port, DEFAULT_QUEUE_SIZE,
+        parsedArguments.numWriteThreads, parsedArguments.maxFileHandles, parsedArguments.maxJobs,
+        Paths.get(parsedArguments.tokenFile));
+    Runtime.getRuntime().addShutdownHook(new Thread(daemon::close, "daemon-shutdown"));
+    daemon.serve();
+  }
+
+  /**
+   * Flatten a message into a single response line.
+   * 
+   * @param e failure to describe
+   * @return non-empty single-line message
+   */
+  private static String describe(Exception e) {
+    String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    return message.replace('\r', ' ').replace('\n', ' ');
+  }
+
+  /**
+   * Write a fresh token to a file that only the current user can read or write. A previous token
+   * file is replaced.
+   * 
+   * @param tokenFile path of the token file
+   * @param token secret to write
+   */
+  private static void writeToken(Path tokenFile, String token) {
+    try {
+      Path parent = tokenFile.toAbsolutePath().getParent();
+      if (parent != null) {
+        Files.createDirectories(parent);
+      }
+      Files.deleteIfExists(tokenFile);
+      try {
+        Files.createFile(tokenFile,
+            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+      } catch (UnsupportedOperationException e) {
+        // not a POSIX file system; restrict access to the owner after the fact
+        Files.createFile(tokenFile);
+        File file = tokenFile.toFile();
+        if (!(file.setReadable(false, false) && file.setReadable(true, true)
+            && file.setWritable(false, false) && file.setWritable(true, true))) {
+          throw new IOException("unable to restrict access to the owner");
+        }
+      }
+      Files.write(tokenFile, Lists.newArrayList(token), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to write token file -- path: %s", tokenFile), e);
+    }
+  }
+
+  private final ServerSocket serverSocket;
+  private final ThreadPoolExecutor connections;
+  private final AtomicBoolean isClosed = new AtomicBoolean(false /* initialValue */);
+  private final JobScheduler scheduler;
+  private final Path tokenFile;
+  private final byte[] token;
+
+  final int queueSize;
+  final int maxWriteThreadsPerJob;
+  final int maxReadThreadsPerJob;
+  final AtomicInteger numJobs = new AtomicInteger(0 /* initialValue */);
+
+  /**
+   * Construct a daemon with default limits on writer threads, file handles and concurrent jobs.
+   * 
+   * @param port loopback port to listen on, or <code>0</code> for any free port
+   * @param queueSize max. number of in-flight write requests of each job
+   * @param tokenFile file to which the token that clients must send first is written
+   */
+  public InterviewDaemon(int port, int queueSize, Path tokenFile) {
+    this(port, queueSize, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_FILE_HANDLES,
+        DEFAULT_MAX_JOBS, tokenFile);
+  }
+
+  /**
+   * Canonical constructor. Binds the server socket and writes the token file; call
+   * {@link #serve()} to accept jobs.
+   * 
+   * @param port loopback port to listen on, or <code>0</code> for any free port
+   * @param queueSize max. number of in-flight write requests of each job
+   * @param numWriteThreads number of writer threads shared by all jobs
+   * @param maxFileHandles max. number of output files open at a time across all jobs
+   * @param maxJobs max. number of jobs running at a time
+   * @param tokenFile file to which the token that clients must send first is written
+   */
+  public InterviewDaemon(int port, int queueSize, int numWriteThreads, int maxFileHandles,
+      int maxJobs, Path tokenFile) {
+    this(port, queueSize, numWriteThreads, maxFileHandles, maxJobs, tokenFile,
+        DEFAULT_MAX_CONNECTIONS);
+  }
+
+  /**
+   * Injection constructor for unit tests.
+   * 
+   * @param port loopback port to listen on, or <code>0</code> for any free port
+   * @param queueSize max. number of in-flight write requests of each job
+   * @param numWriteThreads number of writer threads shared by all jobs
+   * @param maxFileHandles max. number of output files open at a time across all jobs
+   * @param maxJobs max. number of jobs running at a time
+   * @param tokenFile file to which the token that clients must send first is written
+   * @param maxConnections max. number of connections served at a time
+   */
+  InterviewDaemon(int port, int queueSize, int numWriteThreads, int maxFileHandles, int maxJobs,
+      Path tokenFile, int maxConnections) {
+    if (port < 0) {
+      throw new IllegalArgumentException("port must be non-negative");
+    }
+    if (queueSize <= 0) {
+      throw new IllegalArgumentException("queueSize must be positive");
+    }
+    if (tokenFile == null) {
+      throw new IllegalArgumentException("tokenFile cannot be null");
+    }
+    if (maxConnections <= 0) {
+      throw new IllegalArgumentException("maxConnections must be positive");
+    }
+
+    this.queueSize = queueSize;
+    this.scheduler = new JobScheduler(numWriteThreads, maxFileHandles, maxJobs, queueSize,
+        new CollectorRegistry());
+    this.maxWriteThreadsPerJob = numWriteThreads;
+    this.maxReadThreadsPerJob = Math.max(1, Runtime.getRuntime().availableProcessors() / maxJobs);
+    try {
+      this.serverSocket =
+          new ServerSocket(port, 50 /* backlog */, InetAddress.getLoopbackAddress());
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Unable to listen -- port: %d", port), e);
+    }
+    byte[] secret = new byte[TOKEN_BYTES];
+    new SecureRandom().nextBytes(secret);
+    String encoded = BaseEncoding.base16().lowerCase().encode(secret);
+    this.token = encoded.getBytes(StandardCharsets.UTF_8);
+    this.tokenFile = tokenFile;
+    try {
+      writeToken(tokenFile, encoded);
+    } catch (IllegalStateException e) {
+      scheduler.close();
+      try {
+        serverSocket.close();
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
+    AtomicInteger connectionNo = new AtomicInteger(0 /* initialValue */);
+    this.connections = new ThreadPoolExecutor(0 /* corePoolSize */, maxConnections,
+        60L /* keepAliveTime */, TimeUnit.SECONDS, new SynchronousQueue<>(),
+        (Runnable r) -> {
+          Thread thread = new Thread(r, "daemon-connection-" + connectionNo.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /**
+   * Stop accepting jobs, then wait for queued and running jobs to complete.
+   */
+  @Override
+  public void close() {
+    if (isClosed.compareAndSet(false, true)) {
+      try {
+        serverSocket.close();
+      } catch (IOException e) {
+        LOG.warn(String.format("Unable to close server socket -- message: %s", e.getMessage()));
+      }
+      try {
+        Files.deleteIfExists(tokenFile);
+      } catch (IOException e) {
+        LOG.warn(String.format("Unable to delete token file -- path: %s, message: %s", tokenFile,
+            e.getMessage()));
+      }
+      connections.shutdown();
+      scheduler.close();
+      LOG.info("daemon stopped");
+    }
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Parse and validate the arguments of a job, then cap its thread counts at the daemon's budget.
+   * <p/>
+   * Package-visible for unit tests.
+   * 
+   * @param args arguments of the job
+   * @return application that runs the job
+   */
+  CommandLineInterviewApplication newJob(String[] args) {
+    CommandLineInterviewApplication cliApp = new CommandLineInterviewApplication(args, queueSize);
+    cliApp.parseArgs();
+    cliApp.validateArgs();
+    CommandLineArgs parsedArguments = cliApp.parsedArguments;
+    parsedArguments.numWriteThreads =
+        Math.min(parsedArguments.numWriteThreads, maxWriteThreadsPerJob);
+    parsedArguments.numReadThreads =
+        Math.min(parsedArguments.numReadThreads, maxReadThreadsPerJob);
+    return cliApp;
+  }
+
+  /**
+   * Accept connections until the daemon is closed. Each connection is served by its own thread,
+   * up to the max. number of connections.
+   */
+  public void serve() {
+    LOG.info(String.format("daemon accepting jobs -- port: %d", getPort()));
+    while (!isClosed.get()) {
+      try {
+        Socket socket = serverSocket.accept();
+        try {
+          connections.execute(() -> handle(socket));
+        } catch (RejectedExecutionException e) {
+          refuse(socket);
+        }
+      } catch (IOException e) {
+        if (!isClosed.get()) {
+          LOG.error(String.format("Unable to accept connection -- message: %s", e.getMessage()));
+        }
+      }
+    }
+  }
+
+  /**
+   * Run a single job to completion, waiting for a job slot first.
+   * <p/>
+   * Package-visible for unit tests.
+   * 
+   * @param request arguments of the job, separated by whitespace, optionally preceded by
+   *        <code>--priority &lt;n&gt;</code>
+   * @return response line
+   */
+  String runJob(String request) {
+    String[] args = request.trim().split("\\s+");
+    int priority = DEFAULT_PRIORITY;
+    if (args.length >= 2 && args[0].equals(PRIORITY_OPTION)) {
+      try {
+        priority = Integer.parseInt(args[1]);
+      } catch (NumberFormatException e) {
+        return "ERROR priority must be a positive integer";
+      }
+      args = Arrays.copyOfRange(args, 2, args.length);
+    }
+    if (priority <= 0) {
+      return "ERROR priority must be a positive integer";
+    }
+    if (isClosed.get()) {
+      return "ERROR daemon is shutting down";
+    }
+
+    final long startNanos = System.nanoTime();
+    int jobNo = numJobs.incrementAndGet();
+    LOG.info(String.format("queueing job -- jobNo: %d, request: %s", jobNo, request));
+    try {
+      CommandLineInterviewApplication cliApp = newJob(args);
+      if (cliApp.parsedArguments.isHelpCommand) {
+        return "ERROR help is not available in daemon mode";
+      }
+      scheduler.submit("job-" + jobNo, priority, cliApp::execute).get();
+    } catch (ParameterException | IllegalArgumentException e) {
+      LOG.warn(String.format("rejected job -- jobNo: %d, message: %s", jobNo, e.getMessage()));
+      return "ERROR " + describe(e);
+    } catch (IllegalStateException e) {
+      if (e.getCause() instanceof RejectedExecutionException) {
+        return "ERROR daemon is shutting down"; // the scheduler no longer accepts jobs
+      }
+      LOG.error(String.format("job failed -- jobNo: %d, message: %s", jobNo, e.getMessage()));
+      logTrace(LOG, Level.ERROR, e);
+      return "ERROR " + describe(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return "ERROR interrupted while waiting for the job";
+    } catch (ExecutionException e) {
+      Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+      LOG.error(String.format("job failed -- jobNo: %d, message: %s", jobNo, cause.getMessage()));
+      logTrace(LOG, Level.ERROR, cause);
+      return "ERROR " + describe(cause);
+    }
+    long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000L;
+    LOG.info(String.format("job complete -- jobNo: %d, elapsedMillis: %d", jobNo, elapsedMillis));
+    return String.format("OK %d", elapsedMillis);
+  }
+
+  /**
+   * Answer a connection that cannot be served, then close it.
+   * 
+   * @param socket connected client
+   */
+  private void refuse(Socket socket) {
+    LOG.warn(String.format("refused connection -- remoteAddress: %s, maxConnections: %d",
+        socket.getRemoteSocketAddress(), connections.getMaximumPoolSize()));
+    try (Socket client = socket;
+        Writer writer = new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8)) {
+      writer.write(isClosed.get() ? "ERROR daemon is shutting down\n"
+          : "ERROR too many connections\n");
+    } catch (IOException e) {
+      LOG.warn(String.format("Unable to refuse connection -- message: %s", e.getMessage()));
+    }
+  }
+
+  /**
+   * Serve the jobs of one connection until the client disconnects. The first line must be the
+   * token; otherwise, the connection is refused.
+   * 
+   * @param socket connected client
+   */
+  private void handle(Socket socket) {
+    try (Socket client = socket;
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(
+            new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8))) {
+      String line = reader.readLine();
+      if (line == null) {
+        return;
+      }
+      if (!MessageDigest.isEqual(token, line.trim().getBytes(StandardCharsets.UTF_8))) {
+        LOG.warn(String.format("refused connection without token -- remoteAddress: %s",
+            client.getRemoteSocketAddress()));
+        writer.write("ERROR unauthorized\n");
+        writer.flush();
+        return;
+      }
+      while ((line = reader.readLine()) != null) {
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        boolean isShutdown = line.trim().equals(SHUTDOWN_COMMAND);
+        writer.write(isShutdown ? "OK shutdown" : runJob(line));
+        writer.write('\n');
+        writer.flush();
+        if (isShutdown) {
+          close();
+          return;
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn(String.format("connection failed -- message: %s", e.getMessage()));
+    }
+  }
+}
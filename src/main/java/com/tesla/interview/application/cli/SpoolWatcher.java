@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application.cli;
+
+import static com.tesla.interview.application.cli.CommandLineInterviewApplication.DEFAULT_QUEUE_SIZE;
+import static com.tesla.interview.application.cli.CommandLineInterviewApplication.getOutputFiles;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.tesla.interview.application.InterviewApplication;
+import com.tesla.interview.application.cli.validators.ExistingReadableDirectory;
+import com.tesla.interview.application.cli.validators.RequiredPositiveInteger;
+import com.tesla.interview.io.Checkpoint;
+import com.tesla.interview.io.OutputOptions;
+import io.prometheus.client.CollectorRegistry;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Watches a spool directory and runs every input file dropped into it through the
+ * {@link InterviewApplication} pipeline, appending the results to the per-partition output files.
+ * <p/>
+ * Files are processed one at a time, in the order they arrived, so the output of each partition
+ * stays in arrival order. A file counts as closed once it has not changed for a quiet period;
+ * writers that create a hidden file (name starting with a dot) and rename it into place are picked
+ * up without waiting for changes. Processed files are moved to a <code>processed</code>
+ * subdirectory; files that fail are moved to <code>failed</code>.
+ * <p/>
+ * Before each file, the length of every output file is recorded in a checkpoint next to the
+ * outputs. If the watcher fails while processing a file, the next watcher cuts the outputs back
+ * to those lengths and processes the file again, so no sample is written twice or lost.
+ */
+public class SpoolWatcher implements Closeable {
+
+  /**
+   * Command line arguments of the watcher.
+   */
+  @Parameters(separators = " =")
+  static class SpoolArgs {
+    @Parameter(names = {"--spoolDirectory", "-s"}, required = true,
+        description = "Directory into which new input files are dropped",
+        validateValueWith = ExistingReadableDirectory.class)
+    String spoolDirectory;
+
+    @Parameter(names = {"--outputDirectory", "-o"}, required = true,
+        description = "Path to the directory in which output files shall be placed",
+        validateValueWith = ExistingReadableDirectory.class)
+    String outputDirectory;
+
+    @Parameter(names = {"--numPartitions", "-p"}, required = true,
+        description = "Number of partitions in the input files",
+        validateValueWith = RequiredPositiveInteger.class)
+    Integer numPartitions;
+
+    @Parameter(names = {"--numWriteThreads", "-w"},
+        description = "Number of threads to use for writing output files",
+        validateValueWith = RequiredPositiveInteger.class)
+    Integer numWriteThreads = 1;
+
+    @Parameter(names = {"--quietPeriod"}, validateValueWith = RequiredPositiveInteger.class,
+        description = "Time in milliseconds a file must stay unchanged to count as closed")
+    Integer quietPeriod = 1000;
+
+    @Parameter(names = {"--help", "-h"}, description = "Display usage")
+    boolean isHelpCommand = false;
+  }
+
+  /**
+   * A spooled file waiting to be processed.
+   */
+  private static class PendingFile {
+    long size;
+    long lastChangeNanos;
+
+    PendingFile(long size, long lastChangeNanos) {
+      this.size = size;
+      this.lastChangeNanos = lastChangeNanos;
+    }
+  }
+
+  static final String PROCESSED_DIRECTORY = "processed";
+  static final String FAILED_DIRECTORY = "failed";
+  static final String SPOOL_CHECKPOINT_FILE_NAME = "_SPOOL_CHECKPOINT";
+
+  private static final int MAX_FILE_HANDLES = 1024;
+  private static final Duration POLL_DURATION = Duration.ofSeconds(1);
+  private static final Logger LOG = getLogger(SpoolWatcher.class);
+
+  /**
+   * Watch a spool directory from the command line until the process is terminated.
+   * 
+   * @param args command-line arguments
+   */
+  public static void main(String[] args) {
+    SpoolArgs parsedArguments = new SpoolArgs();
+    JCommander commander = JCommander.newBuilder().addObject(parsedArguments).build();
+    try {
+      commander.parse(args);
+      if (parsedArguments.isHelpCommand) {
+        commander.usage();
+        return;
+      }
+    } catch (ParameterException e) {
+      // validation failed; print usage and exception to console
+      commander.usage();
+      commander.getConsole().println(e.getMessage());
+      return;
+    }
+
+    SpoolWatcher watcher = new SpoolWatcher(Paths.get(parsedArguments.spoolDirectory),
+        getOutputFiles(parsedArguments.numPartitions, Paths.get(parsedArguments.outputDirectory)),
+        parsedArguments.numWriteThreads, Duration.ofMillis(parsedArguments.quietPeriod));
+    Runtime.getRuntime().addShutdownHook(new Thread(watcher::close, "spool-shutdown"));
+    watcher.watch();
+  }
+
+  private static boolean isSpooled(Path path) {
+    return !path.getFileName().toString().startsWith(".") && Files.isRegularFile(path);
+  }
+
+  private static long sizeOf(Path path) {
+    try {
+      return Files.size(path);
+    } catch (IOException e) {
+      return -1; // gone, or not readable yet
+    }
+  }
+
+  private final LinkedHashMap<Path, PendingFile> pending = Maps.newLinkedHashMap();
+  private final AtomicBoolean isClosed = new AtomicBoolean(false /* initialValue */);
+  private final Path spoolDirectory;
+  private final Path checkpointPath;
+  private final List<String> outputFilePaths;
+  private final int numWriteThreads;
+  private final Duration quietPeriod;
+  private final WatchService watchService;
+
+  final AtomicInteger numProcessed = new AtomicInteger(0 /* initialValue */);
+
+  /**
+   * Canonical constructor. Recovers from a watcher that failed while processing a file, then
+   * queues the files already in the spool directory, oldest first.
+   * 
+   * @param spoolDirectory directory into which new input files are dropped
+   * @param outputFilePaths paths of the per-partition output files, in partition order
+   * @param numWriteThreads number of threads to use for writing output files
+   * @param quietPeriod time a file must stay unchanged to count as closed
+   */
+  public SpoolWatcher(Path spoolDirectory, List<String> outputFilePaths, int numWriteThreads,
+      Duration quietPeriod) {
+    if (spoolDirectory == null || !Files.isDirectory(spoolDirectory)) {
+      throw new IllegalArgumentException("spoolDirectory must be an existing directory");
+    }
+    if (outputFilePaths == null || outputFilePaths.isEmpty()) {
+      throw new IllegalArgumentException("outputFilePaths must be non-empty");
+    }
+    if (numWriteThreads <= 0) {
+      throw new IllegalArgumentException("numWriteThreads must be positive");
+    }
+    if (quietPeriod == null || quietPeriod.isNegative()) {
+      throw new IllegalArgumentException("quietPeriod must be non-negative");
+    }
+
+    this.spoolDirectory = spoolDirectory.toAbsolutePath();
+    this.outputFilePaths = outputFilePaths;
+    this.numWriteThreads = numWriteThreads;
+    this.quietPeriod = quietPeriod;
+    this.checkpointPath = Paths.get(outputFilePaths.get(0)).toAbsolutePath()
+        .resolveSibling(SPOOL_CHECKPOINT_FILE_NAME);
+    try {
+      Files.createDirectories(this.spoolDirectory.resolve(PROCESSED_DIRECTORY));
+      Files.createDirectories(this.spoolDirectory.resolve(FAILED_DIRECTORY));
+      this.watchService = this.spoolDirectory.getFileSystem().newWatchService();
+      this.spoolDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to watch directory -- path: %s", spoolDirectory), e);
+    }
+
+    recover();
+    scan();
+  }
+
+  /**
+   * Stop watching. A file in progress is processed to completion first.
+   */
+  @Override
+  public void close() {
+    if (isClosed.compareAndSet(false, true)) {
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        LOG.warn(String.format("Unable to close watch service -- message: %s", e.getMessage()));
+      }
+    }
+  }
+
+  /**
+   * Process spooled files as they arrive, until this watcher is closed.
+   */
+  public void watch() {
+    LOG.info(String.format("watching spool directory -- path: %s", spoolDirectory));
+    long pollMillis = Math.max(1, Math.min(POLL_DURATION.toMillis(), quietPeriod.toMillis() / 2));
+    while (!isClosed.get()) {
+      WatchKey key;
+      try {
+        key = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ClosedWatchServiceException e) {
+        return;
+      }
+
+      if (key != null) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            scan(); // events were lost
+          } else {
+            noteChange(spoolDirectory.resolve((Path) event.context()));
+          }
+        }
+        key.reset();
+      }
+      processReady();
+    }
+  }
+
+  /**
+   * Remember that a spooled file was created or changed; new files queue up in arrival order.
+   * 
+   * @param path path of the file
+   */
+  private void noteChange(Path path) {
+    if (!isSpooled(path)) {
+      return;
+    }
+    PendingFile file = pending.get(path);
+    if (file != null) {
+      file.size = sizeOf(path);
+      file.lastChangeNanos = System.nanoTime();
+    } else {
+      pending.put(path, new PendingFile(sizeOf(path), System.nanoTime()));
+    }
+  }
+
+  /**
+   * Force every output file to stable storage. Once a file is moved to <code>processed</code> and
+   * its checkpoint is deleted, its output can no longer be cut back, so it must not be lost.
+   */
+  private void forceOutputs() {
+    for (String outputFilePath : outputFilePaths) {
+      Path outputPath = Paths.get(outputFilePath);
+      if (!Files.exists(outputPath)) {
+        continue; // nothing was appended
+      }
+      try (FileChannel channel = FileChannel.open(outputPath, StandardOpenOption.WRITE)) {
+        channel.force(true /* metaData */);
+      } catch (IOException e) {
+        throw new IllegalStateException(
+            String.format("Unable to sync output file -- path: %s", outputPath), e);
+      }
+    }
+  }
+
+  private void moveTo(Path file, String directoryName) {
+    Path target = spoolDirectory.resolve(directoryName).resolve(file.getFileName());
+    try {
+      Files.move(file, target, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to move spooled file -- source: %s, target: %s", file, target),
+          e);
+    }
+  }
+
+  /**
+   * Run one spooled file through the pipeline, appending to the outputs. The outputs are forced
+   * to stable storage before the file counts as processed; if either step fails, the outputs are
+   * cut back to the checkpoint and the file is set aside.
+   * 
+   * @param file closed input file
+   */
+  private void process(Path file) {
+    LOG.info(String.format("processing spooled file -- path: %s", file));
+    Checkpoint.capture(file.getFileName().toString(), 0 /* inputOffset */, outputFilePaths)
+        .write(checkpointPath);
+    try {
+      new InterviewApplication(numWriteThreads, Math.max(numWriteThreads, MAX_FILE_HANDLES),
+          outputFilePaths, file.toString(), DEFAULT_QUEUE_SIZE, POLL_DURATION,
+          null /* metricsEndpoint */, () -> new CollectorRegistry(),
+          OutputOptions.defaults().withAppend()).call();
+      forceOutputs();
+      moveTo(file, PROCESSED_DIRECTORY);
+    } catch (RuntimeException e) {
+      // set the file aside, so that it does not hold up the files behind it
+      LOG.error(String.format("Unable to process spooled file -- path: %s, message: %s", file,
+          e.getMessage()));
+      // a failed run has closed its writers, so nothing is appended past the cut
+      Checkpoint.read(checkpointPath).restore(outputFilePaths);
+      moveTo(file, FAILED_DIRECTORY);
+    }
+    deleteCheckpoint();
+    numProcessed.incrementAndGet();
+  }
+
+  /**
+   * Process queued files from the front of the queue for as long as they are closed.
+   */
+  private void processReady() {
+    Iterator<Entry<Path, PendingFile>> oldestFirst = pending.entrySet().iterator();
+    while (!isClosed.get() && oldestFirst.hasNext()) {
+      Entry<Path, PendingFile> next = oldestFirst.next();
+      Path path = next.getKey();
+      PendingFile file = next.getValue();
+      long size = sizeOf(path);
+      if (size < 0) {
+        oldestFirst.remove(); // removed by someone else
+        continue;
+      }
+      if (size != file.size) {
+        file.size = size;
+        file.lastChangeNanos = System.nanoTime();
+      }
+      if (System.nanoTime() - file.lastChangeNanos < quietPeriod.toNanos()) {
+        return; // later files wait, so that files are processed in arrival order
+      }
+      oldestFirst.remove();
+      process(path);
+    }
+  }
+
+  /**
+   * Undo the partial output of a file whose processing was interrupted; it is still spooled and
+   * will be processed again.
+   */
+  private void recover() {
+    Checkpoint previous = Checkpoint.read(checkpointPath);
+    if (previous == null) {
+      return;
+    }
+    if (Files.exists(spoolDirectory.resolve(previous.getRunId()))) {
+      LOG.warn(String.format("undoing interrupted spooled file -- path: %s",
+          previous.getRunId()));
+      previous.restore(outputFilePaths);
+    }
+    deleteCheckpoint();
+  }
+
+  private void deleteCheckpoint() {
+    try {
+      Files.deleteIfExists(checkpointPath);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to delete checkpoint -- path: %s", checkpointPath), e);
+    }
+  }
+
+  /**
+   * Queue the spooled files not yet known, oldest first.
+   */
+  private void scan() {
+    List<Path> found = Lists.newArrayList();
+    try (DirectoryStream<Path> paths = Files.newDirectoryStream(spoolDirectory)) {
+      for (Path path : paths) {
+        if (isSpooled(path) && !pending.containsKey(path)) {
+          found.add(path);
+        }
+      }
+      found.sort(Comparator.comparing((Path p) -> p.toFile().lastModified())
+          .thenComparing(Path::getFileName));
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to list directory -- path: %s", spoolDirectory), e);
+    }
+
+    long now = System.nanoTime();
+    for (Path path : found) {
+      pending.put(path, new PendingFile(sizeOf(path), now - quietPeriod.toNanos()));
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application.cli.validators;
+
+import com.beust.jcommander.IValueValidator;
+import com.beust.jcommander.ParameterException;
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Ensures the parameter names one or more existing files that we have permission to read. The value
+ * is a comma-separated list of paths, each of which may hold a glob in its file name, e.g.
+ * <code>/data/2019-09-12/*.txt</code>.
+ */
+public class ExistingReadableFiles implements IValueValidator<String> {
+
+  private static final String GLOB_CHARACTERS = "*?[{";
+
+  /**
+   * Expand the parameter into the paths it names. The paths a glob matches are sorted by name, so
+   * that hourly files named by time come in chronological order.
+   * 
+   * @param name variable name
+   * @param value comma-separated paths or globs
+   * @return paths in the order they were given
+   * @throws ParameterException if a glob matches no file or its directory cannot be listed
+   */
+  public static List<Path> expand(String name, String value) {
+    if (value == null) {
+      throw new ParameterException(String.format("%s cannot be null", name));
+    }
+
+    List<Path> paths = Lists.newArrayList();
+    for (String element : value.split(",")) {
+      Path path = Paths.get(element.trim());
+      if (isGlob(path.getFileName())) {
+        paths.addAll(match(name, path));
+      } else {
+        paths.add(path);
+      }
+    }
+    return paths;
+  }
+
+  private static boolean isGlob(Path fileName) {
+    if (fileName == null) {
+      return false;
+    }
+    for (char c : GLOB_CHARACTERS.toCharArray()) {
+      if (fileName.toString().indexOf(c) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static List<Path> match(String name, Path glob) {
+    Path directory = glob.getParent() != null ? glob.getParent() : Paths.get(".");
+    List<Path> matches = Lists.newArrayList();
+    try (DirectoryStream<Path> paths =
+        Files.newDirectoryStream(directory, glob.getFileName().toString())) {
+      for (Path path : paths) {
+        if (Files.isRegularFile(path)) {
+          matches.add(path);
+        }
+      }
+    } catch (IOException e) {
+      throw new ParameterException(
+          String.format("%s must be in an existing, readable directory (provided: %s)", name,
+              glob));
+    }
+    if (matches.isEmpty()) {
+      throw new ParameterException(
+          String.format("%s must match at least one file (provided: %s)", name, glob));
+    }
+    matches.sort((Path a, Path b) -> a.getFileName().compareTo(b.getFileName()));
+    return matches;
+  }
+
+  @Override
+  public void validate(String name, String value) throws ParameterException {
+    ExistingReadableFile fileValidator = new ExistingReadableFile();
+    for (Path path : expand(name, value)) {
+      fileValidator.validatePath(name, path);
+    }
+  }
+}
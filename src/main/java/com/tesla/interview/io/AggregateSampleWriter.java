@@ -14,25 +14,30 @@
 
 package com.tesla.interview.io;
 
-import static org.apache.logging.log4j.LogManager.getLogger;
-
-import com.google.common.io.Files;
 import com.tesla.interview.model.AggregateSample;
 import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import org.apache.logging.log4j.Logger;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Writes a series of output text files, where each line of output is a String representation of an
- * {@link AggregateSample}.
+ * {@link AggregateSample}. Buffered output is flushed according to a {@link FlushPolicy} and forced
+ * to stable storage according to a {@link DurabilityMode}.
  */
 public class AggregateSampleWriter implements Closeable {
 
-  private static final Logger LOG = getLogger(AggregateSampleWriter.class);
+  private static final String LINE_SEPARATOR = System.lineSeparator();
 
   /**
    * Create an aggregate writer from a file. Classes in outside packages should use this in lieu of
@@ -42,21 +47,153 @@ public class AggregateSampleWriter implements Closeable {
    * @return non-<code>null</code> {@link AggregateSampleWriter}
    */
   public static AggregateSampleWriter fromFile(File fileToWrite) {
+    return fromFile(fileToWrite, FlushPolicy.DEFAULT);
+  }
+
+  /**
+   * Create an aggregate writer from a file that flushes according to the specified policy.
+   * 
+   * @param fileToWrite file to which we will write new samples
+   * @param flushPolicy decides when buffered samples are flushed to the file
+   * @return non-<code>null</code> {@link AggregateSampleWriter}
+   */
+  public static AggregateSampleWriter fromFile(File fileToWrite, FlushPolicy flushPolicy) {
+    return fromFile(fileToWrite, flushPolicy, DurabilityMode.NONE);
+  }
+
+  /**
+   * Create an aggregate writer from a file that flushes according to the specified policy and
+   * forces its output to stable storage according to the specified mode.
+   * 
+   * @param fileToWrite file to which we will write new samples
+   * @param flushPolicy decides when buffered samples are flushed to the file
+   * @param durabilityMode decides when flushed samples are forced to stable storage
+   * @return non-<code>null</code> {@link AggregateSampleWriter}
+   */
+  public static AggregateSampleWriter fromFile(File fileToWrite, FlushPolicy flushPolicy,
+      DurabilityMode durabilityMode) {
+    return fromFile(fileToWrite, flushPolicy, withDurability(durabilityMode));
+  }
+
+  /**
+   * Create an aggregate writer from a file that flushes according to the specified policy and
+   * writes according to the specified output options: durability, and whether output is
+   * memory-mapped ({@link MappedFileWriter}), written with gathering writes
+   * ({@link GatheringChannelWriter}) or compressed ({@link ParallelGzipOutputStream}).
+   * 
+   * @param fileToWrite file to which we will write new samples
+   * @param flushPolicy decides when buffered samples are flushed to the file
+   * @param outputOptions decide how samples are written
+   * @return non-<code>null</code> {@link AggregateSampleWriter}
+   */
+  public static AggregateSampleWriter fromFile(File fileToWrite, FlushPolicy flushPolicy,
+      OutputOptions outputOptions) {
     if (fileToWrite == null) {
       throw new IllegalArgumentException("fileToWrite cannot be null");
     }
     if (fileToWrite.exists()) {
       throw new IllegalArgumentException("fileToWrite must be a new, writable file");
     }
+    return open(fileToWrite, flushPolicy, outputOptions, false /* append */);
+  }
+
+  /**
+   * Create an aggregate writer that appends new samples to an existing file, e.g. to reopen a file
+   * whose previous writer was closed to save file handles.
+   * 
+   * @param fileToAppend existing file to which we will append new samples
+   * @param flushPolicy decides when buffered samples are flushed to the file
+   * @param durabilityMode decides when flushed samples are forced to stable storage
+   * @return non-<code>null</code> {@link AggregateSampleWriter}
+   */
+  public static AggregateSampleWriter appendTo(File fileToAppend, FlushPolicy flushPolicy,
+      DurabilityMode durabilityMode) {
+    return appendTo(fileToAppend, flushPolicy, withDurability(durabilityMode));
+  }
 
+  /**
+   * Create an aggregate writer that appends new samples to an existing file according to the
+   * specified output options. See {@link #fromFile(File, FlushPolicy, OutputOptions)}.
+   * 
+   * @param fileToAppend existing file to which we will append new samples
+   * @param flushPolicy decides when buffered samples are flushed to the file
+   * @param outputOptions decide how samples are written
+   * @return non-<code>null</code> {@link AggregateSampleWriter}
+   */
+  public static AggregateSampleWriter appendTo(File fileToAppend, FlushPolicy flushPolicy,
+      OutputOptions outputOptions) {
+    if (fileToAppend == null) {
+      throw new IllegalArgumentException("fileToAppend cannot be null");
+    }
+    if (!fileToAppend.isFile()) {
+      throw new IllegalArgumentException("fileToAppend must be an existing file");
+    }
+    return open(fileToAppend, flushPolicy, outputOptions, true /* append */);
+  }
+
+  private static AggregateSampleWriter open(File file, FlushPolicy flushPolicy,
+      OutputOptions outputOptions, boolean append) {
+    if (flushPolicy == null) {
+      throw new IllegalArgumentException("flushPolicy cannot be null");
+    }
+    if (outputOptions == null) {
+      throw new IllegalArgumentException("outputOptions cannot be null");
+    }
+    DurabilityMode durabilityMode = outputOptions.getDurabilityMode();
+    if (outputOptions.isMapped()) {
+      return openMapped(file, flushPolicy, durabilityMode, outputOptions.getMappedExtentBytes());
+    }
+
+    FileOutputStream stream;
     try {
-      BufferedWriter writer = Files.newWriter(fileToWrite, StandardCharsets.UTF_8);
-      return new AggregateSampleWriter(writer, 0 /* lineNo */, fileToWrite.getPath());
+      stream = new FileOutputStream(file, append);
     } catch (FileNotFoundException e) {
       throw new IllegalStateException(
           String.format("Unable to open output file -- reason: %s, path: %s", "no such file",
-              fileToWrite.getPath(), e));
+              file.getPath(), e));
+    }
+
+    Writer writer;
+    if (outputOptions.isGathering()) {
+      writer = new GatheringChannelWriter(stream.getChannel(), DirectBufferPool.shared(),
+          flushPolicy.getBufferSize());
+    } else if (outputOptions.isCompressed()) {
+      writer = new BufferedWriter(new OutputStreamWriter(
+          new ParallelGzipOutputStream(stream, ParallelGzipOutputStream.sharedExecutor()),
+          StandardCharsets.UTF_8), flushPolicy.getBufferSize());
+    } else {
+      writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8),
+          flushPolicy.getBufferSize());
     }
+    return new AggregateSampleWriter(writer, stream.getChannel(), 0 /* lineNo */, file.getPath(),
+        flushPolicy, durabilityMode);
+  }
+
+  private static AggregateSampleWriter openMapped(File file, FlushPolicy flushPolicy,
+      DurabilityMode durabilityMode, long mappedExtentBytes) {
+    FileChannel channel = null;
+    try {
+      channel = new RandomAccessFile(file, "rw").getChannel();
+      BufferedWriter writer = new BufferedWriter(new MappedFileWriter(channel, mappedExtentBytes),
+          flushPolicy.getBufferSize());
+      return new AggregateSampleWriter(writer, channel, 0 /* lineNo */, file.getPath(),
+          flushPolicy, durabilityMode);
+    } catch (IOException e) {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException suppressed) {
+          e.addSuppressed(suppressed);
+        }
+      }
+      throw new IllegalStateException(
+          String.format("Unable to map output file -- path: %s", file.getPath()), e);
+    }
+  }
+
+  private static OutputOptions withDurability(DurabilityMode durabilityMode) {
+    OutputOptions outputOptions = OutputOptions.defaults();
+    return outputOptions.withDurability(durabilityMode, outputOptions.getSyncInterval());
   }
 
   /**
@@ -66,26 +203,134 @@ public class AggregateSampleWriter implements Closeable {
    * @return custom instance with mock and/or stub injected
    */
   static AggregateSampleWriter withWriterMock(BufferedWriter mock) {
-    return new AggregateSampleWriter(mock, -1 /* lineno */, null /* path */);
+    return withWriterMock(mock, FlushPolicy.DEFAULT);
   }
 
+  /**
+   * Injection for unit testing.
+   * 
+   * @param mock mock or stub of writer
+   * @param flushPolicy flush policy to inject
+   * @return custom instance with mock and/or stub injected
+   */
+  static AggregateSampleWriter withWriterMock(BufferedWriter mock, FlushPolicy flushPolicy) {
+    return new AggregateSampleWriter(mock, null /* channel */, -1 /* lineno */, null /* path */,
+        flushPolicy, DurabilityMode.NONE);
+  }
+
+  private final AtomicBoolean isDirty = new AtomicBoolean(false /* initialValue */);
+  private final FileChannel channel;
+  private final DurabilityMode durabilityMode;
+  private final FlushPolicy flushPolicy;
   private int lineNo;
   private String path;
-  private BufferedWriter writer;
+  private Writer writer;
+  private boolean isClosed;
+  private long unflushedBytes;
+  private int unflushedRecords;
+  private long oldestUnflushedNanos;
 
-  private AggregateSampleWriter(BufferedWriter writer, int lineNo, String path) {
+  private AggregateSampleWriter(Writer writer, FileChannel channel, int lineNo,
+      String path, FlushPolicy flushPolicy, DurabilityMode durabilityMode) {
     this.writer = writer;
+    this.channel = channel;
     this.lineNo = lineNo;
     this.path = path;
+    this.flushPolicy = flushPolicy;
+    this.durabilityMode = durabilityMode;
   }
 
+  /**
+   * Flush buffered samples, force them to stable storage if the durability mode syncs on close,
+   * then close the file.
+   * 
+   * @throws IllegalStateException if buffered samples may not have reached the file, or the file
+   *         may not have reached stable storage as promised
+   */
   @Override
-  public void close() {
+  public synchronized void close() {
+    isClosed = true;
     try {
+      if (durabilityMode.syncsOnClose() && channel != null && channel.isOpen()) {
+        writer.flush();
+        channel.force(false /* metaData */);
+      }
       writer.close();
     } catch (IOException e) {
-      LOG.error(String.format("Unexpected error while closing file -- filePath: %s, lineNo: %d",
-          path, lineNo));
+      throw new IllegalStateException(String.format(
+          "Unexpected error while closing file -- filePath: %s, lineNo: %d", path, lineNo), e);
+    }
+  }
+
+  /**
+   * Push all buffered samples to the file system.
+   */
+  public synchronized void flush() {
+    try {
+      writer.flush();
+      unflushedBytes = 0;
+      unflushedRecords = 0;
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format(
+          "Unexpected error while flushing file -- filePath: %s, lineNo: %d", path, lineNo), e);
+    }
+  }
+
+  /**
+   * Flush if the oldest unflushed sample has been buffered longer than the policy's max. delay.
+   * Called periodically by a {@link FlushScheduler}.
+   * 
+   * @param nowNanos current value of {@link System#nanoTime()}
+   */
+  public synchronized void flushIfDue(long nowNanos) {
+    if (unflushedRecords > 0 && flushPolicy.hasMaxDelay()
+        && nowNanos - oldestUnflushedNanos >= flushPolicy.getMaxDelay().toNanos()) {
+      flush();
+    }
+  }
+
+  public DurabilityMode getDurabilityMode() {
+    return durabilityMode;
+  }
+
+  public FlushPolicy getFlushPolicy() {
+    return flushPolicy;
+  }
+
+  /**
+   * Whether samples have been written since the last {@link #sync()}.
+   * 
+   * @return <code>true</code> if the file has output that may not be on stable storage yet
+   */
+  public boolean isDirty() {
+    return isDirty.get();
+  }
+
+  /**
+   * Flush all buffered samples, then force them to stable storage. Writes may proceed while the
+   * file system forces the file.
+   */
+  public void sync() {
+    if (!isDirty.getAndSet(false)) {
+      return;
+    }
+
+    synchronized (this) {
+      if (isClosed) {
+        return; // close() has already forced the file if the durability mode asks for it
+      }
+      flush();
+    }
+    if (channel != null) {
+      try {
+        channel.force(false /* metaData */);
+      } catch (ClosedChannelException e) {
+        // closed concurrently; close() forced the file
+      } catch (IOException e) {
+        isDirty.set(true);
+        throw new IllegalStateException(String.format(
+            "Unexpected error while syncing file -- filePath: %s, lineNo: %d", path, lineNo), e);
+      }
     }
   }
 
@@ -94,14 +339,58 @@ public class AggregateSampleWriter implements Closeable {
    * 
    * @param sample the sample to write.
    */
-  public void writeSample(AggregateSample sample) {
+  public synchronized void writeSample(AggregateSample sample) {
     try {
-      writer.append(sample.toString());
-      writer.newLine();
+      String line = sample.toString();
+      writer.append(line);
+      writer.write(LINE_SEPARATOR);
       lineNo++;
+      written(line.length() + LINE_SEPARATOR.length(), 1 /* numRecords */);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format(
+          "Unexpected error while writing to file -- filePath: %s, lineNo: %d", path, lineNo), e);
+    }
+  }
+
+  /**
+   * Write a series of samples to the associated output file in a single buffered append.
+   * 
+   * @param samples the samples to write, in order
+   */
+  public synchronized void writeSamples(List<AggregateSample> samples) {
+    StringBuilder lines = new StringBuilder();
+    for (AggregateSample sample : samples) {
+      lines.append(sample.toString());
+      lines.append(LINE_SEPARATOR);
+    }
+
+    try {
+      writer.append(lines);
+      lineNo += samples.size();
+      written(lines.length(), samples.size());
     } catch (IOException e) {
       throw new IllegalStateException(String.format(
           "Unexpected error while writing to file -- filePath: %s, lineNo: %d", path, lineNo), e);
     }
   }
+
+  /**
+   * Account for newly buffered output and flush if the policy's size limits are reached. Output is
+   * ASCII, so one character counts as one byte.
+   * 
+   * @param numBytes number of bytes appended
+   * @param numRecords number of records appended
+   */
+  private void written(int numBytes, int numRecords) {
+    isDirty.set(true);
+    if (unflushedRecords == 0) {
+      oldestUnflushedNanos = System.nanoTime();
+    }
+    unflushedBytes += numBytes;
+    unflushedRecords += numRecords;
+    if (unflushedBytes >= flushPolicy.getMaxBufferedBytes()
+        || unflushedRecords >= flushPolicy.getMaxRecords()) {
+      flush();
+    }
+  }
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.tesla.interview.model.IntegerHashtag;
+import com.tesla.interview.model.MeasurementSample;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads {@link MeasurementSample}s from a binary input file of fixed-size records through
+ * memory-mapped windows. Decoding a record takes a handful of loads, where a text line must be
+ * scanned and split.
+ * <p/>
+ * Layout (all integers big-endian):
+ * <ol>
+ * <li>header: magic (int), version (int), record size (int)</li>
+ * <li>records: timestamp (long), partition number (int), asset UUID (two longs, most significant
+ * first), hashtag mask (short; bit <i>n</i> set for the hashtag of value <i>n + 1</i>), reserved
+ * (short)</li>
+ * </ol>
+ * Use {@link BinarySampleWriter} to write such files or to convert text input.
+ */
+public class BinarySampleReader implements SampleReader {
+
+  static final int MAGIC = 0x49424d53; // "IBMS"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 3 * Integer.BYTES;
+  static final int RECORD_SIZE = Long.BYTES + Integer.BYTES + 2 * Long.BYTES + 2 * Short.BYTES;
+
+  private static final long WINDOW_SIZE = (1L << 30) / RECORD_SIZE * RECORD_SIZE;
+  private static final IntegerHashtag[] HASHTAGS = IntegerHashtag.values();
+  private static final Logger LOG = getLogger(BinarySampleReader.class);
+
+  /**
+   * Decode the hashtags of a mask.
+   * 
+   * @param mask bit <i>n</i> set for the hashtag of value <i>n + 1</i>
+   * @return hashtags of the mask
+   */
+  static Set<IntegerHashtag> fromMask(int mask) {
+    Set<IntegerHashtag> hashtags = EnumSet.noneOf(IntegerHashtag.class);
+    for (IntegerHashtag hashtag : HASHTAGS) {
+      if ((mask & (1 << (hashtag.getValue() - 1))) != 0) {
+        hashtags.add(hashtag);
+      }
+    }
+    return hashtags;
+  }
+
+  /**
+   * Check whether a file starts with the magic number of the binary format.
+   * 
+   * @param sampleFile existing readable file
+   * @return <code>true</code> if the file should be read by this class
+   */
+  static boolean isBinary(File sampleFile) {
+    if (sampleFile == null) {
+      throw new IllegalArgumentException("sampleFile cannot be null");
+    }
+    if (!sampleFile.exists() || !sampleFile.isFile() || !sampleFile.canRead()) {
+      throw new IllegalArgumentException("sampleFile must be an existing readable file");
+    }
+
+    try (DataInputStream input = new DataInputStream(new FileInputStream(sampleFile))) {
+      return sampleFile.length() >= Integer.BYTES && input.readInt() == MAGIC;
+    } catch (IOException e) {
+      throw new IllegalStateException("Unexpected error while opening file", e);
+    }
+  }
+
+  private final FileChannel channel;
+  private final String path;
+  private final long size;
+  private MappedByteBuffer window;
+  private long windowStart;
+
+  /**
+   * Constructor.
+   * 
+   * @param sampleFile binary file whose samples to read
+   */
+  public BinarySampleReader(File sampleFile) {
+    this(sampleFile, 0 /* offset */);
+  }
+
+  /**
+   * Construct a reader that starts at a byte offset.
+   * 
+   * @param sampleFile binary file whose samples to read
+   * @param offset offset of a record, as returned by {@link #getOffset()}, or zero for the first
+   */
+  public BinarySampleReader(File sampleFile, long offset) {
+    if (sampleFile == null) {
+      throw new IllegalArgumentException("sampleFile cannot be null");
+    }
+    if (!sampleFile.isFile() || !sampleFile.canRead()) {
+      throw new IllegalArgumentException("sampleFile must be an existing readable file");
+    }
+
+    this.path = sampleFile.getPath();
+    try {
+      this.channel = FileChannel.open(sampleFile.toPath(), StandardOpenOption.READ);
+      this.size = channel.size();
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Unable to open file -- path: %s", path), e);
+    }
+
+    try {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // read the whole header
+      }
+      header.flip();
+      if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC
+          || header.getInt() != VERSION || header.getInt() != RECORD_SIZE) {
+        throw new IllegalStateException("unknown header");
+      }
+      if ((size - HEADER_SIZE) % RECORD_SIZE != 0) {
+        throw new IllegalStateException("truncated record");
+      }
+      long start = Math.max(offset, HEADER_SIZE);
+      if (start > size || (start - HEADER_SIZE) % RECORD_SIZE != 0) {
+        throw new IllegalStateException(String.format("no record at offset -- offset: %d", offset));
+      }
+      map(start);
+    } catch (IOException | RuntimeException e) {
+      close();
+      throw new IllegalArgumentException(
+          String.format("sampleFile must be a binary sample file -- path: %s", path), e);
+    }
+  }
+
+  @Override
+  public void close() {
+    window = null;
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.error(String.format("Unexpected error while closing file -- filePath: %s", path));
+    }
+  }
+
+  @Override
+  public long getOffset() {
+    return windowStart + window.position();
+  }
+
+  @Override
+  public boolean hasNext() {
+    return window.hasRemaining() || windowStart + window.capacity() < size;
+  }
+
+  @Override
+  public MeasurementSample next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    if (!window.hasRemaining()) {
+      try {
+        map(windowStart + window.capacity());
+      } catch (IOException e) {
+        throw new IllegalStateException(String.format(
+            "Unexpected error while reading file -- filePath: %s, offset: %d", path,
+            windowStart + window.capacity()), e);
+      }
+    }
+
+    long timestamp = window.getLong();
+    int partitionNo = window.getInt();
+    long mostSigBits = window.getLong();
+    long leastSigBits = window.getLong();
+    int mask = window.getShort();
+    window.getShort(); // reserved
+    return new MeasurementSample(timestamp, partitionNo,
+        new UUID(mostSigBits, leastSigBits).toString(), fromMask(mask));
+  }
+
+  private void map(long start) throws IOException {
+    window = channel.map(MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+    windowStart = start;
+  }
+}
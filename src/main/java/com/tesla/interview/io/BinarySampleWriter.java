@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static com.tesla.interview.io.BinarySampleReader.MAGIC;
+import static com.tesla.interview.io.BinarySampleReader.RECORD_SIZE;
+import static com.tesla.interview.io.BinarySampleReader.VERSION;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.tesla.interview.model.IntegerHashtag;
+import com.tesla.interview.model.MeasurementSample;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes {@link MeasurementSample}s to a binary input file that {@link BinarySampleReader} can
+ * read. Records are encoded into a direct buffer and written with one system call per buffer.
+ */
+public class BinarySampleWriter implements Closeable {
+
+  private static final int BUFFER_SIZE = (1 << 20) / RECORD_SIZE * RECORD_SIZE;
+  private static final Logger LOG = getLogger(BinarySampleWriter.class);
+
+  /**
+   * Convert a text input file into a binary one.
+   * 
+   * @param textFile text file in the format read by {@link MeasurementSampleReader}
+   * @param binaryFile new file to write
+   * @return number of samples converted
+   */
+  public static long convert(File textFile, File binaryFile) {
+    if (textFile == null) {
+      throw new IllegalArgumentException("textFile cannot be null");
+    }
+
+    MeasurementSampleReader reader = new MeasurementSampleReader(textFile);
+    try {
+      BinarySampleWriter writer = fromFile(binaryFile);
+      try {
+        long numSamples = 0;
+        while (reader.hasNext()) {
+          MeasurementSample sample = reader.next();
+          try {
+            writer.writeSample(sample);
+          } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format(
+                "Unable to convert sample -- sampleNo: %d, message: %s", numSamples + 1,
+                e.getMessage()), e);
+          }
+          numSamples++;
+        }
+        return numSamples;
+      } finally {
+        writer.close();
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Create a binary writer from a file.
+   * 
+   * @param fileToWrite new file to which we will write samples
+   * @return non-<code>null</code> {@link BinarySampleWriter}
+   */
+  public static BinarySampleWriter fromFile(File fileToWrite) {
+    if (fileToWrite == null) {
+      throw new IllegalArgumentException("fileToWrite cannot be null");
+    }
+    if (fileToWrite.exists()) {
+      throw new IllegalArgumentException("fileToWrite must be a new, writable file");
+    }
+
+    try {
+      return new BinarySampleWriter(FileChannel.open(fileToWrite.toPath(),
+          StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), fileToWrite.getPath());
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to open output file -- path: %s", fileToWrite.getPath()), e);
+    }
+  }
+
+  /**
+   * Encode the hashtags of a sample as a mask.
+   * 
+   * @param sample sample whose hashtags to encode
+   * @return bit <i>n</i> set for the hashtag of value <i>n + 1</i>
+   */
+  static int toMask(MeasurementSample sample) {
+    int mask = 0;
+    for (IntegerHashtag hashtag : sample.getHashtags()) {
+      mask |= 1 << (hashtag.getValue() - 1);
+    }
+    return mask;
+  }
+
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private final FileChannel channel;
+  private final String path;
+  private boolean isClosed;
+
+  private BinarySampleWriter(FileChannel channel, String path) {
+    this.channel = channel;
+    this.path = path;
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(RECORD_SIZE);
+  }
+
+  @Override
+  public void close() {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+
+    try {
+      writeBuffer();
+      channel.force(false /* metaData */);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unexpected error while writing file -- filePath: %s", path), e);
+    } finally {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOG.error(String.format("Unexpected error while closing file -- filePath: %s", path));
+      }
+    }
+  }
+
+  /**
+   * Write a sample. Its asset identifier must be a UUID in canonical, lower-case form.
+   * 
+   * @param sample the sample to write
+   */
+  public void writeSample(MeasurementSample sample) {
+    if (isClosed) {
+      throw new IllegalStateException("writer is closed");
+    }
+
+    UUID assetId;
+    try {
+      assetId = UUID.fromString(sample.getAssetId());
+    } catch (RuntimeException e) {
+      assetId = null;
+    }
+    if (assetId == null || !assetId.toString().equals(sample.getAssetId())) {
+      // only the canonical form survives the round trip unchanged
+      throw new IllegalArgumentException(String.format(
+          "asset identifier must be a lower-case UUID -- assetId: %s", sample.getAssetId()));
+    }
+    if (buffer.remaining() < RECORD_SIZE) {
+      try {
+        writeBuffer();
+      } catch (IOException e) {
+        throw new IllegalStateException(
+            String.format("Unexpected error while writing file -- filePath: %s", path), e);
+      }
+    }
+
+    buffer.putLong(sample.getTimestamp());
+    buffer.putInt(sample.getPartitionNo());
+    buffer.putLong(assetId.getMostSignificantBits());
+    buffer.putLong(assetId.getLeastSignificantBits());
+    buffer.putShort((short) toMask(sample));
+    buffer.putShort((short) 0); // reserved
+  }
+
+  private void writeBuffer() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
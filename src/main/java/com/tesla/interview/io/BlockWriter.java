@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import com.tesla.interview.model.AggregateSample;
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * A single sequential output shared by all partitions, to which samples are appended in blocks
+ * tagged with their partition number.
+ */
+public interface BlockWriter extends Closeable {
+
+  @Override
+  void close();
+
+  /**
+   * Delete any intermediate files that outlive {@link #close()}, because the run failed and they
+   * will never be consumed. Files written to the staging paths are left to the caller.
+   */
+  default void discard() {
+    // nothing beyond the staging files by default
+  }
+
+  /**
+   * Append a block of samples of a single partition.
+   * 
+   * @param partitionNo partition number of all samples (indexed from one)
+   * @param samples non-empty samples to write, in order
+   */
+  void writeBlock(int partitionNo, List<AggregateSample> samples);
+}
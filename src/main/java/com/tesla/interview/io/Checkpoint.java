@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Progress of a run that can be resumed after a failure: the input offset up to which samples have
+ * been written, and the length of every staging file at that point. Resuming truncates each
+ * staging file to its recorded length and reads the input from the recorded offset, so that no
+ * sample is written twice or lost.
+ * <p/>
+ * A checkpoint is a small text file that is replaced atomically, so a crash while writing one
+ * leaves the previous checkpoint in place.
+ */
+public class Checkpoint {
+
+  /**
+   * Name of the checkpoint file, written to the directory of the first output file.
+   */
+  public static final String CHECKPOINT_FILE_NAME = "_CHECKPOINT";
+
+  private static final String RUN_ID = "runId=";
+  private static final String INPUT_OFFSET = "inputOffset=";
+  private static final String OUTPUT = "output=";
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final Logger LOG = getLogger(Checkpoint.class);
+
+  /**
+   * Record the current progress of a run. Every writer of the staging files must have been flushed
+   * and no write may be in flight; the staging files are forced to stable storage before the
+   * checkpoint refers to them.
+   * 
+   * @param runId identifier of the run, which determines the staging paths
+   * @param inputOffset offset of the first input sample not yet written
+   * @param stagingPaths paths of the staging files, in partition order
+   * @return the checkpoint
+   */
+  public static Checkpoint capture(String runId, long inputOffset, List<String> stagingPaths) {
+    long[] outputLengths = new long[stagingPaths.size()];
+    for (int i = 0; i < outputLengths.length; i++) {
+      Path path = Paths.get(stagingPaths.get(i));
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+        channel.force(false /* metaData */);
+        outputLengths[i] = channel.size();
+      } catch (NoSuchFileException e) {
+        outputLengths[i] = 0; // not written yet
+      } catch (IOException e) {
+        throw new IllegalStateException(String.format("Unable to sync file -- path: %s", path), e);
+      }
+    }
+    return new Checkpoint(runId, inputOffset, outputLengths);
+  }
+
+  /**
+   * Read a checkpoint file.
+   * 
+   * @param path path of the checkpoint file
+   * @return checkpoint or <code>null</code> if there is none
+   */
+  public static Checkpoint read(Path path) {
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Unable to read checkpoint -- path: %s", path),
+          e);
+    }
+
+    String runId = null;
+    long inputOffset = -1;
+    List<Long> outputLengths = Lists.newArrayList();
+    for (String line : lines) {
+      if (line.startsWith(RUN_ID)) {
+        runId = line.substring(RUN_ID.length());
+      } else if (line.startsWith(INPUT_OFFSET)) {
+        inputOffset = Long.parseLong(line.substring(INPUT_OFFSET.length()));
+      } else if (line.startsWith(OUTPUT)) {
+        outputLengths.add(Long.parseLong(line.substring(OUTPUT.length())));
+      }
+    }
+    if (runId == null || inputOffset < 0) {
+      throw new IllegalStateException(String.format("Incomplete checkpoint -- path: %s", path));
+    }
+    return new Checkpoint(runId, inputOffset,
+        outputLengths.stream().mapToLong(Long::longValue).toArray());
+  }
+
+  private final String runId;
+  private final long inputOffset;
+  private final long[] outputLengths;
+
+  /**
+   * Canonical constructor.
+   * 
+   * @param runId identifier of the run, which determines the staging paths
+   * @param inputOffset offset of the first input sample not yet written
+   * @param outputLengths length of each staging file, in partition order
+   */
+  public Checkpoint(String runId, long inputOffset, long[] outputLengths) {
+    if (runId == null || runId.isEmpty()) {
+      throw new IllegalArgumentException("runId must be non-empty");
+    }
+    if (inputOffset < 0) {
+      throw new IllegalArgumentException("inputOffset cannot be negative");
+    }
+    if (outputLengths == null || outputLengths.length == 0) {
+      throw new IllegalArgumentException("outputLengths must be non-empty");
+    }
+
+    this.runId = runId;
+    this.inputOffset = inputOffset;
+    this.outputLengths = outputLengths.clone();
+  }
+
+  public long getInputOffset() {
+    return inputOffset;
+  }
+
+  /**
+   * Get the length of a staging file at the time of the checkpoint.
+   * 
+   * @param index position of the staging file, in partition order
+   * @return length in bytes
+   */
+  public long getOutputLength(int index) {
+    return outputLengths[index];
+  }
+
+  public int getNumOutputs() {
+    return outputLengths.length;
+  }
+
+  public String getRunId() {
+    return runId;
+  }
+
+  /**
+   * Cut every staging file back to its length at the time of the checkpoint, discarding output
+   * written after it. Staging files that do not exist yet are created empty.
+   * 
+   * @param stagingPaths paths of the staging files, in partition order
+   */
+  public void restore(List<String> stagingPaths) {
+    if (stagingPaths == null || stagingPaths.size() != outputLengths.length) {
+      throw new IllegalArgumentException(String.format(
+          "stagingPaths must match the checkpoint -- numOutputs: %d", outputLengths.length));
+    }
+
+    for (int i = 0; i < outputLengths.length; i++) {
+      truncate(Paths.get(stagingPaths.get(i)), outputLengths[i]);
+    }
+    LOG.info(String.format("restored checkpoint -- runId: %s, inputOffset: %d", runId,
+        inputOffset));
+  }
+
+  /**
+   * Cut a file back to a length it had earlier, discarding anything written since. A file that does
+   * not exist yet is created empty.
+   * 
+   * @param path file to truncate
+   * @param length earlier length of the file
+   * @throws IllegalStateException if the file is shorter than that length
+   */
+  static void truncate(Path path, long length) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE)) {
+      if (channel.size() < length) {
+        throw new IllegalStateException(String.format(
+            "file is shorter than its checkpoint -- path: %s, expected: %d, actual: %d", path,
+            length, channel.size()));
+      }
+      channel.truncate(length);
+      channel.force(true /* metaData */);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Unable to truncate file -- path: %s", path),
+          e);
+    }
+  }
+
+  /**
+   * Atomically replace the checkpoint file.
+   * 
+   * @param path path of the checkpoint file
+   */
+  public void write(Path path) {
+    Path tempPath = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+    try (Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+      writer.write(String.format("%s%s%n", RUN_ID, runId));
+      writer.write(String.format("%s%d%n", INPUT_OFFSET, inputOffset));
+      for (long outputLength : outputLengths) {
+        writer.write(String.format("%s%d%n", OUTPUT, outputLength));
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to write checkpoint -- path: %s", tempPath), e);
+    }
+
+    try {
+      try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+        channel.force(true /* metaData */);
+      }
+      Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to publish checkpoint -- path: %s", path), e);
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Layout and primitive encodings of the binary columnar output format shared by
+ * {@link ColumnarSampleWriter} and {@link ColumnarSampleReader}.
+ * <p/>
+ * Layout (all fixed-size integers big-endian):
+ * <ol>
+ * <li>header: magic (int), version (int), partition number (int)</li>
+ * <li>blocks, each with a header of: number of rows (int), min. and max. timestamp (long), min.
+ * and max. aggregate value (int), payload length (int); and a payload of three columns:
+ * <ul>
+ * <li>timestamps: zig-zag varint deltas, the first one relative to the min. timestamp</li>
+ * <li>asset IDs: a dictionary of distinct IDs (varint count, then varint length and UTF-8 bytes of
+ * each), followed by the bit width (byte) and the bit-packed dictionary index of every row</li>
+ * <li>aggregate values: bit width (byte), then the bit-packed offset of every value from the
+ * block's min. value</li>
+ * </ul>
+ * </li>
+ * </ol>
+ * Blocks are independent of each other. Readers can skip a block by its stats without decoding it.
+ */
+final class ColumnarFormat {
+
+  static final int MAGIC = 0x49434f4c; // "ICOL"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 3 * Integer.BYTES;
+  static final int BLOCK_HEADER_SIZE = 4 * Integer.BYTES + 2 * Long.BYTES;
+
+  /**
+   * Number of bits needed to represent every value from zero to the given one.
+   * 
+   * @param maxValue non-negative value
+   * @return bit width from 0 to 64
+   */
+  static int bitWidth(long maxValue) {
+    return Long.SIZE - Long.numberOfLeadingZeros(maxValue);
+  }
+
+  /**
+   * Bit-pack values, least significant bits first.
+   * 
+   * @param output stream to which packed bytes are written
+   * @param values values to pack; each must fit in the bit width
+   * @param count number of values to pack
+   * @param width bit width from 0 to 32
+   */
+  static void pack(ByteArrayOutputStream output, long[] values, int count, int width) {
+    long bits = 0;
+    int numBits = 0;
+    for (int i = 0; i < count; i++) {
+      bits |= values[i] << numBits;
+      numBits += width;
+      while (numBits >= Byte.SIZE) {
+        output.write((int) bits);
+        bits >>>= Byte.SIZE;
+        numBits -= Byte.SIZE;
+      }
+    }
+    if (numBits > 0) {
+      output.write((int) bits);
+    }
+  }
+
+  static long readVarLong(ByteBuffer input) {
+    long value = 0;
+    for (int shift = 0;; shift += 7) {
+      byte b = input.get();
+      value |= (b & 0x7FL) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  /**
+   * Unpack values written by {@link #pack(ByteArrayOutputStream, long[], int, int)}.
+   * 
+   * @param input buffer positioned at the first packed byte; positioned after the last one on
+   *        return
+   * @param values array to fill
+   * @param count number of values to unpack
+   * @param width bit width from 0 to 32
+   */
+  static void unpack(ByteBuffer input, long[] values, int count, int width) {
+    long mask = (1L << width) - 1;
+    long bits = 0;
+    int numBits = 0;
+    for (int i = 0; i < count; i++) {
+      while (numBits < width) {
+        bits |= (input.get() & 0xFFL) << numBits;
+        numBits += Byte.SIZE;
+      }
+      values[i] = bits & mask;
+      bits >>>= width;
+      numBits -= width;
+    }
+  }
+
+  static void writeVarLong(ByteArrayOutputStream output, long value) {
+    while ((value & ~0x7FL) != 0) {
+      output.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    output.write((int) value);
+  }
+
+  static long zigZagDecode(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  static long zigZagEncode(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private ColumnarFormat() {
+    // constants and static helpers only
+  }
+}
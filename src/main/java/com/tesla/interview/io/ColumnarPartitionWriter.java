@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import com.tesla.interview.model.AggregateSample;
+import java.io.File;
+import java.util.List;
+
+/**
+ * Writes each partition to a columnar file of its own. See {@link ColumnarSampleWriter}.
+ * <p/>
+ * Files are created when their partition is first written; on close, a file without samples is
+ * created for every partition that was never written, so that each partition has a readable file.
+ */
+public class ColumnarPartitionWriter implements BlockWriter {
+
+  private final List<String> outputFilePaths;
+  private final ColumnarSampleWriter[] partitionWriters;
+  private boolean isClosed;
+
+  /**
+   * Canonical constructor.
+   * 
+   * @param outputFilePaths paths of the per-partition files, in partition order
+   */
+  public ColumnarPartitionWriter(List<String> outputFilePaths) {
+    if (outputFilePaths == null || outputFilePaths.isEmpty()) {
+      throw new IllegalArgumentException("outputFilePaths must be non-empty");
+    }
+    this.outputFilePaths = outputFilePaths;
+    this.partitionWriters = new ColumnarSampleWriter[outputFilePaths.size()];
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (isClosed) {
+        return;
+      }
+      isClosed = true;
+    }
+
+    for (int partitionNo = 1; partitionNo <= partitionWriters.length; partitionNo++) {
+      getWriter(partitionNo).close();
+    }
+  }
+
+  @Override
+  public void writeBlock(int partitionNo, List<AggregateSample> samples) {
+    if (partitionNo < 1 || partitionNo > partitionWriters.length) {
+      throw new IllegalArgumentException(
+          String.format("No output file for partition -- partitionNo: %d", partitionNo));
+    }
+    synchronized (this) {
+      if (isClosed) {
+        throw new IllegalStateException("writer is closed");
+      }
+    }
+    getWriter(partitionNo).writeSamples(samples);
+  }
+
+  private synchronized ColumnarSampleWriter getWriter(int partitionNo) {
+    ColumnarSampleWriter writer = partitionWriters[partitionNo - 1];
+    if (writer == null) {
+      writer = ColumnarSampleWriter.fromFile(new File(outputFilePaths.get(partitionNo - 1)),
+          partitionNo);
+      partitionWriters[partitionNo - 1] = writer;
+    }
+    return writer;
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static com.tesla.interview.io.ColumnarFormat.BLOCK_HEADER_SIZE;
+import static com.tesla.interview.io.ColumnarFormat.HEADER_SIZE;
+import static com.tesla.interview.io.ColumnarFormat.MAGIC;
+import static com.tesla.interview.io.ColumnarFormat.VERSION;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.tesla.interview.model.AggregateSample;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads the {@link AggregateSample}s of a file written by {@link ColumnarSampleWriter}, one block
+ * at a time. Each block is decoded column by column into primitive arrays. If a timestamp range is
+ * given, blocks whose stats lie outside of it are skipped without being read.
+ */
+public class ColumnarSampleReader implements Closeable, Iterator<AggregateSample> {
+
+  private static final Logger LOG = getLogger(ColumnarSampleReader.class);
+
+  private final FileChannel channel;
+  private final String path;
+  private final int partitionNo;
+  private final long fromTimestamp;
+  private final long toTimestamp;
+  private final ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+  private ByteBuffer payload = ByteBuffer.allocate(0);
+  private long[] timestamps = new long[0];
+  private long[] assetIndexes = new long[0];
+  private long[] values = new long[0];
+  private String[] assetIds = new String[0];
+  private int minValue;
+  private int numRows;
+  private int nextRow;
+  private long position;
+
+  /**
+   * Constructor. Reads all samples.
+   * 
+   * @param sampleFile file written by {@link ColumnarSampleWriter}
+   */
+  public ColumnarSampleReader(File sampleFile) {
+    this(sampleFile, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Constructor. Reads the samples within a timestamp range only.
+   * 
+   * @param sampleFile file written by {@link ColumnarSampleWriter}
+   * @param fromTimestamp min. timestamp of samples to read (inclusive)
+   * @param toTimestamp max. timestamp of samples to read (inclusive)
+   */
+  public ColumnarSampleReader(File sampleFile, long fromTimestamp, long toTimestamp) {
+    if (sampleFile == null) {
+      throw new IllegalArgumentException("sampleFile cannot be null");
+    }
+    if (!sampleFile.isFile() || !sampleFile.canRead()) {
+      throw new IllegalArgumentException("sampleFile must be an existing readable file");
+    }
+    if (fromTimestamp > toTimestamp) {
+      throw new IllegalArgumentException("fromTimestamp must not be after toTimestamp");
+    }
+
+    this.path = sampleFile.getPath();
+    this.fromTimestamp = fromTimestamp;
+    this.toTimestamp = toTimestamp;
+    try {
+      this.channel = FileChannel.open(sampleFile.toPath(), StandardOpenOption.READ);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Unable to open file -- path: %s", path), e);
+    }
+
+    try {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      readFully(header);
+      if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+        throw new IllegalStateException("unknown header");
+      }
+      this.partitionNo = header.getInt();
+    } catch (IOException | RuntimeException e) {
+      close();
+      throw new IllegalArgumentException(
+          String.format("sampleFile must be a columnar sample file -- path: %s", path), e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.error(String.format("Unexpected error while closing file -- filePath: %s", path));
+    }
+  }
+
+  public int getPartitionNo() {
+    return partitionNo;
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (true) {
+      while (nextRow < numRows) {
+        if (timestamps[nextRow] >= fromTimestamp && timestamps[nextRow] <= toTimestamp) {
+          return true;
+        }
+        nextRow++;
+      }
+      if (!readBlock()) {
+        return false;
+      }
+    }
+  }
+
+  @Override
+  public AggregateSample next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    int row = nextRow++;
+    return new AggregateSample((int) (values[row] + minValue), assetIds[(int) assetIndexes[row]],
+        partitionNo, timestamps[row]);
+  }
+
+  private void decode(int numRows, long minTimestamp) {
+    if (timestamps.length < numRows) {
+      timestamps = new long[numRows];
+      assetIndexes = new long[numRows];
+      values = new long[numRows];
+    }
+
+    long previous = minTimestamp;
+    for (int i = 0; i < numRows; i++) {
+      previous += ColumnarFormat.zigZagDecode(ColumnarFormat.readVarLong(payload));
+      timestamps[i] = previous;
+    }
+
+    int numAssetIds = (int) ColumnarFormat.readVarLong(payload);
+    if (assetIds.length < numAssetIds) {
+      assetIds = new String[numAssetIds];
+    }
+    for (int i = 0; i < numAssetIds; i++) {
+      int length = (int) ColumnarFormat.readVarLong(payload);
+      assetIds[i] = new String(payload.array(), payload.position(), length, StandardCharsets.UTF_8);
+      payload.position(payload.position() + length);
+    }
+    ColumnarFormat.unpack(payload, assetIndexes, numRows, payload.get());
+    ColumnarFormat.unpack(payload, values, numRows, payload.get());
+  }
+
+  /**
+   * Decode the next block that overlaps the timestamp range.
+   * 
+   * @return <code>false</code> at the end of the file
+   */
+  private boolean readBlock() {
+    try {
+      while (position < channel.size()) {
+        blockHeader.clear();
+        readFully(blockHeader);
+        final int blockRows = blockHeader.getInt();
+        long minTimestamp = blockHeader.getLong();
+        long maxTimestamp = blockHeader.getLong();
+        final int blockMinValue = blockHeader.getInt();
+        blockHeader.getInt(); // maxValue
+        int payloadLength = blockHeader.getInt();
+
+        if (maxTimestamp < fromTimestamp || minTimestamp > toTimestamp) {
+          position += payloadLength; // no sample in range; skip without reading
+          continue;
+        }
+        if (payload.capacity() < payloadLength) {
+          payload = ByteBuffer.allocate(payloadLength);
+        }
+        payload.clear();
+        payload.limit(payloadLength);
+        readFully(payload);
+        decode(blockRows, minTimestamp);
+        minValue = blockMinValue;
+        numRows = blockRows;
+        nextRow = 0;
+        return true;
+      }
+      numRows = 0;
+      nextRow = 0;
+      return false;
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format(
+          "Unexpected error while reading block -- filePath: %s, offset: %d", path, position), e);
+    }
+  }
+
+  private void readFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      int numRead = channel.read(buffer, position);
+      if (numRead < 0) {
+        throw new EOFException(String.format("unexpected end of file -- offset: %d", position));
+      }
+      position += numRead;
+    }
+    buffer.flip();
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static com.tesla.interview.io.ColumnarFormat.MAGIC;
+import static com.tesla.interview.io.ColumnarFormat.VERSION;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.tesla.interview.model.AggregateSample;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes the {@link AggregateSample}s of one partition in a binary columnar format, as a compact
+ * alternative to the text files of {@link AggregateSampleWriter}. Samples are collected into blocks
+ * of up to {@link #DEFAULT_BLOCK_ROWS} rows, each of which is encoded column by column. See
+ * {@link ColumnarFormat} for the layout and {@link ColumnarSampleReader} to read the file back.
+ */
+public class ColumnarSampleWriter implements Closeable {
+
+  static final int DEFAULT_BLOCK_ROWS = 4096;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final Logger LOG = getLogger(ColumnarSampleWriter.class);
+
+  /**
+   * Create a columnar writer from a file.
+   * 
+   * @param fileToWrite new file to which we will write samples
+   * @param partitionNo partition number of all samples (indexed from one)
+   * @return non-<code>null</code> {@link ColumnarSampleWriter}
+   */
+  public static ColumnarSampleWriter fromFile(File fileToWrite, int partitionNo) {
+    return fromFile(fileToWrite, partitionNo, DEFAULT_BLOCK_ROWS);
+  }
+
+  /**
+   * Create a columnar writer from a file with a custom block size. Package-visible for unit tests.
+   * 
+   * @param fileToWrite new file to which we will write samples
+   * @param partitionNo partition number of all samples (indexed from one)
+   * @param blockRows max. number of rows per block
+   * @return non-<code>null</code> {@link ColumnarSampleWriter}
+   */
+  static ColumnarSampleWriter fromFile(File fileToWrite, int partitionNo, int blockRows) {
+    if (fileToWrite == null) {
+      throw new IllegalArgumentException("fileToWrite cannot be null");
+    }
+    if (fileToWrite.exists()) {
+      throw new IllegalArgumentException("fileToWrite must be a new, writable file");
+    }
+    if (blockRows <= 0) {
+      throw new IllegalArgumentException("blockRows must be positive");
+    }
+
+    try {
+      FileOutputStream stream = new FileOutputStream(fileToWrite);
+      return new ColumnarSampleWriter(
+          new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE)),
+          stream.getChannel(), fileToWrite.getPath(), partitionNo, blockRows);
+    } catch (FileNotFoundException e) {
+      throw new IllegalStateException(
+          String.format("Unable to open output file -- path: %s", fileToWrite.getPath()), e);
+    }
+  }
+
+  private final List<AggregateSample> pendingRows = Lists.newArrayList();
+  private final ByteArrayOutputStream payload = new ByteArrayOutputStream(BUFFER_SIZE);
+  private final DataOutputStream output;
+  private final FileChannel channel;
+  private final String path;
+  private final int blockRows;
+  private final long[] column;
+  private int numBlocks;
+  private boolean isClosed;
+
+  private ColumnarSampleWriter(DataOutputStream output, FileChannel channel, String path,
+      int partitionNo, int blockRows) {
+    this.output = output;
+    this.channel = channel;
+    this.path = path;
+    this.blockRows = blockRows;
+    this.column = new long[blockRows];
+    try {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(partitionNo);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unexpected error while writing header -- filePath: %s", path), e);
+    }
+  }
+
+  /**
+   * Write pending samples as a last block, force the file to stable storage and close it.
+   */
+  @Override
+  public synchronized void close() {
+    if (isClosed) {
+      return;
+    }
+
+    try {
+      flush();
+      channel.force(false /* metaData */);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unexpected error while syncing file -- filePath: %s", path), e);
+    } finally {
+      isClosed = true;
+      try {
+        output.close();
+      } catch (IOException e) {
+        LOG.error(String.format("Unexpected error while closing file -- filePath: %s", path));
+      }
+    }
+  }
+
+  /**
+   * Write pending samples as a block, even if it is not full, and push it to the file system.
+   */
+  public synchronized void flush() {
+    if (isClosed) {
+      throw new IllegalStateException("writer is closed");
+    }
+
+    try {
+      writeBlock();
+      output.flush();
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format(
+          "Unexpected error while flushing file -- filePath: %s, numBlocks: %d", path, numBlocks),
+          e);
+    }
+  }
+
+  /**
+   * Write a series of samples, writing a block whenever one is full.
+   * 
+   * @param samples the samples to write, in order
+   */
+  public synchronized void writeSamples(List<AggregateSample> samples) {
+    if (isClosed) {
+      throw new IllegalStateException("writer is closed");
+    }
+
+    try {
+      for (AggregateSample sample : samples) {
+        pendingRows.add(sample);
+        if (pendingRows.size() == blockRows) {
+          writeBlock();
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format(
+          "Unexpected error while writing to file -- filePath: %s, numBlocks: %d", path,
+          numBlocks), e);
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    int numRows = pendingRows.size();
+    if (numRows == 0) {
+      return;
+    }
+
+    long minTimestamp = Long.MAX_VALUE;
+    long maxTimestamp = Long.MIN_VALUE;
+    int minValue = Integer.MAX_VALUE;
+    int maxValue = Integer.MIN_VALUE;
+    for (AggregateSample sample : pendingRows) {
+      minTimestamp = Math.min(minTimestamp, sample.getTimestamp());
+      maxTimestamp = Math.max(maxTimestamp, sample.getTimestamp());
+      minValue = Math.min(minValue, sample.getAggregateValue());
+      maxValue = Math.max(maxValue, sample.getAggregateValue());
+    }
+
+    // timestamps: zig-zag deltas, since samples need not be in timestamp order
+    payload.reset();
+    long previous = minTimestamp;
+    for (AggregateSample sample : pendingRows) {
+      ColumnarFormat.writeVarLong(payload,
+          ColumnarFormat.zigZagEncode(sample.getTimestamp() - previous));
+      previous = sample.getTimestamp();
+    }
+
+    // asset IDs: block-local dictionary, then packed indexes
+    Map<String, Integer> assetIdToIndex = Maps.newLinkedHashMap();
+    for (int i = 0; i < numRows; i++) {
+      String assetId = pendingRows.get(i).getAssetId();
+      Integer index = assetIdToIndex.get(assetId);
+      if (index == null) {
+        index = assetIdToIndex.size();
+        assetIdToIndex.put(assetId, index);
+      }
+      column[i] = index;
+    }
+    ColumnarFormat.writeVarLong(payload, assetIdToIndex.size());
+    for (String assetId : assetIdToIndex.keySet()) {
+      byte[] bytes = assetId.getBytes(StandardCharsets.UTF_8);
+      ColumnarFormat.writeVarLong(payload, bytes.length);
+      payload.write(bytes, 0, bytes.length);
+    }
+    int indexWidth = ColumnarFormat.bitWidth(assetIdToIndex.size() - 1);
+    payload.write(indexWidth);
+    ColumnarFormat.pack(payload, column, numRows, indexWidth);
+
+    // aggregate values: packed offsets from the min. value
+    for (int i = 0; i < numRows; i++) {
+      column[i] = (long) pendingRows.get(i).getAggregateValue() - minValue;
+    }
+    int valueWidth = ColumnarFormat.bitWidth((long) maxValue - minValue);
+    payload.write(valueWidth);
+    ColumnarFormat.pack(payload, column, numRows, valueWidth);
+
+    output.writeInt(numRows);
+    output.writeLong(minTimestamp);
+    output.writeLong(maxTimestamp);
+    output.writeInt(minValue);
+    output.writeInt(maxValue);
+    output.writeInt(payload.size());
+    payload.writeTo(output);
+    pendingRows.clear();
+    numBlocks++;
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import com.google.common.collect.Lists;
+import com.tesla.interview.model.MeasurementSample;
+import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Reads several input files concurrently, each with its own {@link SampleReader} on its own
+ * thread, and returns their samples in file order, then line order. Every partition thus sees its
+ * samples in the same order as if the files were read one after another.
+ * <p/>
+ * Each file is parsed into a bounded queue of batches, so a file may run ahead of the one being
+ * consumed by at most a fixed number of samples. Files are handed to the reader threads in order,
+ * so the file being consumed always has a thread.
+ */
+public class ConcurrentSampleReader implements SampleReader {
+
+  static final int BATCH_SIZE = 1024;
+  static final int MAX_BATCHES_PER_FILE = 16;
+
+  private static final List<MeasurementSample> END_OF_FILE = Collections.emptyList();
+
+  private final List<File> sampleFiles;
+  private final Function<File, SampleReader> opener;
+  private final List<BlockingQueue<List<MeasurementSample>>> fileNoToBatches;
+  private final AtomicReferenceArray<RuntimeException> fileNoToFailure;
+  private final ExecutorService readers;
+  private Iterator<MeasurementSample> batch = Collections.emptyIterator();
+  private int fileNo;
+
+  /**
+   * Canonical constructor. Starts reading right away.
+   * 
+   * @param sampleFiles input files, in the order their samples are returned
+   * @param numThreads max. number of files read at a time
+   * @param opener opens the reader of one file, e.g. {@link SampleReader#fromFile(File)}
+   */
+  public ConcurrentSampleReader(List<File> sampleFiles, int numThreads,
+      Function<File, SampleReader> opener) {
+    if (sampleFiles == null || sampleFiles.isEmpty()) {
+      throw new IllegalArgumentException("sampleFiles must be non-empty");
+    }
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException("numThreads must be positive");
+    }
+    if (opener == null) {
+      throw new IllegalArgumentException("opener cannot be null");
+    }
+
+    this.sampleFiles = Lists.newArrayList(sampleFiles);
+    this.opener = opener;
+    this.fileNoToBatches = Lists.newArrayList();
+    for (int i = 0; i < sampleFiles.size(); i++) {
+      fileNoToBatches.add(new ArrayBlockingQueue<>(MAX_BATCHES_PER_FILE));
+    }
+    this.fileNoToFailure = new AtomicReferenceArray<>(sampleFiles.size());
+    AtomicInteger threadNo = new AtomicInteger(0 /* initialValue */);
+    this.readers = Executors.newFixedThreadPool(Math.min(numThreads, sampleFiles.size()),
+        (Runnable r) -> {
+          Thread thread = new Thread(r, "input-reader-" + threadNo.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        });
+    for (int i = 0; i < sampleFiles.size(); i++) {
+      final int readerFileNo = i;
+      readers.execute(() -> readFile(readerFileNo));
+    }
+    readers.shutdown();
+  }
+
+  /**
+   * Stop reading. Files not consumed yet are abandoned.
+   */
+  @Override
+  public void close() {
+    readers.shutdownNow();
+  }
+
+  /**
+   * Not supported; the input is spread over several files.
+   * 
+   * @throws IllegalStateException always
+   */
+  @Override
+  public long getOffset() {
+    throw new IllegalStateException("reader of several files does not track its offset");
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!batch.hasNext()) {
+      if (fileNo >= sampleFiles.size()) {
+        return false;
+      }
+
+      List<MeasurementSample> next;
+      try {
+        next = fileNoToBatches.get(fileNo).take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted while reading input", e);
+      }
+      if (next == END_OF_FILE) {
+        RuntimeException failure = fileNoToFailure.get(fileNo);
+        if (failure != null) {
+          throw new IllegalStateException(String.format(
+              "Unable to read input file -- path: %s, message: %s", sampleFiles.get(fileNo),
+              failure.getMessage()), failure);
+        }
+        fileNo++;
+      } else {
+        batch = next.iterator();
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public MeasurementSample next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return batch.next();
+  }
+
+  /**
+   * Parse one file into its queue of batches, ending with {@link #END_OF_FILE}.
+   * 
+   * @param readerFileNo index of the file
+   */
+  private void readFile(int readerFileNo) {
+    BlockingQueue<List<MeasurementSample>> batches = fileNoToBatches.get(readerFileNo);
+    try {
+      try (SampleReader reader = opener.apply(sampleFiles.get(readerFileNo))) {
+        List<MeasurementSample> next = Lists.newArrayListWithCapacity(BATCH_SIZE);
+        while (reader.hasNext()) {
+          next.add(reader.next());
+          if (next.size() == BATCH_SIZE) {
+            batches.put(next);
+            next = Lists.newArrayListWithCapacity(BATCH_SIZE);
+          }
+        }
+        if (!next.isEmpty()) {
+          batches.put(next);
+        }
+      } catch (RuntimeException e) {
+        fileNoToFailure.set(readerFileNo, e);
+      }
+      batches.put(END_OF_FILE);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt(); // closed
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import com.google.common.collect.Lists;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Recycles direct {@link ByteBuffer}s, so that channel I/O neither allocates nor copies through a
+ * temporary buffer. Buffers come in size classes of powers of two, from {@link #MIN_CLASS_SIZE} to
+ * {@link #MAX_CLASS_SIZE} bytes; larger requests are served by buffers that are not pooled.
+ * <p/>
+ * Thread-safe. Each size class retains at most {@link #MAX_RETAINED_BYTES} bytes of free buffers.
+ */
+public class DirectBufferPool {
+
+  static final int MIN_CLASS_SIZE = 1 << 12;
+  static final int MAX_CLASS_SIZE = 1 << 20;
+  static final int MAX_RETAINED_BYTES = 1 << 24;
+
+  private static final DirectBufferPool SHARED = new DirectBufferPool();
+
+  /**
+   * Get the pool shared by all writers and readers of this process.
+   * 
+   * @return non-<code>null</code> pool
+   */
+  public static DirectBufferPool shared() {
+    return SHARED;
+  }
+
+  private static int classIndex(int capacity) {
+    int classSize = Math.max(MIN_CLASS_SIZE, Integer.highestOneBit(capacity - 1) << 1);
+    return Integer.numberOfTrailingZeros(classSize) - Integer.numberOfTrailingZeros(MIN_CLASS_SIZE);
+  }
+
+  private final List<ArrayDeque<ByteBuffer>> freeBuffers;
+
+  /**
+   * Constructor. Visible for unit tests; use {@link #shared()} otherwise.
+   */
+  DirectBufferPool() {
+    int numClasses = classIndex(MAX_CLASS_SIZE) + 1;
+    freeBuffers = Lists.newArrayListWithCapacity(numClasses);
+    for (int i = 0; i < numClasses; i++) {
+      freeBuffers.add(new ArrayDeque<>());
+    }
+  }
+
+  /**
+   * Take a cleared buffer with room for at least the given number of bytes.
+   * 
+   * @param minCapacity number of bytes needed
+   * @return direct buffer; pass it to {@link #release(ByteBuffer)} when done
+   */
+  public ByteBuffer acquire(int minCapacity) {
+    if (minCapacity < 0) {
+      throw new IllegalArgumentException("minCapacity must be non-negative");
+    }
+    if (minCapacity > MAX_CLASS_SIZE) {
+      return ByteBuffer.allocateDirect(minCapacity);
+    }
+
+    int classIndex = classIndex(minCapacity);
+    ArrayDeque<ByteBuffer> free = freeBuffers.get(classIndex);
+    synchronized (free) {
+      ByteBuffer buffer = free.poll();
+      if (buffer != null) {
+        return buffer;
+      }
+    }
+    return ByteBuffer.allocateDirect(MIN_CLASS_SIZE << classIndex);
+  }
+
+  /**
+   * Return a buffer taken from {@link #acquire(int)} for reuse. The caller must not use it
+   * afterwards.
+   * 
+   * @param buffer buffer to return
+   */
+  public void release(ByteBuffer buffer) {
+    int capacity = buffer.capacity();
+    if (!buffer.isDirect() || capacity > MAX_CLASS_SIZE || Integer.bitCount(capacity) != 1
+        || capacity < MIN_CLASS_SIZE) {
+      return; // not pooled; left to the garbage collector
+    }
+
+    buffer.clear();
+    ArrayDeque<ByteBuffer> free = freeBuffers.get(classIndex(capacity));
+    synchronized (free) {
+      if ((free.size() + 1L) * capacity <= MAX_RETAINED_BYTES) {
+        free.push(buffer);
+      }
+    }
+  }
+
+  int numFree(int capacity) {
+    ArrayDeque<ByteBuffer> free = freeBuffers.get(classIndex(capacity));
+    synchronized (free) {
+      return free.size();
+    }
+  }
+}
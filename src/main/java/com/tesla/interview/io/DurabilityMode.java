@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+/**
+ * When output files are forced to stable storage via {@link java.nio.channels.FileChannel#force}.
+ */
+public enum DurabilityMode {
+
+  /* empty comments present below to please the code formatter */
+  NONE, // never; the operating system decides
+  ON_CLOSE, // once, when a file is closed
+  PERIODIC, // all dirty files at a fixed interval, and on close
+  GROUP_COMMIT, // all dirty files together whenever a writer awaits durability, and on close
+  ;
+
+  /**
+   * Whether files are forced before they are closed.
+   * 
+   * @return <code>true</code> for all modes except {@link #NONE}
+   */
+  public boolean syncsOnClose() {
+    return this != NONE;
+  }
+
+  /**
+   * Whether a background {@link GroupCommitter} forces files while they are open.
+   * 
+   * @return <code>true</code> for {@link #PERIODIC} and {@link #GROUP_COMMIT}
+   */
+  public boolean usesCommitter() {
+    return this == PERIODIC || this == GROUP_COMMIT;
+  }
+}
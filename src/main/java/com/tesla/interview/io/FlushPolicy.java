@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import java.time.Duration;
+
+/**
+ * Decides when an {@link AggregateSampleWriter} pushes its buffered output to the file system. A
+ * writer flushes as soon as any one of the configured limits is reached.
+ * <p/>
+ * Latency mode bounds the time a record may stay buffered, so that tailers of the output file see
+ * new records promptly. Throughput mode uses a large buffer and flushes only when it fills.
+ */
+public class FlushPolicy {
+
+  /**
+   * Buffer size of a {@link java.io.BufferedWriter} when none is specified.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  /**
+   * Flush only when the buffer fills or the writer is closed.
+   */
+  public static final FlushPolicy DEFAULT = new FlushPolicy(DEFAULT_BUFFER_SIZE,
+      Long.MAX_VALUE /* maxBufferedBytes */, Integer.MAX_VALUE /* maxRecords */,
+      null /* maxDelay */);
+
+  /**
+   * Create a policy that flushes buffered records no later than the specified delay.
+   * 
+   * @param maxDelay max. time a record may remain buffered
+   * @return latency-oriented policy
+   */
+  public static FlushPolicy latency(Duration maxDelay) {
+    return new FlushPolicy(DEFAULT_BUFFER_SIZE, Long.MAX_VALUE /* maxBufferedBytes */,
+        Integer.MAX_VALUE /* maxRecords */, maxDelay);
+  }
+
+  /**
+   * Create a policy that buffers as much as possible and flushes only when the buffer fills.
+   * 
+   * @param bufferSize size of the output buffer
+   * @return throughput-oriented policy
+   */
+  public static FlushPolicy throughput(int bufferSize) {
+    return new FlushPolicy(bufferSize, Long.MAX_VALUE /* maxBufferedBytes */,
+        Integer.MAX_VALUE /* maxRecords */, null /* maxDelay */);
+  }
+
+  private final int bufferSize;
+  private final long maxBufferedBytes;
+  private final int maxRecords;
+  private final Duration maxDelay;
+
+  /**
+   * Canonical constructor.
+   * 
+   * @param bufferSize size of the output buffer
+   * @param maxBufferedBytes flush once this many bytes have been written since the last flush
+   * @param maxRecords flush once this many records have been written since the last flush
+   * @param maxDelay flush once the oldest unflushed record is this old; <code>null</code> for none
+   */
+  public FlushPolicy(int bufferSize, long maxBufferedBytes, int maxRecords, Duration maxDelay) {
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("bufferSize must be positive");
+    }
+    if (maxBufferedBytes <= 0) {
+      throw new IllegalArgumentException("maxBufferedBytes must be positive");
+    }
+    if (maxRecords <= 0) {
+      throw new IllegalArgumentException("maxRecords must be positive");
+    }
+    if (maxDelay != null && (maxDelay.isNegative() || maxDelay.isZero())) {
+      throw new IllegalArgumentException("maxDelay must be positive");
+    }
+
+    this.bufferSize = bufferSize;
+    this.maxBufferedBytes = maxBufferedBytes;
+    this.maxRecords = maxRecords;
+    this.maxDelay = maxDelay;
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  public long getMaxBufferedBytes() {
+    return maxBufferedBytes;
+  }
+
+  public Duration getMaxDelay() {
+    return maxDelay;
+  }
+
+  public int getMaxRecords() {
+    return maxRecords;
+  }
+
+  public boolean hasMaxDelay() {
+    return maxDelay != null;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("FlushPolicy(bufferSize: %d, maxBufferedBytes: %d, maxRecords: %d, "
+        + "maxDelay: %s)", bufferSize, maxBufferedBytes, maxRecords, maxDelay);
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A single timer thread that flushes every registered {@link AggregateSampleWriter} whose
+ * {@link FlushPolicy} has a max. delay. One scheduler serves all writers of an application, so the
+ * number of timer threads does not grow with the number of partitions.
+ */
+public class FlushScheduler implements Closeable {
+
+  private static final Duration DEFAULT_TICK_INTERVAL = Duration.ofMillis(50);
+  private static final Logger LOG = getLogger(FlushScheduler.class);
+
+  private final Set<AggregateSampleWriter> writers = ConcurrentHashMap.newKeySet();
+  private ScheduledExecutorService timer;
+  private boolean isClosed;
+
+  final Duration tickInterval;
+
+  /**
+   * Default constructor.
+   */
+  public FlushScheduler() {
+    this(DEFAULT_TICK_INTERVAL);
+  }
+
+  /**
+   * Canonical constructor. A writer flushes no later than its max. delay plus one tick interval.
+   * 
+   * @param tickInterval time between checks of the registered writers
+   */
+  public FlushScheduler(Duration tickInterval) {
+    if (tickInterval == null || tickInterval.isNegative() || tickInterval.isZero()) {
+      throw new IllegalArgumentException("tickInterval must be positive");
+    }
+    this.tickInterval = tickInterval;
+  }
+
+  @Override
+  public synchronized void close() {
+    isClosed = true;
+    writers.clear();
+    if (timer != null) {
+      timer.shutdownNow();
+    }
+  }
+
+  /**
+   * Start flushing the writer on a timer. Writers without a max. delay are ignored. The timer
+   * thread is started when the first timed writer registers.
+   * 
+   * @param writer writer to flush periodically
+   */
+  public synchronized void register(AggregateSampleWriter writer) {
+    if (isClosed) {
+      throw new IllegalStateException("scheduler is closed");
+    }
+    if (!writer.getFlushPolicy().hasMaxDelay()) {
+      return;
+    }
+
+    writers.add(writer);
+    if (timer == null) {
+      timer = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+        Thread thread = new Thread(r, "flush-scheduler");
+        thread.setDaemon(true);
+        return thread;
+      });
+      timer.scheduleWithFixedDelay(this::tick, tickInterval.toMillis(), tickInterval.toMillis(),
+          TimeUnit.MILLISECONDS);
+      LOG.info(String.format("started flush scheduler -- tickInterval: %s", tickInterval));
+    }
+  }
+
+  /**
+   * Stop flushing the writer on a timer.
+   * 
+   * @param writer writer to forget
+   */
+  public void unregister(AggregateSampleWriter writer) {
+    writers.remove(writer);
+  }
+
+  /**
+   * Flush every writer whose oldest unflushed record has exceeded its max. delay.
+   */
+  void tick() {
+    long nowNanos = System.nanoTime();
+    for (AggregateSampleWriter writer : writers) {
+      try {
+        writer.flushIfDue(nowNanos);
+      } catch (RuntimeException e) {
+        // keep the timer alive for all other writers
+        LOG.error(String.format("Unexpected error during timed flush -- message: %s",
+            e.getMessage()));
+      }
+    }
+  }
+
+  int numRegistered() {
+    return writers.size();
+  }
+}
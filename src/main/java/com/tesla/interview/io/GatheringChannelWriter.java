@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Encodes characters straight into pooled direct buffers and writes all pending buffers with a
+ * single gathering {@link FileChannel#write(ByteBuffer[])} per flush. Compared to a
+ * {@link java.io.BufferedWriter} over a stream, this saves the copy into a char buffer and the copy
+ * into a temporary direct buffer, and issues one system call per flush rather than one per buffer.
+ * <p/>
+ * Flushes by itself once the pending buffers hold {@code maxPendingBytes}.
+ */
+class GatheringChannelWriter extends Writer {
+
+  private static final int CHUNK_SIZE = 1 << 16;
+
+  private final FileChannel channel;
+  private final DirectBufferPool bufferPool;
+  private final int maxPendingBytes;
+  private final int chunkSize;
+  private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+  private final List<ByteBuffer> pending = Lists.newArrayList();
+  private long pendingBytes;
+  private boolean isClosed;
+
+  /**
+   * Canonical constructor.
+   * 
+   * @param channel channel opened for writing; closed by {@link #close()}
+   * @param bufferPool pool from which buffers are taken
+   * @param maxPendingBytes number of bytes at which pending buffers are written
+   */
+  GatheringChannelWriter(FileChannel channel, DirectBufferPool bufferPool, int maxPendingBytes) {
+    if (channel == null) {
+      throw new IllegalArgumentException("channel cannot be null");
+    }
+    if (bufferPool == null) {
+      throw new IllegalArgumentException("bufferPool cannot be null");
+    }
+    if (maxPendingBytes <= 0) {
+      throw new IllegalArgumentException("maxPendingBytes must be positive");
+    }
+
+    this.channel = channel;
+    this.bufferPool = bufferPool;
+    this.maxPendingBytes = maxPendingBytes;
+    this.chunkSize = Math.min(maxPendingBytes, CHUNK_SIZE);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (isClosed) {
+      return;
+    }
+
+    try {
+      flush();
+    } finally {
+      isClosed = true;
+      for (ByteBuffer buffer : pending) {
+        bufferPool.release(buffer);
+      }
+      pending.clear();
+      channel.close();
+    }
+  }
+
+  /**
+   * Write all pending buffers with one gathering write and return them to the pool.
+   */
+  @Override
+  public synchronized void flush() throws IOException {
+    if (isClosed) {
+      throw new IOException("writer is closed");
+    }
+    if (pendingBytes == 0) {
+      return;
+    }
+
+    ByteBuffer[] buffers = new ByteBuffer[pending.size()];
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = pending.get(i);
+      buffers[i].flip();
+    }
+    long remaining = pendingBytes;
+    while (remaining > 0) {
+      remaining -= channel.write(buffers);
+    }
+
+    for (ByteBuffer buffer : buffers) {
+      bufferPool.release(buffer);
+    }
+    pending.clear();
+    pendingBytes = 0;
+  }
+
+  @Override
+  public synchronized void write(char[] cbuf, int off, int len) throws IOException {
+    write(CharBuffer.wrap(cbuf, off, len));
+  }
+
+  @Override
+  public synchronized void write(String str, int off, int len) throws IOException {
+    write(CharBuffer.wrap(str, off, off + len));
+  }
+
+  private void write(CharBuffer chars) throws IOException {
+    if (isClosed) {
+      throw new IOException("writer is closed");
+    }
+
+    while (true) {
+      ByteBuffer current = pending.isEmpty() ? null : pending.get(pending.size() - 1);
+      if (current == null || !current.hasRemaining()) {
+        current = bufferPool.acquire(chunkSize);
+        pending.add(current);
+      }
+
+      int before = current.position();
+      CoderResult result = encoder.encode(chars, current, true /* endOfInput */);
+      pendingBytes += current.position() - before;
+      if (result.isUnderflow()) {
+        break;
+      }
+      if (result.isOverflow()) {
+        current.limit(current.position()); // full; the next iteration starts a new buffer
+      } else {
+        result.throwException();
+      }
+    }
+
+    if (pendingBytes >= maxPendingBytes) {
+      flush();
+    }
+  }
+}
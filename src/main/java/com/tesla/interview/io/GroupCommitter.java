@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.google.common.collect.Lists;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Summary;
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Forces the output of many {@link AggregateSampleWriter}s to stable storage from a single
+ * background thread.
+ * <p/>
+ * Each commit round forces every registered writer that is dirty. A round starts when the sync
+ * interval elapses ({@link DurabilityMode#PERIODIC}) or as soon as a caller awaits durability
+ * ({@link DurabilityMode#GROUP_COMMIT}). Callers that arrive while a round is in progress are
+ * served together by the next round, so the cost of an fsync is shared by all of them.
+ */
+public class GroupCommitter implements Closeable {
+
+  /**
+   * Forces dirty writers until the committer is closed.
+   */
+  class CommitThread extends Thread {
+
+    CommitThread() {
+      super("group-committer");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (!isClosed) {
+        List<CompletableFuture<Void>> waiters = awaitRound();
+        commit(waiters);
+      }
+    }
+  }
+
+  private static final Logger LOG = getLogger(GroupCommitter.class);
+
+  private final Lock roundLock = new ReentrantLock();
+  private final Condition hasWaiters = roundLock.newCondition();
+  private final Set<AggregateSampleWriter> writers = ConcurrentHashMap.newKeySet();
+  private List<CompletableFuture<Void>> waiters = Lists.newArrayList();
+  private volatile boolean isClosed;
+
+  final CommitThread commitThread = new CommitThread();
+  final DurabilityMode durabilityMode;
+  final Duration syncInterval;
+  final Counter syncedFiles;
+  final Summary commitSeconds;
+  final Summary commitBatchSize;
+
+  /**
+   * Canonical constructor.
+   * 
+   * @param durabilityMode {@link DurabilityMode#PERIODIC} or {@link DurabilityMode#GROUP_COMMIT}
+   * @param syncInterval max. time between commit rounds
+   * @param metricsRegistry registry to which the cost of durability is published
+   */
+  public GroupCommitter(DurabilityMode durabilityMode, Duration syncInterval,
+      CollectorRegistry metricsRegistry) {
+    if (durabilityMode == null || !durabilityMode.usesCommitter()) {
+      throw new IllegalArgumentException("durabilityMode must be PERIODIC or GROUP_COMMIT");
+    }
+    if (syncInterval == null || syncInterval.isNegative() || syncInterval.isZero()) {
+      throw new IllegalArgumentException("syncInterval must be positive");
+    }
+
+    this.durabilityMode = durabilityMode;
+    this.syncInterval = syncInterval;
+    this.syncedFiles = Counter.build().name("syncedFiles")
+        .help("output files forced to stable storage").register(metricsRegistry);
+    this.commitSeconds = Summary.build().name("commitSeconds")
+        .help("time spent forcing output files per commit round").register(metricsRegistry);
+    this.commitBatchSize = Summary.build().name("commitBatchSize")
+        .help("callers released per commit round").register(metricsRegistry);
+  }
+
+  /**
+   * Request durability of everything the writer has written so far. In
+   * {@link DurabilityMode#GROUP_COMMIT} mode, this starts a commit round unless one is already
+   * pending; in {@link DurabilityMode#PERIODIC} mode, the request is served by the next periodic
+   * round.
+   * 
+   * @param writer writer whose output must become durable
+   * @return a progress indicator that completes once the output is on stable storage
+   */
+  public Future<Void> awaitDurable(AggregateSampleWriter writer) {
+    CompletableFuture<Void> durable = new CompletableFuture<>();
+    roundLock.lock();
+    try {
+      if (isClosed) {
+        throw new IllegalStateException("committer is closed");
+      }
+      writers.add(writer);
+      waiters.add(durable);
+      if (durabilityMode == DurabilityMode.GROUP_COMMIT) {
+        hasWaiters.signal();
+      }
+    } finally {
+      roundLock.unlock();
+    }
+    return durable;
+  }
+
+  @Override
+  public void close() {
+    roundLock.lock();
+    try {
+      isClosed = true;
+      hasWaiters.signal();
+    } finally {
+      roundLock.unlock();
+    }
+
+    try {
+      commitThread.join(syncInterval.toMillis() * 2);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Force the writer's output periodically until it is unregistered.
+   * 
+   * @param writer writer to force
+   */
+  public void register(AggregateSampleWriter writer) {
+    writers.add(writer);
+  }
+
+  /**
+   * Start the commit thread.
+   */
+  public void start() {
+    commitThread.start();
+  }
+
+  /**
+   * Stop forcing the writer's output. Call this before closing the writer.
+   * 
+   * @param writer writer to forget
+   */
+  public void unregister(AggregateSampleWriter writer) {
+    writers.remove(writer);
+  }
+
+  /**
+   * Wait until the next round is due, then take the callers it will release.
+   * 
+   * @return callers waiting on the round
+   */
+  @SuppressFBWarnings("RV_RETURN_VALUE_IGNORED_BAD_PRACTICE")
+  private List<CompletableFuture<Void>> awaitRound() {
+    roundLock.lock();
+    try {
+      if (!isClosed && (waiters.isEmpty() || durabilityMode == DurabilityMode.PERIODIC)) {
+        try {
+          hasWaiters.await(syncInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          // we were deliberately interrupted; commit now
+        }
+      }
+      List<CompletableFuture<Void>> round = waiters;
+      waiters = Lists.newArrayList();
+      return round;
+    } finally {
+      roundLock.unlock();
+    }
+  }
+
+  /**
+   * Force every dirty writer, then release the callers of the round.
+   * 
+   * @param round callers to release
+   */
+  private void commit(List<CompletableFuture<Void>> round) {
+    long startNanos = System.nanoTime();
+    int numSynced = 0;
+    RuntimeException failure = null;
+    for (AggregateSampleWriter writer : writers) {
+      if (writer.isDirty()) {
+        try {
+          writer.sync();
+          numSynced++;
+        } catch (RuntimeException e) {
+          LOG.error(String.format("Unable to sync output file -- message: %s", e.getMessage()));
+          failure = e;
+        }
+      }
+    }
+
+    if (numSynced > 0) {
+      syncedFiles.inc(numSynced);
+      commitSeconds.observe((System.nanoTime() - startNanos) / 1e9);
+    }
+    if (!round.isEmpty()) {
+      commitBatchSize.observe(round.size());
+    }
+    for (CompletableFuture<Void> waiter : round) {
+      if (failure == null) {
+        waiter.complete(null);
+      } else {
+        waiter.completeExceptionally(failure);
+      }
+    }
+  }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tesla.interview.model.MeasurementSample;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Accepts samples POSTed to {@link #PATH} by an embedded HTTP server, one per line in the text
+ * format of the input files. Bodies, including chunked ones, are parsed as they stream in and
+ * handed over in batches of {@link #BATCH_SIZE} samples, so no body is held in memory as a whole.
+ * <p/>
+ * A request is answered <code>200</code> only once the reader has passed every one of its samples
+ * on, e.g. to the partition writers; see {@link IngestQueue#barrier()}. While the
+ * {@link IngestQueue} is full, new requests are answered <code>429</code> without reading their
+ * bodies; a request whose body is being read waits for room instead, so it is either ingested in
+ * full or, if the server stops first, answered <code>503</code>. The samples of each request keep
+ * their order; samples of concurrent requests interleave.
+ */
+public class HttpSampleReader implements NetworkSampleReader {
+
+  static final String PATH = "/samples";
+  static final int BATCH_SIZE = 1024;
+  static final int MAX_PENDING_BATCHES = 64;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int STOP_DELAY_SECONDS = 5;
+  private static final String RETRY_AFTER_SECONDS = "1";
+  private static final Logger LOG = getLogger(HttpSampleReader.class);
+
+  private static void respond(HttpExchange exchange, int status, String message)
+      throws IOException {
+    byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream stream = exchange.getResponseBody()) {
+      stream.write(body);
+    }
+  }
+
+  /**
+   * Skip the rest of a line that did not fit into the buffer.
+   * 
+   * @param buffer buffer flipped for reading
+   * @return <code>true</code> if the end of the line was found; the position is just past it
+   */
+  private static boolean skipLine(ByteBuffer buffer) {
+    for (int i = buffer.position(); i < buffer.limit(); i++) {
+      if (buffer.get(i) == '\n') {
+        buffer.position(i + 1);
+        return true;
+      }
+    }
+    buffer.position(buffer.limit());
+    return false;
+  }
+
+  private final AtomicBoolean isStopping = new AtomicBoolean(false /* initialValue */);
+  private final HttpServer server;
+  private final ExecutorService handlers;
+  private final InetSocketAddress address;
+  private final IngestQueue queue;
+  private final int numPartitions;
+  private final Thread stopperThread;
+
+  final AtomicLong numDropped = new AtomicLong(0 /* initialValue */);
+  final AtomicInteger numRejected = new AtomicInteger(0 /* initialValue */);
+
+  /**
+   * Canonical constructor. Starts serving right away.
+   * 
+   * @param bindAddress address to listen on; port zero picks a free port
+   * @param numThreads max. number of requests served at a time
+   * @param numPartitions number of partitions; samples of any other partition are dropped
+   */
+  public HttpSampleReader(InetSocketAddress bindAddress, int numThreads, int numPartitions) {
+    this(bindAddress, numThreads, numPartitions, MAX_PENDING_BATCHES);
+  }
+
+  /**
+   * Injection constructor for unit tests.
+   * 
+   * @param bindAddress address to listen on; port zero picks a free port
+   * @param numThreads max. number of requests served at a time
+   * @param numPartitions number of partitions; samples of any other partition are dropped
+   * @param maxPendingBatches max. number of batches received but not read yet
+   */
+  HttpSampleReader(InetSocketAddress bindAddress, int numThreads, int numPartitions,
+      int maxPendingBatches) {
+    if (bindAddress == null) {
+      throw new IllegalArgumentException("bindAddress cannot be null");
+    }
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException("numThreads must be positive");
+    }
+    if (numPartitions <= 0) {
+      throw new IllegalArgumentException("numPartitions must be positive");
+    }
+
+    this.numPartitions = numPartitions;
+    this.queue = new IngestQueue(maxPendingBatches, () -> { });
+    try {
+      this.server = HttpServer.create(bindAddress, 0 /* backlog */);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to listen -- address: %s", bindAddress), e);
+    }
+    this.address = server.getAddress();
+    AtomicInteger threadNo = new AtomicInteger(0 /* initialValue */);
+    this.handlers = Executors.newFixedThreadPool(numThreads, (Runnable r) -> {
+      Thread thread = new Thread(r, "http-ingest-" + threadNo.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+    server.setExecutor(handlers);
+    server.createContext(PATH, this::handle);
+    server.start();
+    this.stopperThread = new Thread(this::shutDown, "http-ingest-stop");
+    stopperThread.setDaemon(true);
+    LOG.info(String.format("accepting samples -- address: %s, path: %s", address, PATH));
+  }
+
+  /**
+   * Stop serving, and discard the samples not read yet; requests waiting for them are answered
+   * <code>503</code>. Waits for the server to stop.
+   */
+  @Override
+  public void close() {
+    stop();
+    queue.close();
+    try {
+      stopperThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public InetSocketAddress getAddress() {
+    return address;
+  }
+
+  /**
+   * Not supported; a stream has no offset to resume from.
+   * 
+   * @throws IllegalStateException always
+   */
+  @Override
+  public long getOffset() {
+    throw new IllegalStateException("socket reader does not track its offset");
+  }
+
+  @Override
+  public boolean hasNext() {
+    return queue.hasNext();
+  }
+
+  @Override
+  public boolean isReady() {
+    return queue.isReady();
+  }
+
+  @Override
+  public MeasurementSample next() {
+    return queue.next();
+  }
+
+  /**
+   * Stop accepting requests. Requests in progress are served to completion for a few seconds,
+   * then the stream ends. Does not wait.
+   */
+  @Override
+  public void stop() {
+    if (isStopping.compareAndSet(false, true)) {
+      stopperThread.start();
+    }
+  }
+
+  /**
+   * Serve one request.
+   * 
+   * @param exchange request to serve
+   */
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        exchange.getResponseHeaders().set("Allow", "POST");
+        respond(exchange, 405, "only POST is supported");
+      } else if (queue.isFull()) {
+        numRejected.incrementAndGet();
+        exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+        respond(exchange, 429, "too many samples in flight; retry later");
+      } else {
+        ingest(exchange);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Parse the body of a request into the queue, and acknowledge it once its samples were passed
+   * on.
+   * 
+   * @param exchange request whose body holds samples
+   */
+  private void ingest(HttpExchange exchange) throws IOException {
+    String peer = String.valueOf(exchange.getRemoteAddress());
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    List<MeasurementSample> samples = Lists.newArrayListWithCapacity(BATCH_SIZE);
+    long numSamples = 0;
+    long numDroppedLines = 0;
+    try (InputStream body = exchange.getRequestBody()) {
+      boolean isEnded = false;
+      boolean isSkippingLine = false;
+      while (!isEnded) {
+        int numRead = body.read(buffer.array(), buffer.position(), buffer.remaining());
+        isEnded = numRead < 0;
+        if (numRead > 0) {
+          buffer.position(buffer.position() + numRead);
+        }
+        buffer.flip();
+        if (isSkippingLine) {
+          isSkippingLine = !skipLine(buffer);
+        }
+        if (!isSkippingLine) {
+          numDroppedLines += SampleLines.parse(buffer, isEnded, numPartitions, samples, peer);
+        }
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+          LOG.warn(String.format("dropping line longer than buffer -- source: %s, bufferSize: %d",
+              peer, BUFFER_SIZE));
+          numDroppedLines++;
+          isSkippingLine = true;
+          buffer.clear();
+        }
+        if (samples.size() >= BATCH_SIZE || (isEnded && !samples.isEmpty())) {
+          numSamples += samples.size();
+          queue.put(samples);
+          samples = Lists.newArrayListWithCapacity(BATCH_SIZE);
+        }
+      }
+      numDropped.addAndGet(numDroppedLines);
+      queue.barrier().get();
+      respond(exchange, 200,
+          String.format("accepted: %d, dropped: %d", numSamples, numDroppedLines));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      respond(exchange, 503, "server is stopping");
+    } catch (ExecutionException | IllegalStateException e) {
+      LOG.warn(String.format("Unable to ingest request -- peer: %s, message: %s", peer,
+          e.getMessage()));
+      respond(exchange, 503, "server is stopping");
+    }
+  }
+
+  private void shutDown() {
+    server.stop(STOP_DELAY_SECONDS);
+    handlers.shutdownNow();
+    queue.finish();
+    LOG.info(String.format("stopped accepting samples -- address: %s", address));
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.google.common.collect.Lists;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Remembers how far an input file has been processed, so that the next run over the same, grown
+ * input only processes the appended samples.
+ * <p/>
+ * The state records the input's path, the offset up to which it was processed, a checksum of the
+ * whole processed prefix, and the length of every output file afterwards. A later run may continue
+ * from the offset only if the input still starts with the same prefix and every output file still
+ * exists; output written past the recorded lengths, e.g. by a run that failed, is cut off first.
+ * The checksum is a running one: a run that continues from a state extends the recorded checksum
+ * over the appended input only.
+ */
+public class IncrementalState {
+
+  /**
+   * Name of the state file, written to the directory of the first output file.
+   */
+  public static final String STATE_FILE_NAME = "_INPUT_STATE";
+
+  private static final String INPUT = "input=";
+  private static final String INPUT_OFFSET = "inputOffset=";
+  private static final String PREFIX_CHECKSUM = "prefixChecksum=";
+  private static final String OUTPUT = "output=";
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  private static final int CHECKSUM_BUFFER_BYTES = 1 << 16;
+  private static final Logger LOG = getLogger(IncrementalState.class);
+
+  /**
+   * Record the state after a run. The outputs must be complete; they are forced to stable storage
+   * before the state refers to them.
+   * 
+   * @param inputFile input file of the run
+   * @param inputOffset offset up to which the input was processed
+   * @param outputFilePaths paths of the output files, in partition order
+   * @param previous state the run continued from, or <code>null</code> after a full run
+   * @return the state
+   */
+  public static IncrementalState capture(File inputFile, long inputOffset,
+      List<String> outputFilePaths, IncrementalState previous) {
+    long[] outputLengths = new long[outputFilePaths.size()];
+    for (int i = 0; i < outputLengths.length; i++) {
+      Path path = Paths.get(outputFilePaths.get(i));
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+        channel.force(false /* metaData */);
+        outputLengths[i] = channel.size();
+      } catch (IOException e) {
+        throw new IllegalStateException(String.format("Unable to sync file -- path: %s", path), e);
+      }
+    }
+    try {
+      long prefixChecksum = previous != null
+          ? extendChecksum(inputFile, previous.prefixChecksum, previous.inputOffset, inputOffset)
+          : extendChecksum(inputFile, FNV_OFFSET_BASIS, 0 /* from */, inputOffset);
+      return new IncrementalState(inputFile.getCanonicalPath(), inputOffset, prefixChecksum,
+          outputLengths);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to fingerprint input -- path: %s", inputFile), e);
+    }
+  }
+
+  /**
+   * Read a state file.
+   * 
+   * @param path path of the state file
+   * @return state or <code>null</code> if there is none or it cannot be parsed
+   */
+  public static IncrementalState read(Path path) {
+    String input = null;
+    long inputOffset = -1;
+    Long prefixChecksum = null;
+    List<Long> outputLengths = Lists.newArrayList();
+    try {
+      for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+        if (line.startsWith(INPUT)) {
+          input = line.substring(INPUT.length());
+        } else if (line.startsWith(INPUT_OFFSET)) {
+          inputOffset = Long.parseLong(line.substring(INPUT_OFFSET.length()));
+        } else if (line.startsWith(PREFIX_CHECKSUM)) {
+          prefixChecksum = Long.parseLong(line.substring(PREFIX_CHECKSUM.length()));
+        } else if (line.startsWith(OUTPUT)) {
+          outputLengths.add(Long.parseLong(line.substring(OUTPUT.length())));
+        }
+      }
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException | NumberFormatException e) {
+      LOG.warn(String.format("Ignoring unreadable state -- path: %s, message: %s", path,
+          e.getMessage()));
+      return null;
+    }
+    if (input == null || inputOffset < 0 || prefixChecksum == null || outputLengths.isEmpty()) {
+      LOG.warn(String.format("Ignoring incomplete state -- path: %s", path));
+      return null;
+    }
+    return new IncrementalState(input, inputOffset, prefixChecksum,
+        outputLengths.stream().mapToLong(Long::longValue).toArray());
+  }
+
+  /**
+   * Extend a running checksum over a range of a file. The checksum is a 64-bit FNV-1a hash, whose
+   * state is its value, so that it can be continued from a recorded checksum.
+   * 
+   * @param inputFile file to read
+   * @param checksum checksum of the bytes before the range
+   * @param from offset at which the range starts
+   * @param to offset at which the range ends, exclusive
+   * @return checksum of the bytes up to the end of the range
+   * @throws IOException if the file cannot be read or ends before the range does
+   */
+  private static long extendChecksum(File inputFile, long checksum, long from, long to)
+      throws IOException {
+    long result = checksum;
+    ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_BUFFER_BYTES);
+    byte[] bytes = buffer.array();
+    try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+      long position = from;
+      while (position < to) {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), to - position));
+        int numRead = channel.read(buffer, position);
+        if (numRead < 0) {
+          throw new EOFException(
+              String.format("input ended early -- path: %s, offset: %d", inputFile, position));
+        }
+        for (int i = 0; i < numRead; i++) {
+          result = (result ^ (bytes[i] & 0xff)) * FNV_PRIME;
+        }
+        position += numRead;
+      }
+    }
+    return result;
+  }
+
+  private final String input;
+  private final long inputOffset;
+  private final long prefixChecksum;
+  private final long[] outputLengths;
+
+  private IncrementalState(String input, long inputOffset, long prefixChecksum,
+      long[] outputLengths) {
+    this.input = input;
+    this.inputOffset = inputOffset;
+    this.prefixChecksum = prefixChecksum;
+    this.outputLengths = outputLengths;
+  }
+
+  public long getInputOffset() {
+    return inputOffset;
+  }
+
+  /**
+   * Check whether a run may continue from this state.
+   * 
+   * @param inputFile input file of the new run
+   * @param outputFilePaths paths of the output files of the new run, in partition order
+   * @return <code>true</code> if the input still starts with the processed prefix and every output
+   *         file is at least as long as recorded
+   */
+  public boolean matches(File inputFile, List<String> outputFilePaths) {
+    try {
+      if (!input.equals(inputFile.getCanonicalPath()) || inputFile.length() < inputOffset
+          || extendChecksum(inputFile, FNV_OFFSET_BASIS, 0 /* from */, inputOffset)
+              != prefixChecksum) {
+        LOG.info(String.format("input changed since the last run -- path: %s", inputFile));
+        return false;
+      }
+    } catch (IOException e) {
+      LOG.warn(String.format("Unable to fingerprint input -- path: %s, message: %s", inputFile,
+          e.getMessage()));
+      return false;
+    }
+    if (outputFilePaths.size() != outputLengths.length) {
+      LOG.info("number of partitions changed since the last run");
+      return false;
+    }
+    for (int i = 0; i < outputLengths.length; i++) {
+      File outputFile = new File(outputFilePaths.get(i));
+      if (!outputFile.isFile() || outputFile.length() < outputLengths[i]) {
+        LOG.info(String.format("output changed since the last run -- path: %s", outputFile));
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Cut every output file back to its recorded length, discarding output of a failed run.
+   * 
+   * @param outputFilePaths paths of the output files, in partition order
+   */
+  public void restore(List<String> outputFilePaths) {
+    for (int i = 0; i < outputLengths.length; i++) {
+      Checkpoint.truncate(Paths.get(outputFilePaths.get(i)), outputLengths[i]);
+    }
+  }
+
+  /**
+   * Atomically replace the state file.
+   * 
+   * @param path path of the state file
+   */
+  public void write(Path path) {
+    Path tempPath = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+    try (Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+      writer.write(String.format("%s%s%n", INPUT, input));
+      writer.write(String.format("%s%d%n", INPUT_OFFSET, inputOffset));
+      writer.write(String.format("%s%d%n", PREFIX_CHECKSUM, prefixChecksum));
+      for (long outputLength : outputLengths) {
+        writer.write(String.format("%s%d%n", OUTPUT, outputLength));
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to write state -- path: %s", tempPath), e);
+    }
+
+    try {
+      Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Unable to publish state -- path: %s", path),
+          e);
+    }
+  }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import com.google.common.collect.Lists;
+import com.tesla.interview.model.MeasurementSample;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands batches of {@link MeasurementSample}s from ingest threads, e.g. a socket server, to the
+ * thread that reads them as a {@link SampleReader}. The queue holds a fixed number of batches;
+ * when it is full, {@link #offer(List)} refuses the batch instead of blocking, so that the ingest
+ * thread can stop reading from its peer until the reader has made room, while {@link #put(List)}
+ * waits for room. Samples are returned in the order their batches were accepted.
+ * <p/>
+ * An ingest thread that must know when its samples were handed on, e.g. to acknowledge them, adds
+ * a {@link #barrier()} after them. When the reader reaches a barrier, {@link #isReady()} returns
+ * <code>false</code>, telling the reader to pass on what it holds; the barrier completes on the
+ * reader's next call to {@link #hasNext()}.
+ * <p/>
+ * The stream ends once {@link #finish()} has been called and every accepted batch was read.
+ */
+public class IngestQueue implements SampleReader {
+
+  /**
+   * A batch of samples, or a barrier.
+   */
+  private static class Entry {
+    final List<MeasurementSample> samples;
+    final CompletableFuture<Void> barrier;
+
+    Entry(List<MeasurementSample> samples, CompletableFuture<Void> barrier) {
+      this.samples = samples;
+      this.barrier = barrier;
+    }
+  }
+
+  private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition entryAvailable = lock.newCondition();
+  private final Condition roomAvailable = lock.newCondition();
+  private final int maxBatches;
+  private final Runnable roomListener;
+  private Iterator<MeasurementSample> batch = Collections.emptyIterator();
+  private int numBatches;
+  private boolean isFinished;
+  private boolean isClosed;
+
+  /**
+   * Canonical constructor.
+   * 
+   * @param maxBatches max. number of batches accepted but not read yet
+   * @param roomListener called without the lock held whenever a full queue gets room again
+   */
+  public IngestQueue(int maxBatches, Runnable roomListener) {
+    if (maxBatches <= 0) {
+      throw new IllegalArgumentException("maxBatches must be positive");
+    }
+    if (roomListener == null) {
+      throw new IllegalArgumentException("roomListener cannot be null");
+    }
+
+    this.maxBatches = maxBatches;
+    this.roomListener = roomListener;
+  }
+
+  /**
+   * Add a barrier after the batches accepted so far.
+   * 
+   * @return completes once the reader has passed on every sample before the barrier; fails if the
+   *         queue is closed first
+   */
+  public CompletableFuture<Void> barrier() {
+    CompletableFuture<Void> barrier = new CompletableFuture<>();
+    lock.lock();
+    try {
+      if (isClosed) {
+        barrier.completeExceptionally(new IllegalStateException("ingest queue is closed"));
+      } else if (isFinished) {
+        throw new IllegalStateException("stream is finished");
+      } else {
+        entries.add(new Entry(null /* samples */, barrier));
+        entryAvailable.signal();
+      }
+    } finally {
+      lock.unlock();
+    }
+    return barrier;
+  }
+
+  /**
+   * Stop reading. Batches not read yet are discarded and later batches are accepted and dropped,
+   * so that ingest threads never wait for a reader that is gone. Barriers not reached yet fail.
+   */
+  @Override
+  public void close() {
+    List<CompletableFuture<Void>> barriers = Lists.newArrayList();
+    lock.lock();
+    try {
+      isClosed = true;
+      for (Entry entry : entries) {
+        if (entry.barrier != null) {
+          barriers.add(entry.barrier);
+        }
+      }
+      entries.clear();
+      numBatches = 0;
+      entryAvailable.signalAll();
+      roomAvailable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    for (CompletableFuture<Void> barrier : barriers) {
+      barrier.completeExceptionally(new IllegalStateException("ingest queue is closed"));
+    }
+    roomListener.run();
+  }
+
+  /**
+   * End the stream after the batches accepted so far.
+   */
+  public void finish() {
+    lock.lock();
+    try {
+      isFinished = true;
+      entryAvailable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Not supported; a stream has no offset to resume from.
+   * 
+   * @throws IllegalStateException always
+   */
+  @Override
+  public long getOffset() {
+    throw new IllegalStateException("ingest queue does not track its offset");
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (batch.hasNext()) {
+      return true;
+    }
+
+    while (true) {
+      Entry entry;
+      boolean hadRoom;
+      lock.lock();
+      try {
+        while (entries.isEmpty() && !isFinished && !isClosed) {
+          try {
+            entryAvailable.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for samples", e);
+          }
+        }
+        if (entries.isEmpty()) {
+          return false;
+        }
+        entry = entries.remove();
+        hadRoom = numBatches < maxBatches;
+        if (entry.samples != null) {
+          numBatches--;
+          batch = entry.samples.iterator();
+          roomAvailable.signal();
+        }
+      } finally {
+        lock.unlock();
+      }
+
+      if (entry.barrier != null) {
+        entry.barrier.complete(null);
+        continue;
+      }
+      if (!hadRoom) {
+        roomListener.run();
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Tell whether the queue is full, e.g. to turn new senders away.
+   * 
+   * @return <code>true</code> if a batch would have to wait for room
+   */
+  public boolean isFull() {
+    lock.lock();
+    try {
+      return numBatches >= maxBatches;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Tell whether {@link #next()} can return without waiting for an ingest thread. Returns
+   * <code>false</code> at a barrier, too.
+   * 
+   * @return <code>true</code> if a sample is at hand or the stream has ended
+   */
+  @Override
+  public boolean isReady() {
+    if (batch.hasNext()) {
+      return true;
+    }
+    lock.lock();
+    try {
+      Entry head = entries.peek();
+      if (head != null) {
+        return head.barrier == null;
+      }
+      return isFinished || isClosed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public MeasurementSample next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return batch.next();
+  }
+
+  /**
+   * Append a batch to the stream unless the queue is full.
+   * 
+   * @param samples non-empty batch; must not be changed afterwards
+   * @return <code>false</code> if the queue is full; offer the batch again once the room listener
+   *         was called
+   * @throws IllegalStateException if the stream was finished
+   */
+  public boolean offer(List<MeasurementSample> samples) {
+    if (samples == null || samples.isEmpty()) {
+      throw new IllegalArgumentException("samples must be non-empty");
+    }
+
+    lock.lock();
+    try {
+      if (isFinished) {
+        throw new IllegalStateException("stream is finished");
+      }
+      if (isClosed) {
+        return true; // nobody reads any more
+      }
+      if (numBatches >= maxBatches) {
+        return false;
+      }
+      add(samples);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Append a batch to the stream, waiting for room if the queue is full.
+   * 
+   * @param samples non-empty batch; must not be changed afterwards
+   * @throws InterruptedException if interrupted while waiting for room
+   * @throws IllegalStateException if the stream was finished or the queue closed
+   */
+  public void put(List<MeasurementSample> samples) throws InterruptedException {
+    if (samples == null || samples.isEmpty()) {
+      throw new IllegalArgumentException("samples must be non-empty");
+    }
+
+    lock.lock();
+    try {
+      while (numBatches >= maxBatches && !isFinished && !isClosed) {
+        roomAvailable.await();
+      }
+      if (isFinished) {
+        throw new IllegalStateException("stream is finished");
+      }
+      if (isClosed) {
+        throw new IllegalStateException("ingest queue is closed");
+      }
+      add(samples);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void add(List<MeasurementSample> samples) {
+    entries.add(new Entry(samples, null /* barrier */));
+    numBatches++;
+    entryAvailable.signal();
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import io.prometheus.client.CollectorRegistry;
+
+/**
+ * Settings that control how the input files are read.
+ */
+public class InputOptions {
+
+  /**
+   * Create options that reproduce the application's default behavior.
+   * 
+   * @return default options
+   */
+  public static InputOptions defaults() {
+    return new InputOptions();
+  }
+
+  private boolean isParseCached;
+  private int numReadThreads = Runtime.getRuntime().availableProcessors();
+  private SampleReader source;
+  private CollectorRegistry sourceRegistry;
+
+  public int getNumReadThreads() {
+    return numReadThreads;
+  }
+
+  public SampleReader getSource() {
+    return source;
+  }
+
+  public CollectorRegistry getSourceRegistry() {
+    return sourceRegistry;
+  }
+
+  public boolean isParseCached() {
+    return isParseCached;
+  }
+
+  /**
+   * Limit the number of input files that are read and parsed at a time. Defaults to the number of
+   * processors. See {@link ConcurrentSampleReader}.
+   * 
+   * @param numReadThreads max. number of files read at a time
+   * @return these options
+   */
+  public InputOptions withNumReadThreads(int numReadThreads) {
+    if (numReadThreads <= 0) {
+      throw new IllegalArgumentException("numReadThreads must be positive");
+    }
+    this.numReadThreads = numReadThreads;
+    return this;
+  }
+
+  /**
+   * Keep a binary copy of a parsed text input file next to it, and read that copy instead of the
+   * text while the input is unchanged. See {@link ParsedInputCache}.
+   * 
+   * @return these options
+   */
+  public InputOptions withParseCache() {
+    this.isParseCached = true;
+    return this;
+  }
+
+  /**
+   * Read the samples from a stream instead of input files, e.g. an {@link IngestQueue} fed by a
+   * socket server. The run ends once the stream ends; the application closes the source.
+   * 
+   * @param source reader of the streamed samples
+   * @return these options
+   */
+  public InputOptions withSource(SampleReader source) {
+    if (source == null) {
+      throw new IllegalArgumentException("source cannot be null");
+    }
+    this.source = source;
+    return this;
+  }
+
+  /**
+   * Read the samples from a stream that publishes metrics of its own, e.g. a
+   * {@link UdpSampleReader}. They are pushed along with the application's metrics. See
+   * {@link #withSource(SampleReader)}.
+   * 
+   * @param source reader of the streamed samples
+   * @param sourceRegistry registry to which the source publishes its metrics
+   * @return these options
+   */
+  public InputOptions withSource(SampleReader source, CollectorRegistry sourceRegistry) {
+    if (sourceRegistry == null) {
+      throw new IllegalArgumentException("sourceRegistry cannot be null");
+    }
+    this.sourceRegistry = sourceRegistry;
+    return withSource(source);
+  }
+}
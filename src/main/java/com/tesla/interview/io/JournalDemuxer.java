@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.google.common.collect.Lists;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Summary;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Splits completed journal segments into per-partition output files in the background.
+ * <p/>
+ * Segments are demultiplexed one at a time, in the order they were submitted, so every partition
+ * file receives its lines in journal order. Within a segment, partitions are appended in parallel,
+ * each in one large sequential run. A segment is deleted once all of its partitions are written.
+ */
+public class JournalDemuxer implements Closeable {
+
+  private static final int BUFFER_SIZE = 1 << 20;
+  private static final Logger LOG = getLogger(JournalDemuxer.class);
+
+  private final ExecutorService coordinator;
+  private final ExecutorService appenders;
+  private final List<String> outputFilePaths;
+  private final AtomicReference<RuntimeException> failure = new AtomicReference<>(null);
+
+  final Counter demuxedSegments;
+  final Summary demuxSeconds;
+
+  /**
+   * Canonical constructor.
+   * 
+   * @param outputFilePaths paths of the per-partition files, in partition order
+   * @param numThreads number of partitions appended in parallel
+   * @param metricsRegistry registry to which demux metrics are published
+   */
+  public JournalDemuxer(List<String> outputFilePaths, int numThreads,
+      CollectorRegistry metricsRegistry) {
+    if (outputFilePaths == null || outputFilePaths.isEmpty()) {
+      throw new IllegalArgumentException("outputFilePaths must be non-empty");
+    }
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException("numThreads must be positive");
+    }
+
+    this.outputFilePaths = outputFilePaths;
+    this.coordinator = Executors.newSingleThreadExecutor((Runnable r) -> {
+      Thread thread = new Thread(r, "journal-demuxer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    AtomicInteger threadNo = new AtomicInteger(0 /* initialValue */);
+    this.appenders = Executors.newFixedThreadPool(numThreads, (Runnable r) -> {
+      Thread thread = new Thread(r, "journal-appender-" + threadNo.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.demuxedSegments = Counter.build().name("demuxedSegments")
+        .help("journal segments split into partition files").register(metricsRegistry);
+    this.demuxSeconds = Summary.build().name("demuxSeconds")
+        .help("time spent splitting one journal segment").register(metricsRegistry);
+  }
+
+  /**
+   * Wait until every submitted segment has been demultiplexed.
+   * 
+   * @throws IllegalStateException if a segment could not be demultiplexed
+   */
+  @Override
+  public void close() {
+    coordinator.shutdown();
+    try {
+      while (!coordinator.awaitTermination(1, TimeUnit.SECONDS)) {
+        LOG.info("waiting for journal demux to complete");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      appenders.shutdownNow();
+    }
+
+    RuntimeException cause = failure.get();
+    if (cause != null) {
+      throw new IllegalStateException("Unable to demultiplex journal", cause);
+    }
+  }
+
+  /**
+   * Demultiplex a closed journal segment in the background.
+   * 
+   * @param segment file written by {@link MultiplexedSampleWriter}
+   */
+  public void submit(File segment) {
+    coordinator.execute(() -> {
+      if (failure.get() == null) {
+        try {
+          demux(segment);
+        } catch (RuntimeException e) {
+          LOG.error(String.format("Unable to demultiplex segment -- path: %s, message: %s",
+              segment, e.getMessage()));
+          failure.compareAndSet(null, e);
+        }
+      }
+    });
+  }
+
+  private void append(int partitionNo, Iterator<String> lines) {
+    String path = outputFilePaths.get(partitionNo - 1);
+    try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+        Files.newOutputStream(Paths.get(path), StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND),
+        StandardCharsets.UTF_8), BUFFER_SIZE)) {
+      while (lines.hasNext()) {
+        writer.write(lines.next());
+        writer.newLine();
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to append to file -- partitionNo: %d, path: %s", partitionNo,
+              path), e);
+    }
+  }
+
+  private void demux(File segment) {
+    final long startNanos = System.nanoTime();
+    MultiplexedSampleReader reader = new MultiplexedSampleReader(segment);
+    try {
+      List<Future<?>> appends = Lists.newArrayList();
+      for (int partitionNo : reader.getPartitions()) {
+        if (partitionNo < 1 || partitionNo > outputFilePaths.size()) {
+          throw new IllegalStateException(
+              String.format("No output file for partition -- partitionNo: %d", partitionNo));
+        }
+        appends.add(appenders.submit(() -> append(partitionNo, reader.readPartition(partitionNo))));
+      }
+      for (Future<?> f : appends) {
+        f.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while demultiplexing", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+    } finally {
+      reader.close();
+    }
+
+    if (!segment.delete()) {
+      LOG.warn(String.format("Unable to delete journal segment -- path: %s", segment));
+    }
+    demuxedSegments.inc();
+    demuxSeconds.observe((System.nanoTime() - startNanos) / 1e9);
+  }
+}
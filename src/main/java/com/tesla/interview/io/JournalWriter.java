@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.tesla.interview.model.AggregateSample;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Appends the samples of all partitions to a sequential journal of segment files, then hands each
+ * full segment to a {@link JournalDemuxer}, which splits it into per-partition files while new
+ * samples go to the next segment. Ingest thus runs at sequential write speed, while the final
+ * layout is the same as when writing per-partition files directly.
+ */
+public class JournalWriter implements BlockWriter {
+
+  private static final Logger LOG = getLogger(JournalWriter.class);
+  private static final String SEGMENT_FORMAT = "%s.%06d";
+
+  private final String segmentPrefix;
+  private final long maxSegmentBytes;
+  private final JournalDemuxer demuxer;
+  private MultiplexedSampleWriter segment;
+  private File segmentFile;
+  private int segmentNo;
+  private boolean isClosed;
+
+  /**
+   * Canonical constructor.
+   * 
+   * @param segmentPrefix path prefix of the segment files; a sequence number is appended
+   * @param maxSegmentBytes size at which a segment is closed and handed to the demuxer
+   * @param demuxer splits full segments into per-partition files
+   */
+  public JournalWriter(String segmentPrefix, long maxSegmentBytes, JournalDemuxer demuxer) {
+    if (segmentPrefix == null || segmentPrefix.isEmpty()) {
+      throw new IllegalArgumentException("segmentPrefix must be non-empty");
+    }
+    if (maxSegmentBytes <= 0) {
+      throw new IllegalArgumentException("maxSegmentBytes must be positive");
+    }
+    if (demuxer == null) {
+      throw new IllegalArgumentException("demuxer cannot be null");
+    }
+
+    this.segmentPrefix = segmentPrefix;
+    this.maxSegmentBytes = maxSegmentBytes;
+    this.demuxer = demuxer;
+    openSegment();
+  }
+
+  /**
+   * Close the last segment and hand it to the demuxer. Close the demuxer afterwards to wait for
+   * the per-partition files.
+   */
+  @Override
+  public synchronized void close() {
+    if (!isClosed) {
+      isClosed = true;
+      closeSegment();
+    }
+  }
+
+  /**
+   * Delete every segment that has not been demultiplexed. Close the demuxer first, so that no
+   * segment is still being read.
+   */
+  @Override
+  public synchronized void discard() {
+    for (int i = 0; i < segmentNo; i++) {
+      File file = new File(String.format(SEGMENT_FORMAT, segmentPrefix, i));
+      try {
+        Files.deleteIfExists(file.toPath());
+      } catch (IOException e) {
+        LOG.warn(String.format("Unable to delete journal segment -- path: %s, message: %s", file,
+            e.getMessage()));
+      }
+    }
+  }
+
+  @Override
+  public synchronized void writeBlock(int partitionNo, List<AggregateSample> samples) {
+    if (isClosed) {
+      throw new IllegalStateException("journal is closed");
+    }
+
+    segment.writeBlock(partitionNo, samples);
+    if (segment.size() >= maxSegmentBytes) {
+      closeSegment();
+      openSegment();
+    }
+  }
+
+  private void closeSegment() {
+    segment.close();
+    demuxer.submit(segmentFile);
+  }
+
+  private void openSegment() {
+    segmentFile = new File(String.format(SEGMENT_FORMAT, segmentPrefix, segmentNo++));
+    segment = MultiplexedSampleWriter.fromFile(segmentFile);
+  }
+}
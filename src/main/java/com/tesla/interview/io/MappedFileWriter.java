@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes characters to a file through memory-mapped windows instead of write system calls.
+ * <p/>
+ * The file is grown one extent at a time: when the current window is full, the next extent is
+ * mapped, which extends the file by a whole extent at once. On close, the file is truncated to the
+ * number of bytes actually written. Until then, the file ends in zeros; a file whose writer was not
+ * closed must not be read.
+ */
+class MappedFileWriter extends Writer {
+
+  private final FileChannel channel;
+  private final long extentBytes;
+  private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+  private MappedByteBuffer window;
+  private long windowStart;
+  private boolean isClosed;
+
+  /**
+   * Canonical constructor. Appends to the end of the file.
+   * 
+   * @param channel channel opened for reading and writing; closed by {@link #close()}
+   * @param extentBytes number of bytes by which the file grows at a time
+   * @throws IOException if the first window cannot be mapped
+   */
+  MappedFileWriter(FileChannel channel, long extentBytes) throws IOException {
+    if (channel == null) {
+      throw new IllegalArgumentException("channel cannot be null");
+    }
+    if (extentBytes <= 0 || extentBytes > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("extentBytes must be positive and at most 2 GiB");
+    }
+
+    this.channel = channel;
+    this.extentBytes = extentBytes;
+    map(channel.size());
+  }
+
+  /**
+   * Truncate the file to the bytes written and close it.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+
+    try {
+      channel.truncate(position());
+    } finally {
+      window = null;
+      channel.close();
+    }
+  }
+
+  /**
+   * Nothing to do: written characters are in the page cache as soon as they are copied into the
+   * window. Use {@link FileChannel#force(boolean)} to force them to stable storage.
+   */
+  @Override
+  public void flush() {
+    // no-op
+  }
+
+  @Override
+  public synchronized void write(char[] cbuf, int off, int len) throws IOException {
+    write(CharBuffer.wrap(cbuf, off, len));
+  }
+
+  @Override
+  public synchronized void write(String str, int off, int len) throws IOException {
+    write(CharBuffer.wrap(str, off, off + len));
+  }
+
+  private void write(CharBuffer chars) throws IOException {
+    if (isClosed) {
+      throw new IOException("writer is closed");
+    }
+
+    while (true) {
+      CoderResult result = encoder.encode(chars, window, true /* endOfInput */);
+      if (result.isUnderflow()) {
+        return;
+      }
+      if (result.isOverflow()) {
+        map(position());
+      } else {
+        result.throwException();
+      }
+    }
+  }
+
+  /**
+   * Get the number of bytes written, i.e. the length of the file once closed.
+   * 
+   * @return offset of the next byte to write
+   */
+  synchronized long position() {
+    return windowStart + window.position();
+  }
+
+  private void map(long start) throws IOException {
+    window = channel.map(MapMode.READ_WRITE, start, extentBytes);
+    windowStart = start;
+  }
+}
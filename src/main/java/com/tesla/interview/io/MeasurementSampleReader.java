@@ -19,21 +19,62 @@ import static org.apache.logging.log4j.LogManager.getLogger;
 import com.google.common.io.Files;
 import com.tesla.interview.model.MeasurementSample;
 import java.io.BufferedReader;
-import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
-import java.util.Iterator;
 import java.util.NoSuchElementException;
 import org.apache.logging.log4j.Logger;
 
 /**
  * Reads a series of {@link MeasurementSample} lines from an input text file.
  */
-public class MeasurementSampleReader implements Closeable, Iterator<MeasurementSample> {
+public class MeasurementSampleReader implements SampleReader {
 
   private static final Logger LOG = getLogger(MeasurementSampleReader.class);
 
+  /**
+   * Counts the bytes of every line it returns, including the line terminator, so that a later
+   * reader can seek straight to the next line. The file is read as ISO-8859-1, one char per byte,
+   * and each line is decoded as UTF-8 on its own, so bytes that are not valid UTF-8 still count
+   * for what they are rather than for the replacement char they decode to. No UTF-8 sequence
+   * contains a line terminator byte, so lines split where they would in UTF-8 text.
+   */
+  private static class OffsetTrackingReader extends BufferedReader {
+    long offset;
+
+    OffsetTrackingReader(Reader in, long offset) {
+      super(in);
+      this.offset = offset;
+    }
+
+    @Override
+    public String readLine() throws IOException {
+      StringBuilder line = new StringBuilder();
+      int c;
+      while ((c = read()) != -1 && c != '\n' && c != '\r') {
+        line.append((char) c);
+      }
+      if (c == -1 && line.length() == 0) {
+        return null;
+      }
+
+      offset += line.length() + (c == -1 ? 0 : 1);
+      if (c == '\r') {
+        mark(1 /* readAheadLimit */);
+        if (read() == '\n') {
+          offset++;
+        } else {
+          reset();
+        }
+      }
+      return new String(line.toString().getBytes(StandardCharsets.ISO_8859_1),
+          StandardCharsets.UTF_8);
+    }
+  }
+
   /**
    * Allow unit tests to mock the buffered reader.
    * 
@@ -71,6 +112,37 @@ public class MeasurementSampleReader implements Closeable, Iterator<MeasurementS
     this.path = sampleFile.getPath();
   }
 
+  /**
+   * Construct a reader that starts at a byte offset and tracks its offset as it reads. Tracking
+   * costs some throughput, so use {@link #MeasurementSampleReader(File)} unless offsets are needed.
+   * 
+   * @param sampleFile file whose samples to read
+   * @param offset offset of a line, as returned by {@link #getOffset()}, or zero for the first
+   */
+  public MeasurementSampleReader(File sampleFile, long offset) {
+    if (sampleFile == null) {
+      throw new IllegalArgumentException("sampleFile cannot be null");
+    }
+    if (!sampleFile.exists() || !sampleFile.isFile() || !sampleFile.canRead()) {
+      throw new IllegalArgumentException("sampleFile must be an existing readable file");
+    }
+    if (offset < 0 || offset > sampleFile.length()) {
+      throw new IllegalArgumentException("offset must be within sampleFile");
+    }
+
+    try {
+      FileInputStream stream = new FileInputStream(sampleFile);
+      stream.getChannel().position(offset);
+      reader = new OffsetTrackingReader(
+          new InputStreamReader(stream, StandardCharsets.ISO_8859_1), offset);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unexpected error while opening file", e);
+    }
+
+    this.lineNo = 1;
+    this.path = sampleFile.getPath();
+  }
+
   private MeasurementSampleReader(int lineNo, String path, BufferedReader reader) {
     this.lineNo = lineNo;
     this.path = path;
@@ -87,6 +159,14 @@ public class MeasurementSampleReader implements Closeable, Iterator<MeasurementS
     }
   }
 
+  @Override
+  public long getOffset() {
+    if (!(reader instanceof OffsetTrackingReader)) {
+      throw new IllegalStateException("reader does not track its offset; open it at an offset");
+    }
+    return ((OffsetTrackingReader) reader).offset;
+  }
+
   @Override
   public boolean hasNext() {
     try {
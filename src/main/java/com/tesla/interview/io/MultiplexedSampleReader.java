@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static com.tesla.interview.io.MultiplexedSampleWriter.BLOCK_HEADER_SIZE;
+import static com.tesla.interview.io.MultiplexedSampleWriter.HEADER_SIZE;
+import static com.tesla.interview.io.MultiplexedSampleWriter.MAGIC;
+import static com.tesla.interview.io.MultiplexedSampleWriter.TRAILER_SIZE;
+import static com.tesla.interview.io.MultiplexedSampleWriter.VERSION;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.google.common.collect.Maps;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads the output lines of single partitions from a file written by
+ * {@link MultiplexedSampleWriter}. Only the index is held in memory; the blocks of a partition are
+ * read one at a time as the caller iterates.
+ */
+public class MultiplexedSampleReader implements Closeable {
+
+  private static final Logger LOG = getLogger(MultiplexedSampleReader.class);
+
+  /**
+   * Streams the lines of one partition, block by block.
+   */
+  private class PartitionIterator implements Iterator<String> {
+    private final long[] offsets;
+    private final Queue<String> lines = new ArrayDeque<>();
+    private int nextBlock;
+
+    PartitionIterator(long[] offsets) {
+      this.offsets = offsets;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (lines.isEmpty() && nextBlock < offsets.length) {
+        readBlock(offsets[nextBlock++], lines);
+      }
+      return !lines.isEmpty();
+    }
+
+    @Override
+    public String next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return lines.remove();
+    }
+  }
+
+  private final SortedMap<Integer, long[]> partitionNumToOffsets = Maps.newTreeMap();
+  private final DirectBufferPool bufferPool = DirectBufferPool.shared();
+  private final FileChannel channel;
+  private final String path;
+
+  /**
+   * Constructor. Reads and validates the index of the file.
+   * 
+   * @param sampleFile file written by {@link MultiplexedSampleWriter}
+   */
+  public MultiplexedSampleReader(File sampleFile) {
+    if (sampleFile == null) {
+      throw new IllegalArgumentException("sampleFile cannot be null");
+    }
+    if (!sampleFile.isFile() || !sampleFile.canRead()) {
+      throw new IllegalArgumentException("sampleFile must be an existing readable file");
+    }
+
+    this.path = sampleFile.getPath();
+    try {
+      this.channel = FileChannel.open(sampleFile.toPath(), StandardOpenOption.READ);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Unable to open file -- path: %s", path), e);
+    }
+
+    try {
+      readIndex();
+    } catch (IOException | RuntimeException e) {
+      close();
+      throw new IllegalArgumentException(
+          String.format("sampleFile must be a complete multiplexed file -- path: %s", path), e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.error(String.format("Unexpected error while closing file -- filePath: %s", path));
+    }
+  }
+
+  /**
+   * Get the partitions that have at least one record.
+   * 
+   * @return partition numbers in ascending order
+   */
+  public Set<Integer> getPartitions() {
+    return Collections.unmodifiableSet(partitionNumToOffsets.keySet());
+  }
+
+  /**
+   * Stream the lines of a partition in the order they were written.
+   * 
+   * @param partitionNo partition number (indexed from one)
+   * @return lines of the partition; empty if the partition has no records
+   */
+  public Iterator<String> readPartition(int partitionNo) {
+    long[] offsets = partitionNumToOffsets.getOrDefault(partitionNo, new long[0]);
+    return new PartitionIterator(offsets);
+  }
+
+  private ByteBuffer read(long offset, int length) throws IOException {
+    return readFully(offset, ByteBuffer.allocate(length));
+  }
+
+  private void readBlock(long offset, Queue<String> lines) {
+    try {
+      ByteBuffer header = read(offset, BLOCK_HEADER_SIZE);
+      header.getInt(); // partitionNo
+      int numRecords = header.getInt();
+      int payloadLength = header.getInt();
+      ByteBuffer buffer = bufferPool.acquire(payloadLength);
+      String payload;
+      try {
+        buffer.limit(payloadLength);
+        payload = StandardCharsets.UTF_8.decode(readFully(offset + BLOCK_HEADER_SIZE, buffer))
+            .toString();
+      } finally {
+        bufferPool.release(buffer);
+      }
+
+      int start = 0;
+      for (int i = 0; i < numRecords; i++) {
+        int end = payload.indexOf('\n', start);
+        lines.add(payload.substring(start, end));
+        start = end + 1;
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format(
+          "Unexpected error while reading block -- filePath: %s, offset: %d", path, offset), e);
+    }
+  }
+
+  private ByteBuffer readFully(long offset, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException(String.format("unexpected end of file -- offset: %d", offset));
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private void readIndex() throws IOException {
+    ByteBuffer header = read(0, HEADER_SIZE);
+    if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+      throw new IllegalStateException("unknown header");
+    }
+
+    ByteBuffer trailer = read(channel.size() - TRAILER_SIZE, TRAILER_SIZE);
+    long indexOffset = trailer.getLong();
+    if (trailer.getInt() != MAGIC) {
+      throw new IllegalStateException("missing index; the writer was not closed");
+    }
+
+    ByteBuffer index = read(indexOffset, (int) (channel.size() - TRAILER_SIZE - indexOffset));
+    int numPartitions = index.getInt();
+    for (int i = 0; i < numPartitions; i++) {
+      int partitionNo = index.getInt();
+      long[] offsets = new long[index.getInt()];
+      for (int j = 0; j < offsets.length; j++) {
+        offsets[j] = index.getLong();
+      }
+      partitionNumToOffsets.put(partitionNo, offsets);
+    }
+  }
+}
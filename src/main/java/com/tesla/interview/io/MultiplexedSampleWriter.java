@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.tesla.interview.model.AggregateSample;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes the {@link AggregateSample}s of all partitions to a single append-only file. Each call to
+ * {@link #writeBlock(int, List)} appends one block of records of a single partition; on close, a
+ * footer indexes the blocks of every partition. All writes are sequential, no matter how many
+ * partitions there are. Use {@link MultiplexedSampleReader} to read a partition back.
+ * <p/>
+ * Layout (all integers big-endian):
+ * <ol>
+ * <li>header: magic (int), version (int)</li>
+ * <li>blocks: partition number (int), number of records (int), payload length (int), payload of
+ * UTF-8 lines in the format of {@link AggregateSampleWriter}</li>
+ * <li>index: number of partitions (int), then per partition: partition number (int), number of
+ * blocks (int), offset of each block (long)</li>
+ * <li>trailer: offset of the index (long), magic (int)</li>
+ * </ol>
+ */
+public class MultiplexedSampleWriter implements BlockWriter {
+
+  static final int MAGIC = 0x494d5558; // "IMUX"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 2 * Integer.BYTES;
+  static final int BLOCK_HEADER_SIZE = 3 * Integer.BYTES;
+  static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final char LINE_SEPARATOR = '\n';
+  private static final Logger LOG = getLogger(MultiplexedSampleWriter.class);
+
+  /**
+   * Create a multiplexed writer from a file.
+   * 
+   * @param fileToWrite new file to which we will write blocks
+   * @return non-<code>null</code> {@link MultiplexedSampleWriter}
+   */
+  public static MultiplexedSampleWriter fromFile(File fileToWrite) {
+    if (fileToWrite == null) {
+      throw new IllegalArgumentException("fileToWrite cannot be null");
+    }
+    if (fileToWrite.exists()) {
+      throw new IllegalArgumentException("fileToWrite must be a new, writable file");
+    }
+
+    try {
+      FileOutputStream stream = new FileOutputStream(fileToWrite);
+      return new MultiplexedSampleWriter(
+          new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE)),
+          stream.getChannel(), fileToWrite.getPath());
+    } catch (FileNotFoundException e) {
+      throw new IllegalStateException(
+          String.format("Unable to open output file -- path: %s", fileToWrite.getPath()), e);
+    }
+  }
+
+  private final SortedMap<Integer, List<Long>> partitionNumToOffsets = Maps.newTreeMap();
+  private final DataOutputStream output;
+  private final FileChannel channel;
+  private final String path;
+  private long position; // DataOutputStream#size() overflows beyond 2 GiB
+  private boolean isClosed;
+
+  private MultiplexedSampleWriter(DataOutputStream output, FileChannel channel, String path) {
+    this.output = output;
+    this.channel = channel;
+    this.path = path;
+    try {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      position = HEADER_SIZE;
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unexpected error while writing header -- filePath: %s", path), e);
+    }
+  }
+
+  /**
+   * Write the index, force the file to stable storage and close it.
+   */
+  @Override
+  public synchronized void close() {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+
+    try {
+      long indexOffset = position;
+      output.writeInt(partitionNumToOffsets.size());
+      for (Entry<Integer, List<Long>> entry : partitionNumToOffsets.entrySet()) {
+        output.writeInt(entry.getKey());
+        output.writeInt(entry.getValue().size());
+        for (long offset : entry.getValue()) {
+          output.writeLong(offset);
+        }
+      }
+      output.writeLong(indexOffset);
+      output.writeInt(MAGIC);
+      output.flush();
+      channel.force(false /* metaData */);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unexpected error while writing index -- filePath: %s", path), e);
+    } finally {
+      try {
+        output.close();
+      } catch (IOException e) {
+        LOG.error(String.format("Unexpected error while closing file -- filePath: %s", path));
+      }
+    }
+  }
+
+  /**
+   * Get the number of bytes written so far, including buffered bytes.
+   * 
+   * @return size of the file once flushed
+   */
+  public synchronized long size() {
+    return position;
+  }
+
+  @Override
+  public synchronized void writeBlock(int partitionNo, List<AggregateSample> samples) {
+    if (isClosed) {
+      throw new IllegalStateException("writer is closed");
+    }
+
+    StringBuilder lines = new StringBuilder();
+    for (AggregateSample sample : samples) {
+      lines.append(sample.toString());
+      lines.append(LINE_SEPARATOR);
+    }
+    byte[] payload = lines.toString().getBytes(StandardCharsets.UTF_8);
+
+    try {
+      output.writeInt(partitionNo);
+      output.writeInt(samples.size());
+      output.writeInt(payload.length);
+      output.write(payload);
+      partitionNumToOffsets.computeIfAbsent(partitionNo, (p) -> Lists.newArrayList())
+          .add(position);
+      position += BLOCK_HEADER_SIZE + payload.length;
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format(
+          "Unexpected error while writing block -- filePath: %s, partitionNo: %d", path,
+          partitionNo), e);
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Reads the samples senders deliver over the network, e.g. {@link TcpSampleReader} or
+ * {@link UdpSampleReader}. The stream ends once {@link #stop()} was called and the samples that
+ * arrived before were read.
+ */
+public interface NetworkSampleReader extends SampleReader {
+
+  /**
+   * Get the address this reader listens on, e.g. to learn the port picked for port zero.
+   * 
+   * @return bound address
+   */
+  InetSocketAddress getAddress();
+
+  /**
+   * Stop receiving samples. Does not wait.
+   */
+  void stop();
+}
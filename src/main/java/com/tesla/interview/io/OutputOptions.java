@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import com.google.common.collect.Maps;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Settings that control how output files are written. Partitions are numbered from one, as in the
+ * names of the output files.
+ */
+public class OutputOptions {
+
+  /**
+   * Create options that reproduce the application's default behavior.
+   * 
+   * @return default options
+   */
+  public static OutputOptions defaults() {
+    return new OutputOptions();
+  }
+
+  public static final int DEFAULT_MAX_DISCOVERED_PARTITION_NO = 1 << 16;
+
+  private static final Duration DEFAULT_SYNC_INTERVAL = Duration.ofSeconds(1);
+
+  private final Map<Integer, FlushPolicy> partitionNumToFlushPolicy = Maps.newHashMap();
+  private FlushPolicy defaultFlushPolicy = FlushPolicy.DEFAULT;
+  private DurabilityMode durabilityMode = DurabilityMode.NONE;
+  private Duration syncInterval = DEFAULT_SYNC_INTERVAL;
+  private String multiplexedFilePath;
+  private long journalSegmentBytes;
+  private long mappedExtentBytes;
+  private boolean isGathering;
+  private boolean isCompressed;
+  private boolean isColumnar;
+  private Duration checkpointInterval;
+  private boolean isResumed;
+  private boolean isIncremental;
+  private boolean isAppending;
+  private String discoveredFileFormat;
+  private int maxDiscoveredPartitionNo;
+  private ExecutorService writerExecutor;
+
+  /**
+   * Get the time between checkpoints of the run's progress.
+   * 
+   * @return interval or <code>null</code> if the run is not checkpointed
+   */
+  public Duration getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  /**
+   * Get the path of the output file of a partition discovered while reading the input.
+   * 
+   * @param partitionNo partition number (indexed from one)
+   * @return path or <code>null</code> if partitions are not discovered
+   */
+  public String getDiscoveredFilePath(int partitionNo) {
+    return discoveredFileFormat != null ? String.format(discoveredFileFormat, partitionNo) : null;
+  }
+
+  /**
+   * Get the highest partition number that may be discovered while reading the input.
+   * 
+   * @return partition number (indexed from one) or zero if partitions are not discovered
+   */
+  public int getMaxDiscoveredPartitionNo() {
+    return maxDiscoveredPartitionNo;
+  }
+
+  public DurabilityMode getDurabilityMode() {
+    return durabilityMode;
+  }
+
+  /**
+   * Get the flush policy of a partition.
+   * 
+   * @param partitionNo partition number (indexed from one)
+   * @return the partition's policy or the default policy if none was set
+   */
+  public FlushPolicy getFlushPolicy(int partitionNo) {
+    return partitionNumToFlushPolicy.getOrDefault(partitionNo, defaultFlushPolicy);
+  }
+
+  /**
+   * Get the size at which a journal segment is handed over for demultiplexing.
+   * 
+   * @return segment size in bytes or zero if samples are not journaled
+   */
+  public long getJournalSegmentBytes() {
+    return journalSegmentBytes;
+  }
+
+  /**
+   * Get the size by which memory-mapped output files grow at a time.
+   * 
+   * @return extent size in bytes or zero if output files are written through streams
+   */
+  public long getMappedExtentBytes() {
+    return mappedExtentBytes;
+  }
+
+  /**
+   * Get the path of the single output file shared by all partitions.
+   * 
+   * @return path or <code>null</code> if each partition is written to a file of its own
+   */
+  public String getMultiplexedFilePath() {
+    return multiplexedFilePath;
+  }
+
+  public Duration getSyncInterval() {
+    return syncInterval;
+  }
+
+  /**
+   * Get the executor shared by all writers of the run.
+   * 
+   * @return executor or <code>null</code> if each writer starts threads of its own
+   */
+  public ExecutorService getWriterExecutor() {
+    return writerExecutor;
+  }
+
+  public boolean isAppending() {
+    return isAppending;
+  }
+
+  public boolean isCheckpointed() {
+    return checkpointInterval != null;
+  }
+
+  public boolean isColumnar() {
+    return isColumnar;
+  }
+
+  public boolean isCompressed() {
+    return isCompressed;
+  }
+
+  public boolean isDiscoveringPartitions() {
+    return discoveredFileFormat != null;
+  }
+
+  public boolean isGathering() {
+    return isGathering;
+  }
+
+  public boolean isIncremental() {
+    return isIncremental;
+  }
+
+  public boolean isJournaled() {
+    return journalSegmentBytes > 0;
+  }
+
+  public boolean isMapped() {
+    return mappedExtentBytes > 0;
+  }
+
+  public boolean isMultiplexed() {
+    return multiplexedFilePath != null;
+  }
+
+  public boolean isResumed() {
+    return isResumed;
+  }
+
+  /**
+   * Append output to the existing output files in place, instead of publishing new files that
+   * replace them. A failed run may leave partial output behind, so the caller must be able to
+   * cut the files back, e.g. with a {@link Checkpoint} taken beforehand.
+   * 
+   * @return these options
+   */
+  public OutputOptions withAppend() {
+    this.isAppending = true;
+    return this;
+  }
+
+  /**
+   * Set the flush policy of all partitions without a policy of their own.
+   * 
+   * @param flushPolicy non-<code>null</code> policy
+   * @return these options
+   */
+  public OutputOptions withDefaultFlushPolicy(FlushPolicy flushPolicy) {
+    if (flushPolicy == null) {
+      throw new IllegalArgumentException("flushPolicy cannot be null");
+    }
+    this.defaultFlushPolicy = flushPolicy;
+    return this;
+  }
+
+  /**
+   * Set when output files are forced to stable storage.
+   * 
+   * @param durabilityMode non-<code>null</code> mode
+   * @param syncInterval max. time between forces in {@link DurabilityMode#PERIODIC} and
+   *        {@link DurabilityMode#GROUP_COMMIT} modes
+   * @return these options
+   */
+  public OutputOptions withDurability(DurabilityMode durabilityMode, Duration syncInterval) {
+    if (durabilityMode == null) {
+      throw new IllegalArgumentException("durabilityMode cannot be null");
+    }
+    if (syncInterval == null || syncInterval.isNegative() || syncInterval.isZero()) {
+      throw new IllegalArgumentException("syncInterval must be positive");
+    }
+    this.durabilityMode = durabilityMode;
+    this.syncInterval = syncInterval;
+    return this;
+  }
+
+  /**
+   * Periodically record the run's progress, so that a failed run can be resumed. See
+   * {@link Checkpoint}.
+   * 
+   * @param checkpointInterval time between checkpoints
+   * @return these options
+   */
+  public OutputOptions withCheckpoints(Duration checkpointInterval) {
+    if (checkpointInterval == null || checkpointInterval.isNegative()
+        || checkpointInterval.isZero()) {
+      throw new IllegalArgumentException("checkpointInterval must be positive");
+    }
+    this.checkpointInterval = checkpointInterval;
+    return this;
+  }
+
+  /**
+   * Write per-partition files in a binary columnar format instead of text. See
+   * {@link ColumnarSampleWriter}.
+   * 
+   * @return these options
+   */
+  public OutputOptions withColumnarOutput() {
+    this.isColumnar = true;
+    return this;
+  }
+
+  /**
+   * Compress per-partition output into concatenated gzip members, compressing blocks in parallel.
+   * See {@link ParallelGzipOutputStream}.
+   * 
+   * @return these options
+   */
+  public OutputOptions withGzipCompression() {
+    if (isMapped() || isGathering) {
+      throw new IllegalArgumentException("compressed output cannot be mapped or gathering");
+    }
+    this.isCompressed = true;
+    return this;
+  }
+
+  /**
+   * Encode per-partition output into pooled direct buffers and write them with one gathering write
+   * per flush. See {@link GatheringChannelWriter}.
+   * 
+   * @return these options
+   */
+  public OutputOptions withGatheringWrites() {
+    if (isMapped() || isCompressed) {
+      throw new IllegalArgumentException("gathering output cannot be mapped or compressed");
+    }
+    this.isGathering = true;
+    return this;
+  }
+
+  /**
+   * Set the flush policy of a single partition.
+   * 
+   * @param partitionNo partition number (indexed from one)
+   * @param flushPolicy non-<code>null</code> policy
+   * @return these options
+   */
+  public OutputOptions withFlushPolicy(int partitionNo, FlushPolicy flushPolicy) {
+    if (flushPolicy == null) {
+      throw new IllegalArgumentException("flushPolicy cannot be null");
+    }
+    partitionNumToFlushPolicy.put(partitionNo, flushPolicy);
+    return this;
+  }
+
+  /**
+   * Remember how far the input was processed, and let the next run over the same, grown input
+   * append only the new samples to the existing output files. See {@link IncrementalState}.
+   * 
+   * @return these options
+   */
+  public OutputOptions withIncrementalRuns() {
+    this.isIncremental = true;
+    return this;
+  }
+
+  /**
+   * Write all partitions to a sequential journal first, then split it into the per-partition
+   * files in the background. See {@link JournalWriter}.
+   * 
+   * @param journalSegmentBytes size at which a journal segment is handed over for demultiplexing
+   * @return these options
+   */
+  public OutputOptions withJournal(long journalSegmentBytes) {
+    if (journalSegmentBytes <= 0) {
+      throw new IllegalArgumentException("journalSegmentBytes must be positive");
+    }
+    this.journalSegmentBytes = journalSegmentBytes;
+    return this;
+  }
+
+  /**
+   * Continue the run recorded by the last checkpoint instead of starting over. Requires
+   * {@link #withCheckpoints(Duration)}.
+   * 
+   * @return these options
+   */
+  public OutputOptions withResume() {
+    this.isResumed = true;
+    return this;
+  }
+
+  /**
+   * Write per-partition files through memory-mapped windows that grow by whole extents, instead of
+   * write system calls. See {@link MappedFileWriter}.
+   * 
+   * @param mappedExtentBytes number of bytes by which a file grows at a time
+   * @return these options
+   */
+  public OutputOptions withMappedOutput(long mappedExtentBytes) {
+    if (mappedExtentBytes <= 0 || mappedExtentBytes > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("mappedExtentBytes must be positive and at most 2 GiB");
+    }
+    if (isGathering || isCompressed) {
+      throw new IllegalArgumentException("mapped output cannot be gathering or compressed");
+    }
+    this.mappedExtentBytes = mappedExtentBytes;
+    return this;
+  }
+
+  /**
+   * Write all partitions to a single file of partition-tagged blocks instead of one file per
+   * partition. See {@link MultiplexedSampleWriter}.
+   * 
+   * @param multiplexedFilePath path of the shared output file
+   * @return these options
+   */
+  public OutputOptions withMultiplexedFile(String multiplexedFilePath) {
+    if (multiplexedFilePath == null || multiplexedFilePath.isEmpty()) {
+      throw new IllegalArgumentException("multiplexedFilePath must be non-empty");
+    }
+    this.multiplexedFilePath = multiplexedFilePath;
+    return this;
+  }
+
+  /**
+   * Discover partitions while reading the input instead of requiring their number up front, up to
+   * partition number {@link #DEFAULT_MAX_DISCOVERED_PARTITION_NO}. The output file of each
+   * partition is created when its first sample is read.
+   * 
+   * @param discoveredFileFormat format of the output file paths, with a <code>%d</code> for the
+   *        partition number (indexed from one)
+   * @return these options
+   */
+  public OutputOptions withPartitionDiscovery(String discoveredFileFormat) {
+    return withPartitionDiscovery(discoveredFileFormat, DEFAULT_MAX_DISCOVERED_PARTITION_NO);
+  }
+
+  /**
+   * Discover partitions while reading the input instead of requiring their number up front. The
+   * output file of each partition is created when its first sample is read. Partitions are routed
+   * by index, so a sample of a partition above the max. fails the run rather than growing the
+   * routing tables to its number.
+   * 
+   * @param discoveredFileFormat format of the output file paths, with a <code>%d</code> for the
+   *        partition number (indexed from one)
+   * @param maxPartitionNo highest partition number accepted (indexed from one)
+   * @return these options
+   */
+  public OutputOptions withPartitionDiscovery(String discoveredFileFormat, int maxPartitionNo) {
+    if (discoveredFileFormat == null || !discoveredFileFormat.contains("%d")) {
+      throw new IllegalArgumentException("discoveredFileFormat must contain %d");
+    }
+    if (maxPartitionNo <= 0) {
+      throw new IllegalArgumentException("maxPartitionNo must be positive");
+    }
+    this.discoveredFileFormat = discoveredFileFormat;
+    this.maxDiscoveredPartitionNo = maxPartitionNo;
+    return this;
+  }
+
+  /**
+   * Run the writes of every partition on an executor that outlives the run, e.g. a lane of a pool
+   * shared by several jobs, instead of starting writer threads for the run. The executor must run
+   * the tasks of a partition one at a time, in submission order; it is not shut down by the run.
+   * 
+   * @param writerExecutor executor that runs write tasks
+   * @return these options
+   */
+  public OutputOptions withWriterExecutor(ExecutorService writerExecutor) {
+    if (writerExecutor == null) {
+      throw new IllegalArgumentException("writerExecutor cannot be null");
+    }
+    this.writerExecutor = writerExecutor;
+    return this;
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Publishes the output files of a run atomically. Output is first written to hidden staging files
+ * next to the final paths. Once the run completes, every staging file is forced to stable storage
+ * and renamed over its final path, then a manifest describing the run is written last. The
+ * manifest of the previous run is deleted before the first rename.
+ * <p/>
+ * A run that crashes before {@link #publish()} leaves the previous outputs untouched; consumers
+ * that see a manifest may trust every output file it lists.
+ */
+public class OutputPublisher {
+
+  /**
+   * Name of the manifest file, written to the directory of the first output file.
+   */
+  public static final String MANIFEST_FILE_NAME = "_MANIFEST";
+
+  private static final String STAGING_FILE_FORMAT = ".%s.%s.tmp";
+  private static final Logger LOG = getLogger(OutputPublisher.class);
+
+  private final List<Path> outputPaths;
+  private final List<Path> stagingPaths;
+  private final Path manifestPath;
+  private final String runId;
+  private boolean isPublished;
+
+  /**
+   * Canonical constructor.
+   * 
+   * @param outputFilePaths final paths of the output files, in partition order
+   * @param runId identifier of this run, unique among runs writing the same outputs
+   */
+  public OutputPublisher(List<String> outputFilePaths, String runId) {
+    if (outputFilePaths == null || outputFilePaths.isEmpty()) {
+      throw new IllegalArgumentException("outputFilePaths must be non-empty");
+    }
+    if (runId == null || runId.isEmpty()) {
+      throw new IllegalArgumentException("runId must be non-empty");
+    }
+
+    this.runId = runId;
+    this.outputPaths = Lists.newArrayList();
+    this.stagingPaths = Lists.newArrayList();
+    for (String outputFilePath : outputFilePaths) {
+      Path outputPath = Paths.get(outputFilePath).toAbsolutePath();
+      outputPaths.add(outputPath);
+      stagingPaths.add(stagingPathOf(outputPath, runId));
+    }
+    this.manifestPath = outputPaths.get(0).resolveSibling(MANIFEST_FILE_NAME);
+  }
+
+  /**
+   * Construct a publisher whose output files are added one at a time, as they are discovered.
+   * 
+   * @param directory directory to which the manifest is written
+   * @param runId identifier of this run, unique among runs writing the same outputs
+   */
+  public OutputPublisher(Path directory, String runId) {
+    if (directory == null) {
+      throw new IllegalArgumentException("directory cannot be null");
+    }
+    if (runId == null || runId.isEmpty()) {
+      throw new IllegalArgumentException("runId must be non-empty");
+    }
+
+    this.runId = runId;
+    this.outputPaths = Lists.newArrayList();
+    this.stagingPaths = Lists.newArrayList();
+    this.manifestPath = directory.toAbsolutePath().resolve(MANIFEST_FILE_NAME);
+  }
+
+  /**
+   * Delete the staging files of an unsuccessful run, several at a time. Published outputs are left
+   * untouched.
+   */
+  public synchronized void abort() {
+    if (isPublished) {
+      return;
+    }
+    stagingPaths.parallelStream().forEach(OutputPublisher::deleteStagingFile);
+  }
+
+  /**
+   * Delete the staging files of an unsuccessful run without waiting for them, e.g. those of an
+   * earlier run that is started over. Published outputs are left untouched.
+   * 
+   * @return completes once every staging file has been deleted
+   */
+  public CompletableFuture<Void> abortInBackground() {
+    return CompletableFuture.runAsync(this::abort);
+  }
+
+  /**
+   * Add an output file to publish along with the others.
+   * 
+   * @param outputFilePath final path of the output file
+   * @return path to which the output is written until it is published
+   */
+  public synchronized String addOutput(String outputFilePath) {
+    if (isPublished) {
+      throw new IllegalStateException("outputs already published");
+    }
+
+    Path outputPath = Paths.get(outputFilePath).toAbsolutePath();
+    Path stagingPath = stagingPathOf(outputPath, runId);
+    outputPaths.add(outputPath);
+    stagingPaths.add(stagingPath);
+    return stagingPath.toString();
+  }
+
+  public Path getManifestPath() {
+    return manifestPath;
+  }
+
+  /**
+   * Get the path to which the output of a partition is written until it is published.
+   * 
+   * @param index position of the output file in the list passed to the constructor
+   * @return path of the staging file
+   */
+  public synchronized String getStagingPath(int index) {
+    return stagingPaths.get(index).toString();
+  }
+
+  /**
+   * Force every staging file to stable storage, delete the previous manifest, rename each staging
+   * file over its final path, then write the manifest. Call this only after all writers of the
+   * run have been closed.
+   */
+  public synchronized void publish() {
+    if (isPublished) {
+      throw new IllegalStateException("outputs already published");
+    }
+
+    // make contents durable before they become visible under their final names
+    for (Path stagingPath : stagingPaths) {
+      if (!Files.exists(stagingPath)) {
+        touch(stagingPath);
+      }
+      force(stagingPath);
+    }
+
+    // retract the previous manifest first; a crash between renames leaves no manifest that
+    // vouches for a mix of old and new outputs
+    try {
+      Files.deleteIfExists(manifestPath);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to retract manifest -- path: %s", manifestPath), e);
+    }
+    forceDirectory(manifestPath.getParent());
+
+    // publish outputs
+    Set<Path> directories = Sets.newHashSet();
+    for (int i = 0; i < stagingPaths.size(); i++) {
+      move(stagingPaths.get(i), outputPaths.get(i));
+      directories.add(outputPaths.get(i).getParent());
+    }
+    for (Path directory : directories) {
+      forceDirectory(directory);
+    }
+
+    // the manifest goes last, so its presence implies complete outputs
+    Path stagingManifest = manifestPath.resolveSibling(
+        String.format(STAGING_FILE_FORMAT, MANIFEST_FILE_NAME, runId));
+    try (Writer writer = Files.newBufferedWriter(stagingManifest, StandardCharsets.UTF_8)) {
+      writer.write(String.format("runId=%s%n", runId));
+      writer.write(String.format("publishedAt=%s%n", Instant.now()));
+      for (Path outputPath : outputPaths) {
+        writer.write(String.format("output=%s,%d%n", outputPath, Files.size(outputPath)));
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to write manifest -- path: %s", stagingManifest), e);
+    }
+    force(stagingManifest);
+    move(stagingManifest, manifestPath);
+    forceDirectory(manifestPath.getParent());
+
+    isPublished = true;
+    LOG.info(String.format("published outputs -- runId: %s, numFiles: %d, manifest: %s", runId,
+        outputPaths.size(), manifestPath));
+  }
+
+  private static void deleteStagingFile(Path stagingPath) {
+    try {
+      Files.deleteIfExists(stagingPath);
+    } catch (IOException e) {
+      LOG.warn(String.format("Unable to delete staging file -- path: %s, message: %s",
+          stagingPath, e.getMessage()));
+    }
+  }
+
+  private static void force(Path path) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.force(true /* metaData */);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Unable to sync file -- path: %s", path), e);
+    }
+  }
+
+  /**
+   * Force a directory, so that renames within it survive a crash. Not every platform allows
+   * directories to be opened; there, the rename is left to the file system.
+   * 
+   * @param directory directory to force
+   */
+  private static void forceDirectory(Path directory) {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true /* metaData */);
+    } catch (IOException e) {
+      LOG.debug(String.format("Unable to sync directory -- path: %s, message: %s", directory,
+          e.getMessage()));
+    }
+  }
+
+  private static void move(Path source, Path target) {
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to publish file -- source: %s, target: %s", source, target), e);
+    }
+  }
+
+  private static Path stagingPathOf(Path outputPath, String runId) {
+    return outputPath.resolveSibling(
+        String.format(STAGING_FILE_FORMAT, outputPath.getFileName(), runId));
+  }
+
+  private static void touch(Path path) {
+    try {
+      Files.createFile(path);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Unable to create file -- path: %s", path),
+          e);
+    }
+  }
+}
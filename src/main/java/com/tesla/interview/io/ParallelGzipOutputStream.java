@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses output into a series of concatenated gzip members, in the manner of pigz. Output is
+ * cut into independent blocks, which are compressed in parallel on a thread pool and written to the
+ * underlying stream in order. A concatenation of gzip members is itself a valid gzip stream
+ * (RFC 1952), so standard tools decompress the result as a whole.
+ * <p/>
+ * Every {@link #flush()} ends the current block, so frequent flushes cost compression ratio. At
+ * most {@link #MAX_PENDING_BLOCKS} blocks are compressed at a time per stream.
+ */
+class ParallelGzipOutputStream extends OutputStream {
+
+  static final int BLOCK_SIZE = 1 << 17;
+  static final int MAX_PENDING_BLOCKS = 2 * Runtime.getRuntime().availableProcessors();
+
+  private static final ExecutorService SHARED_EXECUTOR;
+
+  static {
+    AtomicInteger threadNo = new AtomicInteger(0 /* initialValue */);
+    SHARED_EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+        (Runnable r) -> {
+          Thread thread = new Thread(r, "gzip-compressor-" + threadNo.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /**
+   * Get the thread pool shared by all compressed outputs of this process.
+   * 
+   * @return pool with one thread per processor
+   */
+  static ExecutorService sharedExecutor() {
+    return SHARED_EXECUTOR;
+  }
+
+  private static byte[] compress(byte[] block, int length) throws IOException {
+    ByteArrayOutputStream member = new ByteArrayOutputStream(length / 2);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(member)) {
+      gzip.write(block, 0, length);
+    }
+    return member.toByteArray();
+  }
+
+  private final OutputStream output;
+  private final ExecutorService executor;
+  private final Queue<Future<byte[]>> pendingMembers = new ArrayDeque<>();
+  private byte[] block = new byte[BLOCK_SIZE];
+  private int blockLength;
+  private boolean hasMembers;
+  private boolean isClosed;
+
+  /**
+   * Canonical constructor.
+   * 
+   * @param output stream to which compressed members are written; closed by {@link #close()}
+   * @param executor thread pool on which blocks are compressed
+   */
+  ParallelGzipOutputStream(OutputStream output, ExecutorService executor) {
+    if (output == null) {
+      throw new IllegalArgumentException("output cannot be null");
+    }
+    if (executor == null) {
+      throw new IllegalArgumentException("executor cannot be null");
+    }
+    this.output = output;
+    this.executor = executor;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (isClosed) {
+      return;
+    }
+
+    try {
+      if (!hasMembers && blockLength == 0) {
+        output.write(compress(block, 0)); // an empty file is not a valid gzip stream
+      }
+      flush();
+    } finally {
+      isClosed = true;
+      for (Future<byte[]> member : pendingMembers) {
+        member.cancel(false /* mayInterruptIfRunning */);
+      }
+      pendingMembers.clear();
+      output.close();
+    }
+  }
+
+  /**
+   * Compress the current block, write all pending members in order and flush the underlying
+   * stream.
+   */
+  @Override
+  public synchronized void flush() throws IOException {
+    ensureOpen();
+    submitBlock();
+    while (!pendingMembers.isEmpty()) {
+      writeOldestMember();
+    }
+    output.flush();
+  }
+
+  @Override
+  public synchronized void write(byte[] bytes, int off, int len) throws IOException {
+    ensureOpen();
+    while (len > 0) {
+      int numCopied = Math.min(len, BLOCK_SIZE - blockLength);
+      System.arraycopy(bytes, off, block, blockLength, numCopied);
+      blockLength += numCopied;
+      off += numCopied;
+      len -= numCopied;
+      if (blockLength == BLOCK_SIZE) {
+        submitBlock();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void write(int b) throws IOException {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  private void ensureOpen() throws IOException {
+    if (isClosed) {
+      throw new IOException("stream is closed");
+    }
+  }
+
+  /**
+   * Hand the current block to the thread pool, first writing finished members while too many
+   * blocks are pending.
+   */
+  private void submitBlock() throws IOException {
+    if (blockLength == 0) {
+      return;
+    }
+    while (pendingMembers.size() >= MAX_PENDING_BLOCKS
+        || !pendingMembers.isEmpty() && pendingMembers.peek().isDone()) {
+      writeOldestMember();
+    }
+
+    final byte[] toCompress = block;
+    final int length = blockLength;
+    pendingMembers.add(executor.submit(() -> compress(toCompress, length)));
+    hasMembers = true;
+    block = new byte[BLOCK_SIZE];
+    blockLength = 0;
+  }
+
+  private void writeOldestMember() throws IOException {
+    try {
+      output.write(pendingMembers.remove().get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while compressing");
+    } catch (ExecutionException e) {
+      throw new IOException(String.format("Unable to compress block -- message: %s",
+          e.getCause().getMessage()), e.getCause());
+    }
+  }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.tesla.interview.model.MeasurementSample;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Caches the parsed samples of a text input file in a sidecar file next to it.
+ * <p/>
+ * The first read of a text file parses it as usual and writes every sample to a binary sidecar in
+ * the format of {@link BinarySampleReader}. The sidecar is accompanied by a key file that
+ * identifies the input by path, size, modification time and a hash of its first and last
+ * megabyte. Later reads whose input still matches the key map the sidecar instead of parsing the
+ * text. Any change to the input invalidates the sidecar, which is then rewritten by the next read.
+ * <p/>
+ * The sidecar is only published once the whole input was read, so an interrupted run never leaves
+ * a partial cache behind. Inputs whose asset identifiers are not UUIDs are not cached.
+ */
+public class ParsedInputCache {
+
+  static final String CACHE_SUFFIX = ".parsed";
+  static final String KEY_SUFFIX = ".key";
+
+  private static final int HASHED_BYTES = 1 << 20;
+  private static final String KEY_FORMAT = "%d,%d,%08x,%s";
+  private static final String TEMP_FORMAT = "%s.%s.tmp";
+  private static final Logger LOG = getLogger(ParsedInputCache.class);
+
+  /**
+   * Streams a text file while copying its samples into a new sidecar.
+   */
+  private static class CachingSampleReader implements SampleReader {
+    private final MeasurementSampleReader reader;
+    private final File inputFile;
+    private final String key;
+    private final File tempFile;
+    private BinarySampleWriter writer;
+    private long numSamples;
+
+    CachingSampleReader(File inputFile, String key, File tempFile, BinarySampleWriter writer) {
+      this.reader = new MeasurementSampleReader(inputFile);
+      this.inputFile = inputFile;
+      this.key = key;
+      this.tempFile = tempFile;
+      this.writer = writer;
+    }
+
+    @Override
+    public void close() {
+      reader.close();
+      abandon();
+    }
+
+    @Override
+    public long getOffset() {
+      return reader.getOffset();
+    }
+
+    @Override
+    public boolean hasNext() {
+      boolean hasNext = reader.hasNext();
+      if (!hasNext && writer != null) {
+        publish();
+      }
+      return hasNext;
+    }
+
+    @Override
+    public MeasurementSample next() {
+      MeasurementSample sample = reader.next();
+      if (writer != null) {
+        try {
+          writer.writeSample(sample);
+          numSamples++;
+        } catch (RuntimeException e) {
+          LOG.info(String.format("Not caching parsed input -- path: %s, message: %s",
+              inputFile.getPath(), e.getMessage()));
+          abandon();
+        }
+      }
+      return sample;
+    }
+
+    private void abandon() {
+      if (writer != null) {
+        try {
+          writer.close();
+        } catch (RuntimeException e) {
+          // the file is deleted anyway
+        }
+        writer = null;
+        if (!tempFile.delete()) {
+          LOG.warn(String.format("Unable to delete file -- path: %s", tempFile.getPath()));
+        }
+      }
+    }
+
+    private void publish() {
+      try {
+        writer.close();
+        writer = null;
+        if (!key.equals(keyOf(inputFile))) {
+          throw new IllegalStateException("input changed while it was read");
+        }
+        Files.move(tempFile.toPath(), cacheFile(inputFile).toPath(),
+            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        writeKey(inputFile, key);
+        LOG.info(String.format("cached parsed input -- path: %s, numSamples: %d",
+            inputFile.getPath(), numSamples));
+      } catch (IOException | RuntimeException e) {
+        LOG.warn(String.format("Unable to cache parsed input -- path: %s, message: %s",
+            inputFile.getPath(), e.getMessage()));
+        if (tempFile.exists() && !tempFile.delete()) {
+          LOG.warn(String.format("Unable to delete file -- path: %s", tempFile.getPath()));
+        }
+      }
+    }
+  }
+
+  /**
+   * Open a reader for an input file. Binary inputs are read as is; text inputs are read from their
+   * sidecar if it is up to date, else parsed while a new sidecar is written.
+   * 
+   * @param inputFile file whose samples to read
+   * @return non-<code>null</code> reader
+   */
+  public static SampleReader open(File inputFile) {
+    SampleReader reader = SampleReader.fromFile(inputFile);
+    if (reader instanceof BinarySampleReader) {
+      return reader;
+    }
+
+    String key;
+    try {
+      key = keyOf(inputFile);
+    } catch (IOException e) {
+      LOG.warn(String.format("Unable to identify input; not caching -- path: %s, message: %s",
+          inputFile.getPath(), e.getMessage()));
+      return reader;
+    }
+
+    File cacheFile = cacheFile(inputFile);
+    File keyFile = keyFile(inputFile);
+    if (key.equals(readKey(keyFile)) && cacheFile.isFile()) {
+      try {
+        BinarySampleReader cached = new BinarySampleReader(cacheFile);
+        reader.close();
+        LOG.info(String.format("reading cached parsed input -- path: %s", cacheFile.getPath()));
+        return cached;
+      } catch (IllegalArgumentException e) {
+        LOG.warn(String.format("Ignoring damaged parse cache -- path: %s, message: %s",
+            cacheFile.getPath(), e.getMessage()));
+      }
+    }
+
+    // invalidate before rewriting, so a stale key never vouches for a new sidecar
+    if (keyFile.exists() && !keyFile.delete()) {
+      LOG.warn(String.format("Unable to invalidate parse cache; not caching -- path: %s",
+          keyFile.getPath()));
+      return reader;
+    }
+    File tempFile = new File(String.format(TEMP_FORMAT, cacheFile.getPath(), UUID.randomUUID()));
+    BinarySampleWriter writer;
+    try {
+      writer = BinarySampleWriter.fromFile(tempFile);
+    } catch (RuntimeException e) {
+      LOG.warn(String.format("Unable to create parse cache -- path: %s, message: %s",
+          tempFile.getPath(), e.getMessage()));
+      return reader;
+    }
+    reader.close();
+    return new CachingSampleReader(inputFile, key, tempFile, writer);
+  }
+
+  static File cacheFile(File inputFile) {
+    return new File(inputFile.getPath() + CACHE_SUFFIX);
+  }
+
+  static File keyFile(File inputFile) {
+    return new File(inputFile.getPath() + CACHE_SUFFIX + KEY_SUFFIX);
+  }
+
+  /**
+   * Identify the current content of an input file.
+   * 
+   * @param inputFile file to identify
+   * @return key that changes whenever the file is modified
+   * @throws IOException if the file cannot be read
+   */
+  static String keyOf(File inputFile) throws IOException {
+    long size;
+    long hash;
+    try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+      size = channel.size();
+      hash = hashHeadAndTail(channel, size);
+    }
+    return String.format(KEY_FORMAT, size, inputFile.lastModified(), hash,
+        inputFile.getCanonicalPath());
+  }
+
+  /**
+   * Hash the first and last megabyte of a prefix of a file, so that large files are identified
+   * without being read in full.
+   * 
+   * @param channel open file
+   * @param length length of the prefix to hash
+   * @return CRC32 of the head and tail of the prefix
+   * @throws IOException if the file cannot be read
+   */
+  private static long hashHeadAndTail(FileChannel channel, long length) throws IOException {
+    CRC32 hash = new CRC32();
+    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(HASHED_BYTES, length));
+    hashRange(channel, 0, buffer.capacity(), buffer, hash);
+    if (length > HASHED_BYTES) {
+      long tailOffset = Math.max(HASHED_BYTES, length - HASHED_BYTES);
+      hashRange(channel, tailOffset, (int) (length - tailOffset), buffer, hash);
+    }
+    return hash.getValue();
+  }
+
+  private static void hashRange(FileChannel channel, long offset, int length, ByteBuffer buffer,
+      CRC32 hash) throws IOException {
+    buffer.clear();
+    buffer.limit(length);
+    while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) >= 0) {
+      // read until the buffer is full or the file ends
+    }
+    buffer.flip();
+    hash.update(buffer.array(), 0, buffer.limit());
+  }
+
+  private static String readKey(File keyFile) {
+    try {
+      return keyFile.isFile() ? new String(Files.readAllBytes(keyFile.toPath()),
+          StandardCharsets.UTF_8) : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static void writeKey(File inputFile, String key) throws IOException {
+    Path keyPath = keyFile(inputFile).toPath();
+    Path tempPath = keyPath.resolveSibling(
+        String.format(TEMP_FORMAT, keyPath.getFileName(), UUID.randomUUID()));
+    Files.write(tempPath, key.getBytes(StandardCharsets.UTF_8));
+    Files.move(tempPath, keyPath, StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+}
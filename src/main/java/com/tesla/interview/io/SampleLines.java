@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.tesla.interview.model.MeasurementSample;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Parses newline-delimited samples received by the socket readers. A line may end in
+ * <code>\r\n</code>; blank lines are skipped and lines that are not valid samples, or whose
+ * partition has no output, are dropped with a warning, so that one bad sender cannot stop the
+ * stream.
+ */
+final class SampleLines {
+
+  private static final byte LINE_SEPARATOR = '\n';
+  private static final byte CARRIAGE_RETURN = '\r';
+  private static final Logger LOG = getLogger(SampleLines.class);
+
+  /**
+   * Parse every complete line between the position and the limit of a buffer. The position is
+   * advanced past the last line separator; a partial line that follows it is left in the buffer.
+   * 
+   * @param buffer buffer to parse, flipped for reading
+   * @param isComplete <code>true</code> if the bytes after the last line separator form a line
+   *        too, e.g. at the end of a stream or datagram
+   * @param numPartitions number of partitions; samples outside <code>1..numPartitions</code> are
+   *        dropped
+   * @param samples list to which parsed samples are added
+   * @param source describes the sender in warnings
+   * @return number of lines dropped
+   */
+  static int parse(ByteBuffer buffer, boolean isComplete, int numPartitions,
+      List<MeasurementSample> samples, String source) {
+    int numDropped = 0;
+    int start = buffer.position();
+    for (int i = start; i < buffer.limit(); i++) {
+      if (buffer.get(i) == LINE_SEPARATOR) {
+        numDropped += parseLine(buffer, start, i, numPartitions, samples, source);
+        start = i + 1;
+      }
+    }
+    if (isComplete && start < buffer.limit()) {
+      numDropped += parseLine(buffer, start, buffer.limit(), numPartitions, samples,
+          source);
+      start = buffer.limit();
+    }
+    buffer.position(start);
+    return numDropped;
+  }
+
+  private static int parseLine(ByteBuffer buffer, int start, int end, int numPartitions,
+      List<MeasurementSample> samples, String source) {
+    int length = end - start;
+    if (length > 0 && buffer.get(end - 1) == CARRIAGE_RETURN) {
+      length--;
+    }
+    if (length == 0) {
+      return 0;
+    }
+
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = buffer.get(start + i);
+    }
+    String line = new String(bytes, StandardCharsets.UTF_8);
+    try {
+      MeasurementSample sample = MeasurementSample.fromString(line);
+      if (sample.getPartitionNo() < 1 || sample.getPartitionNo() > numPartitions) {
+        throw new IllegalArgumentException(
+            String.format("unknown partition -- partitionNo: %d, numPartitions: %d",
+                sample.getPartitionNo(), numPartitions));
+      }
+      samples.add(sample);
+      return 0;
+    } catch (IllegalArgumentException e) {
+      LOG.warn(String.format("dropping invalid sample -- source: %s, message: %s", source,
+          e.getMessage()));
+      return 1;
+    }
+  }
+
+  private SampleLines() {
+    // static helpers only
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import com.tesla.interview.model.MeasurementSample;
+import java.io.Closeable;
+import java.io.File;
+import java.util.Iterator;
+
+/**
+ * Reads a series of {@link MeasurementSample}s from an input file.
+ */
+public interface SampleReader extends Closeable, Iterator<MeasurementSample> {
+
+  /**
+   * Open a reader for an input file, choosing the format by the file's magic header: a
+   * {@link BinarySampleReader} for binary files, else a {@link MeasurementSampleReader} for text.
+   * 
+   * @param sampleFile file whose samples to read
+   * @return non-<code>null</code> reader
+   */
+  static SampleReader fromFile(File sampleFile) {
+    return BinarySampleReader.isBinary(sampleFile) ? new BinarySampleReader(sampleFile)
+        : new MeasurementSampleReader(sampleFile);
+  }
+
+  /**
+   * Open a reader for an input file that starts at a byte offset and tracks its offset as it reads,
+   * e.g. to resume a run from a checkpoint. See {@link #fromFile(File)}.
+   * 
+   * @param sampleFile file whose samples to read
+   * @param offset offset returned by {@link #getOffset()} of an earlier reader, or zero
+   * @return non-<code>null</code> reader
+   */
+  static SampleReader fromFile(File sampleFile, long offset) {
+    return BinarySampleReader.isBinary(sampleFile) ? new BinarySampleReader(sampleFile, offset)
+        : new MeasurementSampleReader(sampleFile, offset);
+  }
+
+  @Override
+  void close();
+
+  /**
+   * Get the byte offset just past the last sample returned by {@link #next()}. A reader opened at
+   * this offset continues with the following sample.
+   * 
+   * @return offset into the input file
+   * @throws IllegalStateException if this reader does not track its offset
+   */
+  long getOffset();
+
+  /**
+   * Tell whether {@link #hasNext()} can answer without waiting, e.g. for a network peer to send
+   * more samples. Callers may use the pause to act on what they have read so far.
+   * 
+   * @return <code>true</code> unless this reader would block; always so for files
+   */
+  default boolean isReady() {
+    return true;
+  }
+}
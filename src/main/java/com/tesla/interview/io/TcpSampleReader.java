@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.google.common.collect.Lists;
+import com.tesla.interview.model.MeasurementSample;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Accepts TCP connections and reads newline-delimited samples from them, in the text format of
+ * the input files. A single thread serves every connection through a {@link Selector}, reading
+ * into one pooled direct buffer; only the partial line at the end of a read is kept per
+ * connection.
+ * <p/>
+ * The samples of each connection are returned in the order they were sent; samples of different
+ * connections interleave. Parsed samples pass through an {@link IngestQueue}. While it is full,
+ * e.g. because the writers fall behind, connections with parsed samples left over are no longer
+ * read, so TCP flow control slows their senders down instead of this process buffering without
+ * bound.
+ * <p/>
+ * The stream ends once {@link #stop()} was called and the samples received so far were read.
+ */
+public class TcpSampleReader implements NetworkSampleReader {
+
+  /**
+   * State of one accepted connection.
+   */
+  private static class Connection {
+    final SocketChannel channel;
+    final String peer;
+    byte[] partialLine = new byte[0];
+    List<MeasurementSample> pending;
+    boolean isEnded;
+
+    Connection(SocketChannel channel, String peer) {
+      this.channel = channel;
+      this.peer = peer;
+    }
+  }
+
+  static final int MAX_PENDING_BATCHES = 64;
+  static final int READ_BUFFER_SIZE = 1 << 16;
+
+  private static final Logger LOG = getLogger(TcpSampleReader.class);
+
+  private final ArrayDeque<Connection> blocked = new ArrayDeque<>();
+  private final AtomicBoolean isStopping = new AtomicBoolean(false /* initialValue */);
+  private final DirectBufferPool bufferPool = DirectBufferPool.shared();
+  private final Selector selector;
+  private final ServerSocketChannel server;
+  private final InetSocketAddress address;
+  private final IngestQueue queue;
+  private final int numPartitions;
+  private final Thread selectorThread;
+
+  final AtomicInteger numConnections = new AtomicInteger(0 /* initialValue */);
+  final AtomicLong numDropped = new AtomicLong(0 /* initialValue */);
+
+  /**
+   * Canonical constructor. Starts accepting connections right away.
+   * 
+   * @param bindAddress address to listen on; port zero picks a free port
+   * @param numPartitions number of partitions; samples of any other partition are dropped
+   */
+  public TcpSampleReader(InetSocketAddress bindAddress, int numPartitions) {
+    this(bindAddress, numPartitions, MAX_PENDING_BATCHES);
+  }
+
+  /**
+   * Injection constructor for unit tests.
+   * 
+   * @param bindAddress address to listen on; port zero picks a free port
+   * @param numPartitions number of partitions; samples of any other partition are dropped
+   * @param maxPendingBatches max. number of batches received but not read yet
+   */
+  TcpSampleReader(InetSocketAddress bindAddress, int numPartitions, int maxPendingBatches) {
+    if (bindAddress == null) {
+      throw new IllegalArgumentException("bindAddress cannot be null");
+    }
+    if (numPartitions <= 0) {
+      throw new IllegalArgumentException("numPartitions must be positive");
+    }
+
+    try {
+      this.selector = Selector.open();
+      this.server = ServerSocketChannel.open();
+      server.bind(bindAddress);
+      server.configureBlocking(false);
+      server.register(selector, SelectionKey.OP_ACCEPT);
+      this.address = (InetSocketAddress) server.getLocalAddress();
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to listen -- address: %s", bindAddress), e);
+    }
+    this.numPartitions = numPartitions;
+    this.queue = new IngestQueue(maxPendingBatches, selector::wakeup);
+    this.selectorThread = new Thread(this::serve, "tcp-ingest");
+    selectorThread.setDaemon(true);
+    selectorThread.start();
+    LOG.info(String.format("accepting samples -- address: %s", address));
+  }
+
+  /**
+   * Stop accepting and reading, and discard the samples not read yet. Waits for the selector
+   * thread to finish.
+   */
+  @Override
+  public void close() {
+    stop();
+    queue.close();
+    try {
+      selectorThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public InetSocketAddress getAddress() {
+    return address;
+  }
+
+  /**
+   * Not supported; a stream has no offset to resume from.
+   * 
+   * @throws IllegalStateException always
+   */
+  @Override
+  public long getOffset() {
+    throw new IllegalStateException("socket reader does not track its offset");
+  }
+
+  @Override
+  public boolean hasNext() {
+    return queue.hasNext();
+  }
+
+  @Override
+  public boolean isReady() {
+    return queue.isReady();
+  }
+
+  @Override
+  public MeasurementSample next() {
+    return queue.next();
+  }
+
+  /**
+   * Stop accepting connections and close the open ones. Samples that arrived before the stop are
+   * still returned; a partial line at the end of an open connection is dropped. Does not wait.
+   */
+  @Override
+  public void stop() {
+    if (isStopping.compareAndSet(false, true)) {
+      selector.wakeup();
+    }
+  }
+
+  synchronized int numBlocked() {
+    return blocked.size();
+  }
+
+  private boolean accept() throws IOException {
+    SocketChannel channel = server.accept();
+    if (channel == null) {
+      return false;
+    }
+    channel.configureBlocking(false);
+    String peer = String.valueOf(channel.getRemoteAddress());
+    channel.register(selector, SelectionKey.OP_READ, new Connection(channel, peer));
+    numConnections.incrementAndGet();
+    LOG.info(String.format("connection accepted -- peer: %s", peer));
+    return true;
+  }
+
+  private void closeConnection(Connection connection) {
+    if (connection.partialLine.length > 0) {
+      LOG.warn(String.format("dropping partial line -- peer: %s, numBytes: %d", connection.peer,
+          connection.partialLine.length));
+      numDropped.incrementAndGet();
+      connection.partialLine = new byte[0];
+    }
+    try {
+      connection.channel.close();
+    } catch (IOException e) {
+      LOG.warn(String.format("Unable to close connection -- peer: %s, message: %s",
+          connection.peer, e.getMessage()));
+    }
+  }
+
+  /**
+   * Hand the samples of a connection to the queue, or stop reading from the connection until the
+   * queue has room.
+   * 
+   * @param connection connection the samples were read from
+   * @param samples parsed samples, possibly none
+   */
+  private void handOver(Connection connection, List<MeasurementSample> samples) {
+    if (!samples.isEmpty() && !queue.offer(samples)) {
+      connection.pending = samples;
+      connection.channel.keyFor(selector).interestOps(0);
+      synchronized (this) {
+        blocked.add(connection);
+      }
+    } else if (connection.isEnded) {
+      closeConnection(connection);
+    }
+  }
+
+  /**
+   * Read what a connection has sent and parse its complete lines.
+   * 
+   * @param connection readable connection
+   * @param buffer pooled read buffer
+   * @return number of bytes read, or <code>-1</code> at the end of the connection
+   */
+  private int read(Connection connection, ByteBuffer buffer) {
+    buffer.clear();
+    buffer.put(connection.partialLine);
+    int numRead;
+    try {
+      numRead = connection.channel.read(buffer);
+    } catch (IOException e) {
+      LOG.warn(String.format("Unable to read from connection -- peer: %s, message: %s",
+          connection.peer, e.getMessage()));
+      numRead = -1;
+    }
+    connection.isEnded = numRead < 0;
+    buffer.flip();
+
+    List<MeasurementSample> samples = Lists.newArrayList();
+    numDropped.addAndGet(SampleLines.parse(buffer, connection.isEnded, numPartitions, samples,
+        connection.peer));
+    connection.partialLine = new byte[buffer.remaining()];
+    buffer.get(connection.partialLine);
+    if (connection.partialLine.length == buffer.capacity()) {
+      LOG.warn(String.format("line too long; closing connection -- peer: %s, maxLineBytes: %d",
+          connection.peer, buffer.capacity()));
+      connection.isEnded = true;
+    }
+    handOver(connection, samples);
+    return numRead;
+  }
+
+  /**
+   * Offer the left over samples of blocked connections again, in the order the connections were
+   * blocked, and resume reading from those the queue accepted.
+   */
+  private void resumeBlocked() {
+    while (true) {
+      Connection connection;
+      synchronized (this) {
+        connection = blocked.peek();
+      }
+      if (connection == null || !queue.offer(connection.pending)) {
+        return;
+      }
+      synchronized (this) {
+        blocked.remove();
+      }
+      connection.pending = null;
+      if (connection.isEnded) {
+        closeConnection(connection);
+      } else {
+        connection.channel.keyFor(selector).interestOps(SelectionKey.OP_READ);
+      }
+    }
+  }
+
+  /**
+   * Serve connections until stopped, then hand over the samples left over and end the stream.
+   */
+  private void serve() {
+    ByteBuffer buffer = bufferPool.acquire(READ_BUFFER_SIZE);
+    try {
+      while (!isStopping.get()) {
+        selector.select();
+        resumeBlocked();
+        Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+        while (selected.hasNext()) {
+          SelectionKey key = selected.next();
+          selected.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+          } else if (key.isReadable()) {
+            read((Connection) key.attachment(), buffer);
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.error(String.format("Unexpected error while serving connections -- message: %s",
+          e.getMessage()));
+    } finally {
+      shutDown(buffer);
+      bufferPool.release(buffer);
+    }
+  }
+
+  /**
+   * Read what was sent before the stop, including on connections not accepted yet, then close
+   * every connection and end the stream once the left over samples are handed over.
+   * 
+   * @param buffer pooled read buffer
+   */
+  private void shutDown(ByteBuffer buffer) {
+    try {
+      while (accept()) {
+        // queued connections may already have sent samples
+      }
+    } catch (IOException e) {
+      LOG.warn(String.format("Unable to accept connection -- message: %s", e.getMessage()));
+    }
+    try {
+      server.close();
+    } catch (IOException e) {
+      LOG.warn(String.format("Unable to close server socket -- message: %s", e.getMessage()));
+    }
+    for (SelectionKey key : selector.keys()) {
+      if (key.attachment() == null) {
+        continue;
+      }
+      Connection connection = (Connection) key.attachment();
+      while (connection.pending == null && !connection.isEnded
+          && read(connection, buffer) > 0) {
+        // drain the bytes received so far
+      }
+      if (!connection.isEnded) {
+        connection.isEnded = true;
+        if (connection.pending == null) {
+          closeConnection(connection);
+        }
+      }
+    }
+
+    // the reader may still be draining the queue; wait for room for the samples left over
+    try {
+      while (numBlocked() > 0) {
+        resumeBlocked();
+        selector.select();
+      }
+      selector.close();
+    } catch (IOException e) {
+      LOG.warn(String.format("Unable to close selector -- message: %s", e.getMessage()));
+    }
+    queue.finish();
+    LOG.info(String.format("stopped accepting samples -- address: %s", address));
+  }
+}
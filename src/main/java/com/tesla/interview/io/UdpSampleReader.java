@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+import com.google.common.collect.Lists;
+import com.tesla.interview.model.MeasurementSample;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Receives UDP datagrams of one or more newline-delimited samples, in the text format of the input
+ * files. A single thread drains the socket through a {@link Selector}, receiving up to
+ * {@link #MAX_DATAGRAMS_PER_BATCH} datagrams into one pooled direct buffer before it hands their
+ * samples over as a batch. Each datagram must hold whole lines.
+ * <p/>
+ * Parsed samples pass through an {@link IngestQueue}. UDP has no flow control; while the queue is
+ * full, e.g. because the writers fall behind, datagrams wait in the socket receive buffer, for
+ * which {@link #RECEIVE_BUFFER_SIZE} bytes are requested to absorb bursts. Once that overflows, the
+ * operating system drops datagrams. The metrics count each time the queue was full
+ * (<code>udpOverruns</code>) and every line dropped as invalid (<code>udpDroppedLines</code>).
+ */
+public class UdpSampleReader implements NetworkSampleReader {
+
+  static final int MAX_DATAGRAMS_PER_BATCH = 256;
+  static final int MAX_PENDING_BATCHES = 64;
+  static final int RECEIVE_BUFFER_SIZE = 1 << 22;
+
+  private static final int MAX_DATAGRAM_SIZE = 1 << 16;
+  private static final Logger LOG = getLogger(UdpSampleReader.class);
+
+  private final AtomicBoolean isStopping = new AtomicBoolean(false /* initialValue */);
+  private final DirectBufferPool bufferPool = DirectBufferPool.shared();
+  private final Selector selector;
+  private final DatagramChannel channel;
+  private final SelectionKey key;
+  private final InetSocketAddress address;
+  private final IngestQueue queue;
+  private final int numPartitions;
+  private final Thread receiverThread;
+  private List<MeasurementSample> pending;
+
+  final Counter datagrams;
+  final Counter droppedLines;
+  final Counter overruns;
+
+  /**
+   * Canonical constructor. Starts receiving right away.
+   * 
+   * @param bindAddress address to listen on; port zero picks a free port
+   * @param numPartitions number of partitions; samples of any other partition are dropped
+   * @param metricsRegistry registry to which receive metrics are published
+   */
+  public UdpSampleReader(InetSocketAddress bindAddress, int numPartitions,
+      CollectorRegistry metricsRegistry) {
+    this(bindAddress, numPartitions, MAX_PENDING_BATCHES, metricsRegistry);
+  }
+
+  /**
+   * Injection constructor for unit tests.
+   * 
+   * @param bindAddress address to listen on; port zero picks a free port
+   * @param numPartitions number of partitions; samples of any other partition are dropped
+   * @param maxPendingBatches max. number of batches received but not read yet
+   * @param metricsRegistry registry to which receive metrics are published
+   */
+  UdpSampleReader(InetSocketAddress bindAddress, int numPartitions, int maxPendingBatches,
+      CollectorRegistry metricsRegistry) {
+    if (bindAddress == null) {
+      throw new IllegalArgumentException("bindAddress cannot be null");
+    }
+    if (numPartitions <= 0) {
+      throw new IllegalArgumentException("numPartitions must be positive");
+    }
+    if (metricsRegistry == null) {
+      throw new IllegalArgumentException("metricsRegistry cannot be null");
+    }
+
+    try {
+      this.selector = Selector.open();
+      this.channel = DatagramChannel.open();
+      channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+      channel.bind(bindAddress);
+      channel.configureBlocking(false);
+      this.key = channel.register(selector, SelectionKey.OP_READ);
+      this.address = (InetSocketAddress) channel.getLocalAddress();
+      LOG.info(String.format("receiving samples -- address: %s, receiveBufferSize: %d", address,
+          channel.getOption(StandardSocketOptions.SO_RCVBUF)));
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to listen -- address: %s", bindAddress), e);
+    }
+    this.datagrams = Counter.build().name("udpDatagrams").help("datagrams received")
+        .register(metricsRegistry);
+    this.droppedLines = Counter.build().name("udpDroppedLines")
+        .help("received lines dropped because they are not valid samples")
+        .register(metricsRegistry);
+    this.overruns = Counter.build().name("udpOverruns")
+        .help("times the writers fell behind and datagrams queued up in the receive buffer")
+        .register(metricsRegistry);
+    this.numPartitions = numPartitions;
+    this.queue = new IngestQueue(maxPendingBatches, selector::wakeup);
+    this.receiverThread = new Thread(this::receive, "udp-ingest");
+    receiverThread.setDaemon(true);
+    receiverThread.start();
+  }
+
+  /**
+   * Stop receiving, and discard the samples not read yet. Waits for the receiver thread to
+   * finish.
+   */
+  @Override
+  public void close() {
+    stop();
+    queue.close();
+    try {
+      receiverThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public InetSocketAddress getAddress() {
+    return address;
+  }
+
+  /**
+   * Not supported; a stream has no offset to resume from.
+   * 
+   * @throws IllegalStateException always
+   */
+  @Override
+  public long getOffset() {
+    throw new IllegalStateException("socket reader does not track its offset");
+  }
+
+  @Override
+  public boolean hasNext() {
+    return queue.hasNext();
+  }
+
+  @Override
+  public boolean isReady() {
+    return queue.isReady();
+  }
+
+  @Override
+  public MeasurementSample next() {
+    return queue.next();
+  }
+
+  /**
+   * Stop receiving. Datagrams that arrived before the stop are still returned. Does not wait.
+   */
+  @Override
+  public void stop() {
+    if (isStopping.compareAndSet(false, true)) {
+      selector.wakeup();
+    }
+  }
+
+  /**
+   * Hand the left over batch to the queue, or keep it and stop receiving until the queue has room.
+   * 
+   * @return <code>true</code> if nothing is left over
+   */
+  private boolean handOverPending() {
+    if (pending == null) {
+      return true;
+    }
+    if (!queue.offer(pending)) {
+      return false;
+    }
+    pending = null;
+    return true;
+  }
+
+  /**
+   * Receive datagrams until the socket has no more or the batch is full.
+   * 
+   * @param buffer pooled receive buffer
+   * @return number of datagrams received
+   */
+  private int receiveBatch(ByteBuffer buffer) throws IOException {
+    List<MeasurementSample> samples = Lists.newArrayList();
+    int numDatagrams = 0;
+    while (numDatagrams < MAX_DATAGRAMS_PER_BATCH) {
+      buffer.clear();
+      SocketAddress sender = channel.receive(buffer);
+      if (sender == null) {
+        break;
+      }
+      numDatagrams++;
+      buffer.flip();
+      droppedLines.inc(SampleLines.parse(buffer, true /* isComplete */, numPartitions, samples,
+          String.valueOf(sender)));
+    }
+    datagrams.inc(numDatagrams);
+    if (!samples.isEmpty()) {
+      pending = samples;
+      if (!handOverPending()) {
+        overruns.inc();
+      }
+    }
+    return numDatagrams;
+  }
+
+  /**
+   * Receive until stopped, then hand over the datagrams that arrived before and end the stream.
+   */
+  private void receive() {
+    ByteBuffer buffer = bufferPool.acquire(MAX_DATAGRAM_SIZE);
+    try {
+      while (!isStopping.get()) {
+        selector.select();
+        selector.selectedKeys().clear();
+        if (handOverPending()) {
+          receiveBatch(buffer);
+        }
+        key.interestOps(pending == null ? SelectionKey.OP_READ : 0);
+      }
+
+      // the reader may still be draining the queue; wait for room for the samples left over
+      while (handOverPending() && receiveBatch(buffer) > 0) {
+        // drain the datagrams received so far
+      }
+      while (!handOverPending()) {
+        selector.select();
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.error(String.format("Unexpected error while receiving datagrams -- message: %s",
+          e.getMessage()));
+    } finally {
+      bufferPool.release(buffer);
+      shutDown();
+    }
+  }
+
+  private void shutDown() {
+    try {
+      channel.close();
+      selector.close();
+    } catch (IOException e) {
+      LOG.warn(String.format("Unable to close socket -- message: %s", e.getMessage()));
+    }
+    queue.finish();
+    LOG.info(String.format("stopped receiving samples -- address: %s", address));
+  }
+}
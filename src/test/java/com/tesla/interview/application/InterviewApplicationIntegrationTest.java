@@ -53,10 +53,10 @@ import org.mockito.stubbing.OngoingStubbing;
 class InterviewApplicationIntegrationTest extends InterviewTestCase {
 
   /**
-   * Tracks the order in which write tasks were added.
+   * Tracks the order in which write tasks were added for each partition.
    */
   private static class AsynchronousWriterSpy extends AsynchronousWriter {
-    Queue<String> ids = new ArrayDeque<>();
+    Map<Integer, Queue<String>> partitionNumToIds = Maps.newHashMap();
 
     public AsynchronousWriterSpy(int threadPoolSize, Map<Integer, String> partitionNoToPath) {
       super(threadPoolSize, partitionNoToPath, new CollectorRegistry());
@@ -65,9 +65,23 @@ class InterviewApplicationIntegrationTest extends InterviewTestCase {
     @Override
     public Future<WriteTask> writeSample(AggregateSample sample) {
       Future<WriteTask> writeSample = super.writeSample(sample);
-      ids.add(sample.getAssetId());
+      record(sample);
       return writeSample;
     }
+
+    @Override
+    public Future<WriteTask> writeBatch(List<AggregateSample> samples) {
+      Future<WriteTask> writeBatch = super.writeBatch(samples);
+      for (AggregateSample sample : samples) {
+        record(sample);
+      }
+      return writeBatch;
+    }
+
+    private void record(AggregateSample sample) {
+      partitionNumToIds.computeIfAbsent(sample.getPartitionNo(), (p) -> new ArrayDeque<>())
+          .add(sample.getAssetId());
+    }
   }
 
   private static final Random RAND;
@@ -240,14 +254,15 @@ class InterviewApplicationIntegrationTest extends InterviewTestCase {
     List<MeasurementSample> ordered = stubNext(numSamples, numPartitions, mockReader);
     underTest.call();
 
-    // verify all measurements were emitted in correct order
+    // verify all measurements were emitted in correct order within their partition
     for (int i = 0; i < ordered.size(); i++) {
       MeasurementSample expectedSample = ordered.get(i);
       int partitionNum = expectedSample.getPartitionNo() - 1; // our map is indexed from zero
       int expectedThreadNum = partitionNumToThreadNo.get(partitionNum);
       AsynchronousWriterSpy writer =
           (AsynchronousWriterSpy) threadNoToWriter.get(expectedThreadNum);
-      String actualAssetId = writer.ids.poll();
+      String actualAssetId =
+          writer.partitionNumToIds.get(expectedSample.getPartitionNo()).poll();
       assertEquals(expectedSample.getAssetId(), actualAssetId);
     }
   }
@@ -127,7 +127,7 @@ public class TestAsynchronousWriter extends InterviewTestCase {
 
     ExecutorService executorService = Executors.newSingleThreadExecutor();
     underTest = new AsynchronousWriter(executorService, partitionNumToPath, pathToWriter,
-        allWriters, bufferQueue, maxWaitDuration, pollDelay, bufferSize, metricsRegistry);
+        bufferQueue, maxWaitDuration, pollDelay, bufferSize, metricsRegistry);
     underTest.startScheduler();
 
     // submit a task that will not complete before close() timeout
@@ -157,7 +157,7 @@ public class TestAsynchronousWriter extends InterviewTestCase {
   void testCloseSuccessPath() {
     createWriters();
     underTest = new AsynchronousWriter(Executors.newSingleThreadExecutor(), partitionNumToPath,
-        pathToWriter, allWriters, bufferQueue, maxWaitDuration, pollDelay, bufferSize,
+        pathToWriter, bufferQueue, maxWaitDuration, pollDelay, bufferSize,
         metricsRegistry);
     underTest.startScheduler();
     underTest.close();
@@ -166,7 +166,7 @@ public class TestAsynchronousWriter extends InterviewTestCase {
     assertFalse(underTest.scheduler.isAlive());
     assertTrue(underTest.executor.isShutdown());
     assertTrue(underTest.executor.isTerminated());
-    for (AggregateSampleWriter asw : underTest.pathToWriter.values()) {
+    for (AggregateSampleWriter asw : pathToWriter.values()) {
       verify(asw).close();
     }
   }
@@ -195,7 +195,7 @@ public class TestAsynchronousWriter extends InterviewTestCase {
 
     Future<Void> future = executorService.submit(task);
     underTest = new AsynchronousWriter(executorService, partitionNumToPath, pathToWriter,
-        allWriters, bufferQueue, maxWaitDuration, pollDelay, bufferSize, metricsRegistry);
+        bufferQueue, maxWaitDuration, pollDelay, bufferSize, metricsRegistry);
     underTest.startScheduler();
     underTest.close();
 
@@ -256,7 +256,8 @@ public class TestAsynchronousWriter extends InterviewTestCase {
   }
 
   @Test
-  void testConstructorWithMissingFileFails(TestInfo testInfo) throws IOException {
+  void testFirstWriteToMissingDirectoryFails(TestInfo testInfo)
+      throws IOException, InterruptedException {
     Map<Integer, String> customMap = Maps.newHashMap();
     customMap.putAll(partitionNumToPath);
 
@@ -266,11 +267,16 @@ public class TestAsynchronousWriter extends InterviewTestCase {
     String pathWithNoFile = tempDir.resolve("iDoNotExist").toString();
     customMap.put(1, pathWithNoFile);
 
+    // files are opened lazily, so the missing directory surfaces on the first write
+    underTest = new AsynchronousWriter(1 /* threadPoolSize */, customMap, metricsRegistry);
+    underTest.startScheduler();
+    Future<WriteTask> write = underTest.writeBatch(
+        Lists.newArrayList(new AggregateSample(0, "id", 2 /* partitionNo */, 0)));
     try {
-      underTest = new AsynchronousWriter(1 /* threadPoolSize */, customMap, metricsRegistry);
-      fail("expected IllegalStateException");
-    } catch (IllegalStateException e) {
-      assertTrue(e.getMessage().contains("Unable to open"));
+      write.get();
+      fail("expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause().getMessage().contains("Unable to open"));
     }
   }
 
@@ -301,7 +307,7 @@ public class TestAsynchronousWriter extends InterviewTestCase {
     createWriters();
     ExecutorService executorService = Executors.newSingleThreadExecutor();
     underTest = new AsynchronousWriter(executorService, partitionNumToPath, pathToWriter,
-        allWriters, bufferQueue, maxWaitDuration, pollDelay, bufferSize, metricsRegistry);
+        bufferQueue, maxWaitDuration, pollDelay, bufferSize, metricsRegistry);
     underTest.startScheduler();
 
     // build the tasks and fire them off
@@ -328,7 +334,7 @@ public class TestAsynchronousWriter extends InterviewTestCase {
     createWriters();
     ExecutorService executorService = Executors.newSingleThreadExecutor();
     underTest = new AsynchronousWriter(executorService, partitionNumToPath, pathToWriter,
-        allWriters, bufferQueue, maxWaitDuration, maxWaitDuration, bufferSize, metricsRegistry);
+        bufferQueue, maxWaitDuration, maxWaitDuration, bufferSize, metricsRegistry);
     underTest.startScheduler();
 
     // build the tasks and fire them off
@@ -362,4 +368,58 @@ public class TestAsynchronousWriter extends InterviewTestCase {
       }
     }
   }
+
+  @Test
+  void testWriteBatchPositive() throws InterruptedException, ExecutionException {
+    createWriters();
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    underTest = new AsynchronousWriter(executorService, partitionNumToPath, pathToWriter,
+        bufferQueue, maxWaitDuration, pollDelay, bufferSize, metricsRegistry);
+    underTest.startScheduler();
+
+    // one task writes the whole batch
+    int partitionNo = 4;
+    List<AggregateSample> batch = Lists.newArrayList();
+    for (int i = 0; i < 5; i++) {
+      batch.add(new AggregateSample(i /* aggregateValue */, String.valueOf(i) /* id */,
+          partitionNo + 1, i /* timestamp */));
+    }
+    underTest.writeBatch(batch).get();
+    assertEquals(1, underTest.numCompletedWriteTasks.get());
+
+    AggregateSampleWriter expectedWriter = pathToWriter.get(partitionNumToPath.get(partitionNo));
+    for (AggregateSampleWriter writer : allWriters) {
+      if (writer == expectedWriter) {
+        verify(writer).writeSamples(eq(batch));
+      } else {
+        verify(writer, never()).writeSamples(any());
+      }
+      verify(writer, never()).writeSample(any(AggregateSample.class));
+    }
+  }
+
+  @Test
+  void testWriteBatchWithEmptyBatchFails() {
+    underTest = new AsynchronousWriter(1 /* threadPoolSize */, partitionNumToPath, metricsRegistry);
+    try {
+      underTest.writeBatch(Lists.newArrayList());
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains(CANNOT_BE_EMPTY));
+    }
+  }
+
+  @Test
+  void testWriteBatchWithMixedPartitionsFails() {
+    underTest = new AsynchronousWriter(1 /* threadPoolSize */, partitionNumToPath, metricsRegistry);
+    List<AggregateSample> batch = Lists.newArrayList(
+        new AggregateSample(0 /* aggregateValue */, "1" /* id */, 1 /* partitionNo */, 0),
+        new AggregateSample(0 /* aggregateValue */, "2" /* id */, 2 /* partitionNo */, 0));
+    try {
+      underTest.writeBatch(batch);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must share a partition"));
+    }
+  }
 }
@@ -17,13 +17,30 @@ package com.tesla.interview.application;
 import static com.tesla.interview.application.InterviewApplication.aggregateMeasurement;
 import static org.apache.logging.log4j.LogManager.getLogger;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.tesla.interview.application.AsynchronousWriter.WriteTask;
+import com.tesla.interview.io.Checkpoint;
+import com.tesla.interview.io.DurabilityMode;
+import com.tesla.interview.io.FlushPolicy;
+import com.tesla.interview.io.IncrementalState;
+import com.tesla.interview.io.IngestQueue;
+import com.tesla.interview.io.InputOptions;
+import com.tesla.interview.io.OutputOptions;
+import com.tesla.interview.io.OutputPublisher;
+import com.tesla.interview.io.SampleReader;
 import com.tesla.interview.model.AggregateSample;
 import com.tesla.interview.model.IntegerHashtag;
 import com.tesla.interview.model.MeasurementSample;
@@ -31,14 +48,25 @@ import com.tesla.interview.tests.InterviewTestCase;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.prometheus.client.CollectorRegistry;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
 import org.apache.logging.log4j.Logger;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
@@ -73,6 +101,12 @@ public class TestInteviewApplication extends InterviewTestCase {
     }
   }
 
+  private static String gunzip(Path file) throws IOException {
+    try (InputStream input = new GZIPInputStream(Files.newInputStream(file))) {
+      return new String(ByteStreams.toByteArray(input), StandardCharsets.UTF_8);
+    }
+  }
+
   @Test
   void testAggregateMeasurementNegative() {
     try {
@@ -163,6 +197,566 @@ public class TestInteviewApplication extends InterviewTestCase {
     }
   }
 
+  @Test
+  void testCheckpointedRunResumesWithoutDuplicates(TestInfo testInfo) throws IOException {
+    Path directory = createTempDir(testInfo);
+    Path inputFile = directory.resolve("input.txt");
+    Path outputFile = directory.resolve("output-file-1.csv");
+    final List<String> outputFilePaths = Lists.newArrayList(outputFile.toString());
+    List<String> lines = Lists.newArrayList();
+    List<String> expected = Lists.newArrayList();
+    for (int i = 0; i < 20; i++) {
+      lines.add(String.format("%d,1,asset-%d,#one,#three", 1505233687037L + i, i));
+      expected.add(aggregateMeasurement(MeasurementSample.fromString(lines.get(i))).toString());
+    }
+    Files.write(inputFile, lines, StandardCharsets.UTF_8);
+
+    // a run that failed after checkpointing five samples, having written more since
+    long inputOffset = 0;
+    StringBuilder checkpointed = new StringBuilder();
+    for (int i = 0; i < 5; i++) {
+      inputOffset += lines.get(i).length() + System.lineSeparator().length();
+      checkpointed.append(expected.get(i)).append(System.lineSeparator());
+    }
+    String stagingPath = new OutputPublisher(outputFilePaths, "failed").getStagingPath(0);
+    Files.write(Paths.get(stagingPath),
+        (checkpointed + expected.get(5)).getBytes(StandardCharsets.UTF_8));
+    Path checkpointFile = directory.resolve(Checkpoint.CHECKPOINT_FILE_NAME);
+    new Checkpoint("failed", inputOffset, new long[] {checkpointed.length()}).write(checkpointFile);
+
+    try {
+      new InterviewApplication(1 /* numWriteThreads */, 1 /* maxFileHandles */, outputFilePaths,
+          inputFile.toString(), VALID_QUEUE_SIZE, VALID_POLL_DURATION, null /* metricsEndpoint */,
+          REGISTRY_SUPPLIER,
+          OutputOptions.defaults().withCheckpoints(Duration.ofMillis(1)).withResume(),
+          InputOptions.defaults()).call();
+
+      assertEquals(expected, Files.readAllLines(outputFile, StandardCharsets.UTF_8));
+      assertFalse(checkpointFile.toFile().exists());
+      assertFalse(Paths.get(stagingPath).toFile().exists());
+    } finally {
+      Files.deleteIfExists(inputFile);
+      Files.deleteIfExists(outputFile);
+      Files.deleteIfExists(directory.resolve(OutputPublisher.MANIFEST_FILE_NAME));
+    }
+  }
+
+  @Test
+  void testDiscoveredPartitionsGetOutputFilesOnFirstSample(TestInfo testInfo) throws IOException {
+    Path directory = createTempDir(testInfo);
+    Path inputFile = directory.resolve("input.txt");
+    Map<Integer, List<String>> partitionNoToExpected = Maps.newHashMap();
+    List<String> lines = Lists.newArrayList();
+    int[] partitionNos = {3, 1, 20, 3, 1};
+    for (int i = 0; i < partitionNos.length; i++) {
+      lines.add(String.format("%d,%d,asset-%d,#one", 1505233687037L + i, partitionNos[i], i));
+      partitionNoToExpected.computeIfAbsent(partitionNos[i], (p) -> Lists.newArrayList())
+          .add(aggregateMeasurement(MeasurementSample.fromString(lines.get(i))).toString());
+    }
+    Files.write(inputFile, lines, StandardCharsets.UTF_8);
+
+    String outputFileFormat = directory.resolve("output-file-%d.csv").toString();
+    InterviewApplication underTest = new InterviewApplication(2 /* numWriteThreads */,
+        2 /* maxFileHandles */, Lists.newArrayList(), inputFile.toString(), VALID_QUEUE_SIZE,
+        VALID_POLL_DURATION, null /* metricsEndpoint */, REGISTRY_SUPPLIER,
+        OutputOptions.defaults().withPartitionDiscovery(outputFileFormat));
+    assertEquals(0, underTest.router.getNumPartitions());
+    try {
+      underTest.call();
+
+      // only partitions present in the input have an output file
+      assertEquals(3, underTest.router.getNumPartitions());
+      for (int partitionNo = 1; partitionNo <= 20; partitionNo++) {
+        Path outputFile = Paths.get(String.format(outputFileFormat, partitionNo));
+        List<String> expected = partitionNoToExpected.get(partitionNo);
+        if (expected != null) {
+          assertEquals(expected, Files.readAllLines(outputFile, StandardCharsets.UTF_8));
+        } else {
+          assertFalse(outputFile.toFile().exists());
+        }
+      }
+    } finally {
+      Files.deleteIfExists(inputFile);
+      for (int partitionNo : partitionNoToExpected.keySet()) {
+        Files.deleteIfExists(Paths.get(String.format(outputFileFormat, partitionNo)));
+      }
+      Files.deleteIfExists(directory.resolve(OutputPublisher.MANIFEST_FILE_NAME));
+    }
+  }
+
+  @Test
+  void testEmptyPartitionsGetValidCompressedOutputs(TestInfo testInfo) throws IOException {
+    Path directory = createTempDir(testInfo);
+    Path inputFile = directory.resolve("input.txt");
+    Files.write(inputFile, Lists.newArrayList("1505233687037,1,asset-1,#one"),
+        StandardCharsets.UTF_8);
+    List<String> outputFilePaths = Lists.newArrayList(
+        directory.resolve("output-1.csv.gz").toString(),
+        directory.resolve("output-2.csv.gz").toString());
+
+    try {
+      new InterviewApplication(2 /* numWriteThreads */, 2 /* maxFileHandles */, outputFilePaths,
+          inputFile.toString(), VALID_QUEUE_SIZE, VALID_POLL_DURATION, null /* metricsEndpoint */,
+          REGISTRY_SUPPLIER, OutputOptions.defaults().withGzipCompression()).call();
+
+      // the partition without samples decompresses to nothing, not to an error
+      assertEquals("1505233687037,asset-1,1" + System.lineSeparator(),
+          gunzip(Paths.get(outputFilePaths.get(0))));
+      assertEquals("", gunzip(Paths.get(outputFilePaths.get(1))));
+    } finally {
+      Files.deleteIfExists(inputFile);
+      for (String outputFilePath : outputFilePaths) {
+        Files.deleteIfExists(Paths.get(outputFilePath));
+      }
+      Files.deleteIfExists(directory.resolve(OutputPublisher.MANIFEST_FILE_NAME));
+    }
+  }
+
+  @Test
+  void testFailedDemuxDeletesJournal(TestInfo testInfo) throws IOException {
+    Path directory = createTempDir(testInfo);
+    Path inputFile = directory.resolve("input.txt");
+    Path outputFile = directory.resolve("output-file-1.csv");
+    Files.write(inputFile,
+        Lists.newArrayList("1505233687037,1,asset-0,#one", "1505233687038,2,asset-1,#two"),
+        StandardCharsets.UTF_8);
+
+    // the second partition's staging file cannot be created, so the journal cannot be split
+    Path missingFile = directory.resolve("missing").resolve("output-file-2.csv");
+    try {
+      new InterviewApplication(1 /* numWriteThreads */, 1 /* maxFileHandles */,
+          Lists.newArrayList(outputFile.toString(), missingFile.toString()),
+          inputFile.toString(), VALID_QUEUE_SIZE, VALID_POLL_DURATION,
+          null /* metricsEndpoint */, REGISTRY_SUPPLIER,
+          OutputOptions.defaults().withJournal(1 << 20)).call();
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("Unable to demultiplex journal"));
+    }
+
+    try {
+      // neither staging files nor journal segments are left behind
+      List<String> remaining = Lists.newArrayList(directory.toFile().list());
+      assertEquals(Lists.newArrayList(inputFile.getFileName().toString()), remaining);
+    } finally {
+      Files.deleteIfExists(inputFile);
+    }
+  }
+
+  @Test
+  void testFailedDurabilityKeepsPreviousOutputs(TestInfo testInfo)
+      throws IOException, InterruptedException, ExecutionException {
+    Path directory = createTempDir(testInfo);
+    Path inputFile = directory.resolve("input.txt");
+    Path outputFile = directory.resolve("output-file-1.csv");
+    Path manifest = directory.resolve(OutputPublisher.MANIFEST_FILE_NAME);
+    Files.write(inputFile, Lists.newArrayList("1505233687037,1,asset-0,#one"),
+        StandardCharsets.UTF_8);
+    Files.write(outputFile, Lists.newArrayList("previous"), StandardCharsets.UTF_8);
+    Files.write(manifest, Lists.newArrayList("runId=previous"), StandardCharsets.UTF_8);
+
+    // the write succeeds, but the group commit that should make it durable fails to force it
+    InterviewApplication underTest = new InterviewApplication(1 /* numWriteThreads */,
+        1 /* maxFileHandles */, Lists.newArrayList(outputFile.toString()), inputFile.toString(),
+        VALID_QUEUE_SIZE, VALID_POLL_DURATION, null /* metricsEndpoint */, REGISTRY_SUPPLIER,
+        OutputOptions.defaults().withDurability(DurabilityMode.GROUP_COMMIT,
+            Duration.ofSeconds(1)));
+    AsynchronousWriter writer = underTest.router.getWriter(0);
+    AsynchronousWriter failingWriter = mock(AsynchronousWriter.class);
+    WriteTask task = mock(WriteTask.class);
+    doThrow(new ExecutionException(new IllegalStateException("Unable to sync file")))
+        .when(task).awaitDurable();
+    when(failingWriter.writeBatch(any())).thenReturn(CompletableFuture.completedFuture(task));
+    underTest.router.setWriter(0, failingWriter);
+    try {
+      underTest.call();
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("unexpected error"));
+    } finally {
+      writer.close();
+    }
+
+    try {
+      assertEquals(Lists.newArrayList("previous"),
+          Files.readAllLines(outputFile, StandardCharsets.UTF_8));
+      assertEquals(Lists.newArrayList("runId=previous"),
+          Files.readAllLines(manifest, StandardCharsets.UTF_8));
+    } finally {
+      Files.deleteIfExists(inputFile);
+      Files.deleteIfExists(outputFile);
+      Files.deleteIfExists(manifest);
+    }
+  }
+
+  @Test
+  void testFailedReadTearsDownRun(TestInfo testInfo) throws IOException, InterruptedException {
+    Path directory = createTempDir(testInfo);
+    Path inputFile = directory.resolve("input.txt");
+    List<String> lines = Lists.newArrayList();
+    for (int i = 0; i < 2000; i++) {
+      lines.add(String.format("%d,%d,asset-%d,#one", 1505233687037L + i, i % 2 + 1, i));
+    }
+    lines.add("not a sample");
+    Files.write(inputFile, lines, StandardCharsets.UTF_8);
+    Set<Thread> threadsBefore = Thread.getAllStackTraces().keySet();
+
+    try {
+      new InterviewApplication(2 /* numWriteThreads */, 2 /* maxFileHandles */,
+          Lists.newArrayList(directory.resolve("output-file-1.csv").toString(),
+              directory.resolve("output-file-2.csv").toString()),
+          inputFile.toString(), VALID_QUEUE_SIZE, VALID_POLL_DURATION,
+          null /* metricsEndpoint */, REGISTRY_SUPPLIER).call();
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("unexpected error"));
+    }
+
+    try {
+      // neither staging files nor threads of the run are left behind
+      assertEquals(Lists.newArrayList(inputFile.getFileName().toString()),
+          Lists.newArrayList(directory.toFile().list()));
+      Set<Thread> leaked = Sets.newHashSet();
+      for (int i = 0; i < 50; i++) {
+        leaked = Sets.filter(Sets.difference(Thread.getAllStackTraces().keySet(), threadsBefore),
+            (Thread t) -> !t.getName().startsWith("ForkJoinPool.commonPool")); // JVM-wide
+        leaked = Sets.newHashSet(leaked);
+        if (leaked.isEmpty()) {
+          break;
+        }
+        Thread.sleep(100L);
+      }
+      assertEquals(Sets.newHashSet(), leaked);
+    } finally {
+      Files.deleteIfExists(inputFile);
+    }
+  }
+
+  @Test
+  void testFailedWriteKeepsPreviousOutputs(TestInfo testInfo) throws IOException {
+    Path directory = createTempDir(testInfo);
+    Path inputFile = directory.resolve("input.txt");
+    Path outputFile = directory.resolve("output-file-1.csv");
+    Path manifest = directory.resolve(OutputPublisher.MANIFEST_FILE_NAME);
+    Files.write(inputFile, Lists.newArrayList("1505233687037,1,asset-0,#one"),
+        StandardCharsets.UTF_8);
+    Files.write(outputFile, Lists.newArrayList("previous"), StandardCharsets.UTF_8);
+    Files.write(manifest, Lists.newArrayList("runId=previous"), StandardCharsets.UTF_8);
+
+    InterviewApplication underTest = new InterviewApplication(1 /* numWriteThreads */,
+        1 /* maxFileHandles */, Lists.newArrayList(outputFile.toString()), inputFile.toString(),
+        VALID_QUEUE_SIZE, VALID_POLL_DURATION, null /* metricsEndpoint */, REGISTRY_SUPPLIER);
+    AsynchronousWriter writer = underTest.router.getWriter(0);
+    AsynchronousWriter failingWriter = mock(AsynchronousWriter.class);
+    CompletableFuture<WriteTask> failedWrite = new CompletableFuture<>();
+    failedWrite.completeExceptionally(new IllegalStateException("disk full"));
+    when(failingWriter.writeBatch(any())).thenReturn(failedWrite);
+    underTest.router.setWriter(0, failingWriter);
+    try {
+      underTest.call();
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("unexpected error"));
+    } finally {
+      writer.close();
+    }
+
+    try {
+      assertEquals(Lists.newArrayList("previous"),
+          Files.readAllLines(outputFile, StandardCharsets.UTF_8));
+      assertEquals(Lists.newArrayList("runId=previous"),
+          Files.readAllLines(manifest, StandardCharsets.UTF_8));
+    } finally {
+      Files.deleteIfExists(inputFile);
+      Files.deleteIfExists(outputFile);
+      Files.deleteIfExists(manifest);
+    }
+  }
+
+  @Test
+  void testIncrementalRunProcessesOnlyAppendedInput(TestInfo testInfo) throws IOException {
+    Path directory = createTempDir(testInfo);
+    Path inputFile = directory.resolve("input.txt");
+    Path outputFile = directory.resolve("output-file-1.csv");
+    Path stateFile = directory.resolve(IncrementalState.STATE_FILE_NAME);
+    final List<String> outputFilePaths = Lists.newArrayList(outputFile.toString());
+    List<String> lines = Lists.newArrayList();
+    List<String> expected = Lists.newArrayList();
+    for (int i = 0; i < 15; i++) {
+      lines.add(String.format("%d,1,asset-%d,#one,#three", 1505233687037L + i, i));
+      expected.add(aggregateMeasurement(MeasurementSample.fromString(lines.get(i))).toString());
+    }
+
+    try {
+      // a full first run
+      Files.write(inputFile, lines.subList(0, 10), StandardCharsets.UTF_8);
+      runIncrementally(outputFilePaths, inputFile);
+      assertEquals(expected.subList(0, 10), Files.readAllLines(outputFile, StandardCharsets.UTF_8));
+      assertTrue(stateFile.toFile().isFile());
+
+      // appended input is processed alone and appended to the outputs
+      Files.write(inputFile, lines.subList(10, 15), StandardCharsets.UTF_8,
+          StandardOpenOption.APPEND);
+      runIncrementally(outputFilePaths, inputFile);
+      assertEquals(expected, Files.readAllLines(outputFile, StandardCharsets.UTF_8));
+      assertEquals(Files.size(inputFile),
+          IncrementalState.read(stateFile).getInputOffset());
+
+      // a rewritten input is processed in full
+      lines.set(0, String.format("%d,1,asset-x,#two", 1505233687037L));
+      expected.set(0, aggregateMeasurement(MeasurementSample.fromString(lines.get(0))).toString());
+      Files.write(inputFile, lines, StandardCharsets.UTF_8);
+      runIncrementally(outputFilePaths, inputFile);
+      assertEquals(expected, Files.readAllLines(outputFile, StandardCharsets.UTF_8));
+    } finally {
+      Files.deleteIfExists(inputFile);
+      Files.deleteIfExists(outputFile);
+      Files.deleteIfExists(stateFile);
+      Files.deleteIfExists(directory.resolve(OutputPublisher.MANIFEST_FILE_NAME));
+    }
+  }
+
+  @Test
+  void testIncrementalRunDetectsChangesAnywhereInTheProcessedInput(TestInfo testInfo)
+      throws IOException {
+    Path directory = createTempDir(testInfo);
+    Path inputFile = directory.resolve("input.txt");
+    Path outputFile = directory.resolve("output-file-1.csv");
+    Path stateFile = directory.resolve(IncrementalState.STATE_FILE_NAME);
+    final List<String> outputFilePaths = Lists.newArrayList(outputFile.toString());
+    List<String> lines = Lists.newArrayList();
+    List<String> expected = Lists.newArrayList();
+    for (int i = 0; i < 90_000; i++) {
+      lines.add(String.format("%d,1,asset-%05d,#one", 1505233687037L + i, i));
+      expected.add(aggregateMeasurement(MeasurementSample.fromString(lines.get(i))).toString());
+    }
+
+    try {
+      Files.write(inputFile, lines.subList(0, 80_000), StandardCharsets.UTF_8);
+      runIncrementally(outputFilePaths, inputFile);
+
+      // an appended run extends the checksum over the appended input
+      Files.write(inputFile, lines.subList(80_000, 85_000), StandardCharsets.UTF_8,
+          StandardOpenOption.APPEND);
+      runIncrementally(outputFilePaths, inputFile);
+      assertEquals(expected.subList(0, 85_000),
+          Files.readAllLines(outputFile, StandardCharsets.UTF_8));
+
+      // a same-length edit megabytes away from both ends of the input is still noticed
+      lines.set(40_000, lines.get(40_000).replace("#one", "#two"));
+      expected.set(40_000,
+          aggregateMeasurement(MeasurementSample.fromString(lines.get(40_000))).toString());
+      Files.write(inputFile, lines, StandardCharsets.UTF_8);
+      runIncrementally(outputFilePaths, inputFile);
+      assertEquals(expected, Files.readAllLines(outputFile, StandardCharsets.UTF_8));
+    } finally {
+      Files.deleteIfExists(inputFile);
+      Files.deleteIfExists(outputFile);
+      Files.deleteIfExists(stateFile);
+      Files.deleteIfExists(directory.resolve(OutputPublisher.MANIFEST_FILE_NAME));
+    }
+  }
+
+  @Test
+  void testInputFilesAreProcessedInFileOrder(TestInfo testInfo) throws IOException {
+    Path directory = createTempDir(testInfo);
+    Path outputFile = directory.resolve("output-file-1.csv");
+    List<Path> inputFiles = Lists.newArrayList();
+    List<String> expected = Lists.newArrayList();
+    for (int fileNo = 0; fileNo < 4; fileNo++) {
+      List<String> lines = Lists.newArrayList();
+      for (int i = 0; i < 3000; i++) {
+        lines.add(String.format("%d,1,asset-%d,#two", 1505233687037L + fileNo * 3000 + i, i));
+        expected.add(aggregateMeasurement(MeasurementSample.fromString(lines.get(i))).toString());
+      }
+      inputFiles.add(Files.write(directory.resolve("hour-" + fileNo + ".txt"), lines,
+          StandardCharsets.UTF_8));
+    }
+    List<String> inputFilePaths = Lists.newArrayList();
+    for (Path inputFile : inputFiles) {
+      inputFilePaths.add(inputFile.toString());
+    }
+
+    try {
+      new InterviewApplication(1 /* numWriteThreads */, 1 /* maxFileHandles */,
+          Lists.newArrayList(outputFile.toString()), inputFilePaths, VALID_QUEUE_SIZE,
+          VALID_POLL_DURATION, null /* metricsEndpoint */, REGISTRY_SUPPLIER,
+          OutputOptions.defaults(), InputOptions.defaults().withNumReadThreads(2)).call();
+      assertEquals(expected, Files.readAllLines(outputFile, StandardCharsets.UTF_8));
+    } finally {
+      for (Path inputFile : inputFiles) {
+        Files.deleteIfExists(inputFile);
+      }
+      Files.deleteIfExists(outputFile);
+      Files.deleteIfExists(directory.resolve(OutputPublisher.MANIFEST_FILE_NAME));
+    }
+  }
+
+  @Test
+  void testSparseLatencyPartitionIsWrittenBeforeItsBatchFills(TestInfo testInfo)
+      throws IOException {
+    Path directory = createTempDir(testInfo);
+    final Path sparseOutputFile = directory.resolve("output-2.csv");
+    List<String> outputFilePaths = Lists.newArrayList(
+        directory.resolve("output-1.csv").toString(), sparseOutputFile.toString());
+
+    // a lone sample of partition 2, then a steady trickle of partition 1 until it shows up
+    final long deadlineMillis = System.currentTimeMillis() + 10_000L;
+    final AtomicBoolean isSparseOutputSeen = new AtomicBoolean(false /* initialValue */);
+    SampleReader source = new SampleReader() {
+      private int numRead = 0;
+
+      @Override
+      public boolean hasNext() {
+        isSparseOutputSeen.set(sparseOutputFile.toFile().length() > 0);
+        return !isSparseOutputSeen.get() && System.currentTimeMillis() < deadlineMillis;
+      }
+
+      @Override
+      public MeasurementSample next() {
+        if (numRead > 0) {
+          try {
+            Thread.sleep(5L);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        int partitionNo = numRead == 0 ? 2 : 1;
+        numRead++;
+        return MeasurementSample.fromString(
+            String.format("%d,%d,asset-%d,#one", 1505233687037L + numRead, partitionNo, numRead));
+      }
+
+      @Override
+      public long getOffset() {
+        return 0;
+      }
+
+      @Override
+      public void close() {
+        // nothing to release
+      }
+    };
+
+    try {
+      new InterviewApplication(2 /* numWriteThreads */, 2 /* maxFileHandles */, outputFilePaths,
+          Lists.newArrayList(), VALID_QUEUE_SIZE, VALID_POLL_DURATION, null /* metricsEndpoint */,
+          REGISTRY_SUPPLIER,
+          OutputOptions.defaults().withAppend()
+              .withFlushPolicy(2, FlushPolicy.latency(Duration.ofMillis(50))),
+          InputOptions.defaults().withSource(source)).call();
+      assertTrue(isSparseOutputSeen.get());
+      assertEquals(Lists.newArrayList("1505233687038,asset-1,1"),
+          Files.readAllLines(sparseOutputFile, StandardCharsets.UTF_8));
+    } finally {
+      for (String outputFilePath : outputFilePaths) {
+        Files.deleteIfExists(Paths.get(outputFilePath));
+      }
+    }
+  }
+
+  @Test
+  void testConstructorFailsToCheckpointSeveralInputFiles(TestInfo testInfo) throws IOException {
+    Path tempInputFile = createTempFile(testInfo);
+    Path tempOutputFile = createTempFile(testInfo);
+    assertTrue(tempOutputFile.toFile().delete());
+    try {
+      new InterviewApplication(1 /* numWriteThreads */, 1 /* maxFileHandles */,
+          Lists.newArrayList(tempOutputFile.toString()),
+          Lists.newArrayList(tempInputFile.toString(), tempInputFile.toString()),
+          VALID_QUEUE_SIZE, VALID_POLL_DURATION, VALID_ENDPOINT, REGISTRY_SUPPLIER,
+          OutputOptions.defaults().withCheckpoints(Duration.ofSeconds(1)),
+          InputOptions.defaults());
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must hold a single path"));
+    }
+  }
+
+  @Test
+  void testConstructorFailsToReadSourceAndInputFiles(TestInfo testInfo) throws IOException {
+    Path tempInputFile = createTempFile(testInfo);
+    Path tempOutputFile = createTempFile(testInfo);
+    assertTrue(tempOutputFile.toFile().delete());
+    try {
+      new InterviewApplication(1 /* numWriteThreads */, 1 /* maxFileHandles */,
+          Lists.newArrayList(tempOutputFile.toString()),
+          Lists.newArrayList(tempInputFile.toString()), VALID_QUEUE_SIZE, VALID_POLL_DURATION,
+          VALID_ENDPOINT, REGISTRY_SUPPLIER, OutputOptions.defaults(),
+          InputOptions.defaults().withSource(new IngestQueue(1 /* maxBatches */, () -> { })));
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be empty when samples are read from a source"));
+    }
+  }
+
+  private static void runIncrementally(List<String> outputFilePaths, Path inputFile) {
+    new InterviewApplication(1 /* numWriteThreads */, 1 /* maxFileHandles */, outputFilePaths,
+        inputFile.toString(), VALID_QUEUE_SIZE, VALID_POLL_DURATION, null /* metricsEndpoint */,
+        REGISTRY_SUPPLIER, OutputOptions.defaults().withIncrementalRuns(),
+        InputOptions.defaults()).call();
+  }
+
+  @Test
+  void testConstructorFailsToResumeWithoutCheckpoint(TestInfo testInfo) throws IOException {
+    Path tempInputFile = createTempFile(testInfo);
+    Path tempOutputFile = createTempFile(testInfo);
+    assertTrue(tempOutputFile.toFile().delete());
+    try {
+      new InterviewApplication(1 /* numWriteThreads */, 1 /* maxFileHandles */,
+          Lists.newArrayList(tempOutputFile.toString()), tempInputFile.toString(),
+          VALID_QUEUE_SIZE, VALID_POLL_DURATION, VALID_ENDPOINT, REGISTRY_SUPPLIER,
+          OutputOptions.defaults().withCheckpoints(Duration.ofSeconds(1)).withResume(),
+          InputOptions.defaults());
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("no checkpoint to resume from"));
+    }
+  }
+
+  @Test
+  void testDiscoveringPartitionAboveMaxFailsTheRun(TestInfo testInfo) throws IOException {
+    Path directory = createTempDir(testInfo);
+    Path inputFile = directory.resolve("input.txt");
+    Files.write(inputFile, Lists.newArrayList("1505233687037,1,asset-1,#one",
+        "1505233687038,2000000000,asset-2,#two"), StandardCharsets.UTF_8);
+
+    String outputFileFormat = directory.resolve("output-file-%d.csv").toString();
+    try {
+      new InterviewApplication(1 /* numWriteThreads */, 1 /* maxFileHandles */,
+          Lists.newArrayList(), inputFile.toString(), VALID_QUEUE_SIZE, VALID_POLL_DURATION,
+          null /* metricsEndpoint */, REGISTRY_SUPPLIER,
+          OutputOptions.defaults().withPartitionDiscovery(outputFileFormat)).call();
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getCause().getMessage().contains("Partition number above max."));
+
+      // nothing is published
+      assertFalse(Paths.get(String.format(outputFileFormat, 1)).toFile().exists());
+    } finally {
+      Files.deleteIfExists(inputFile);
+      Files.deleteIfExists(Paths.get(String.format(outputFileFormat, 1)));
+      Files.deleteIfExists(directory.resolve(OutputPublisher.MANIFEST_FILE_NAME));
+    }
+  }
+
+  @Test
+  void testConstructorFailsToDiscoverPartitionsWithOutputFiles(TestInfo testInfo)
+      throws IOException {
+    Path tempInputFile = createTempFile(testInfo);
+    Path tempOutputFile = createTempFile(testInfo);
+    assertTrue(tempOutputFile.toFile().delete());
+    try {
+      new InterviewApplication(1 /* numWriteThreads */, 1 /* maxFileHandles */,
+          Lists.newArrayList(tempOutputFile.toString()), tempInputFile.toString(),
+          VALID_QUEUE_SIZE, VALID_POLL_DURATION, VALID_ENDPOINT, REGISTRY_SUPPLIER,
+          OutputOptions.defaults().withPartitionDiscovery(tempOutputFile + "-%d"));
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be empty when partitions are discovered"));
+    }
+  }
+
   @Test
   void testConstructorHappyOnePartition(TestInfo testInfo) throws IOException {
     Path tempInputFile = createTempFile(testInfo);
@@ -173,7 +767,7 @@ public class TestInteviewApplication extends InterviewTestCase {
         1 /* maxFileHandles */, Lists.newArrayList(tempOutputFile.toString()),
         tempInputFile.toString() /* inputFilePath */, VALID_QUEUE_SIZE, VALID_POLL_DURATION,
         VALID_ENDPOINT, REGISTRY_SUPPLIER);
-    assertEquals(1, underTest.partitionNumToThreadNo.size());
+    assertEquals(1, underTest.router.getNumPartitions());
   }
 
   @Test
@@ -192,8 +786,8 @@ public class TestInteviewApplication extends InterviewTestCase {
         new InterviewApplication(numWriteThreads, numWriteThreads /* maxFileHandles */,
             outputFilesAsStrings, tempInputFile.toString() /* inputFilePath */, VALID_QUEUE_SIZE,
             VALID_POLL_DURATION, VALID_ENDPOINT, REGISTRY_SUPPLIER);
-    assertEquals(tempOutputFiles.size(), underTest.partitionNumToThreadNo.size());
-    assertEquals(numWriteThreads, underTest.threadNumToWriter.size());
+    assertEquals(tempOutputFiles.size(), underTest.router.getNumPartitions());
+    assertEquals(numWriteThreads, underTest.router.getWriters().size());
   }
 
   @Test
@@ -215,16 +809,27 @@ public class TestInteviewApplication extends InterviewTestCase {
         new InterviewApplication(numWriteThreads, numWriteThreads /* maxFileHandles */,
             outputFilesAsStrings, tempInputFile.toString() /* inputFilePath */, VALID_QUEUE_SIZE,
             VALID_POLL_DURATION, VALID_ENDPOINT, REGISTRY_SUPPLIER);
-    assertEquals(tempOutputFiles.size(), underTest.partitionNumToThreadNo.size());
-    assertEquals(numWriteThreads, underTest.threadNumToWriter.size());
+    assertEquals(tempOutputFiles.size(), underTest.router.getNumPartitions());
+    assertEquals(numWriteThreads, underTest.router.getWriters().size());
+
+    // the writers share one pool, so that its threads can steal work across writers
+    ExecutorService writerPool = underTest.router.getWriters().get(0).executor;
+    assertTrue(writerPool instanceof WorkStealingWriterPool);
+    for (AsynchronousWriter writer : underTest.router.getWriters()) {
+      assertSame(writerPool, writer.executor);
+      assertFalse(writer.ownsExecutor);
+    }
 
     Map<Integer, List<Integer>> threadNumToPartitionNos = Maps.newHashMap();
-    HashSet<Integer> distinctValues = Sets.newHashSet(underTest.partitionNumToThreadNo.values());
+    HashSet<Integer> distinctValues = Sets.newHashSet();
+    for (int partitionNum = 0; partitionNum < tempOutputFiles.size(); partitionNum++) {
+      distinctValues.add(underTest.router.getThreadNo(partitionNum));
+    }
     for (int threadNum : distinctValues) {
       assertTrue(threadNum < numWriteThreads);
       List<Integer> partitionNos = Lists.newArrayList();
-      for (int partitionNum : underTest.partitionNumToThreadNo.keySet()) {
-        if (underTest.partitionNumToThreadNo.get(partitionNum) == threadNum) {
+      for (int partitionNum = 0; partitionNum < tempOutputFiles.size(); partitionNum++) {
+        if (underTest.router.getThreadNo(partitionNum) == threadNum) {
           partitionNos.add(partitionNum);
         }
       }
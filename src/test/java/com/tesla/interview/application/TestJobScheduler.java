@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.google.common.collect.Lists;
+import com.tesla.interview.io.InputOptions;
+import com.tesla.interview.io.OutputOptions;
+import com.tesla.interview.io.OutputPublisher;
+import com.tesla.interview.tests.InterviewTestCase;
+import io.prometheus.client.CollectorRegistry;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+public class TestJobScheduler extends InterviewTestCase {
+
+  private static final long TIMEOUT_SECONDS = 10;
+
+  @Test
+  void testConstructorWithFewerFileHandlesThanJobsFails() {
+    try {
+      new JobScheduler(1 /* numWriteThreads */, 1 /* maxFileHandles */, 2 /* maxConcurrentJobs */,
+          1 /* maxUnfinishedWritesPerJob */, new CollectorRegistry());
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be at least maxConcurrentJobs"));
+    }
+  }
+
+  @Test
+  void testFailedJobCompletesExceptionally() throws InterruptedException {
+    JobScheduler underTest = new JobScheduler(1 /* numWriteThreads */, 1 /* maxFileHandles */,
+        1 /* maxConcurrentJobs */, 1 /* maxUnfinishedWritesPerJob */, new CollectorRegistry());
+    try {
+      underTest.submit("failing", 1 /* priority */, (executor, maxFileHandles) -> {
+        throw new IllegalStateException("boom");
+      }).get();
+      fail("expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertEquals("boom", e.getCause().getMessage());
+    } finally {
+      underTest.close();
+    }
+  }
+
+  @Test
+  void testJobThatThrowsAnErrorCompletesExceptionally()
+      throws InterruptedException, ExecutionException, TimeoutException {
+    JobScheduler underTest = new JobScheduler(1 /* numWriteThreads */, 1 /* maxFileHandles */,
+        1 /* maxConcurrentJobs */, 1 /* maxUnfinishedWritesPerJob */, new CollectorRegistry());
+    AtomicReference<ExecutorService> lane = new AtomicReference<>();
+    try {
+      underTest.submit("erring", 1 /* priority */, (executor, maxFileHandles) -> {
+        lane.set(executor);
+        throw new AssertionError("boom");
+      }).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      fail("expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertEquals("boom", e.getCause().getMessage());
+    }
+
+    // the lane is shut down and the job slot is free again
+    try {
+      assertTrue(lane.get().isShutdown());
+      underTest.submit("next", 1 /* priority */, (executor, maxFileHandles) -> { })
+          .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } finally {
+      underTest.close();
+    }
+  }
+
+  @Test
+  void testHigherPriorityJobsStartFirst() throws InterruptedException, ExecutionException {
+    JobScheduler underTest = new JobScheduler(1 /* numWriteThreads */, 1 /* maxFileHandles */,
+        1 /* maxConcurrentJobs */, 1 /* maxUnfinishedWritesPerJob */, new CollectorRegistry());
+    try {
+      CountDownLatch release = new CountDownLatch(1);
+      CompletableFuture<Void> blocking =
+          underTest.submit("blocking", 1 /* priority */, (executor, maxFileHandles) -> {
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          });
+
+      // both wait for the only job slot
+      List<String> started = Collections.synchronizedList(Lists.newArrayList());
+      final CompletableFuture<Void> low = underTest.submit("low", 1 /* priority */,
+          (executor, maxFileHandles) -> started.add("low"));
+      CompletableFuture<Void> high = underTest.submit("high", 5 /* priority */,
+          (executor, maxFileHandles) -> started.add("high"));
+      release.countDown();
+      blocking.get();
+      high.get();
+      low.get();
+      assertEquals(Lists.newArrayList("high", "low"), started);
+    } finally {
+      underTest.close();
+    }
+  }
+
+  @Test
+  void testJobsWriteThroughSharedPool(TestInfo testInfo)
+      throws IOException, InterruptedException, ExecutionException, TimeoutException {
+    Path directory = createTempDir(testInfo);
+    Path inputFile = directory.resolve("input.txt");
+    Files.write(inputFile, Lists.newArrayList("1505233687036,1,asset-1,#one",
+        "1505233687037,2,asset-2,#two"), StandardCharsets.UTF_8);
+    List<Path> outputFiles = Lists.newArrayList();
+
+    JobScheduler underTest = new JobScheduler(2 /* numWriteThreads */, 8 /* maxFileHandles */,
+        2 /* maxConcurrentJobs */, 4 /* maxUnfinishedWritesPerJob */, new CollectorRegistry());
+    try {
+      List<CompletableFuture<Void>> jobs = Lists.newArrayList();
+      for (int jobNo = 0; jobNo < 4; jobNo++) {
+        Path jobDirectory = Files.createDirectory(directory.resolve("job-" + jobNo));
+        List<String> outputFilePaths = Lists.newArrayList(
+            jobDirectory.resolve("output-file-1.csv").toString(),
+            jobDirectory.resolve("output-file-2.csv").toString());
+        for (String path : outputFilePaths) {
+          outputFiles.add(Paths.get(path));
+        }
+        outputFiles.add(jobDirectory.resolve(OutputPublisher.MANIFEST_FILE_NAME));
+        outputFiles.add(jobDirectory);
+        jobs.add(underTest.submit("job-" + jobNo, 1 + jobNo /* priority */,
+            (executor, maxFileHandles) -> {
+              assertEquals(4, maxFileHandles);
+              new InterviewApplication(2 /* numWriteThreads */, maxFileHandles, outputFilePaths,
+                  inputFile.toString(), 4 /* queueSize */, Duration.ofMillis(100),
+                  null /* metricsEndpoint */, () -> new CollectorRegistry(),
+                  OutputOptions.defaults().withWriterExecutor(executor),
+                  InputOptions.defaults()).call();
+            }));
+      }
+      for (CompletableFuture<Void> job : jobs) {
+        job.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      }
+
+      for (int jobNo = 0; jobNo < 4; jobNo++) {
+        Path jobDirectory = directory.resolve("job-" + jobNo);
+        assertEquals(Lists.newArrayList("1505233687036,asset-1,1"), Files
+            .readAllLines(jobDirectory.resolve("output-file-1.csv"), StandardCharsets.UTF_8));
+        assertEquals(Lists.newArrayList("1505233687037,asset-2,2"), Files
+            .readAllLines(jobDirectory.resolve("output-file-2.csv"), StandardCharsets.UTF_8));
+      }
+    } finally {
+      underTest.close();
+      for (Path path : outputFiles) {
+        Files.deleteIfExists(path);
+      }
+      Files.deleteIfExists(inputFile);
+    }
+  }
+}
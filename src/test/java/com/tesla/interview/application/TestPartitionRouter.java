@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+
+import com.tesla.interview.tests.InterviewTestCase;
+import org.junit.jupiter.api.Test;
+
+public class TestPartitionRouter extends InterviewTestCase {
+
+  @Test
+  void testAssignFailsOnUnknownThread() {
+    PartitionRouter underTest = new PartitionRouter(2 /* numThreads */);
+    try {
+      underTest.assign(0 /* partitionNo */, 2 /* threadNo */);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be less than numThreads"));
+    }
+  }
+
+  @Test
+  void testRouteGrowsWithDiscoveredPartitions() {
+    PartitionRouter underTest = new PartitionRouter(2 /* numThreads */);
+    AsynchronousWriter first = mock(AsynchronousWriter.class);
+    AsynchronousWriter second = mock(AsynchronousWriter.class);
+    underTest.setWriter(0, first);
+    underTest.setWriter(1, second);
+
+    underTest.assign(0 /* partitionNo */, 0 /* threadNo */);
+    underTest.assign(100_000 /* partitionNo */, 1 /* threadNo */);
+    underTest.assign(100_000 /* partitionNo */, 1 /* threadNo */);
+
+    assertEquals(2, underTest.getNumPartitions());
+    assertSame(first, underTest.route(0));
+    assertSame(second, underTest.route(100_000));
+    assertNull(underTest.route(1));
+    assertNull(underTest.route(-1));
+    assertNull(underTest.route(Integer.MAX_VALUE));
+    assertEquals(-1, underTest.getThreadNo(99_999));
+  }
+
+  @Test
+  void testWritersSkipThreadsWithoutPartitions() {
+    PartitionRouter underTest = new PartitionRouter(3 /* numThreads */);
+    AsynchronousWriter writer = mock(AsynchronousWriter.class);
+    underTest.setWriter(1, writer);
+    assertEquals(3, underTest.getNumThreads());
+    assertEquals(1, underTest.getWriters().size());
+    assertSame(writer, underTest.getWriters().get(0));
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.google.common.collect.Lists;
+import com.tesla.interview.application.SharedWriterPool.Lane;
+import com.tesla.interview.application.WorkStealingWriterPool.PartitionedTask;
+import io.prometheus.client.CollectorRegistry;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class TestSharedWriterPool {
+
+  /**
+   * Records its sequence number in the order of its partition, checking that no other task of the
+   * partition runs at the same time.
+   */
+  private static class OrderedTask implements Runnable, PartitionedTask {
+    final int partitionNo;
+    final int sequenceNo;
+    final List<Integer> ran;
+    final AtomicInteger running;
+    final AtomicBoolean overlapped;
+
+    OrderedTask(int partitionNo, int sequenceNo, List<Integer> ran, AtomicInteger running,
+        AtomicBoolean overlapped) {
+      this.partitionNo = partitionNo;
+      this.sequenceNo = sequenceNo;
+      this.ran = ran;
+      this.running = running;
+      this.overlapped = overlapped;
+    }
+
+    @Override
+    public int getPartitionNo() {
+      return partitionNo;
+    }
+
+    @Override
+    public void run() {
+      if (running.incrementAndGet() > 1) {
+        overlapped.set(true);
+      }
+      ran.add(sequenceNo);
+      running.decrementAndGet();
+    }
+  }
+
+  private static final long TIMEOUT_SECONDS = 10;
+
+  @Test
+  void testBusyLanesShareThreadsByWeight() throws InterruptedException {
+    SharedWriterPool underTest = new SharedWriterPool(1 /* numThreads */, new CollectorRegistry());
+    try {
+      Lane heavy = underTest.newLane("heavy", 3 /* weight */, 100 /* maxUnfinishedTasks */);
+      Lane light = underTest.newLane("light", 1 /* weight */, 100 /* maxUnfinishedTasks */);
+      CountDownLatch release = new CountDownLatch(1);
+      heavy.execute(() -> {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+
+      // both lanes queue more work than they get done while competing
+      List<String> ran = Collections.synchronizedList(Lists.newArrayList());
+      for (int i = 0; i < 40; i++) {
+        heavy.execute(() -> ran.add("heavy"));
+        light.execute(() -> ran.add("light"));
+      }
+      release.countDown();
+      heavy.shutdown();
+      light.shutdown();
+      assertTrue(heavy.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      assertTrue(light.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+      int numHeavy = Collections.frequency(ran.subList(0, 20), "heavy");
+      assertTrue(numHeavy >= 13 && numHeavy <= 17, "heavy tasks among first 20: " + numHeavy);
+      assertEquals(0, underTest.numLanes());
+    } finally {
+      underTest.close();
+    }
+  }
+
+  @Test
+  void testLaneBlocksAtMaxUnfinishedTasks() throws InterruptedException {
+    SharedWriterPool underTest = new SharedWriterPool(1 /* numThreads */, new CollectorRegistry());
+    try {
+      Lane lane = underTest.newLane("job", 1 /* weight */, 2 /* maxUnfinishedTasks */);
+      CountDownLatch release = new CountDownLatch(1);
+      lane.execute(() -> {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      lane.execute(() -> { });
+
+      CountDownLatch submitted = new CountDownLatch(1);
+      Thread submitter = new Thread(() -> {
+        lane.execute(() -> { });
+        submitted.countDown();
+      });
+      submitter.start();
+      assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+
+      release.countDown();
+      assertTrue(submitted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      submitter.join();
+      lane.shutdown();
+      assertTrue(lane.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    } finally {
+      underTest.close();
+    }
+  }
+
+  @Test
+  void testNewLaneWithZeroWeightFails() {
+    SharedWriterPool underTest = new SharedWriterPool(1 /* numThreads */, new CollectorRegistry());
+    try {
+      underTest.newLane("job", 0 /* weight */, 1 /* maxUnfinishedTasks */);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be positive"));
+    } finally {
+      underTest.close();
+    }
+  }
+
+  @Test
+  void testTasksOfAPartitionRunInOrder() throws InterruptedException {
+    final int numPartitions = 4;
+    SharedWriterPool underTest = new SharedWriterPool(4 /* numThreads */, new CollectorRegistry());
+    try {
+      Lane lane = underTest.newLane("job", 1 /* weight */, 16 /* maxUnfinishedTasks */);
+      List<List<Integer>> partitionNoToRan = Lists.newArrayList();
+      List<AtomicInteger> partitionNoToRunning = Lists.newArrayList();
+      for (int partitionNo = 0; partitionNo < numPartitions; partitionNo++) {
+        partitionNoToRan.add(Collections.synchronizedList(Lists.newArrayList()));
+        partitionNoToRunning.add(new AtomicInteger(0 /* initialValue */));
+      }
+      AtomicBoolean overlapped = new AtomicBoolean(false /* initialValue */);
+      for (int i = 0; i < 1000; i++) {
+        int partitionNo = i % numPartitions;
+        lane.execute(new OrderedTask(partitionNo, i, partitionNoToRan.get(partitionNo),
+            partitionNoToRunning.get(partitionNo), overlapped));
+      }
+      lane.shutdown();
+      assertTrue(lane.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+      assertFalse(overlapped.get());
+      for (List<Integer> ran : partitionNoToRan) {
+        List<Integer> sorted = Lists.newArrayList(ran);
+        Collections.sort(sorted);
+        assertEquals(250, ran.size());
+        assertEquals(sorted, ran);
+      }
+    } finally {
+      underTest.close();
+    }
+  }
+}
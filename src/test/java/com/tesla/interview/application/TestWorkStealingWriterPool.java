@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.google.common.collect.Lists;
+import com.tesla.interview.application.WorkStealingWriterPool.PartitionedTask;
+import io.prometheus.client.CollectorRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class TestWorkStealingWriterPool {
+
+  /**
+   * Records its execution order and detects concurrent execution within its partition.
+   */
+  private static class RecordingTask implements Callable<Integer>, PartitionedTask {
+    final int partitionNo;
+    final int sequenceNo;
+    final List<Integer> executed;
+    final AtomicBoolean partitionBusy;
+    final AtomicBoolean overlapDetected;
+
+    RecordingTask(int partitionNo, int sequenceNo, List<Integer> executed,
+        AtomicBoolean partitionBusy, AtomicBoolean overlapDetected) {
+      this.partitionNo = partitionNo;
+      this.sequenceNo = sequenceNo;
+      this.executed = executed;
+      this.partitionBusy = partitionBusy;
+      this.overlapDetected = overlapDetected;
+    }
+
+    @Override
+    public Integer call() throws InterruptedException {
+      if (!partitionBusy.compareAndSet(false, true)) {
+        overlapDetected.set(true);
+      }
+      Thread.sleep(1);
+      executed.add(sequenceNo);
+      partitionBusy.set(false);
+      return sequenceNo;
+    }
+
+    @Override
+    public int getPartitionNo() {
+      return partitionNo;
+    }
+  }
+
+  private WorkStealingWriterPool underTest;
+
+  @AfterEach
+  void afterEach() throws InterruptedException {
+    if (underTest != null) {
+      underTest.shutdownNow();
+      underTest.awaitTermination(1, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  void testConstructorWithEmptyPoolFails() {
+    try {
+      underTest = new WorkStealingWriterPool(0 /* numThreads */, new CollectorRegistry());
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be positive"));
+    }
+  }
+
+  @Test
+  void testExecuteAfterShutdownFails() {
+    underTest = new WorkStealingWriterPool(1 /* numThreads */, new CollectorRegistry());
+    underTest.shutdown();
+    try {
+      underTest.submit(() -> null);
+      fail("expected RejectedExecutionException");
+    } catch (RejectedExecutionException e) {
+      assertTrue(e.getMessage().contains("shut down"));
+    }
+  }
+
+  @Test
+  void testIdleWorkerStealsPartitionFromBusyWorker()
+      throws InterruptedException, ExecutionException {
+    underTest = new WorkStealingWriterPool(2 /* numThreads */, Duration.ofMillis(10),
+        1 /* maxDrain */, new CollectorRegistry());
+
+    // partitions 0 and 2 share home worker 0; block that worker on partition 0
+    CountDownLatch release = new CountDownLatch(1);
+    Future<Integer> blocker = underTest.submit(partitioned(0, () -> {
+      release.await();
+      return 0;
+    }));
+    Future<Integer> stealable = underTest.submit(partitioned(2, () -> 2));
+
+    // partition 2 only completes if worker 1 steals it
+    assertEquals(2, stealable.get().intValue());
+    assertFalse(blocker.isDone());
+    release.countDown();
+    assertEquals(0, blocker.get().intValue());
+    assertTrue(underTest.stolenPartitions.get() >= 1.0);
+  }
+
+  @Test
+  void testPartitionsExecuteInOrderWithoutOverlap()
+      throws InterruptedException, ExecutionException {
+    underTest = new WorkStealingWriterPool(4 /* numThreads */, Duration.ofMillis(10),
+        3 /* maxDrain */, new CollectorRegistry());
+
+    int numPartitions = 5;
+    int numTasksPerPartition = 50;
+    List<List<Integer>> executed = Lists.newArrayList();
+    List<AtomicBoolean> busy = Lists.newArrayList();
+    AtomicBoolean overlapDetected = new AtomicBoolean(false);
+    for (int p = 0; p < numPartitions; p++) {
+      executed.add(Lists.newArrayList());
+      busy.add(new AtomicBoolean(false));
+    }
+
+    List<Future<Integer>> futures = Lists.newArrayList();
+    for (int i = 0; i < numTasksPerPartition; i++) {
+      for (int p = 0; p < numPartitions; p++) {
+        futures.add(underTest.submit(
+            new RecordingTask(p, i, executed.get(p), busy.get(p), overlapDetected)));
+      }
+    }
+    for (Future<Integer> f : futures) {
+      f.get();
+    }
+
+    assertFalse(overlapDetected.get());
+    for (List<Integer> partitionOrder : executed) {
+      assertEquals(numTasksPerPartition, partitionOrder.size());
+      for (int i = 0; i < numTasksPerPartition; i++) {
+        assertEquals(i, partitionOrder.get(i).intValue());
+      }
+    }
+  }
+
+  @Test
+  void testShutdownDuringSubmissionStrandsNoTask() throws InterruptedException {
+    underTest = new WorkStealingWriterPool(2 /* numThreads */, Duration.ofMillis(1),
+        1 /* maxDrain */, new CollectorRegistry());
+    CountDownLatch isRouting = new CountDownLatch(1);
+    CountDownLatch mayRoute = new CountDownLatch(1);
+    AtomicBoolean hasRun = new AtomicBoolean(false);
+
+    // a task that holds up its submission after the pool has accepted it
+    class SlowlyRoutedTask implements Runnable, PartitionedTask {
+      @Override
+      public void run() {
+        hasRun.set(true);
+      }
+
+      @Override
+      public int getPartitionNo() {
+        isRouting.countDown();
+        try {
+          mayRoute.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return 1;
+      }
+    }
+
+    Thread submitter = new Thread(() -> underTest.execute(new SlowlyRoutedTask()), "submitter");
+    submitter.start();
+    assertTrue(isRouting.await(5, TimeUnit.SECONDS));
+    Thread stopper = new Thread(underTest::shutdown, "stopper");
+    stopper.start();
+    Thread.sleep(100L); // idle workers would exit now if the shutdown did not wait
+    mayRoute.countDown();
+    submitter.join(5_000L);
+    stopper.join(5_000L);
+
+    assertTrue(underTest.awaitTermination(5, TimeUnit.SECONDS));
+    assertTrue(hasRun.get());
+  }
+
+  @Test
+  void testShutdownDrainsPendingWork() throws InterruptedException {
+    underTest = new WorkStealingWriterPool(2 /* numThreads */, new CollectorRegistry());
+    AtomicInteger numRun = new AtomicInteger(0);
+    for (int i = 0; i < 100; i++) {
+      underTest.execute(() -> numRun.incrementAndGet());
+    }
+    underTest.shutdown();
+    assertTrue(underTest.awaitTermination(5, TimeUnit.SECONDS));
+    assertTrue(underTest.isTerminated());
+    assertEquals(100, numRun.get());
+  }
+
+  private static <T> Callable<T> partitioned(int partitionNo, Callable<T> callable) {
+    class Partitioned implements Callable<T>, PartitionedTask {
+      @Override
+      public T call() throws Exception {
+        return callable.call();
+      }
+
+      @Override
+      public int getPartitionNo() {
+        return partitionNo;
+      }
+    }
+
+    return new Partitioned();
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.tesla.interview.io.AggregateSampleWriter;
+import com.tesla.interview.io.FlushPolicy;
+import com.tesla.interview.io.FlushScheduler;
+import com.tesla.interview.io.OutputOptions;
+import com.tesla.interview.model.AggregateSample;
+import com.tesla.interview.tests.InterviewTestCase;
+import io.prometheus.client.CollectorRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+public class TestWriterCache extends InterviewTestCase {
+
+  private List<String> paths;
+  private Map<String, FlushPolicy> pathToFlushPolicy;
+  private WriterCache underTest;
+
+  @AfterEach
+  void afterEach() {
+    if (underTest != null) {
+      underTest.close();
+    }
+  }
+
+  @BeforeEach
+  void beforeEach(TestInfo testInfo) throws IOException {
+    paths = Lists.newArrayList();
+    pathToFlushPolicy = Maps.newLinkedHashMap();
+    for (int i = 0; i < 3; i++) {
+      Path path = createTempFile(testInfo);
+      assertTrue(path.toFile().delete());
+      paths.add(path.toString());
+      pathToFlushPolicy.put(path.toString(), FlushPolicy.DEFAULT);
+    }
+  }
+
+  @Test
+  void testAcquireUnknownPathReturnsNull() {
+    underTest = newCache(1 /* maxOpenWriters */);
+    assertNull(underTest.acquire("iDoNotExist"));
+  }
+
+  @Test
+  void testCloseClosesEveryWriterDespiteFailures() {
+    AggregateSampleWriter failing = mock(AggregateSampleWriter.class);
+    doThrow(new IllegalStateException("unable to force")).when(failing).close();
+    AggregateSampleWriter healthy = mock(AggregateSampleWriter.class);
+    Map<String, AggregateSampleWriter> pathToWriter = Maps.newLinkedHashMap();
+    pathToWriter.put(paths.get(0), failing);
+    pathToWriter.put(paths.get(1), healthy);
+
+    WriterCache cache = new WriterCache(pathToWriter, new CollectorRegistry());
+    try {
+      cache.close();
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("unable to force"));
+    }
+    verify(healthy).close();
+  }
+
+  @Test
+  void testConstructorWithEmptyBudgetFails() {
+    try {
+      newCache(0 /* maxOpenWriters */);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be positive"));
+    }
+  }
+
+  @Test
+  void testConstructorCreatesNoFiles() {
+    underTest = newCache(3 /* maxOpenWriters */);
+    assertEquals(0, underTest.numOpen());
+    for (String path : paths) {
+      assertFalse(Paths.get(path).toFile().exists());
+    }
+
+    // a file is created by its first use
+    underTest.acquire(paths.get(1));
+    underTest.release(paths.get(1));
+    assertEquals(1, underTest.numOpen());
+    assertTrue(Paths.get(paths.get(1)).toFile().exists());
+  }
+
+  @Test
+  void testEvictedFileIsReopenedForAppend() throws IOException {
+    underTest = newCache(1 /* maxOpenWriters */);
+    assertEquals(0, underTest.numOpen());
+
+    // alternate between two files so that each write evicts the other file
+    for (int i = 0; i < 2; i++) {
+      for (int fileNo = 0; fileNo < 2; fileNo++) {
+        write(paths.get(fileNo), new AggregateSample(i, "id", fileNo + 1, i));
+        assertEquals(1, underTest.numOpen());
+      }
+    }
+    underTest.close();
+
+    for (int fileNo = 0; fileNo < 2; fileNo++) {
+      List<String> lines = Files.readAllLines(Paths.get(paths.get(fileNo)), Charsets.UTF_8);
+      assertEquals(2, lines.size());
+      assertTrue(lines.get(0).startsWith("0,"));
+      assertTrue(lines.get(1).startsWith("1,"));
+    }
+    assertEquals(0.0, underTest.hits.get());
+    assertEquals(4.0, underTest.misses.get());
+    assertEquals(3.0, underTest.evictions.get());
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:VariableDeclarationUsageDistance")
+  void testWriterInUseIsNotEvicted() {
+    underTest = newCache(1 /* maxOpenWriters */);
+    AggregateSampleWriter inUse = underTest.acquire(paths.get(0));
+    underTest.acquire(paths.get(1));
+
+    // the budget is exceeded rather than closing a writer in use
+    assertEquals(2, underTest.numOpen());
+    assertEquals(0.0, underTest.evictions.get());
+    underTest.release(paths.get(1));
+    underTest.release(paths.get(0));
+
+    // released writers are evicted until the budget is met again
+    underTest.acquire(paths.get(2));
+    underTest.release(paths.get(2));
+    assertEquals(1, underTest.numOpen());
+    assertEquals(2.0, underTest.evictions.get());
+    assertNotSame(inUse, underTest.acquire(paths.get(0)));
+  }
+
+  private WriterCache newCache(int maxOpenWriters) {
+    return new WriterCache(maxOpenWriters, pathToFlushPolicy, OutputOptions.defaults(),
+        new FlushScheduler(), null /* groupCommitter */, new CollectorRegistry());
+  }
+
+  private void write(String path, AggregateSample sample) {
+    AggregateSampleWriter writer = underTest.acquire(path);
+    try {
+      writer.writeSample(sample);
+    } finally {
+      underTest.release(path);
+    }
+  }
+}
@@ -16,9 +16,11 @@ package com.tesla.interview.application.cli;
 
 import static com.tesla.interview.application.cli.CommandLineInterviewApplication.executeWrapper;
 import static com.tesla.interview.application.cli.CommandLineInterviewApplication.getOutputFiles;
+import static com.tesla.interview.application.cli.CommandLineInterviewApplication.getOutputOptions;
 import static com.tesla.interview.application.cli.CommandLineInterviewApplication.main;
 import static org.apache.logging.log4j.LogManager.getLogger;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.Mockito.doThrow;
@@ -29,7 +31,10 @@ import static org.mockito.Mockito.verify;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
+import com.google.common.collect.Lists;
 import com.tesla.interview.application.InterviewApplication;
+import com.tesla.interview.io.FlushPolicy;
+import com.tesla.interview.io.OutputOptions;
 import com.tesla.interview.tests.InterviewTestCase;
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
@@ -37,6 +42,7 @@ import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.util.List;
 import org.apache.logging.log4j.Logger;
 import org.junit.jupiter.api.Test;
@@ -190,6 +196,25 @@ public class TestCommandLineApplication extends InterviewTestCase {
     assertEquals(0, filePaths.size());
   }
 
+  @Test
+  void testGetOutputOptionsAssignsLatencyPolicies() {
+    CommandLineArgs args = new CommandLineArgs();
+    args.bufferSize = 1 << 20;
+    args.maxFlushDelay = 250;
+    args.latencyPartitions = Lists.newArrayList(2, 5);
+
+    OutputOptions options = getOutputOptions(args);
+    for (int partitionNo = 1; partitionNo <= 6; partitionNo++) {
+      FlushPolicy policy = options.getFlushPolicy(partitionNo);
+      if (partitionNo == 2 || partitionNo == 5) {
+        assertEquals(Duration.ofMillis(250), policy.getMaxDelay());
+      } else {
+        assertFalse(policy.hasMaxDelay());
+        assertEquals(1 << 20, policy.getBufferSize());
+      }
+    }
+  }
+
   @Test
   void testHelpCommandShowsUsage() {
     CommandLineArgs args = new CommandLineArgs();
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tesla.interview.application.cli.IngestServer.Protocol;
+import com.tesla.interview.tests.InterviewTestCase;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+public class TestIngestServer extends InterviewTestCase {
+
+  private static final long TIMEOUT_MILLIS = 10_000L;
+
+  private static void deleteRecursively(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+
+  private static void send(IngestServer server, String text) throws IOException {
+    try (Socket socket =
+        new Socket(server.getAddress().getAddress(), server.getAddress().getPort())) {
+      OutputStream stream = socket.getOutputStream();
+      stream.write(text.getBytes(StandardCharsets.UTF_8));
+      stream.flush();
+    }
+  }
+
+  private static IngestServer newServer(List<String> outputFilePaths) {
+    return new IngestServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0 /* port */),
+        outputFilePaths, 2 /* numWriteThreads */);
+  }
+
+  private static void stop(IngestServer server, Thread runner) throws InterruptedException {
+    server.close();
+    runner.join(TIMEOUT_MILLIS);
+    assertFalse(runner.isAlive());
+  }
+
+  @Test
+  void testConstructorWithNoOutputsFails() {
+    try {
+      new IngestServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0 /* port */),
+          Lists.newArrayList(), 1 /* numWriteThreads */);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be non-empty"));
+    }
+  }
+
+  @Test
+  void testMetricsArePushedWhileRunning(TestInfo testInfo)
+      throws IOException, InterruptedException {
+    Path output = createTempDir(testInfo);
+    List<String> outputFilePaths = CommandLineInterviewApplication.getOutputFiles(1, output);
+
+    // a push gateway that records the pushes it receives
+    List<String> pushes = new CopyOnWriteArrayList<>();
+    HttpServer gateway =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    gateway.createContext("/", (HttpExchange exchange) -> {
+      byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+      pushes.add(exchange.getRequestURI().getPath() + "\n"
+          + new String(body, StandardCharsets.UTF_8));
+      exchange.sendResponseHeaders(202, -1 /* no body */);
+      exchange.close();
+    });
+    gateway.start();
+
+    try {
+      URL endpoint = new URL("http", gateway.getAddress().getHostString(),
+          gateway.getAddress().getPort(), "");
+      IngestServer underTest = new IngestServer(Protocol.UDP,
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), 0 /* port */), outputFilePaths,
+          1 /* numWriteThreads */, endpoint, Duration.ofMillis(50));
+      Thread runner = new Thread(underTest::run, "test-ingest");
+      runner.start();
+      try (DatagramSocket socket = new DatagramSocket()) {
+        byte[] payload = "1505233687036,1,asset-1,#one".getBytes(StandardCharsets.UTF_8);
+        socket.send(new DatagramPacket(payload, payload.length, underTest.getAddress()));
+      }
+
+      // the datagram is counted by a push before the server stops
+      long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+      while (System.currentTimeMillis() < deadline && pushes.stream().noneMatch(
+          (push) -> push.contains("/job/ingest_server/") && push.contains("udpDatagrams 1.0"))) {
+        Thread.sleep(10L);
+      }
+      assertTrue(runner.isAlive());
+      assertTrue(pushes.stream().anyMatch((push) -> push.contains("udpDatagrams 1.0")));
+      stop(underTest, runner);
+    } finally {
+      gateway.stop(0 /* delay */);
+      deleteRecursively(output);
+    }
+  }
+
+  @Test
+  void testReceivedSamplesAreAppendedAcrossRestarts(TestInfo testInfo)
+      throws IOException, InterruptedException {
+    Path output = createTempDir(testInfo);
+    List<String> outputFilePaths = CommandLineInterviewApplication.getOutputFiles(2, output);
+
+    try {
+      IngestServer first = newServer(outputFilePaths);
+      Thread runner = new Thread(first::run, "test-ingest");
+      runner.start();
+      send(first, "1505233687036,1,asset-1,#one\n1505233687037,2,asset-2,#two\n"
+          + "1505233687038,1,asset-1,#three\n");
+      stop(first, runner);
+
+      // samples that arrive before the server runs are kept
+      IngestServer second = newServer(outputFilePaths);
+      send(second, "1505233687039,2,asset-2,#one,#two\n");
+      runner = new Thread(second::run, "test-ingest");
+      runner.start();
+      stop(second, runner);
+
+      assertEquals(Lists.newArrayList("1505233687036,asset-1,1", "1505233687038,asset-1,3"),
+          Files.readAllLines(output.resolve("output-file-1.csv"), StandardCharsets.UTF_8));
+      assertEquals(Lists.newArrayList("1505233687037,asset-2,2", "1505233687039,asset-2,3"),
+          Files.readAllLines(output.resolve("output-file-2.csv"), StandardCharsets.UTF_8));
+    } finally {
+      deleteRecursively(output);
+    }
+  }
+
+  @Test
+  void testSamplesOfUnknownPartitionsAreDropped(TestInfo testInfo)
+      throws IOException, InterruptedException {
+    Path output = createTempDir(testInfo);
+    List<String> outputFilePaths = CommandLineInterviewApplication.getOutputFiles(2, output);
+
+    try {
+      IngestServer underTest = newServer(outputFilePaths);
+      Thread runner = new Thread(underTest::run, "test-ingest");
+      runner.start();
+      send(underTest, "1505233687036,3,asset-3,#one\n1505233687037,0,asset-0,#one\n"
+          + "1505233687038,1,asset-1,#two\n");
+
+      // the run outlives the bad sender
+      send(underTest, "1505233687039,2,asset-2,#three\n");
+      assertTrue(runner.isAlive());
+      stop(underTest, runner);
+
+      assertEquals(Lists.newArrayList("1505233687038,asset-1,2"),
+          Files.readAllLines(output.resolve("output-file-1.csv"), StandardCharsets.UTF_8));
+      assertEquals(Lists.newArrayList("1505233687039,asset-2,3"),
+          Files.readAllLines(output.resolve("output-file-2.csv"), StandardCharsets.UTF_8));
+    } finally {
+      deleteRecursively(output);
+    }
+  }
+
+  @Test
+  void testReceivedDatagramsAreAppended(TestInfo testInfo)
+      throws IOException, InterruptedException {
+    Path output = createTempDir(testInfo);
+    List<String> outputFilePaths = CommandLineInterviewApplication.getOutputFiles(2, output);
+
+    try {
+      IngestServer underTest = new IngestServer(Protocol.UDP,
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), 0 /* port */), outputFilePaths,
+          2 /* numWriteThreads */, null /* metricsEndpoint */);
+      Thread runner = new Thread(underTest::run, "test-ingest");
+      runner.start();
+      try (DatagramSocket socket = new DatagramSocket()) {
+        byte[] payload = "1505233687036,1,asset-1,#one\n1505233687037,2,asset-2,#two"
+            .getBytes(StandardCharsets.UTF_8);
+        socket.send(new DatagramPacket(payload, payload.length, underTest.getAddress()));
+      }
+      stop(underTest, runner);
+
+      assertEquals(Lists.newArrayList("1505233687036,asset-1,1"),
+          Files.readAllLines(output.resolve("output-file-1.csv"), StandardCharsets.UTF_8));
+      assertEquals(Lists.newArrayList("1505233687037,asset-2,2"),
+          Files.readAllLines(output.resolve("output-file-2.csv"), StandardCharsets.UTF_8));
+    } finally {
+      deleteRecursively(output);
+    }
+  }
+
+  @Test
+  void testPostedSamplesAreAppended(TestInfo testInfo) throws IOException, InterruptedException {
+    Path output = createTempDir(testInfo);
+    List<String> outputFilePaths = CommandLineInterviewApplication.getOutputFiles(2, output);
+
+    try {
+      IngestServer underTest = new IngestServer(Protocol.HTTP,
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), 0 /* port */), outputFilePaths,
+          2 /* numWriteThreads */, null /* metricsEndpoint */);
+      Thread runner = new Thread(underTest::run, "test-ingest");
+      runner.start();
+      URL url = new URL("http", underTest.getAddress().getHostString(),
+          underTest.getAddress().getPort(), "/samples");
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      try (OutputStream stream = connection.getOutputStream()) {
+        stream.write("1505233687036,1,asset-1,#one\n1505233687037,2,asset-2,#two\n"
+            .getBytes(StandardCharsets.UTF_8));
+      }
+
+      // acknowledged once handed to the writers
+      assertEquals(200, connection.getResponseCode());
+      stop(underTest, runner);
+
+      assertEquals(Lists.newArrayList("1505233687036,asset-1,1"),
+          Files.readAllLines(output.resolve("output-file-1.csv"), StandardCharsets.UTF_8));
+      assertEquals(Lists.newArrayList("1505233687037,asset-2,2"),
+          Files.readAllLines(output.resolve("output-file-2.csv"), StandardCharsets.UTF_8));
+    } finally {
+      deleteRecursively(output);
+    }
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+
+import com.google.common.collect.Lists;
+import com.tesla.interview.io.OutputPublisher;
+import com.tesla.interview.tests.InterviewTestCase;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+public class TestInterviewDaemon extends InterviewTestCase {
+
+  private static final int QUEUE_SIZE = 3;
+
+  @Test
+  void testConnectionWithoutTokenIsRefused(TestInfo testInfo) throws IOException {
+    Path directory = createTempDir(testInfo);
+    Path tokenFile = directory.resolve("token");
+    InterviewDaemon underTest = new InterviewDaemon(0 /* port */, QUEUE_SIZE, tokenFile);
+    Thread server = new Thread(underTest::serve, "test-daemon");
+    server.start();
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), underTest.getPort());
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Writer writer =
+            new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+      assertEquals(PosixFilePermissions.fromString("rw-------"),
+          Files.getPosixFilePermissions(tokenFile));
+
+      // without the token, not even a shutdown is accepted
+      writer.write(InterviewDaemon.SHUTDOWN_COMMAND + "\n");
+      writer.flush();
+      assertEquals("ERROR unauthorized", reader.readLine());
+      assertNull(reader.readLine());
+      assertTrue(server.isAlive());
+    } finally {
+      underTest.close();
+    }
+    assertFalse(Files.exists(tokenFile));
+  }
+
+  @Test
+  void testConnectionsBeyondTheLimitAreRefused(TestInfo testInfo) throws IOException {
+    Path tokenFile = createTempDir(testInfo).resolve("token");
+    InterviewDaemon underTest = new InterviewDaemon(0 /* port */, QUEUE_SIZE,
+        1 /* numWriteThreads */, 1 /* maxFileHandles */, 1 /* maxJobs */, tokenFile,
+        1 /* maxConnections */);
+    Thread server = new Thread(underTest::serve, "test-daemon");
+    server.start();
+
+    // the first connection holds the only connection thread while it waits for the token
+    try (Socket first = new Socket(InetAddress.getLoopbackAddress(), underTest.getPort());
+        Socket second = new Socket(InetAddress.getLoopbackAddress(), underTest.getPort());
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(second.getInputStream(), StandardCharsets.UTF_8))) {
+      assertEquals("ERROR too many connections", reader.readLine());
+      assertNull(reader.readLine());
+      assertTrue(server.isAlive());
+    } finally {
+      underTest.close();
+    }
+  }
+
+  @Test
+  void testConstructorWithNegativePortFails(TestInfo testInfo) throws IOException {
+    Path tokenFile = createTempDir(testInfo).resolve("token");
+    try {
+      new InterviewDaemon(-1 /* port */, QUEUE_SIZE, tokenFile);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be non-negative"));
+    }
+  }
+
+  @Test
+  void testJobWithInvalidPriorityFails(TestInfo testInfo) throws IOException {
+    Path tokenFile = createTempDir(testInfo).resolve("token");
+    InterviewDaemon underTest = new InterviewDaemon(0 /* port */, QUEUE_SIZE, tokenFile);
+    try {
+      assertEquals("ERROR priority must be a positive integer",
+          underTest.runJob(InterviewDaemon.PRIORITY_OPTION + " 0 -i input.txt"));
+      assertEquals(0, underTest.numJobs.get());
+    } finally {
+      underTest.close();
+    }
+  }
+
+  @Test
+  void testJobThatFailsToStartReportsItsError(TestInfo testInfo) throws IOException {
+    Path tokenFile = createTempDir(testInfo).resolve("token");
+    InterviewDaemon underTest = new InterviewDaemon(0 /* port */, QUEUE_SIZE, tokenFile);
+    InterviewDaemon spied = spy(underTest);
+    doThrow(new IllegalStateException("Unable to open output")).when(spied).newJob(any());
+    try {
+      // only a rejection by the scheduler means the daemon is shutting down
+      assertEquals("ERROR Unable to open output", spied.runJob("-i input.txt"));
+    } finally {
+      underTest.close();
+    }
+  }
+
+  @Test
+  void testJobThreadsAreCappedAtTheDaemonsBudget(TestInfo testInfo) throws IOException {
+    Path directory = createTempDir(testInfo);
+    Path inputFile = Files.createFile(directory.resolve("input.txt"));
+    Path tokenFile = directory.resolve("token");
+    InterviewDaemon underTest = new InterviewDaemon(0 /* port */, QUEUE_SIZE,
+        2 /* numWriteThreads */, 4 /* maxFileHandles */, 4 /* maxJobs */, tokenFile);
+    try {
+      CommandLineInterviewApplication job = underTest.newJob(
+          String.format("-i %s -o %s -p 2 -w 1000 -r 1000", inputFile, directory).split(" "));
+      assertEquals(2, job.parsedArguments.numWriteThreads.intValue());
+      assertEquals(underTest.maxReadThreadsPerJob, job.parsedArguments.numReadThreads.intValue());
+      assertTrue(underTest.maxReadThreadsPerJob <= Runtime.getRuntime().availableProcessors());
+
+      // smaller counts are kept
+      job = underTest.newJob(String.format("-i %s -o %s -p 2 -w 1 -r 1", inputFile, directory)
+          .split(" "));
+      assertEquals(1, job.parsedArguments.numWriteThreads.intValue());
+      assertEquals(1, job.parsedArguments.numReadThreads.intValue());
+    } finally {
+      underTest.close();
+      Files.deleteIfExists(inputFile);
+    }
+  }
+
+  @Test
+  void testJobsRunOneAfterAnotherOverLoopback(TestInfo testInfo)
+      throws IOException, InterruptedException {
+    Path directory = createTempDir(testInfo);
+    Path inputFile = directory.resolve("input.txt");
+    Files.write(inputFile, Lists.newArrayList("1505233687036,1,asset-1,#one",
+        "1505233687037,2,asset-2,#two,#three"), StandardCharsets.UTF_8);
+    Path firstOutput = directory.resolve("output-file-1.csv");
+    Path secondOutput = directory.resolve("output-file-2.csv");
+    Path tokenFile = directory.resolve("token");
+
+    InterviewDaemon underTest = new InterviewDaemon(0 /* port */, QUEUE_SIZE, tokenFile);
+    Thread server = new Thread(underTest::serve, "test-daemon");
+    server.start();
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), underTest.getPort());
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Writer writer =
+            new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+      String job = String.format("-i %s -o %s -p 2", inputFile, directory);
+      String urgentJob = InterviewDaemon.PRIORITY_OPTION + " 3 " + job;
+      String token = Files.readAllLines(tokenFile, StandardCharsets.UTF_8).get(0);
+      writer.write(token + "\n" + job + "\n" + urgentJob + "\n-i "
+          + directory.resolve("missing.txt") + "\n");
+      writer.flush();
+
+      // the same job twice, the second with a priority, then an invalid one
+      assertTrue(reader.readLine().startsWith("OK "));
+      assertTrue(reader.readLine().startsWith("OK "));
+      assertTrue(reader.readLine().startsWith("ERROR "));
+      assertEquals(3, underTest.numJobs.get());
+      assertEquals(Lists.newArrayList("1505233687036,asset-1,1"),
+          Files.readAllLines(firstOutput, StandardCharsets.UTF_8));
+      assertEquals(1, Files.readAllLines(secondOutput, StandardCharsets.UTF_8).size());
+
+      writer.write(InterviewDaemon.SHUTDOWN_COMMAND + "\n");
+      writer.flush();
+      assertEquals("OK shutdown", reader.readLine());
+      server.join(10_000L);
+      assertFalse(server.isAlive());
+
+      // the connection's thread closes the daemon after answering
+      for (int i = 0; i < 100 && Files.exists(tokenFile); i++) {
+        Thread.sleep(100L);
+      }
+      assertFalse(Files.exists(tokenFile));
+    } finally {
+      underTest.close();
+      Files.deleteIfExists(inputFile);
+      Files.deleteIfExists(firstOutput);
+      Files.deleteIfExists(secondOutput);
+      Files.deleteIfExists(directory.resolve(OutputPublisher.MANIFEST_FILE_NAME));
+    }
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.google.common.collect.Lists;
+import com.tesla.interview.io.Checkpoint;
+import com.tesla.interview.tests.InterviewTestCase;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+public class TestSpoolWatcher extends InterviewTestCase {
+
+  private static final Duration QUIET_PERIOD = Duration.ofMillis(50);
+  private static final long TIMEOUT_MILLIS = 10_000L;
+
+  private static void deleteRecursively(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+
+  private static void awaitProcessed(SpoolWatcher watcher, int numFiles)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (watcher.numProcessed.get() < numFiles) {
+      if (System.currentTimeMillis() > deadline) {
+        fail(String.format("expected %d processed files", numFiles));
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  void testConstructorWithMissingSpoolDirectoryFails(TestInfo testInfo) throws IOException {
+    Path directory = createTempDir(testInfo);
+    try {
+      new SpoolWatcher(directory.resolve("missing"),
+          Lists.newArrayList(directory.resolve("output-file-1.csv").toString()),
+          1 /* numWriteThreads */, QUIET_PERIOD);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be an existing directory"));
+    }
+  }
+
+  @Test
+  void testFailedFileLeavesNoOutputBehind(TestInfo testInfo)
+      throws IOException, InterruptedException {
+    final Path spool = createTempDir(testInfo);
+    final Path output = createTempDir(testInfo);
+    final List<String> outputFilePaths =
+        CommandLineInterviewApplication.getOutputFiles(1, output);
+    Path outputFile = output.resolve("output-file-1.csv");
+    Files.write(outputFile, Lists.newArrayList("1505233687035,asset-0,1"),
+        StandardCharsets.UTF_8);
+
+    // many samples are written before the bad line fails the file
+    List<String> lines = Lists.newArrayList();
+    for (int i = 0; i < 2000; i++) {
+      lines.add(String.format("%d,1,asset-%d,#one", 1505233687036L + i, i));
+    }
+    lines.add("not a sample");
+    Path bad = spool.resolve("bad.txt");
+    Files.write(bad, lines, StandardCharsets.UTF_8);
+    assertTrue(bad.toFile().setLastModified(System.currentTimeMillis() - 60_000L));
+    Path good = spool.resolve("good.txt");
+    Files.write(good, Lists.newArrayList("1505233690000,1,asset-9,#two"),
+        StandardCharsets.UTF_8);
+
+    SpoolWatcher underTest = new SpoolWatcher(spool, outputFilePaths, 1 /* numWriteThreads */,
+        QUIET_PERIOD);
+    Thread watcher = new Thread(underTest::watch, "test-spool");
+    watcher.start();
+    try {
+      awaitProcessed(underTest, 2);
+      String expected = "1505233687035,asset-0,1" + System.lineSeparator()
+          + "1505233690000,asset-9,2" + System.lineSeparator();
+      assertEquals(expected,
+          new String(Files.readAllBytes(outputFile), StandardCharsets.UTF_8));
+      assertTrue(Files.isRegularFile(spool.resolve(SpoolWatcher.FAILED_DIRECTORY)
+          .resolve("bad.txt")));
+      assertTrue(Files.isRegularFile(spool.resolve(SpoolWatcher.PROCESSED_DIRECTORY)
+          .resolve("good.txt")));
+    } finally {
+      underTest.close();
+      watcher.join(TIMEOUT_MILLIS);
+      deleteRecursively(spool);
+      deleteRecursively(output);
+    }
+  }
+
+  @Test
+  void testSpooledFilesAreAppendedInArrivalOrder(TestInfo testInfo)
+      throws IOException, InterruptedException {
+    Path spool = createTempDir(testInfo);
+    Path first = spool.resolve("b-first.txt");
+    Path second = spool.resolve("a-second.txt");
+    Files.write(first, Lists.newArrayList("1505233687036,1,asset-1,#one"),
+        StandardCharsets.UTF_8);
+    Files.write(second, Lists.newArrayList("1505233687037,1,asset-1,#two"),
+        StandardCharsets.UTF_8);
+    assertTrue(first.toFile().setLastModified(System.currentTimeMillis() - 60_000L));
+
+    Path output = createTempDir(testInfo);
+    List<String> outputFilePaths = CommandLineInterviewApplication.getOutputFiles(2, output);
+    SpoolWatcher underTest = new SpoolWatcher(spool, outputFilePaths, 1 /* numWriteThreads */,
+        QUIET_PERIOD);
+    Thread watcher = new Thread(underTest::watch, "test-spool");
+    watcher.start();
+    try {
+      awaitProcessed(underTest, 2);
+
+      // a writer that renames a finished file into place
+      Path hidden = spool.resolve(".third.txt");
+      Files.write(hidden, Lists.newArrayList("1505233687038,2,asset-2,#three"),
+          StandardCharsets.UTF_8);
+      Files.move(hidden, spool.resolve("third.txt"));
+      awaitProcessed(underTest, 3);
+
+      assertEquals(Lists.newArrayList("1505233687036,asset-1,1", "1505233687037,asset-1,2"),
+          Files.readAllLines(output.resolve("output-file-1.csv"), StandardCharsets.UTF_8));
+      assertEquals(Lists.newArrayList("1505233687038,asset-2,3"),
+          Files.readAllLines(output.resolve("output-file-2.csv"), StandardCharsets.UTF_8));
+      Path processed = spool.resolve(SpoolWatcher.PROCESSED_DIRECTORY);
+      assertTrue(Files.isRegularFile(processed.resolve("b-first.txt")));
+      assertTrue(Files.isRegularFile(processed.resolve("a-second.txt")));
+      assertTrue(Files.isRegularFile(processed.resolve("third.txt")));
+      assertFalse(Files.exists(output.resolve(SpoolWatcher.SPOOL_CHECKPOINT_FILE_NAME)));
+    } finally {
+      underTest.close();
+      watcher.join(TIMEOUT_MILLIS);
+      deleteRecursively(spool);
+      deleteRecursively(output);
+    }
+  }
+
+  @Test
+  void testInterruptedFileIsUndoneAndProcessedAgain(TestInfo testInfo)
+      throws IOException, InterruptedException {
+    Path spool = createTempDir(testInfo);
+    Path output = createTempDir(testInfo);
+    List<String> outputFilePaths = CommandLineInterviewApplication.getOutputFiles(1, output);
+    Path outputFile = output.resolve("output-file-1.csv");
+    Files.write(outputFile, Lists.newArrayList("1505233687035,asset-0,1"),
+        StandardCharsets.UTF_8);
+    Path input = spool.resolve("input.txt");
+    Files.write(input, Lists.newArrayList("1505233687036,1,asset-1,#one"),
+        StandardCharsets.UTF_8);
+
+    // a watcher died halfway through the file
+    Checkpoint.capture(input.getFileName().toString(), 0 /* inputOffset */, outputFilePaths)
+        .write(output.resolve(SpoolWatcher.SPOOL_CHECKPOINT_FILE_NAME));
+    Files.write(outputFile, Lists.newArrayList("1505233687036,asset"), StandardCharsets.UTF_8,
+        StandardOpenOption.APPEND);
+
+    SpoolWatcher underTest = new SpoolWatcher(spool, outputFilePaths, 1 /* numWriteThreads */,
+        QUIET_PERIOD);
+    Thread watcher = new Thread(underTest::watch, "test-spool");
+    watcher.start();
+    try {
+      awaitProcessed(underTest, 1);
+      assertEquals(Lists.newArrayList("1505233687035,asset-0,1", "1505233687036,asset-1,1"),
+          Files.readAllLines(outputFile, StandardCharsets.UTF_8));
+    } finally {
+      underTest.close();
+      watcher.join(TIMEOUT_MILLIS);
+      deleteRecursively(spool);
+      deleteRecursively(output);
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.application.cli.validators;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.beust.jcommander.ParameterException;
+import com.google.common.collect.Lists;
+import com.tesla.interview.tests.InterviewTestCase;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+public class TestExistingReadableFiles extends InterviewTestCase {
+
+  private static final String PARAM_NAME = "parameterName";
+
+  @Test
+  public void testGlobMatchesFilesInNameOrder(TestInfo testInfo) throws IOException {
+    Path directory = createTempDir(testInfo);
+    Path second = Files.createFile(directory.resolve("hour-02.txt"));
+    Path first = Files.createFile(directory.resolve("hour-01.txt"));
+    Path other = Files.createFile(directory.resolve("other.csv"));
+    try {
+      assertEquals(Lists.newArrayList(first, second, other), ExistingReadableFiles
+          .expand(PARAM_NAME, directory.resolve("hour-*.txt") + "," + other));
+      new ExistingReadableFiles().validate(PARAM_NAME, directory.resolve("*").toString());
+    } finally {
+      Files.delete(first);
+      Files.delete(second);
+      Files.delete(other);
+    }
+  }
+
+  @Test
+  public void testGlobWithoutMatchesFails(TestInfo testInfo) throws IOException {
+    Path directory = createTempDir(testInfo);
+    try {
+      new ExistingReadableFiles().validate(PARAM_NAME, directory.resolve("*.txt").toString());
+      fail("Expected ParameterException");
+    } catch (ParameterException e) {
+      assertTrue(e.getMessage().contains("must match at least one file"));
+    }
+  }
+
+  @Test
+  public void testMissingFileInListFails(TestInfo testInfo) throws IOException {
+    Path created = createTempFile(testInfo);
+    try {
+      new ExistingReadableFiles().validate(PARAM_NAME, created + "," + created + "-missing");
+      fail("Expected ParameterException");
+    } catch (ParameterException e) {
+      assertTrue(e.getMessage().contains("must be an existing"));
+    }
+  }
+
+  @Test
+  public void testNullValueFails() {
+    try {
+      new ExistingReadableFiles().validate(PARAM_NAME, null /* value */);
+      fail("Expected ParameterException");
+    } catch (ParameterException e) {
+      assertTrue(e.getMessage().contains("cannot be null"));
+    }
+  }
+}
@@ -15,6 +15,8 @@
 package com.tesla.interview.io;
 
 import static com.tesla.interview.io.AggregateSampleWriter.fromFile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -27,14 +29,22 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
 import com.tesla.interview.model.AggregateSample;
 import com.tesla.interview.tests.InterviewTestCase;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 
@@ -51,7 +61,12 @@ public class TestAggregateWriter extends InterviewTestCase {
     doThrow(new IOException()).when(writerSpy).close();
 
     AggregateSampleWriter underTest = AggregateSampleWriter.withWriterMock(writerSpy);
-    underTest.close();
+    try {
+      underTest.close();
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains(UNEXPECTED_ERROR));
+    }
     verify(writerSpy).close();
   }
 
@@ -165,4 +180,215 @@ public class TestAggregateWriter extends InterviewTestCase {
     }
   }
 
+  @Test
+  void testWriteSamplesAppendsAllLines(TestInfo testInfo) throws IOException {
+    File file = createTempFile(testInfo).toFile();
+    assertTrue(file.delete());
+
+    List<AggregateSample> samples = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      samples.add(new AggregateSample(i /* aggregateValue */, "id" + i, 1 /* partitionNo */, i));
+    }
+    AggregateSampleWriter underTest = fromFile(file);
+    try {
+      underTest.writeSamples(samples);
+    } finally {
+      underTest.close();
+    }
+
+    List<String> lines = Files.readAllLines(file.toPath(), Charsets.UTF_8);
+    assertEquals(samples.size(), lines.size());
+    for (int i = 0; i < samples.size(); i++) {
+      assertEquals(samples.get(i).toString(), lines.get(i));
+    }
+  }
+
+  @Test
+  void testWriteFlushesAfterMaxRecords(TestInfo testInfo) throws IOException {
+    File file = createTempFile(testInfo).toFile();
+    assertTrue(file.delete());
+
+    FlushPolicy policy = new FlushPolicy(FlushPolicy.DEFAULT_BUFFER_SIZE,
+        Long.MAX_VALUE /* maxBufferedBytes */, 3 /* maxRecords */, null /* maxDelay */);
+    AggregateSampleWriter underTest = fromFile(file, policy);
+    try {
+      for (int i = 0; i < 5; i++) {
+        underTest.writeSample(new AggregateSample(i, "id" + i, 1 /* partitionNo */, i));
+      }
+      assertEquals(3, Files.readAllLines(file.toPath(), Charsets.UTF_8).size());
+    } finally {
+      underTest.close();
+    }
+    assertEquals(5, Files.readAllLines(file.toPath(), Charsets.UTF_8).size());
+  }
+
+  @Test
+  void testFlushIfDueHonorsMaxDelay(TestInfo testInfo) throws IOException {
+    File file = createTempFile(testInfo).toFile();
+    assertTrue(file.delete());
+
+    AggregateSampleWriter underTest = fromFile(file, FlushPolicy.latency(Duration.ofSeconds(1)));
+    try {
+      underTest.writeSample(new AggregateSample(1, "id", 1 /* partitionNo */, 1));
+      underTest.flushIfDue(System.nanoTime());
+      assertEquals(0, file.length());
+
+      underTest.flushIfDue(System.nanoTime() + Duration.ofSeconds(2).toNanos());
+      assertEquals(1, Files.readAllLines(file.toPath(), Charsets.UTF_8).size());
+    } finally {
+      underTest.close();
+    }
+  }
+
+  @Test
+  void testSyncForcesWrittenSamples(TestInfo testInfo) throws IOException {
+    File file = createTempFile(testInfo).toFile();
+    assertTrue(file.delete());
+
+    AggregateSampleWriter underTest =
+        fromFile(file, FlushPolicy.DEFAULT, DurabilityMode.GROUP_COMMIT);
+    try {
+      assertFalse(underTest.isDirty());
+      underTest.writeSample(new AggregateSample(1, "id", 1 /* partitionNo */, 1));
+      assertTrue(underTest.isDirty());
+
+      underTest.sync();
+      assertFalse(underTest.isDirty());
+      assertEquals(1, Files.readAllLines(file.toPath(), Charsets.UTF_8).size());
+    } finally {
+      underTest.close();
+    }
+  }
+
+  @Test
+  void testAppendToKeepsExistingSamples(TestInfo testInfo) throws IOException {
+    File file = createTempFile(testInfo).toFile();
+    assertTrue(file.delete());
+
+    AggregateSampleWriter first = fromFile(file, FlushPolicy.DEFAULT, DurabilityMode.NONE);
+    first.writeSample(new AggregateSample(1, "id", 1 /* partitionNo */, 1));
+    first.close();
+    AggregateSampleWriter second =
+        AggregateSampleWriter.appendTo(file, FlushPolicy.DEFAULT, DurabilityMode.NONE);
+    second.writeSample(new AggregateSample(2, "id", 1 /* partitionNo */, 2));
+    second.close();
+
+    assertEquals(2, Files.readAllLines(file.toPath(), Charsets.UTF_8).size());
+  }
+
+  @Test
+  void testMappedWriterGrowsByExtentsAndTruncatesOnClose(TestInfo testInfo) throws IOException {
+    File file = createTempFile(testInfo).toFile();
+    assertTrue(file.delete());
+
+    // extent smaller than the output, so that several windows are mapped
+    AggregateSampleWriter underTest =
+        fromFile(file, FlushPolicy.DEFAULT, OutputOptions.defaults().withMappedOutput(64));
+    List<AggregateSample> samples = Lists.newArrayList();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      AggregateSample sample = new AggregateSample(i, "id-" + i, 1 /* partitionNo */, i);
+      samples.add(sample);
+      expected.append(sample.toString()).append(System.lineSeparator());
+    }
+    underTest.writeSamples(samples);
+    underTest.flush();
+    assertTrue(file.length() > expected.length()); // ends in a partially written extent
+    underTest.close();
+
+    assertEquals(expected.length(), file.length());
+    assertEquals(expected.toString(),
+        new String(Files.readAllBytes(file.toPath()), Charsets.UTF_8));
+  }
+
+  @Test
+  void testMappedAppendToKeepsExistingSamples(TestInfo testInfo) throws IOException {
+    File file = createTempFile(testInfo).toFile();
+    assertTrue(file.delete());
+
+    OutputOptions options = OutputOptions.defaults().withMappedOutput(1024);
+    AggregateSampleWriter first = fromFile(file, FlushPolicy.DEFAULT, options);
+    first.writeSample(new AggregateSample(1, "id", 1 /* partitionNo */, 1));
+    first.close();
+    options.withDurability(DurabilityMode.ON_CLOSE, options.getSyncInterval());
+    AggregateSampleWriter second = AggregateSampleWriter.appendTo(file, FlushPolicy.DEFAULT,
+        options);
+    second.writeSample(new AggregateSample(2, "id", 1 /* partitionNo */, 2));
+    second.close();
+
+    List<String> lines = Files.readAllLines(file.toPath(), Charsets.UTF_8);
+    assertEquals(Lists.newArrayList(new AggregateSample(1, "id", 1, 1).toString(),
+        new AggregateSample(2, "id", 1, 2).toString()), lines);
+  }
+
+  @Test
+  void testGatheringWriterWritesAllBuffersInOrder(TestInfo testInfo) throws IOException {
+    File file = createTempFile(testInfo).toFile();
+    assertTrue(file.delete());
+
+    // buffer larger than a pooled chunk, so that flushes gather several buffers
+    FlushPolicy flushPolicy = FlushPolicy.throughput(1 << 20);
+    AggregateSampleWriter underTest = fromFile(file, flushPolicy, OutputOptions.defaults()
+        .withGatheringWrites().withDurability(DurabilityMode.ON_CLOSE, Duration.ofSeconds(1)));
+    List<AggregateSample> samples = Lists.newArrayList();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      AggregateSample sample = new AggregateSample(i, "id-" + i, 1 /* partitionNo */, i);
+      samples.add(sample);
+      expected.append(sample.toString()).append(System.lineSeparator());
+    }
+    underTest.writeSamples(samples.subList(0, 5000));
+    underTest.writeSample(samples.get(5000));
+    underTest.flush();
+    underTest.writeSamples(samples.subList(5001, samples.size()));
+    underTest.close();
+
+    assertEquals(expected.toString(),
+        new String(Files.readAllBytes(file.toPath()), Charsets.UTF_8));
+  }
+
+  @Test
+  void testCompressedOutputIsValidGzipStream(TestInfo testInfo) throws IOException {
+    File file = createTempFile(testInfo).toFile();
+    assertTrue(file.delete());
+
+    // several blocks per flush and several flushes, so that the file has many gzip members
+    OutputOptions options = OutputOptions.defaults().withGzipCompression();
+    AggregateSampleWriter underTest = fromFile(file, FlushPolicy.throughput(1 << 16), options);
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 50000; i++) {
+      AggregateSample sample = new AggregateSample(i, "id-" + i, 1 /* partitionNo */, i);
+      underTest.writeSample(sample);
+      expected.append(sample.toString()).append(System.lineSeparator());
+      if (i % 20000 == 0) {
+        underTest.flush();
+      }
+    }
+    underTest.close();
+    AggregateSampleWriter appended = AggregateSampleWriter.appendTo(file, FlushPolicy.DEFAULT,
+        options);
+    AggregateSample last = new AggregateSample(-1, "last", 1 /* partitionNo */, -1);
+    appended.writeSample(last);
+    appended.close();
+    expected.append(last.toString()).append(System.lineSeparator());
+
+    assertTrue(file.length() < expected.length() / 2);
+    assertEquals(expected.toString(), gunzip(file));
+  }
+
+  @Test
+  void testCompressedEmptyFileIsValidGzipStream(TestInfo testInfo) throws IOException {
+    File file = createTempFile(testInfo).toFile();
+    assertTrue(file.delete());
+
+    fromFile(file, FlushPolicy.DEFAULT, OutputOptions.defaults().withGzipCompression()).close();
+    assertEquals("", gunzip(file));
+  }
+
+  private static String gunzip(File file) throws IOException {
+    try (InputStream input = new GZIPInputStream(new FileInputStream(file))) {
+      return new String(ByteStreams.toByteArray(input), Charsets.UTF_8);
+    }
+  }
+
 }
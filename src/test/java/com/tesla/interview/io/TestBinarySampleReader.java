@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.google.common.collect.Lists;
+import com.tesla.interview.model.MeasurementSample;
+import com.tesla.interview.tests.InterviewTestCase;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+public class TestBinarySampleReader extends InterviewTestCase {
+
+  private static final String[] TAGS =
+      {"#one", "#two", "#three", "#four", "#five", "#six", "#seven", "#eight", "#nine", "#ten"};
+
+  @Test
+  void testConvertRoundTripsEverySample(TestInfo testInfo) throws IOException {
+    File textFile = createTempFile(testInfo).toFile();
+    List<String> lines = Lists.newArrayList();
+    Random random = new Random(42);
+    for (int i = 0; i < 1000; i++) {
+      StringBuilder line = new StringBuilder();
+      line.append(1505233687037L + i).append(',').append(1 + random.nextInt(10)).append(',')
+          .append(new UUID(random.nextLong(), random.nextLong()));
+      line.append(',').append(TAGS[i % TAGS.length]); // hashtags cannot be empty
+      for (String tag : TAGS) {
+        if (random.nextBoolean()) {
+          line.append(',').append(tag);
+        }
+      }
+      lines.add(line.toString());
+    }
+    Files.write(textFile.toPath(), lines, StandardCharsets.UTF_8);
+    File binaryFile = testFile(testInfo);
+    assertEquals(lines.size(), BinarySampleWriter.convert(textFile, binaryFile));
+    assertEquals(BinarySampleReader.HEADER_SIZE + lines.size() * BinarySampleReader.RECORD_SIZE,
+        binaryFile.length());
+
+    SampleReader text = SampleReader.fromFile(textFile);
+    SampleReader binary = SampleReader.fromFile(binaryFile);
+    try {
+      assertTrue(text instanceof MeasurementSampleReader);
+      assertTrue(binary instanceof BinarySampleReader);
+      while (text.hasNext()) {
+        assertTrue(binary.hasNext());
+        assertEquals(text.next(), binary.next());
+      }
+      assertFalse(binary.hasNext());
+    } finally {
+      text.close();
+      binary.close();
+    }
+  }
+
+  @Test
+  void testConvertRejectsNonUuidAsset(TestInfo testInfo) throws IOException {
+    File textFile = createTempFile(testInfo).toFile();
+    Files.write(textFile.toPath(),
+        Lists.newArrayList("1505233687037,4,fe52fa24-4527-4dfd-be87-348812e0c736,#one",
+            "1505233687038,4,not-a-uuid,#two"),
+        StandardCharsets.UTF_8);
+    try {
+      BinarySampleWriter.convert(textFile, testFile(testInfo));
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("sampleNo: 2"));
+      assertTrue(e.getMessage().contains("must be a lower-case UUID"));
+    }
+  }
+
+  @Test
+  void testReaderResumesAtOffset(TestInfo testInfo) throws IOException {
+    File textFile = createTempFile(testInfo).toFile();
+    List<String> lines = Lists.newArrayList(
+        "1505233687037,4,fe52fa24-4527-4dfd-be87-348812e0c736,#one",
+        "1505233687038,2,fe52fa24-4527-4dfd-be87-348812e0c737,#two",
+        "1505233687039,3,fe52fa24-4527-4dfd-be87-348812e0c738,#three");
+    Files.write(textFile.toPath(), lines, StandardCharsets.UTF_8);
+    File binaryFile = testFile(testInfo);
+    BinarySampleWriter.convert(textFile, binaryFile);
+
+    SampleReader reader = SampleReader.fromFile(binaryFile, 0 /* offset */);
+    long offset;
+    try {
+      reader.next();
+      offset = reader.getOffset();
+      assertEquals(BinarySampleReader.HEADER_SIZE + BinarySampleReader.RECORD_SIZE, offset);
+    } finally {
+      reader.close();
+    }
+
+    reader = SampleReader.fromFile(binaryFile, offset);
+    try {
+      assertEquals(MeasurementSample.fromString(lines.get(1)), reader.next());
+      assertEquals(MeasurementSample.fromString(lines.get(2)), reader.next());
+      assertFalse(reader.hasNext());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  void testReaderRejectsTruncatedFile(TestInfo testInfo) throws IOException {
+    File textFile = createTempFile(testInfo).toFile();
+    Files.write(textFile.toPath(),
+        Lists.newArrayList("1505233687037,4,fe52fa24-4527-4dfd-be87-348812e0c736,#one"),
+        StandardCharsets.UTF_8);
+    File binaryFile = testFile(testInfo);
+    BinarySampleWriter.convert(textFile, binaryFile);
+    try (RandomAccessFile file = new RandomAccessFile(binaryFile, "rw")) {
+      file.setLength(binaryFile.length() - 1);
+    }
+
+    try {
+      new BinarySampleReader(binaryFile);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be a binary sample file"));
+    }
+  }
+
+  private File testFile(TestInfo testInfo) {
+    try {
+      File file = createTempFile(testInfo).toFile();
+      assertTrue(file.delete());
+      return file;
+    } catch (IOException e) {
+      throw new IllegalStateException("unable to create temp file", e);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.google.common.collect.Lists;
+import com.tesla.interview.tests.InterviewTestCase;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+public class TestCheckpoint extends InterviewTestCase {
+
+  @Test
+  void testCaptureWriteReadRoundTrip(TestInfo testInfo) throws IOException {
+    Path first = createTempFile(testInfo);
+    Files.write(first, "12345".getBytes(StandardCharsets.UTF_8));
+    Path missing = createTempFile(testInfo);
+    assertTrue(missing.toFile().delete());
+    Path checkpointFile = createTempFile(testInfo);
+
+    Checkpoint.capture("run", 42L /* inputOffset */,
+        Lists.newArrayList(first.toString(), missing.toString())).write(checkpointFile);
+    Checkpoint read = Checkpoint.read(checkpointFile);
+    assertEquals("run", read.getRunId());
+    assertEquals(42L, read.getInputOffset());
+    assertEquals(2, read.getNumOutputs());
+    assertEquals(5L, read.getOutputLength(0));
+    assertEquals(0L, read.getOutputLength(1));
+
+    assertTrue(checkpointFile.toFile().delete());
+    assertNull(Checkpoint.read(checkpointFile));
+  }
+
+  @Test
+  void testRestoreRejectsShortStagingFile(TestInfo testInfo) throws IOException {
+    Path staging = createTempFile(testInfo);
+    Files.write(staging, "123".getBytes(StandardCharsets.UTF_8));
+    try {
+      new Checkpoint("run", 0L /* inputOffset */, new long[] {5L})
+          .restore(Lists.newArrayList(staging.toString()));
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("shorter than its checkpoint"));
+    }
+  }
+
+  @Test
+  void testRestoreTruncatesStagingFiles(TestInfo testInfo) throws IOException {
+    Path staging = createTempFile(testInfo);
+    Files.write(staging, "line1\nline2\npartial".getBytes(StandardCharsets.UTF_8));
+    Path missing = createTempFile(testInfo);
+    assertTrue(missing.toFile().delete());
+    List<String> stagingPaths = Lists.newArrayList(staging.toString(), missing.toString());
+
+    new Checkpoint("run", 0L /* inputOffset */, new long[] {6L, 0L}).restore(stagingPaths);
+    assertEquals("line1\n", new String(Files.readAllBytes(staging), StandardCharsets.UTF_8));
+    File created = missing.toFile();
+    assertTrue(created.isFile());
+    assertEquals(0L, created.length());
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.google.common.collect.Lists;
+import com.tesla.interview.model.AggregateSample;
+import com.tesla.interview.tests.InterviewTestCase;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+public class TestColumnarSampleWriter extends InterviewTestCase {
+
+  @Test
+  void testPackRoundTripsEveryWidth() {
+    for (int width = 0; width <= 32; width++) {
+      long[] values = new long[37];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = width == 0 ? 0 : (i * 0x9E3779B9L) & ((1L << width) - 1);
+      }
+      ByteArrayOutputStream packed = new ByteArrayOutputStream();
+      ColumnarFormat.pack(packed, values, values.length, width);
+      assertEquals((values.length * width + 7) / 8, packed.size());
+
+      long[] unpacked = new long[values.length];
+      ByteBuffer input = ByteBuffer.wrap(packed.toByteArray());
+      ColumnarFormat.unpack(input, unpacked, values.length, width);
+      assertFalse(input.hasRemaining());
+      for (int i = 0; i < values.length; i++) {
+        assertEquals(values[i], unpacked[i]);
+      }
+    }
+  }
+
+  @Test
+  void testReaderSkipsBlocksOutsideTimestampRange(TestInfo testInfo) {
+    File file = testFile(testInfo);
+    ColumnarSampleWriter underTest = ColumnarSampleWriter.fromFile(file, 1 /* partitionNo */,
+        10 /* blockRows */);
+    List<AggregateSample> samples = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      samples.add(new AggregateSample(i, "asset", 1 /* partitionNo */, 1000L + i));
+    }
+    underTest.writeSamples(samples);
+    underTest.close();
+
+    ColumnarSampleReader reader = new ColumnarSampleReader(file, 1045L, 1054L);
+    try {
+      assertSamples(samples.subList(45, 55), reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  void testReaderRejectsTextFile(TestInfo testInfo) throws IOException {
+    File file = createTempFile(testInfo).toFile();
+    Files.write(file.toPath(), "1000,asset,1\n".getBytes("UTF-8"));
+    try {
+      new ColumnarSampleReader(file);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be a columnar sample file"));
+    }
+  }
+
+  @Test
+  void testWriteSamplesRoundTripsAcrossBlocks(TestInfo testInfo) {
+    File file = testFile(testInfo);
+    ColumnarSampleWriter underTest = ColumnarSampleWriter.fromFile(file, 3 /* partitionNo */,
+        64 /* blockRows */);
+    Random random = new Random(42);
+    List<AggregateSample> samples = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      int value = i % 100 == 0 ? Integer.MIN_VALUE + i : random.nextInt(2000) - 1000;
+      long timestamp = 1500000000000L + random.nextInt(100000) - 50000; // not in order
+      samples.add(new AggregateSample(value, "asset-" + random.nextInt(20), 3, timestamp));
+    }
+    underTest.writeSamples(samples.subList(0, 500));
+    underTest.flush(); // cuts a partial block
+    underTest.writeSamples(samples.subList(500, samples.size()));
+    underTest.close();
+
+    assertTrue(file.length() < 1000 * 10); // far smaller than the text format
+    ColumnarSampleReader reader = new ColumnarSampleReader(file);
+    try {
+      assertEquals(3, reader.getPartitionNo());
+      assertSamples(samples, reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  void testPartitionWriterCreatesEveryPartitionFile(TestInfo testInfo) {
+    File first = testFile(testInfo);
+    File second = new File(first.getPath() + ".2");
+    ColumnarPartitionWriter underTest =
+        new ColumnarPartitionWriter(Lists.newArrayList(first.getPath(), second.getPath()));
+    List<AggregateSample> samples = Lists.newArrayList(new AggregateSample(7, "a", 1, 1L));
+    underTest.writeBlock(1 /* partitionNo */, samples);
+    underTest.close();
+
+    ColumnarSampleReader reader = new ColumnarSampleReader(first);
+    try {
+      assertSamples(samples, reader);
+    } finally {
+      reader.close();
+    }
+    reader = new ColumnarSampleReader(second);
+    try {
+      assertEquals(2, reader.getPartitionNo());
+      assertFalse(reader.hasNext());
+    } finally {
+      reader.close();
+      assertTrue(second.delete());
+    }
+  }
+
+  private static void assertSamples(List<AggregateSample> expected, ColumnarSampleReader actual) {
+    for (AggregateSample sample : expected) {
+      assertTrue(actual.hasNext());
+      assertEquals(sample.toString(), actual.next().toString());
+    }
+    assertFalse(actual.hasNext());
+  }
+
+  private File testFile(TestInfo testInfo) {
+    try {
+      File file = createTempFile(testInfo).toFile();
+      assertTrue(file.delete());
+      return file;
+    } catch (IOException e) {
+      throw new IllegalStateException("unable to create temp file", e);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.google.common.collect.Lists;
+import com.tesla.interview.tests.InterviewTestCase;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+public class TestConcurrentSampleReader extends InterviewTestCase {
+
+  private static final long FIRST_TIMESTAMP = 1505233687037L;
+
+  private File writeInput(TestInfo testInfo, long firstTimestamp, int numSamples)
+      throws IOException {
+    List<String> lines = Lists.newArrayList();
+    for (int i = 0; i < numSamples; i++) {
+      lines.add(String.format("%d,1,asset-%d,#one", firstTimestamp + i, i));
+    }
+    Path file = createTempFile(testInfo);
+    Files.write(file, lines, StandardCharsets.UTF_8);
+    return file.toFile();
+  }
+
+  @Test
+  void testConstructorWithNoFilesFails() {
+    try {
+      new ConcurrentSampleReader(Lists.newArrayList(), 1 /* numThreads */,
+          SampleReader::fromFile);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be non-empty"));
+    }
+  }
+
+  @Test
+  void testFailedFileFailsInItsTurn(TestInfo testInfo) throws IOException {
+    File good = writeInput(testInfo, FIRST_TIMESTAMP, 10);
+    File missing = createTempFile(testInfo).toFile();
+    assertTrue(missing.delete());
+
+    try (ConcurrentSampleReader underTest = new ConcurrentSampleReader(
+        Lists.newArrayList(good, missing), 2 /* numThreads */, SampleReader::fromFile)) {
+      for (int i = 0; i < 10; i++) {
+        assertEquals(FIRST_TIMESTAMP + i, underTest.next().getTimestamp());
+      }
+      underTest.hasNext();
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("Unable to read input file"));
+    }
+  }
+
+  @Test
+  void testSamplesComeInFileOrderThenLineOrder(TestInfo testInfo) throws IOException {
+    int numSamples = 2 * ConcurrentSampleReader.BATCH_SIZE + 7;
+    List<File> files = Lists.newArrayList();
+    for (int fileNo = 0; fileNo < 5; fileNo++) {
+      files.add(writeInput(testInfo, FIRST_TIMESTAMP + fileNo * numSamples, numSamples));
+    }
+    files.add(writeInput(testInfo, FIRST_TIMESTAMP + 5 * numSamples, 0));
+
+    try (ConcurrentSampleReader underTest =
+        new ConcurrentSampleReader(files, 3 /* numThreads */, SampleReader::fromFile)) {
+      for (int i = 0; i < 5 * numSamples; i++) {
+        assertTrue(underTest.hasNext());
+        assertEquals(FIRST_TIMESTAMP + i, underTest.next().getTimestamp());
+      }
+      assertFalse(underTest.hasNext());
+    }
+  }
+}
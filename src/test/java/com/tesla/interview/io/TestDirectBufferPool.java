@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static com.tesla.interview.io.DirectBufferPool.MAX_CLASS_SIZE;
+import static com.tesla.interview.io.DirectBufferPool.MIN_CLASS_SIZE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+public class TestDirectBufferPool {
+
+  @Test
+  void testAcquireRoundsUpToSizeClass() {
+    DirectBufferPool underTest = new DirectBufferPool();
+    assertEquals(MIN_CLASS_SIZE, underTest.acquire(1).capacity());
+    assertEquals(MIN_CLASS_SIZE, underTest.acquire(MIN_CLASS_SIZE).capacity());
+    assertEquals(2 * MIN_CLASS_SIZE, underTest.acquire(MIN_CLASS_SIZE + 1).capacity());
+    assertTrue(underTest.acquire(1).isDirect());
+  }
+
+  @Test
+  void testReleasedBufferIsReusedCleared() {
+    DirectBufferPool underTest = new DirectBufferPool();
+    ByteBuffer buffer = underTest.acquire(100);
+    buffer.putInt(42);
+    underTest.release(buffer);
+    assertEquals(1, underTest.numFree(100));
+
+    ByteBuffer reused = underTest.acquire(MIN_CLASS_SIZE);
+    assertSame(buffer, reused);
+    assertEquals(0, reused.position());
+    assertEquals(reused.capacity(), reused.limit());
+    assertEquals(0, underTest.numFree(100));
+  }
+
+  @Test
+  void testOversizedAndForeignBuffersAreNotPooled() {
+    DirectBufferPool underTest = new DirectBufferPool();
+    ByteBuffer oversized = underTest.acquire(MAX_CLASS_SIZE + 1);
+    assertEquals(MAX_CLASS_SIZE + 1, oversized.capacity());
+    underTest.release(oversized);
+    underTest.release(ByteBuffer.allocate(MIN_CLASS_SIZE));
+    assertEquals(0, underTest.numFree(MIN_CLASS_SIZE));
+    assertEquals(0, underTest.numFree(MAX_CLASS_SIZE));
+  }
+}
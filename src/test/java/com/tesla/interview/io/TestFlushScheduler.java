@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.google.common.base.Charsets;
+import com.tesla.interview.model.AggregateSample;
+import com.tesla.interview.tests.InterviewTestCase;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+public class TestFlushScheduler extends InterviewTestCase {
+
+  @Test
+  void testConstructorWithZeroTickFails() {
+    try {
+      new FlushScheduler(Duration.ZERO).close();
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be positive"));
+    }
+  }
+
+  @Test
+  void testRegisterIgnoresUntimedWriters(TestInfo testInfo) throws IOException {
+    File file = createTempFile(testInfo).toFile();
+    assertTrue(file.delete());
+
+    FlushScheduler underTest = new FlushScheduler();
+    AggregateSampleWriter writer = AggregateSampleWriter.fromFile(file);
+    try {
+      underTest.register(writer);
+      assertEquals(0, underTest.numRegistered());
+    } finally {
+      writer.close();
+      underTest.close();
+    }
+  }
+
+  @Test
+  void testTimedWriterIsFlushedWithoutClose(TestInfo testInfo)
+      throws IOException, InterruptedException {
+    File file = createTempFile(testInfo).toFile();
+    assertTrue(file.delete());
+
+    FlushScheduler underTest = new FlushScheduler(Duration.ofMillis(10));
+    AggregateSampleWriter writer =
+        AggregateSampleWriter.fromFile(file, FlushPolicy.latency(Duration.ofMillis(50)));
+    try {
+      underTest.register(writer);
+      assertEquals(1, underTest.numRegistered());
+      writer.writeSample(new AggregateSample(1, "id", 1 /* partitionNo */, 1));
+
+      Instant deadline = Instant.now().plusSeconds(5);
+      while (file.length() == 0 && Instant.now().isBefore(deadline)) {
+        Thread.sleep(10);
+      }
+      assertEquals(1, Files.readAllLines(file.toPath(), Charsets.UTF_8).size());
+    } finally {
+      underTest.unregister(writer);
+      writer.close();
+      underTest.close();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.prometheus.client.CollectorRegistry;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+public class TestGroupCommitter {
+
+  @Test
+  void testConstructorWithNoneModeFails() {
+    try {
+      new GroupCommitter(DurabilityMode.NONE, Duration.ofSeconds(1), new CollectorRegistry());
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be PERIODIC or GROUP_COMMIT"));
+    }
+  }
+
+  @Test
+  void testFailedSyncFailsWaiters() throws InterruptedException {
+    GroupCommitter underTest = new GroupCommitter(DurabilityMode.GROUP_COMMIT,
+        Duration.ofSeconds(10), new CollectorRegistry());
+    AggregateSampleWriter writer = mock(AggregateSampleWriter.class);
+    when(writer.isDirty()).thenReturn(true);
+    doThrow(new IllegalStateException("disk on fire")).when(writer).sync();
+    underTest.start();
+    try {
+      underTest.awaitDurable(writer).get();
+      fail("expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause().getMessage().contains("disk on fire"));
+    } finally {
+      underTest.close();
+    }
+  }
+
+  @Test
+  void testGroupCommitReleasesAllWaitersTogether()
+      throws InterruptedException, ExecutionException {
+    CollectorRegistry registry = new CollectorRegistry();
+    GroupCommitter underTest =
+        new GroupCommitter(DurabilityMode.GROUP_COMMIT, Duration.ofSeconds(10), registry);
+    AggregateSampleWriter dirty = mock(AggregateSampleWriter.class);
+    AggregateSampleWriter clean = mock(AggregateSampleWriter.class);
+    when(dirty.isDirty()).thenReturn(true);
+    underTest.register(clean);
+
+    // both requests are pending before the first round starts
+    Future<Void> first = underTest.awaitDurable(dirty);
+    Future<Void> second = underTest.awaitDurable(dirty);
+    underTest.start();
+    try {
+      first.get();
+      second.get();
+      verify(dirty).sync();
+      verify(clean, never()).sync();
+      assertEquals(1.0, underTest.commitBatchSize.get().count);
+      assertEquals(2.0, underTest.commitBatchSize.get().sum);
+    } finally {
+      underTest.close();
+    }
+  }
+
+  @Test
+  void testPeriodicModeSyncsDirtyWriters() {
+    GroupCommitter underTest = new GroupCommitter(DurabilityMode.PERIODIC, Duration.ofMillis(20),
+        new CollectorRegistry());
+    AggregateSampleWriter writer = mock(AggregateSampleWriter.class);
+    when(writer.isDirty()).thenReturn(true);
+    underTest.register(writer);
+    underTest.start();
+    try {
+      verify(writer, timeout(5000).atLeast(2)).sync();
+    } finally {
+      underTest.close();
+    }
+  }
+}
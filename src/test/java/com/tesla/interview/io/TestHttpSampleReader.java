@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.google.common.io.CharStreams;
+import com.tesla.interview.tests.InterviewTestCase;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+
+public class TestHttpSampleReader extends InterviewTestCase {
+
+  private static final long FIRST_TIMESTAMP = 1505233687037L;
+  private static final long TIMEOUT_MILLIS = 10_000L;
+
+  private static InetSocketAddress loopback() {
+    return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0 /* port */);
+  }
+
+  private static String line(long timestamp) {
+    return String.format("%d,1,asset-%d,#one\n", timestamp, timestamp);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        fail("timed out");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Send a request in a chunked body.
+   * 
+   * @return status code and response body, separated by a space
+   */
+  private static String request(HttpSampleReader reader, String method, String body) {
+    try {
+      URL url = new URL("http", reader.getAddress().getHostString(),
+          reader.getAddress().getPort(), HttpSampleReader.PATH);
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      connection.setRequestMethod(method);
+      if (body != null) {
+        connection.setDoOutput(true);
+        connection.setChunkedStreamingMode(1024 /* chunkLength */);
+        try (OutputStream stream = connection.getOutputStream()) {
+          stream.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+      }
+      int status = connection.getResponseCode();
+      try (InputStream stream =
+          status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+        return status + " "
+            + CharStreams.toString(new InputStreamReader(stream, StandardCharsets.UTF_8)).trim();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static CompletableFuture<String> post(HttpSampleReader reader, String body) {
+    return CompletableFuture.supplyAsync(() -> request(reader, "POST", body));
+  }
+
+  @Test
+  void testConstructorWithNoThreadsFails() {
+    try {
+      new HttpSampleReader(loopback(), 0 /* numThreads */, 1 /* numPartitions */);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be positive"));
+    }
+  }
+
+  @Test
+  void testFullQueueTurnsRequestsAway() throws Exception {
+    try (HttpSampleReader underTest =
+        new HttpSampleReader(loopback(), 2 /* numThreads */, 1 /* numPartitions */,
+            1 /* maxPendingBatches */)) {
+      final CompletableFuture<String> first = post(underTest, line(FIRST_TIMESTAMP));
+      await(underTest::isReady);
+
+      assertEquals("429 too many samples in flight; retry later",
+          request(underTest, "POST", line(FIRST_TIMESTAMP + 1)));
+      assertEquals(1, underTest.numRejected.get());
+
+      assertEquals(FIRST_TIMESTAMP, underTest.next().getTimestamp());
+      underTest.stop();
+      assertFalse(underTest.hasNext());
+      assertEquals("200 accepted: 1, dropped: 0", first.get());
+    }
+  }
+
+  @Test
+  void testGetIsNotAllowed() {
+    try (HttpSampleReader underTest = new HttpSampleReader(loopback(), 1 /* numThreads */,
+        1 /* numPartitions */)) {
+      assertEquals("405 only POST is supported", request(underTest, "GET", null));
+    }
+  }
+
+  @Test
+  void testRequestIsAcknowledgedOnceItsSamplesArePassedOn() throws Exception {
+    int numSamples = 3 * HttpSampleReader.BATCH_SIZE + 7;
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < numSamples; i++) {
+      body.append(line(FIRST_TIMESTAMP + i));
+      if (i == 10) {
+        body.append("not a sample\n");
+        body.append(line(FIRST_TIMESTAMP + i).replace(",1,", ",2,"));
+      }
+    }
+
+    try (HttpSampleReader underTest = new HttpSampleReader(loopback(), 1 /* numThreads */,
+        1 /* numPartitions */)) {
+      CompletableFuture<String> response = post(underTest, body.toString().trim());
+      for (int i = 0; i < numSamples; i++) {
+        assertEquals(FIRST_TIMESTAMP + i, underTest.next().getTimestamp());
+      }
+
+      // not acknowledged until the reader has passed the samples on
+      await(() -> !underTest.isReady());
+      assertFalse(response.isDone());
+      underTest.stop();
+      assertFalse(underTest.hasNext());
+      assertEquals(String.format("200 accepted: %d, dropped: 2", numSamples), response.get());
+      assertEquals(2, underTest.numDropped.get());
+    }
+  }
+}
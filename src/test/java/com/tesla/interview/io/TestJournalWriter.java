@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.google.common.collect.Lists;
+import com.tesla.interview.model.AggregateSample;
+import com.tesla.interview.tests.InterviewTestCase;
+import io.prometheus.client.CollectorRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+public class TestJournalWriter extends InterviewTestCase {
+
+  @Test
+  void testDemuxAppendsSegmentsToPartitionFilesInOrder(TestInfo testInfo) throws IOException {
+    Path first = createTempFile(testInfo);
+    Path second = createTempFile(testInfo);
+    assertTrue(first.toFile().delete());
+    assertTrue(second.toFile().delete());
+    String prefix = first.toString() + ".journal";
+
+    JournalDemuxer demuxer = new JournalDemuxer(
+        Lists.newArrayList(first.toString(), second.toString()), 2 /* numThreads */,
+        new CollectorRegistry());
+    JournalWriter underTest = new JournalWriter(prefix, 1 /* maxSegmentBytes */, demuxer);
+    underTest.writeBlock(2 /* partitionNo */, samples(2, 0, 2));
+    underTest.writeBlock(1 /* partitionNo */, samples(1, 0, 3));
+    underTest.writeBlock(2 /* partitionNo */, samples(2, 2, 5));
+    underTest.close();
+    demuxer.close();
+
+    assertLines(samples(1, 0, 3), first);
+    assertLines(samples(2, 0, 5), second);
+    assertEquals(4, (int) demuxer.demuxedSegments.get()); // last one is empty
+    for (int segmentNo = 0; segmentNo <= 3; segmentNo++) {
+      assertFalse(new File(String.format("%s.%06d", prefix, segmentNo)).exists());
+    }
+  }
+
+  @Test
+  void testDemuxFailsOnUnknownPartition(TestInfo testInfo) throws IOException {
+    Path output = createTempFile(testInfo);
+    assertTrue(output.toFile().delete());
+
+    JournalDemuxer demuxer = new JournalDemuxer(Lists.newArrayList(output.toString()),
+        1 /* numThreads */, new CollectorRegistry());
+    String prefix = output.toString() + ".journal";
+    JournalWriter underTest = new JournalWriter(prefix, Long.MAX_VALUE, demuxer);
+    underTest.writeBlock(2 /* partitionNo */, samples(2, 0, 1));
+    underTest.close();
+    try {
+      demuxer.close();
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("Unable to demultiplex journal"));
+    } finally {
+      // a segment that fails to demultiplex is not deleted
+      Files.deleteIfExists(Paths.get(String.format("%s.%06d", prefix, 0 /* segmentNo */)));
+    }
+  }
+
+  @Test
+  void testSegmentStaysOpenBelowMaxSize(TestInfo testInfo) throws IOException {
+    Path output = createTempFile(testInfo);
+    assertTrue(output.toFile().delete());
+
+    JournalDemuxer demuxer = new JournalDemuxer(Lists.newArrayList(output.toString()),
+        1 /* numThreads */, new CollectorRegistry());
+    JournalWriter underTest =
+        new JournalWriter(output.toString() + ".journal", Long.MAX_VALUE, demuxer);
+    underTest.writeBlock(1 /* partitionNo */, samples(1, 0, 2));
+    underTest.writeBlock(1 /* partitionNo */, samples(1, 2, 4));
+    underTest.close();
+    demuxer.close();
+
+    assertLines(samples(1, 0, 4), output);
+    assertEquals(1, (int) demuxer.demuxedSegments.get());
+  }
+
+  @Test
+  void testWriteAfterCloseFails(TestInfo testInfo) throws IOException {
+    Path output = createTempFile(testInfo);
+    assertTrue(output.toFile().delete());
+
+    JournalDemuxer demuxer = new JournalDemuxer(Lists.newArrayList(output.toString()),
+        1 /* numThreads */, new CollectorRegistry());
+    JournalWriter underTest =
+        new JournalWriter(output.toString() + ".journal", Long.MAX_VALUE, demuxer);
+    underTest.close();
+    try {
+      underTest.writeBlock(1 /* partitionNo */, samples(1, 0, 1));
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("closed"));
+    } finally {
+      demuxer.close();
+    }
+  }
+
+  private static void assertLines(List<AggregateSample> expected, Path actual)
+      throws IOException {
+    List<String> lines = Files.readAllLines(actual, StandardCharsets.UTF_8);
+    assertEquals(expected.size(), lines.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).toString(), lines.get(i));
+    }
+  }
+
+  private static List<AggregateSample> samples(int partitionNo, int from, int to) {
+    List<AggregateSample> samples = Lists.newArrayList();
+    for (int i = from; i < to; i++) {
+      samples.add(new AggregateSample(i, "asset-" + i, partitionNo, 1000L + i));
+    }
+    return samples;
+  }
+}
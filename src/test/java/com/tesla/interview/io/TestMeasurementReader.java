@@ -32,10 +32,12 @@ import com.tesla.interview.model.IntegerHashtag;
 import com.tesla.interview.model.MeasurementSample;
 import com.tesla.interview.tests.InterviewTestCase;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -256,4 +258,88 @@ public class TestMeasurementReader extends InterviewTestCase {
       assertTrue(sampleFile.delete());
     }
   }
+
+  @Test
+  void testOffsetTracksEveryLineTermination(TestInfo testInfo) throws IOException {
+    File sampleFile = createTempFile(testInfo).toFile();
+    String multiByteAsset = "asset-" + (char) 0xfc + (char) 0x20ac
+        + new String(Character.toChars(0x1f600));
+    String[] lines = {"1505233687037,4," + multiByteAsset + ",#one",
+        "1505233687038,2,asset-b,#two", "1505233687039,3,asset-c,#three",
+        "1505233687040,1,asset-d,#four"};
+    String[] terminators = {"\r\n", "\n", "\r", ""};
+    StringBuilder content = new StringBuilder();
+    long[] offsets = new long[lines.length];
+    for (int i = 0; i < lines.length; i++) {
+      content.append(lines[i]).append(terminators[i]);
+      offsets[i] = content.toString().getBytes(Charsets.UTF_8).length;
+    }
+    Files.write(sampleFile.toPath(), content.toString().getBytes(Charsets.UTF_8));
+
+    MeasurementSampleReader underTest = new MeasurementSampleReader(sampleFile, 0 /* offset */);
+    try {
+      for (int i = 0; i < lines.length; i++) {
+        assertEquals(MeasurementSample.fromString(lines[i]), underTest.next());
+        assertEquals(offsets[i], underTest.getOffset());
+      }
+      assertFalse(underTest.hasNext());
+    } finally {
+      underTest.close();
+    }
+
+    // reopening at any recorded offset continues with the following line
+    for (int i = 0; i < lines.length - 1; i++) {
+      underTest = new MeasurementSampleReader(sampleFile, offsets[i]);
+      try {
+        assertEquals(MeasurementSample.fromString(lines[i + 1]), underTest.next());
+        assertEquals(offsets[i + 1], underTest.getOffset());
+      } finally {
+        underTest.close();
+      }
+    }
+  }
+
+  @Test
+  void testOffsetCountsMalformedBytes(TestInfo testInfo) throws IOException {
+    File sampleFile = createTempFile(testInfo).toFile();
+    byte[] malformedLine = {'1', '5', '0', '5', '2', '3', '3', '6', '8', '7', '0', '3', '7', ',',
+        '1', ',', 'a', (byte) 0xff, (byte) 0xe2, (byte) 0x82, ',', '#', 'o', 'n', 'e', '\n'};
+    String nextLine = "1505233687038,2,asset-b,#two";
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    content.write(malformedLine);
+    content.write((nextLine + "\n").getBytes(Charsets.UTF_8));
+    Files.write(sampleFile.toPath(), content.toByteArray());
+
+    MeasurementSampleReader underTest = new MeasurementSampleReader(sampleFile, 0 /* offset */);
+    try {
+      // malformed bytes decode as they would in UTF-8 text, but count as the bytes they are
+      assertEquals(MeasurementSample.fromString(new String(malformedLine, 0,
+          malformedLine.length - 1, Charsets.UTF_8)), underTest.next());
+      assertEquals(malformedLine.length, underTest.getOffset());
+    } finally {
+      underTest.close();
+    }
+
+    underTest = new MeasurementSampleReader(sampleFile, malformedLine.length);
+    try {
+      assertEquals(MeasurementSample.fromString(nextLine), underTest.next());
+      assertEquals(content.size(), underTest.getOffset());
+    } finally {
+      underTest.close();
+    }
+  }
+
+  @Test
+  void testOffsetRequiresTrackingReader(TestInfo testInfo) throws IOException {
+    MeasurementSampleReader underTest =
+        new MeasurementSampleReader(createTempFile(testInfo).toFile());
+    try {
+      underTest.getOffset();
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("does not track its offset"));
+    } finally {
+      underTest.close();
+    }
+  }
 }
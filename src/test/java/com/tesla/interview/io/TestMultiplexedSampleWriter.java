@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.tesla.interview.model.AggregateSample;
+import com.tesla.interview.tests.InterviewTestCase;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+public class TestMultiplexedSampleWriter extends InterviewTestCase {
+
+  @Test
+  void testReaderRejectsUnclosedFile(TestInfo testInfo) throws IOException {
+    File file = createTempFile(testInfo).toFile();
+    assertTrue(file.delete());
+    MultiplexedSampleWriter underTest = MultiplexedSampleWriter.fromFile(file);
+    underTest.writeBlock(1 /* partitionNo */, samples(1, 0, 3));
+
+    // simulate a crash: the blocks reach the file, but the index does not
+    try (FileOutputStream truncate = new FileOutputStream(file, true /* append */)) {
+      truncate.getChannel().truncate(20);
+    }
+    try {
+      new MultiplexedSampleReader(file);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be a complete multiplexed file"));
+    }
+  }
+
+  @Test
+  void testReadPartitionStreamsInterleavedBlocksInOrder(TestInfo testInfo) {
+    File file = testFile(testInfo);
+    MultiplexedSampleWriter underTest = MultiplexedSampleWriter.fromFile(file);
+    underTest.writeBlock(2 /* partitionNo */, samples(2, 0, 2));
+    underTest.writeBlock(1 /* partitionNo */, samples(1, 0, 3));
+    underTest.writeBlock(2 /* partitionNo */, samples(2, 2, 3));
+    underTest.close();
+
+    MultiplexedSampleReader reader = new MultiplexedSampleReader(file);
+    try {
+      assertEquals(Sets.newHashSet(1, 2), reader.getPartitions());
+      assertLines(samples(1, 0, 3), reader.readPartition(1));
+      assertLines(samples(2, 0, 3), reader.readPartition(2));
+      assertFalse(reader.readPartition(3).hasNext());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  void testWriteAfterCloseFails(TestInfo testInfo) {
+    MultiplexedSampleWriter underTest = MultiplexedSampleWriter.fromFile(testFile(testInfo));
+    underTest.close();
+    try {
+      underTest.writeBlock(1 /* partitionNo */, samples(1, 0, 1));
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("closed"));
+    }
+  }
+
+  private static void assertLines(List<AggregateSample> expected, Iterator<String> actual) {
+    for (AggregateSample sample : expected) {
+      assertTrue(actual.hasNext());
+      assertEquals(sample.toString(), actual.next());
+    }
+    assertFalse(actual.hasNext());
+  }
+
+  private static List<AggregateSample> samples(int partitionNo, int from, int to) {
+    List<AggregateSample> samples = Lists.newArrayList();
+    for (int i = from; i < to; i++) {
+      samples.add(new AggregateSample(i, "asset-" + i, partitionNo, 1000L + i));
+    }
+    return samples;
+  }
+
+  private File testFile(TestInfo testInfo) {
+    try {
+      File file = createTempFile(testInfo).toFile();
+      assertTrue(file.delete());
+      return file;
+    } catch (IOException e) {
+      throw new IllegalStateException("unable to create temp file", e);
+    }
+  }
+}
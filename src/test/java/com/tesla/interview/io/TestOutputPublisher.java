@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.tesla.interview.tests.InterviewTestCase;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+public class TestOutputPublisher extends InterviewTestCase {
+
+  @Test
+  void testAbortKeepsPreviousOutput(TestInfo testInfo) throws IOException {
+    Path outputDir = createTempDir(testInfo);
+    Path output = outputDir.resolve("output-file-1.csv");
+    Files.write(output, Lists.newArrayList("previous"), Charsets.UTF_8);
+
+    OutputPublisher underTest = new OutputPublisher(Lists.newArrayList(output.toString()), "run");
+    Path staging = Paths.get(underTest.getStagingPath(0));
+    Files.write(staging, Lists.newArrayList("partial"), Charsets.UTF_8);
+    underTest.abort();
+
+    assertFalse(Files.exists(staging));
+    assertFalse(Files.exists(underTest.getManifestPath()));
+    assertEquals(Lists.newArrayList("previous"), Files.readAllLines(output, Charsets.UTF_8));
+    assertTrue(output.toFile().delete());
+  }
+
+  @Test
+  void testAddedOutputsArePublished(TestInfo testInfo) throws IOException {
+    Path outputDir = createTempDir(testInfo);
+    Path output = outputDir.resolve("output-file-7.csv");
+
+    OutputPublisher underTest = new OutputPublisher(outputDir, "run");
+    Path staging = Paths.get(underTest.addOutput(output.toString()));
+    assertEquals(outputDir.toAbsolutePath(), staging.getParent());
+    Files.write(staging, Lists.newArrayList("current"), Charsets.UTF_8);
+    underTest.publish();
+    try {
+      assertFalse(Files.exists(staging));
+      assertEquals(Lists.newArrayList("current"), Files.readAllLines(output, Charsets.UTF_8));
+      assertEquals(outputDir.toAbsolutePath().resolve(OutputPublisher.MANIFEST_FILE_NAME),
+          underTest.getManifestPath());
+      assertTrue(Files.exists(underTest.getManifestPath()));
+    } finally {
+      Files.deleteIfExists(output);
+      Files.deleteIfExists(underTest.getManifestPath());
+    }
+  }
+
+  @Test
+  void testConstructorWithEmptyRunIdFails() {
+    try {
+      new OutputPublisher(Lists.newArrayList("output-file-1.csv"), "" /* runId */);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be non-empty"));
+    }
+  }
+
+  @Test
+  void testFailedRenameLeavesNoManifest(TestInfo testInfo) throws IOException {
+    Path outputDir = createTempDir(testInfo);
+    Path first = outputDir.resolve("output-file-1.csv");
+    Path second = outputDir.resolve("output-file-2.csv");
+    Files.write(first, Lists.newArrayList("previous"), Charsets.UTF_8);
+
+    // a non-empty directory cannot be replaced, so the second rename fails
+    Path blocker = second.resolve("blocker");
+    Files.createDirectories(second);
+    Files.write(blocker, Lists.newArrayList("blocker"), Charsets.UTF_8);
+
+    OutputPublisher underTest = new OutputPublisher(
+        Lists.newArrayList(first.toString(), second.toString()), "run");
+    Path manifest = underTest.getManifestPath();
+    Files.write(manifest, Lists.newArrayList("runId=previous"), Charsets.UTF_8);
+    Files.write(Paths.get(underTest.getStagingPath(0)), Lists.newArrayList("current"),
+        Charsets.UTF_8);
+    Files.write(Paths.get(underTest.getStagingPath(1)), Lists.newArrayList("current"),
+        Charsets.UTF_8);
+    try {
+      underTest.publish();
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("Unable to publish file"));
+    } finally {
+      underTest.abort();
+    }
+
+    try {
+      assertEquals(Lists.newArrayList("current"), Files.readAllLines(first, Charsets.UTF_8));
+      assertFalse(Files.exists(manifest));
+    } finally {
+      Files.deleteIfExists(first);
+      Files.deleteIfExists(blocker);
+      Files.deleteIfExists(second);
+      Files.deleteIfExists(manifest);
+    }
+  }
+
+  @Test
+  void testPublishReplacesOutputsAndWritesManifestLast(TestInfo testInfo) throws IOException {
+    Path outputDir = createTempDir(testInfo);
+    Path first = outputDir.resolve("output-file-1.csv");
+    Path second = outputDir.resolve("output-file-2.csv");
+    Files.write(first, Lists.newArrayList("previous"), Charsets.UTF_8);
+
+    OutputPublisher underTest =
+        new OutputPublisher(Lists.newArrayList(first.toString(), second.toString()), "run");
+    Path staging = Paths.get(underTest.getStagingPath(0));
+    assertEquals(outputDir.toAbsolutePath(), staging.getParent());
+    Files.write(staging, Lists.newArrayList("current"), Charsets.UTF_8);
+
+    // the second partition received no samples
+    underTest.publish();
+    try {
+      assertFalse(Files.exists(staging));
+      assertEquals(Lists.newArrayList("current"), Files.readAllLines(first, Charsets.UTF_8));
+      assertEquals(0, Files.size(second));
+
+      List<String> manifest = Files.readAllLines(underTest.getManifestPath(), Charsets.UTF_8);
+      assertEquals("runId=run", manifest.get(0));
+      assertEquals(4, manifest.size());
+      assertTrue(manifest.get(2).endsWith("output-file-1.csv," + Files.size(first)));
+      assertEquals(3, outputDir.toFile().list().length);
+
+      try {
+        underTest.publish();
+        fail("expected IllegalStateException");
+      } catch (IllegalStateException e) {
+        assertTrue(e.getMessage().contains("already published"));
+      }
+    } finally {
+      assertTrue(first.toFile().delete());
+      assertTrue(second.toFile().delete());
+      assertTrue(underTest.getManifestPath().toFile().delete());
+    }
+  }
+}
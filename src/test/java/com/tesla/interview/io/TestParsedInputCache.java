@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Lists;
+import com.tesla.interview.model.MeasurementSample;
+import com.tesla.interview.tests.InterviewTestCase;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+public class TestParsedInputCache extends InterviewTestCase {
+
+  private static final List<String> LINES = Lists.newArrayList(
+      "1505233687037,4,fe52fa24-4527-4dfd-be87-348812e0c736,#seven,#three,#six",
+      "1505233687038,1,0a2b1f24-4527-4dfd-be87-348812e0c736,#one",
+      "1505233687039,2,fe52fa24-4527-4dfd-be87-348812e0c737,#ten,#two");
+
+  @Test
+  void testChangedInputInvalidatesCache(TestInfo testInfo) throws IOException {
+    File inputFile = inputFile(testInfo, LINES);
+    try {
+      readAll(ParsedInputCache.open(inputFile));
+      String line = "1505233687040,3,fe52fa24-4527-4dfd-be87-348812e0c738,#five";
+      Files.write(inputFile.toPath(), Lists.newArrayList(line), StandardCharsets.UTF_8,
+          StandardOpenOption.APPEND);
+
+      SampleReader reader = ParsedInputCache.open(inputFile);
+      assertFalse(reader instanceof BinarySampleReader);
+      assertFalse(ParsedInputCache.keyFile(inputFile).exists());
+      assertEquals(LINES.size() + 1, readAll(reader).size());
+
+      reader = ParsedInputCache.open(inputFile);
+      assertTrue(reader instanceof BinarySampleReader);
+      List<MeasurementSample> samples = readAll(reader);
+      assertEquals(MeasurementSample.fromString(line), samples.get(LINES.size()));
+    } finally {
+      deleteAll(inputFile);
+    }
+  }
+
+  @Test
+  void testCloseBeforeEndLeavesNoCache(TestInfo testInfo) throws IOException {
+    File inputFile = inputFile(testInfo, LINES);
+    try {
+      SampleReader reader = ParsedInputCache.open(inputFile);
+      reader.next();
+      reader.close();
+
+      assertFalse(ParsedInputCache.cacheFile(inputFile).exists());
+      assertFalse(ParsedInputCache.keyFile(inputFile).exists());
+      assertEquals(1, inputFile.getParentFile().list().length);
+    } finally {
+      deleteAll(inputFile);
+    }
+  }
+
+  @Test
+  void testNonUuidInputIsReadButNotCached(TestInfo testInfo) throws IOException {
+    List<String> lines = Lists.newArrayList(LINES);
+    lines.add("1505233687040,3,asset-7,#five");
+    File inputFile = inputFile(testInfo, lines);
+    try {
+      List<MeasurementSample> samples = readAll(ParsedInputCache.open(inputFile));
+
+      assertEquals(lines.size(), samples.size());
+      assertFalse(ParsedInputCache.cacheFile(inputFile).exists());
+      assertFalse(ParsedInputCache.keyFile(inputFile).exists());
+      assertEquals(1, inputFile.getParentFile().list().length);
+    } finally {
+      deleteAll(inputFile);
+    }
+  }
+
+  @Test
+  void testSecondReadMapsCache(TestInfo testInfo) throws IOException {
+    File inputFile = inputFile(testInfo, LINES);
+    try {
+      SampleReader reader = ParsedInputCache.open(inputFile);
+      assertFalse(reader instanceof BinarySampleReader);
+      final List<MeasurementSample> parsed = readAll(reader);
+      assertTrue(ParsedInputCache.cacheFile(inputFile).isFile());
+      assertTrue(ParsedInputCache.keyFile(inputFile).isFile());
+
+      reader = ParsedInputCache.open(inputFile);
+      assertTrue(reader instanceof BinarySampleReader);
+      assertEquals(parsed, readAll(reader));
+    } finally {
+      deleteAll(inputFile);
+    }
+  }
+
+  private static void deleteAll(File inputFile) {
+    ParsedInputCache.cacheFile(inputFile).delete();
+    ParsedInputCache.keyFile(inputFile).delete();
+    inputFile.delete(); // lets the temp directory be cleaned up
+  }
+
+  private static List<MeasurementSample> readAll(SampleReader reader) {
+    List<MeasurementSample> samples = Lists.newArrayList();
+    try {
+      while (reader.hasNext()) {
+        samples.add(reader.next());
+      }
+    } finally {
+      reader.close();
+    }
+    return samples;
+  }
+
+  private File inputFile(TestInfo testInfo, List<String> lines) throws IOException {
+    File inputFile = new File(createTempDir(testInfo).toFile(), "input.txt");
+    Files.write(inputFile.toPath(), lines, StandardCharsets.UTF_8);
+    return inputFile;
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.tesla.interview.model.MeasurementSample;
+import com.tesla.interview.tests.InterviewTestCase;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+
+public class TestTcpSampleReader extends InterviewTestCase {
+
+  private static final long FIRST_TIMESTAMP = 1505233687037L;
+  private static final long TIMEOUT_MILLIS = 10_000L;
+
+  private static InetSocketAddress loopback() {
+    return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0 /* port */);
+  }
+
+  private static String line(long timestamp, int partitionNo) {
+    return String.format("%d,%d,asset-%d,#one\n", timestamp, partitionNo, timestamp);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        fail("timed out");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  private static void send(Socket socket, String text) throws IOException {
+    OutputStream stream = socket.getOutputStream();
+    stream.write(text.getBytes(StandardCharsets.UTF_8));
+    stream.flush();
+  }
+
+  @Test
+  void testConstructorWithNullAddressFails() {
+    try {
+      new TcpSampleReader(null, 2 /* numPartitions */);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("cannot be null"));
+    }
+  }
+
+  @Test
+  void testConstructorWithNoPartitionsFails() {
+    try {
+      new TcpSampleReader(loopback(), 0 /* numPartitions */);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be positive"));
+    }
+  }
+
+  @Test
+  void testFullQueueStopsReadingUntilItHasRoom() throws IOException, InterruptedException {
+    try (TcpSampleReader underTest = new TcpSampleReader(loopback(), 2 /* numPartitions */,
+        1 /* maxPendingBatches */);
+        Socket socket = new Socket(underTest.getAddress().getAddress(),
+            underTest.getAddress().getPort())) {
+      send(socket, line(FIRST_TIMESTAMP, 1));
+      await(underTest::isReady);
+      send(socket, line(FIRST_TIMESTAMP + 1, 1));
+      await(() -> underTest.numBlocked() == 1);
+
+      // not read while blocked; arrives after the samples before it
+      send(socket, line(FIRST_TIMESTAMP + 2, 1));
+      for (int i = 0; i < 3; i++) {
+        assertEquals(FIRST_TIMESTAMP + i, underTest.next().getTimestamp());
+      }
+      await(() -> underTest.numBlocked() == 0);
+    }
+  }
+
+  @Test
+  void testInvalidLinesAreDropped() throws IOException {
+    try (TcpSampleReader underTest = new TcpSampleReader(loopback(), 2 /* numPartitions */)) {
+      try (Socket socket = new Socket(underTest.getAddress().getAddress(),
+          underTest.getAddress().getPort())) {
+        send(socket, line(FIRST_TIMESTAMP, 1) + "not a sample\n\r\n" + line(FIRST_TIMESTAMP, 0)
+            + line(FIRST_TIMESTAMP, 3) + line(FIRST_TIMESTAMP + 1, 2));
+      }
+      underTest.stop();
+
+      assertEquals(FIRST_TIMESTAMP, underTest.next().getTimestamp());
+      assertEquals(FIRST_TIMESTAMP + 1, underTest.next().getTimestamp());
+      assertFalse(underTest.hasNext());
+      assertEquals(3, underTest.numDropped.get());
+    }
+  }
+
+  @Test
+  void testSamplesOfEachConnectionKeepTheirOrder() throws Exception {
+    int numSamples = 5000;
+    try (TcpSampleReader underTest = new TcpSampleReader(loopback(), 2 /* numPartitions */)) {
+      CompletableFuture<Void> sender = CompletableFuture.runAsync(() -> {
+        try (Socket first = new Socket(underTest.getAddress().getAddress(),
+            underTest.getAddress().getPort());
+            Socket second = new Socket(underTest.getAddress().getAddress(),
+                underTest.getAddress().getPort())) {
+          for (int i = 0; i < numSamples; i++) {
+            String firstLine = line(FIRST_TIMESTAMP + i, 1);
+            String secondLine = line(FIRST_TIMESTAMP + i, 2).replace("\n", "\r\n");
+            if (i == numSamples - 1) {
+              secondLine = secondLine.trim(); // ended by the connection instead
+            }
+
+            // split lines across writes
+            int split = i % firstLine.length();
+            send(first, firstLine.substring(0, split));
+            send(first, firstLine.substring(split));
+            send(second, secondLine);
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+
+      long[] partitionNoToNextTimestamp = {0, FIRST_TIMESTAMP, FIRST_TIMESTAMP};
+      for (int i = 0; i < 2 * numSamples; i++) {
+        MeasurementSample sample = underTest.next();
+        assertEquals(partitionNoToNextTimestamp[sample.getPartitionNo()]++,
+            sample.getTimestamp());
+      }
+      sender.get();
+      underTest.stop();
+      assertFalse(underTest.hasNext());
+      assertEquals(2, underTest.numConnections.get());
+      assertEquals(0, underTest.numDropped.get());
+    }
+  }
+
+  @Test
+  void testStopWithoutConnectionsEndsStream() {
+    try (TcpSampleReader underTest = new TcpSampleReader(loopback(), 2 /* numPartitions */)) {
+      underTest.stop();
+      assertFalse(underTest.hasNext());
+    }
+  }
+}
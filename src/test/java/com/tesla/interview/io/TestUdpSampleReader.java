@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2019 Jared R Gray
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tesla.interview.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.tesla.interview.tests.InterviewTestCase;
+import io.prometheus.client.CollectorRegistry;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+
+public class TestUdpSampleReader extends InterviewTestCase {
+
+  private static final long FIRST_TIMESTAMP = 1505233687037L;
+  private static final long TIMEOUT_MILLIS = 10_000L;
+
+  private static InetSocketAddress loopback() {
+    return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0 /* port */);
+  }
+
+  private static String line(long timestamp) {
+    return String.format("%d,1,asset-%d,#one\n", timestamp, timestamp);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        fail("timed out");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  private static void send(DatagramSocket socket, InetSocketAddress address, String text)
+      throws IOException {
+    byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+    socket.send(new DatagramPacket(payload, payload.length, address));
+  }
+
+  @Test
+  void testConstructorWithNullRegistryFails() {
+    try {
+      new UdpSampleReader(loopback(), 1 /* numPartitions */, null);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("cannot be null"));
+    }
+  }
+
+  @Test
+  void testDatagramsOfSeveralLinesAreParsed() throws IOException, InterruptedException {
+    int numDatagrams = 100;
+    try (UdpSampleReader underTest = new UdpSampleReader(loopback(), 1 /* numPartitions */,
+        new CollectorRegistry());
+        DatagramSocket socket = new DatagramSocket()) {
+      for (int i = 0; i < numDatagrams; i++) {
+        long timestamp = FIRST_TIMESTAMP + 2 * i;
+        String lastLine = line(timestamp + 1).trim(); // ended by the datagram instead
+        send(socket, underTest.getAddress(), line(timestamp) + "not a sample\n"
+            + line(timestamp).replace(",1,", ",2,") + lastLine);
+
+        // keep the receive buffer from overflowing
+        assertEquals(timestamp, underTest.next().getTimestamp());
+        assertEquals(timestamp + 1, underTest.next().getTimestamp());
+      }
+      assertEquals(numDatagrams, underTest.datagrams.get(), 0.0);
+      assertEquals(2 * numDatagrams, underTest.droppedLines.get(), 0.0);
+      assertEquals(0, underTest.overruns.get(), 0.0);
+    }
+  }
+
+  @Test
+  void testFullQueueIsCountedAsOverrun() throws IOException, InterruptedException {
+    try (UdpSampleReader underTest =
+        new UdpSampleReader(loopback(), 1 /* numPartitions */,
+            1 /* maxPendingBatches */, new CollectorRegistry());
+        DatagramSocket socket = new DatagramSocket()) {
+      send(socket, underTest.getAddress(), line(FIRST_TIMESTAMP));
+      await(underTest::isReady);
+      send(socket, underTest.getAddress(), line(FIRST_TIMESTAMP + 1));
+      await(() -> underTest.overruns.get() == 1);
+
+      // waits in the receive buffer; arrives after the samples before it
+      send(socket, underTest.getAddress(), line(FIRST_TIMESTAMP + 2));
+      for (int i = 0; i < 3; i++) {
+        assertEquals(FIRST_TIMESTAMP + i, underTest.next().getTimestamp());
+      }
+      underTest.stop();
+      assertFalse(underTest.hasNext());
+    }
+  }
+
+  @Test
+  void testStopWithoutDatagramsEndsStream() {
+    try (UdpSampleReader underTest = new UdpSampleReader(loopback(), 1 /* numPartitions */,
+        new CollectorRegistry())) {
+      underTest.stop();
+      assertFalse(underTest.hasNext());
+    }
+  }
+}
@@ -23,6 +23,7 @@ import com.google.common.base.Charsets;
 import com.google.common.collect.Maps;
 import com.google.common.io.Resources;
 import com.tesla.interview.application.cli.CommandLineInterviewApplication;
+import com.tesla.interview.io.OutputPublisher;
 import com.tesla.interview.tests.InterviewTestCase;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.File;
@@ -82,6 +83,8 @@ public class CommandLineFunctionalTest extends InterviewTestCase {
     partitionNumToNumLinesExpected.put(19, 7402);
     partitionNumToNumLinesExpected.put(20, 7455);
 
+    File manifest = new File(outputDir, OutputPublisher.MANIFEST_FILE_NAME);
+    assertTrue(manifest.delete());
     String[] filesCreated = outputDir.list();
     assertEquals(NUM_PARTITIONS, filesCreated.length);
     for (String outputFile : filesCreated) {